@@ -0,0 +1,62 @@
+package net.bytle.benchmark;
+
+import net.bytle.dns.DnsBlockList;
+import net.bytle.dns.DnsBlockListMirror;
+import net.bytle.dns.DnsIp;
+import net.bytle.exception.IllegalStructure;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of random ips in a local mirror of a zone
+ * of a hundred thousand entries (single ips and /24 to /28 CIDR ranges)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DnsBlockListMirrorBenchmark {
+
+  private static final int ENTRIES = 100_000;
+  private static final int LOOKUPS = 1024;
+
+  private DnsBlockListMirror mirror;
+  private DnsIp[] ips;
+  private int index;
+
+  @Setup
+  public void setup() throws IOException, IllegalStructure {
+    Random random = new Random(42);
+    StringBuilder zone = new StringBuilder();
+    zone.append(":127.0.0.2:Listed $\n");
+    for (int i = 0; i < ENTRIES; i++) {
+      int ip = random.nextInt();
+      zone.append(ip >>> 24).append('.')
+        .append((ip >>> 16) & 0xFF).append('.')
+        .append((ip >>> 8) & 0xFF).append('.')
+        .append(ip & 0xFF);
+      if (i % 2 == 0) {
+        zone.append('/').append(24 + random.nextInt(5));
+      }
+      zone.append('\n');
+    }
+    mirror = new DnsBlockListMirror(DnsBlockList.ZEN_SPAMHAUS_ORG).load(new StringReader(zone.toString()));
+    ips = new DnsIp[LOOKUPS];
+    for (int i = 0; i < LOOKUPS; i++) {
+      ips[i] = DnsIp.createFromIpv4Int(random.nextInt());
+    }
+  }
+
+  @Benchmark
+  public boolean isListed() {
+    index = (index + 1) & (LOOKUPS - 1);
+    return mirror.isListed(ips[index]);
+  }
+
+}
@@ -0,0 +1,102 @@
+package net.bytle.benchmark;
+
+import net.bytle.dns.DnsCache;
+import net.bytle.dns.DnsIp;
+import net.bytle.dns.XBillAsyncDnsClient;
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.openjdk.jmh.annotations.*;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A lookup with and without the {@link DnsCache}, the resolver is a local stand-in DNS server (UDP round trip, offline)
+ * <p>
+ * * `NONE`: no cache, all lookups reach the server
+ * * `HIT`: all names are in the cache (warmed in the setup), no lookup reaches the server
+ * * `MISS`: the names cycle over 4 times the size of the cache, all lookups miss (round trip, insertion and eviction)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DnsCacheBenchmark {
+
+  /**
+   * The number of names (a power of two)
+   */
+  private static final int NAMES = 1024;
+
+  public enum Cache {
+    NONE,
+    HIT,
+    MISS
+  }
+
+  @Param({"NONE", "HIT", "MISS"})
+  public Cache cache;
+
+  private StandInDnsServer server;
+  private XBillAsyncDnsClient client;
+  private DnsCache dnsCache;
+  private DnsName[] names;
+  private int index;
+
+  @Setup
+  public void setup() throws IOException, DnsCastException {
+    server = StandInDnsServer.start();
+    names = new DnsName[NAMES];
+    for (int i = 0; i < NAMES; i++) {
+      names[i] = DnsName.create("host" + i + ".example.com");
+      Name name = Name.fromString(names[i].toString(), Name.root);
+      InetAddress address = InetAddress.getByAddress(new byte[]{(byte) 192, 0, (byte) (i >>> 8), (byte) i});
+      server.addRecord(new ARecord(name, DClass.IN, 3600, address));
+    }
+    switch (cache) {
+      case HIT:
+        dnsCache = DnsCache.builder().setMaxEntries(NAMES).build();
+        break;
+      case MISS:
+        dnsCache = DnsCache.builder().setMaxEntries(NAMES / 4).build();
+        break;
+      default:
+        dnsCache = null;
+    }
+    client = XBillAsyncDnsClient.builder()
+      .setResolver(server.createResolver(false))
+      .setCache(dnsCache)
+      .setCoalescing(false)
+      .setAdaptiveLimiters(null)
+      .buildAsync();
+    if (cache == Cache.HIT) {
+      for (DnsName name : names) {
+        client.resolveA(name).toCompletableFuture().join();
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    server.close();
+    // the scenario is the one announced (only the warm-up misses for the hits, no hit for the misses)
+    if (cache == Cache.HIT && dnsCache.getMissCount() != NAMES
+      || cache == Cache.MISS && dnsCache.getHitCount() != 0) {
+      throw new IllegalStateException("The cache scenario (" + cache + ") was not met: " + dnsCache);
+    }
+  }
+
+  @Benchmark
+  public Set<DnsIp> lookup() {
+    index = (index + 1) & (NAMES - 1);
+    return client.resolveA(names[index]).toCompletableFuture().join();
+  }
+
+}
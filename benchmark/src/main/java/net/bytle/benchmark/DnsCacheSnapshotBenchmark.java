@@ -0,0 +1,69 @@
+package net.bytle.benchmark;
+
+import net.bytle.dns.DnsCache;
+import net.bytle.dns.XBillAsyncDnsClient;
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load of a snapshot of a million cache entries (A records)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class DnsCacheSnapshotBenchmark {
+
+  private static final int SIZE = 1_000_000;
+
+  private Path path;
+
+  @Setup
+  public void setup() throws IOException, DnsCastException {
+    DnsCache cache = DnsCache.builder()
+      .setMaxEntries(SIZE)
+      .build();
+    XBillAsyncDnsClient client = XBillAsyncDnsClient.builder()
+      .setResolver(new SyntheticResolver())
+      .setCache(cache)
+      .setCoalescing(false)
+      .buildAsync();
+    List<CompletableFuture<?>> futures = new ArrayList<>();
+    for (int i = 0; i < SIZE; i++) {
+      futures.add(client.resolveA(DnsName.create("host" + i + ".example.com")).toCompletableFuture());
+      if (futures.size() == 10_000) {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        futures.clear();
+      }
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    path = Files.createTempFile("dns-cache", ".bin");
+    cache.save(path);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(path);
+  }
+
+  @Benchmark
+  public DnsCache load() throws IOException {
+    DnsCache cache = DnsCache.builder()
+      .setMaxEntries(SIZE)
+      .build();
+    cache.load(path);
+    return cache;
+  }
+
+}
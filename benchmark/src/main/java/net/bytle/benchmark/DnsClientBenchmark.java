@@ -0,0 +1,145 @@
+package net.bytle.benchmark;
+
+import net.bytle.dns.*;
+import net.bytle.exception.IllegalStructure;
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.openjdk.jmh.annotations.*;
+import org.xbill.DNS.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries of {@link XBillDnsClient} to a local stand-in DNS server (offline)
+ * <p>
+ * An operation is a batch of `concurrency` queries:
+ * * with a concurrency of 1, the query is sent with the sync client (latency)
+ * * otherwise, the queries are sent at once with the async client and the batch waits for all answers (throughput)
+ * <p>
+ * The names are distinct (no coalescing) and the cache is disabled, all queries reach the server.
+ * The adaptive limiters are disabled so that the concurrency is the one of the batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DnsClientBenchmark {
+
+  /**
+   * The number of names by query type (a power of two)
+   */
+  private static final int NAMES = 1024;
+
+  public enum Query {
+    A,
+    MX,
+    TXT,
+    /**
+     * A check of an ip against a block list zone (half of the ips are listed)
+     */
+    DNSBL
+  }
+
+  @Param({"A", "MX", "TXT", "DNSBL"})
+  public Query query;
+
+  @Param({"1", "16", "64"})
+  public int concurrency;
+
+  @Param({"false", "true"})
+  public boolean tcp;
+
+  private StandInDnsServer server;
+  private XBillDnsClient client;
+  private DnsBlockListChecker checker;
+  private DnsName[] names;
+  private String[] ips;
+  private int index;
+
+  @Setup
+  public void setup() throws IOException, DnsCastException {
+    server = StandInDnsServer.start();
+    names = new DnsName[NAMES];
+    ips = new String[NAMES];
+    for (int i = 0; i < NAMES; i++) {
+      names[i] = DnsName.create("host" + i + ".example.com");
+      Name name = Name.fromString(names[i].toString(), Name.root);
+      InetAddress address = InetAddress.getByAddress(new byte[]{(byte) 192, 0, (byte) (i >>> 8), (byte) i});
+      server
+        .addRecord(new ARecord(name, DClass.IN, 300, address))
+        .addRecord(new MXRecord(name, DClass.IN, 300, 10, Name.fromString("mx.example.com.")))
+        .addRecord(new TXTRecord(name, DClass.IN, 300, "v=spf1 ip4:192.0.2.0/24 include:_spf.example.com -all"));
+      ips[i] = "192.0." + (i >>> 8) + "." + (i & 0xFF);
+      if (i % 2 == 0) {
+        Name listed = Name.fromString((i & 0xFF) + "." + (i >>> 8) + ".0.192." + DnsBlockList.ZEN_SPAMHAUS_ORG.getZone() + ".");
+        server.addRecord(new ARecord(listed, DClass.IN, 300, InetAddress.getByAddress(new byte[]{127, 0, 0, 2})));
+      }
+    }
+    client = XBillDnsClient.builder()
+      .setResolver(server.createResolver(tcp))
+      .setCoalescing(false)
+      .setAdaptiveLimiters(null)
+      .build();
+    checker = DnsBlockListChecker.builder(client.getAsyncClient())
+      .addBlockList(DnsBlockList.ZEN_SPAMHAUS_ORG)
+      .setMaxInFlight(concurrency)
+      .setAdaptiveLimiters(null)
+      .build();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Benchmark
+  public Object queries() throws DnsException, DnsNotFoundException, IllegalStructure {
+    if (concurrency == 1) {
+      return querySync(next());
+    }
+    CompletableFuture<?>[] answers = new CompletableFuture<?>[concurrency];
+    for (int i = 0; i < concurrency; i++) {
+      answers[i] = queryAsync(next()).toCompletableFuture();
+    }
+    return CompletableFuture.allOf(answers).join();
+  }
+
+  private int next() {
+    index = (index + 1) & (NAMES - 1);
+    return index;
+  }
+
+  private Object querySync(int i) throws DnsException, DnsNotFoundException, IllegalStructure {
+    switch (query) {
+      case A:
+        return client.resolveA(names[i]);
+      case MX:
+        return client.resolveMx(names[i]);
+      case TXT:
+        return client.resolveTxt(names[i]);
+      default:
+        return checker.checkIp(ips[i]).toCompletableFuture().join();
+    }
+  }
+
+  private CompletionStage<?> queryAsync(int i) throws IllegalStructure {
+    XBillAsyncDnsClient asyncClient = client.getAsyncClient();
+    switch (query) {
+      case A:
+        return asyncClient.resolveA(names[i]);
+      case MX:
+        return asyncClient.resolveMx(names[i]);
+      case TXT:
+        return asyncClient.resolveTxt(names[i]);
+      default:
+        return checker.checkIp(ips[i]);
+    }
+  }
+
+}
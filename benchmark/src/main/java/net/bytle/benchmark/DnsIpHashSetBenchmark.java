@@ -0,0 +1,86 @@
+package net.bytle.benchmark;
+
+import net.bytle.dns.DnsIp;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build a `HashSet` of a million ips (IPv4 with 10% of duplicates):
+ * * `primitive`: {@link DnsIp} (int/long representation)
+ * * `hostAddressString`: the previous {@link DnsIp} (equals and hash code on {@link InetAddress#getHostAddress()})
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class DnsIpHashSetBenchmark {
+
+  private static final int SIZE = 1_000_000;
+
+  private InetAddress[] inetAddresses;
+
+  @Setup
+  public void setup() throws UnknownHostException {
+    Random random = new Random(42);
+    inetAddresses = new InetAddress[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      // 10% of duplicates
+      int ip = random.nextInt((int) (SIZE * 0.9));
+      inetAddresses[i] = InetAddress.getByAddress(new byte[]{(byte) 10, (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip});
+    }
+  }
+
+  @Benchmark
+  public Set<DnsIp> primitive() {
+    Set<DnsIp> set = new HashSet<>();
+    for (InetAddress inetAddress : inetAddresses) {
+      set.add(DnsIp.createFromInetAddress(inetAddress));
+    }
+    return set;
+  }
+
+  @Benchmark
+  public Set<HostAddressDnsIp> hostAddressString() {
+    Set<HostAddressDnsIp> set = new HashSet<>();
+    for (InetAddress inetAddress : inetAddresses) {
+      set.add(new HostAddressDnsIp(inetAddress));
+    }
+    return set;
+  }
+
+  /**
+   * The previous implementation
+   */
+  public static class HostAddressDnsIp {
+
+    private final InetAddress address;
+
+    public HostAddressDnsIp(InetAddress address) {
+      this.address = address;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      HostAddressDnsIp dnsIp = (HostAddressDnsIp) o;
+      return Objects.equals(address.getHostAddress(), dnsIp.address.getHostAddress());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(address.getHostAddress());
+    }
+
+  }
+
+}
@@ -0,0 +1,47 @@
+package net.bytle.benchmark;
+
+import net.bytle.dns.DnsIp;
+import net.bytle.dns.DnsMetrics;
+import net.bytle.dns.XBillAsyncDnsClient;
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead of the metrics on a lookup
+ * (the resolver answers synchronously, the difference with and without metrics is the recording cost)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DnsMetricsBenchmark {
+
+  @Param({"false", "true"})
+  public boolean metrics;
+
+  private XBillAsyncDnsClient client;
+  private DnsName name;
+
+  @Setup
+  public void setup() throws DnsCastException {
+    client = XBillAsyncDnsClient.builder()
+      .setResolver(new SyntheticResolver())
+      .setCoalescing(false)
+      .setAdaptiveLimiters(null)
+      .setMetrics(metrics ? new DnsMetrics() : null)
+      .buildAsync();
+    name = DnsName.create("host.example.com");
+  }
+
+  @Benchmark
+  public Set<DnsIp> lookup() {
+    return client.resolveA(name).toCompletableFuture().join();
+  }
+
+}
@@ -0,0 +1,108 @@
+package net.bytle.benchmark;
+
+import net.bytle.exception.NotFoundException;
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import net.bytle.type.DnsNameXbill;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Apex (registrable domain) of a name:
+ * * `legacyLastTwoLabels`: the previous implementation (the last 2 labels of the xbill name re-parsed as a new name), wrong on `co.uk`
+ * * `publicSuffixList`: the public suffix list trie walk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DnsNameApexBenchmark {
+
+  private static final String[] NAMES = {
+    "www.example.com",
+    "mail.google.com",
+    "www.bbc.co.uk",
+    "news.bbc.co.uk",
+    "foo.bar.example.co.jp",
+    "bytle.net",
+    "user.github.io",
+    "a.b.c.d.e.example.org",
+    "www.gov.uk",
+    "shop.example.com.au"
+  };
+
+  private DnsName[] dnsNames;
+  /**
+   * The xbill names that the previous implementation held in the name
+   */
+  private DnsNameXbill[] xBillDnsNames;
+
+  @Setup
+  public void setup() throws DnsCastException {
+    dnsNames = new DnsName[NAMES.length];
+    xBillDnsNames = new DnsNameXbill[NAMES.length];
+    for (int i = 0; i < NAMES.length; i++) {
+      dnsNames[i] = DnsName.create(NAMES[i]);
+      xBillDnsNames[i] = DnsNameXbill.fromString(NAMES[i] + DnsName.ROOT_DOT);
+    }
+  }
+
+  @Benchmark
+  public void legacyLastTwoLabels(Blackhole blackhole) throws DnsCastException {
+    for (DnsNameXbill xBillDnsName : xBillDnsNames) {
+      blackhole.consume(legacyApexName(xBillDnsName));
+    }
+  }
+
+  @Benchmark
+  public void publicSuffixList(Blackhole blackhole) {
+    for (DnsName dnsName : dnsNames) {
+      blackhole.consume(dnsName.getApexName());
+    }
+  }
+
+  @Benchmark
+  public void publicSuffix(Blackhole blackhole) {
+    for (DnsName dnsName : dnsNames) {
+      blackhole.consume(dnsName.getPublicSuffix());
+    }
+  }
+
+  @Benchmark
+  public void registrableDomain(Blackhole blackhole) {
+    for (DnsName dnsName : dnsNames) {
+      try {
+        blackhole.consume(dnsName.getRegistrableDomain());
+      } catch (NotFoundException e) {
+        blackhole.consume(e);
+      }
+    }
+  }
+
+  /**
+   * The apex implementation before the public suffix list (`DnsName.getApexName`)
+   * with the body of the previous `DnsName` constructor inlined (the constructor is not accessible)
+   */
+  private static DnsNameXbill legacyApexName(DnsNameXbill xBillDnsName) throws DnsCastException {
+    int labels = xBillDnsName.labels();
+    if (labels <= 3) {
+      return xBillDnsName;
+    }
+    String rootLabel = xBillDnsName.getLabelString(labels - 1);
+    String tldLabel = xBillDnsName.getLabelString(labels - 2);
+    String apexLabel = xBillDnsName.getLabelString(labels - 3);
+    String absoluteName = apexLabel + "." + tldLabel + "." + rootLabel;
+    String nameWithRoot;
+    if (!absoluteName.endsWith(DnsName.ROOT_DOT)) {
+      nameWithRoot = absoluteName + DnsName.ROOT_DOT;
+    } else {
+      nameWithRoot = absoluteName;
+    }
+    return DnsNameXbill.fromString(nameWithRoot);
+  }
+
+}
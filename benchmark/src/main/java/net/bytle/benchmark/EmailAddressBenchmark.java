@@ -0,0 +1,69 @@
+package net.bytle.benchmark;
+
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import net.bytle.type.DnsNameXbill;
+import net.bytle.type.EmailAddress;
+import net.bytle.type.EmailCastException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Email address and domain name construction on a realistic set of repeated domains:
+ * * `dnsNameCreate`: the interned fast path of {@link DnsName#create(String)}
+ * * `dnsNameFullParse`: the previous path (root dot concatenation and full parse)
+ * * `emailAddress`: the email construction (domain name and validation)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailAddressBenchmark {
+
+  private static final String[] DOMAINS = {
+    "gmail.com",
+    "yahoo.com",
+    "hotmail.com",
+    "outlook.com",
+    "eraldy.com",
+    "example.co.uk",
+    "mail.example.org",
+    "bytle.net"
+  };
+
+  private String[] emails;
+
+  @Setup
+  public void setup() {
+    emails = new String[DOMAINS.length * 4];
+    for (int i = 0; i < emails.length; i++) {
+      emails[i] = "user" + i + "@" + DOMAINS[i % DOMAINS.length];
+    }
+  }
+
+  @Benchmark
+  public void dnsNameCreate(Blackhole blackhole) throws DnsCastException {
+    for (String domain : DOMAINS) {
+      blackhole.consume(DnsName.create(domain));
+    }
+  }
+
+  @Benchmark
+  public void dnsNameFullParse(Blackhole blackhole) throws DnsCastException {
+    for (String domain : DOMAINS) {
+      blackhole.consume(DnsNameXbill.fromString(domain + DnsName.ROOT_DOT));
+    }
+  }
+
+  @Benchmark
+  public void emailAddress(Blackhole blackhole) throws EmailCastException {
+    for (String email : emails) {
+      blackhole.consume(EmailAddress.of(email));
+    }
+  }
+
+}
@@ -0,0 +1,188 @@
+package net.bytle.benchmark;
+
+import org.xbill.DNS.*;
+import org.xbill.DNS.Record;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-process DNS server (UDP and TCP on the loopback) that answers from canned records
+ * so that the client benchmarks run offline.
+ * <p>
+ * * a name without any record is a NXDOMAIN
+ * * a name with records but not of the queried type is an empty answer (NODATA)
+ * * an UDP answer bigger than 512 bytes is truncated (the client retries with TCP)
+ */
+class StandInDnsServer implements Closeable {
+
+  private static final int UDP_MAX_SIZE = 512;
+
+  private final Map<Name, List<Record>> zone = new ConcurrentHashMap<>();
+  private final DatagramChannel udp;
+  private final ServerSocket tcp;
+  private final List<Socket> connections = Collections.synchronizedList(new ArrayList<>());
+  private volatile boolean closed = false;
+
+  private StandInDnsServer() throws IOException {
+    InetAddress loopback = InetAddress.getLoopbackAddress();
+    this.udp = DatagramChannel.open().bind(new InetSocketAddress(loopback, 0));
+    int port = ((InetSocketAddress) this.udp.getLocalAddress()).getPort();
+    this.tcp = new ServerSocket(port, 128, loopback);
+  }
+
+  /**
+   * @return a started server on a free port of the loopback
+   */
+  static StandInDnsServer start() throws IOException {
+    StandInDnsServer server = new StandInDnsServer();
+    server.startThread("stand-in-dns-udp", server::serveUdp);
+    server.startThread("stand-in-dns-tcp", server::acceptTcp);
+    return server;
+  }
+
+  StandInDnsServer addRecord(Record record) {
+    zone.computeIfAbsent(record.getName(), k -> Collections.synchronizedList(new ArrayList<>())).add(record);
+    return this;
+  }
+
+  int getPort() {
+    return tcp.getLocalPort();
+  }
+
+  /**
+   * @return a resolver that sends its queries to this server
+   */
+  SimpleResolver createResolver(boolean tcp) {
+    SimpleResolver resolver = new SimpleResolver(new InetSocketAddress(InetAddress.getLoopbackAddress(), getPort()));
+    resolver.setTCP(tcp);
+    return resolver;
+  }
+
+  private void startThread(String name, Runnable runnable) {
+    Thread thread = new Thread(runnable, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void serveUdp() {
+    ByteBuffer buffer = ByteBuffer.allocate(65535);
+    while (!closed) {
+      try {
+        buffer.clear();
+        SocketAddress client = udp.receive(buffer);
+        buffer.flip();
+        byte[] query = new byte[buffer.remaining()];
+        buffer.get(query);
+        byte[] answer = answer(query, UDP_MAX_SIZE);
+        if (answer != null) {
+          udp.send(ByteBuffer.wrap(answer), client);
+        }
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        // a bad datagram or a client gone, the next one is served
+      }
+    }
+  }
+
+  private void acceptTcp() {
+    while (!closed) {
+      try {
+        Socket socket = tcp.accept();
+        // no Nagle delay on the small answers
+        socket.setTcpNoDelay(true);
+        connections.add(socket);
+        startThread("stand-in-dns-tcp-connection", () -> serveTcp(socket));
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * A TCP message is prefixed by its length (2 bytes)
+   */
+  private void serveTcp(Socket socket) {
+    try (socket) {
+      DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      while (!closed) {
+        byte[] query = new byte[input.readUnsignedShort()];
+        input.readFully(query);
+        byte[] answer = answer(query, 65535);
+        if (answer == null) {
+          return;
+        }
+        output.writeShort(answer.length);
+        output.write(answer);
+        output.flush();
+      }
+    } catch (IOException e) {
+      // the client has closed the connection
+    } finally {
+      connections.remove(socket);
+    }
+  }
+
+  /**
+   * @return the answer or null if the query is not valid
+   */
+  private byte[] answer(byte[] queryBytes, int maxSize) {
+    Message query;
+    try {
+      query = new Message(queryBytes);
+    } catch (IOException e) {
+      return null;
+    }
+    Record question = query.getQuestion();
+    if (question == null) {
+      return null;
+    }
+    Message response = new Message(query.getHeader().getID());
+    response.getHeader().setFlag(Flags.QR);
+    response.getHeader().setFlag(Flags.RA);
+    if (query.getHeader().getFlag(Flags.RD)) {
+      response.getHeader().setFlag(Flags.RD);
+    }
+    response.addRecord(question, Section.QUESTION);
+    List<Record> records = zone.get(question.getName());
+    if (records == null) {
+      response.getHeader().setRcode(Rcode.NXDOMAIN);
+    } else {
+      synchronized (records) {
+        for (Record record : records) {
+          if (record.getType() == question.getType()) {
+            response.addRecord(record, Section.ANSWER);
+          }
+        }
+      }
+    }
+    return response.toWire(maxSize);
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    udp.close();
+    tcp.close();
+    synchronized (connections) {
+      for (Socket connection : connections) {
+        connection.close();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+package net.bytle.benchmark;
+
+import org.xbill.DNS.*;
+import org.xbill.DNS.Record;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * A resolver that answers an A record for any name
+ */
+class SyntheticResolver implements Resolver {
+
+  @Override
+  public CompletionStage<Message> sendAsync(Message query) {
+    return sendAsync(query, Runnable::run);
+  }
+
+  @Override
+  public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+    Record question = query.getQuestion();
+    Message response = new Message(query.getHeader().getID());
+    response.getHeader().setFlag(Flags.QR);
+    response.addRecord(question, Section.QUESTION);
+    int hash = question.getName().hashCode();
+    try {
+      InetAddress address = InetAddress.getByAddress(new byte[]{10, (byte) (hash >>> 16), (byte) (hash >>> 8), (byte) hash});
+      response.addRecord(new ARecord(question.getName(), DClass.IN, 3600, address), Section.ANSWER);
+    } catch (UnknownHostException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return CompletableFuture.completedFuture(response);
+  }
+
+  @Override
+  public void setPort(int port) {
+  }
+
+  @Override
+  public void setTCP(boolean flag) {
+  }
+
+  @Override
+  public void setIgnoreTruncation(boolean flag) {
+  }
+
+  @Override
+  public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+  }
+
+  @Override
+  public void setTSIGKey(TSIG key) {
+  }
+
+  @Override
+  public void setTimeout(Duration timeout) {
+  }
+
+  @Override
+  public Duration getTimeout() {
+    return Duration.ofSeconds(5);
+  }
+
+}
@@ -2,7 +2,7 @@ package net.bytle.type;
 
 
 import net.bytle.exception.CastException;
-import net.bytle.exception.InternalException;
+import net.bytle.exception.NotFoundException;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -20,21 +20,32 @@ public class DnsName {
   private static final String DNS_SEPARATOR = ".";
   public static final String ROOT_DOT = DNS_SEPARATOR;
 
+  /**
+   * The parsed names of {@link #create(String)}
+   */
+  private static final DnsNameInterner INTERNER = new DnsNameInterner(4096);
+
   private final DnsNameXbill xBillDnsName;
   /**
    * Selector / Value
+   * (created on the first expected dkim)
+   */
+  private Map<String, String> expectedDkims;
+  /**
+   * Created on the first expected dmarc email
+   */
+  private List<EmailAddress> expectedDmarcEmails;
+  /**
+   * The string representation (computed on the first use)
    */
-  private final Map<String, String> expectedDkims = new HashMap<>();
-  private final List<EmailAddress> expectedDmarcEmails = new ArrayList<>();
+  private String stringWithoutRoot;
 
   protected DnsName(String absoluteName) throws DnsCastException {
-    String nameWithRoot;
-    if (!absoluteName.endsWith(ROOT_DOT)) {
-      nameWithRoot = absoluteName + ROOT_DOT;
-    } else {
-      nameWithRoot = absoluteName;
-    }
-    this.xBillDnsName = DnsNameXbill.fromString(nameWithRoot);
+    this.xBillDnsName = DnsNameXbill.fromAbsoluteString(absoluteName);
+  }
+
+  private DnsName(DnsNameXbill xBillDnsName) {
+    this.xBillDnsName = xBillDnsName;
   }
 
   /**
@@ -43,7 +54,14 @@ public class DnsName {
    * @throws DnsCastException if the name is not valid
    */
   public static DnsName create(String absoluteName) throws DnsCastException {
-    return new DnsName(absoluteName);
+    return new DnsName(INTERNER.intern(absoluteName));
+  }
+
+  /**
+   * @return the interning cache of {@link #create(String)} (for the hit rate stats)
+   */
+  public static DnsNameInterner getInterner() {
+    return INTERNER;
   }
 
 
@@ -88,7 +106,10 @@ public class DnsName {
    * In Spf record, the name does not have any root separator
    */
   public String toStringWithoutRoot() {
-    return this.xBillDnsName.toString(true);
+    if (this.stringWithoutRoot == null) {
+      this.stringWithoutRoot = this.xBillDnsName.toString(true);
+    }
+    return this.stringWithoutRoot;
   }
 
   @SuppressWarnings("unused")
@@ -96,31 +117,89 @@ public class DnsName {
     return this.xBillDnsName.toString(false);
   }
 
+  /**
+   * @return the registrable domain (the apex) or this name if this is a public suffix
+   * See {@link #getRegistrableDomain()}
+   */
   public DnsName getApexName() {
-    int labels = this.xBillDnsName.labels();
-    if (labels <= 3) {
+    try {
+      return getRegistrableDomain();
+    } catch (NotFoundException e) {
       return this;
     }
-    try {
-      String rootLabel = this.xBillDnsName.getLabelString(labels - 1);
-      String tldLabel = this.xBillDnsName.getLabelString(labels - 2);
-      String apexLabel = this.xBillDnsName.getLabelString(labels - 3);
-      return new DnsName(apexLabel + "." + tldLabel + "." + rootLabel);
-    } catch (CastException e) {
-      throw new InternalException("It should not throw");
+  }
+
+  /**
+   * The public suffix of the name as defined by the <a href="https://publicsuffix.org/">Public Suffix List</a>
+   * ie `co.uk` for `www.example.co.uk`
+   * <p>
+   * If no rule matches, the public suffix is the TLD.
+   */
+  public DnsName getPublicSuffix() {
+    int suffixLabelCount = DnsPublicSuffixList.get().getPublicSuffixLabelCount(this.xBillDnsName);
+    return suffix(suffixLabelCount);
+  }
+
+  /**
+   * The registrable domain: the public suffix and one more label
+   * ie `example.co.uk` for `www.example.co.uk`
+   *
+   * @throws NotFoundException if the name is a public suffix (ie `co.uk`)
+   */
+  public DnsName getRegistrableDomain() throws NotFoundException {
+    int suffixLabelCount = DnsPublicSuffixList.get().getPublicSuffixLabelCount(this.xBillDnsName);
+    if (suffixLabelCount >= getLabelCount()) {
+      throw new NotFoundException("The name (" + this + ") is a public suffix and has no registrable domain");
     }
+    return suffix(suffixLabelCount + 1);
+  }
+
+  /**
+   * @return true if the name is a public suffix (ie `com`, `co.uk`)
+   */
+  @SuppressWarnings("unused")
+  public boolean isPublicSuffix() {
+    return DnsPublicSuffixList.get().getPublicSuffixLabelCount(this.xBillDnsName) >= getLabelCount();
+  }
+
+  /**
+   * @return the number of labels without the root label
+   */
+  int getLabelCount() {
+    return this.xBillDnsName.isAbsolute() ? this.xBillDnsName.labels() - 1 : this.xBillDnsName.labels();
+  }
+
+  /**
+   * @param labelCount - the number of labels to keep (without the root)
+   * @return the name with the last labels
+   */
+  private DnsName suffix(int labelCount) {
+    if (labelCount >= getLabelCount()) {
+      return this;
+    }
+    int rootLabel = this.xBillDnsName.isAbsolute() ? 1 : 0;
+    return new DnsName(this.xBillDnsName.suffix(labelCount + rootLabel));
   }
 
 
   public void addExpectedDkim(String selector, String value) {
+    if (this.expectedDkims == null) {
+      this.expectedDkims = new HashMap<>();
+    }
     this.expectedDkims.put(selector, value);
   }
 
   public Set<String> getExpectedDkimSelector() {
+    if (this.expectedDkims == null) {
+      return Collections.emptySet();
+    }
     return this.expectedDkims.keySet();
   }
 
   public String getExpectedDkimValue(String selector) {
+    if (this.expectedDkims == null) {
+      return null;
+    }
     return this.expectedDkims.get(selector);
   }
 
@@ -143,7 +222,7 @@ public class DnsName {
      * Optional - Inherited from p
      * dmarc += "; sp=" + rejectPolicy;
      */
-    if (this.expectedDmarcEmails.isEmpty()) {
+    if (this.expectedDmarcEmails == null) {
       return dmarc;
     }
     String mailToSchema = "mailto:";
@@ -157,11 +236,17 @@ public class DnsName {
 
   @SuppressWarnings("UnusedReturnValue")
   public DnsName addExpectedDmarcEmail(EmailAddress mail) {
+    if (this.expectedDmarcEmails == null) {
+      this.expectedDmarcEmails = new ArrayList<>();
+    }
     this.expectedDmarcEmails.add(mail);
     return this;
   }
 
   public List<EmailAddress> getDmarcEmails() {
+    if (this.expectedDmarcEmails == null) {
+      return Collections.emptyList();
+    }
     return this.expectedDmarcEmails;
   }
 
@@ -0,0 +1,109 @@
+package net.bytle.type;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded interning cache of parsed names used by {@link DnsName#create(String)}
+ * <p>
+ * The same handful of domains (email domains, hosts) are parsed again and again.
+ * The cache returns the parsed name of a string already seen without parsing it.
+ * <p>
+ * * The cache is direct-mapped: the string hash gives the slot, a new name replaces the previous one (no lock, no eviction list)
+ * * Only the immutable {@link DnsNameXbill} is shared, a {@link DnsName} is mutable (expected dkim and dmarc) and is never shared
+ * <p>
+ * The stats are available with {@link DnsName#getInterner()}
+ */
+public class DnsNameInterner {
+
+  /**
+   * A slot. The fields are final, an entry read by another thread is then always complete
+   * (a racy read sees the previous entry or this one, never a partial one)
+   */
+  private static class Entry {
+    private final String string;
+    private final DnsNameXbill name;
+
+    private Entry(String string, DnsNameXbill name) {
+      this.string = string;
+      this.name = name;
+    }
+  }
+
+  private final Entry[] slots;
+  private final int mask;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param capacity - the number of slots (rounded up to a power of two)
+   */
+  DnsNameInterner(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("The capacity should be greater than zero");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size = size << 1;
+    }
+    this.slots = new Entry[size];
+    this.mask = size - 1;
+  }
+
+  /**
+   * @param absoluteName - an absolute name with or without the root dot
+   * @return the parsed name
+   * @throws DnsCastException if the name is not valid (an invalid name is not cached)
+   */
+  DnsNameXbill intern(String absoluteName) throws DnsCastException {
+    int hash = absoluteName.hashCode();
+    int index = (hash ^ (hash >>> 16)) & mask;
+    Entry entry = slots[index];
+    if (entry != null && entry.string.equals(absoluteName)) {
+      hits.increment();
+      return entry.name;
+    }
+    misses.increment();
+    DnsNameXbill name = DnsNameXbill.fromAbsoluteString(absoluteName);
+    slots[index] = new Entry(absoluteName, name);
+    return name;
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the ratio of hits on all lookups (0 if there was no lookup)
+   */
+  public double getHitRate() {
+    long hitCount = hits.sum();
+    long total = hitCount + misses.sum();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  public int getCapacity() {
+    return slots.length;
+  }
+
+  /**
+   * Empty the cache and reset the stats
+   */
+  @SuppressWarnings("unused")
+  public void clear() {
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = null;
+    }
+    hits.reset();
+    misses.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "DnsNameInterner{capacity=" + getCapacity() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "}";
+  }
+
+}
@@ -312,6 +312,53 @@ public class DnsNameXbill implements Comparable<DnsNameXbill>, Serializable {
       }
   }
 
+  /**
+   * Create an absolute name from a string with or without the final dot.
+   * <p>
+   * Fast path: a name without escape and non-ascii character is written
+   * in its wire form in one pass (no label buffer, no array copy by label, no root dot concatenation).
+   * The other names and the invalid names go through {@link #fromString(String)}.
+   *
+   * @param s The string to be converted
+   * @throws DnsCastException The name is invalid.
+   */
+  static DnsNameXbill fromAbsoluteString(String s) throws DnsCastException {
+    int length = s.length();
+    boolean hasFinalDot = length > 0 && s.charAt(length - 1) == '.';
+    int textLength = hasFinalDot ? length - 1 : length;
+    // the wire form has one more length byte at the start and the root label at the end
+    int wireLength = textLength + 2;
+    if (textLength == 0 || wireLength > MAXNAME) {
+      return fromString(hasFinalDot ? s : s + ".");
+    }
+    DnsNameXbill newname = new DnsNameXbill();
+    byte[] wire = new byte[wireLength];
+    int lengthPos = 0;
+    int labels = 0;
+    for (int i = 0; i <= textLength; i++) {
+      char c = i < textLength ? s.charAt(i) : '.';
+      if (c == '.') {
+        int labelLength = i - lengthPos;
+        if (labelLength == 0 || labelLength > MAXLABEL) {
+          return fromString(hasFinalDot ? s : s + ".");
+        }
+        wire[lengthPos] = (byte) labelLength;
+        newname.setOffset(labels++, lengthPos);
+        lengthPos = i + 1;
+        continue;
+      }
+      if (c == '\\' || c > 0x7f) {
+        return fromString(hasFinalDot ? s : s + ".");
+      }
+      wire[i + 1] = (byte) c;
+    }
+    // the root label (the length byte is already zero)
+    newname.setOffset(labels++, lengthPos);
+    newname.name = wire;
+    newname.labels = labels;
+    return newname;
+  }
+
 
 
   /**
@@ -384,6 +431,42 @@ public class DnsNameXbill implements Comparable<DnsNameXbill>, Serializable {
     return newname;
   }
 
+  /**
+   * Returns a new name with the last labels of this name (no string parsing)
+   *
+   * @param labelCount The number of labels to keep (the root label included if absolute)
+   * @return The name
+   */
+  DnsNameXbill suffix(int labelCount) {
+    if (labelCount >= labels) {
+      return this;
+    }
+    DnsNameXbill newname = new DnsNameXbill();
+    int start = offset(labels - labelCount);
+    newname.name = Arrays.copyOfRange(name, start, name.length);
+    newname.labels = labelCount;
+    for (int i = 0, pos = 0; i < labelCount && i < MAXOFFSETS; i++) {
+      newname.setOffset(i, pos);
+      pos += newname.name[pos] + 1;
+    }
+    return newname;
+  }
+
+  /**
+   * @return the wire bytes of the name (length-prefixed labels), should not be modified
+   */
+  byte[] getBytes() {
+    return name;
+  }
+
+  /**
+   * @param n The label. The first label is 0.
+   * @return the position of the label length byte in {@link #getBytes()}
+   */
+  int getLabelOffset(int n) {
+    return offset(n);
+  }
+
   /** Is this name a wildcard? */
   @SuppressWarnings("unused")
   public boolean isWild() {
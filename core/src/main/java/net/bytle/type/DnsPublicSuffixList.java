@@ -0,0 +1,274 @@
+package net.bytle.type;
+
+import net.bytle.exception.InternalException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * The <a href="https://publicsuffix.org/">Public Suffix List</a>
+ * compiled in an array-backed trie (no object per node).
+ * <p>
+ * The list is loaded once from the bundled resource {@link #RESOURCE}
+ * (ICANN and private domains, IDN rules are stored in their ASCII form).
+ * <p>
+ * The trie is walked from the TLD on the wire bytes of the name,
+ * a match is then O(labels) without allocation.
+ */
+public class DnsPublicSuffixList {
+
+  static final String RESOURCE = "/net/bytle/type/public_suffix_list.dat";
+
+  /**
+   * The node is the end of a rule (ie `co.uk`)
+   */
+  private static final byte RULE = 1;
+  /**
+   * The node has a wildcard child rule (ie `*.ck`)
+   */
+  private static final byte WILDCARD = 2;
+  /**
+   * The node is the end of an exception rule (ie `!www.ck`)
+   */
+  private static final byte EXCEPTION = 4;
+
+  /**
+   * Node 0 is the root, the children of a node are contiguous
+   * and sorted by label bytes
+   */
+  private final int[] firstChild;
+  private final int[] childCount;
+  private final byte[] flags;
+  /**
+   * The label of a node is in {@link #labelData} at {@link #labelStart} for {@link #labelLength}
+   */
+  private final int[] labelStart;
+  private final byte[] labelLength;
+  private final byte[] labelData;
+
+  private static class Holder {
+    private static final DnsPublicSuffixList INSTANCE = loadFromResource();
+  }
+
+  private DnsPublicSuffixList(int[] firstChild, int[] childCount, byte[] flags, int[] labelStart, byte[] labelLength, byte[] labelData) {
+    this.firstChild = firstChild;
+    this.childCount = childCount;
+    this.flags = flags;
+    this.labelStart = labelStart;
+    this.labelLength = labelLength;
+    this.labelData = labelData;
+  }
+
+  /**
+   * @return the list loaded from the bundled resource
+   */
+  public static DnsPublicSuffixList get() {
+    return Holder.INSTANCE;
+  }
+
+  private static DnsPublicSuffixList loadFromResource() {
+    try (InputStream inputStream = DnsPublicSuffixList.class.getResourceAsStream(RESOURCE)) {
+      if (inputStream == null) {
+        throw new InternalException("The public suffix list resource (" + RESOURCE + ") was not found");
+      }
+      return load(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)));
+    } catch (IOException e) {
+      throw new InternalException("Error while reading the public suffix list resource (" + RESOURCE + ")", e);
+    }
+  }
+
+  /**
+   * Temporary tree node used while loading
+   */
+  private static class LoadNode {
+    private final TreeMap<String, LoadNode> children = new TreeMap<>();
+    private byte flags = 0;
+  }
+
+  /**
+   * @param reader - a reader on a list in the <a href="https://publicsuffix.org/list/">public suffix list format</a>
+   */
+  static DnsPublicSuffixList load(BufferedReader reader) throws IOException {
+
+    LoadNode root = new LoadNode();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("//")) {
+        continue;
+      }
+      // only the first token is the rule
+      int space = line.indexOf(' ');
+      if (space != -1) {
+        line = line.substring(0, space);
+      }
+      byte flag = RULE;
+      if (line.startsWith("!")) {
+        flag = EXCEPTION;
+        line = line.substring(1);
+      }
+      if (line.startsWith("*.")) {
+        flag = WILDCARD;
+        line = line.substring(2);
+      }
+      String[] labels = IDN.toASCII(line, IDN.ALLOW_UNASSIGNED).toLowerCase().split("\\.");
+      LoadNode node = root;
+      for (int i = labels.length - 1; i >= 0; i--) {
+        node = node.children.computeIfAbsent(labels[i], k -> new LoadNode());
+      }
+      node.flags |= flag;
+    }
+
+    /**
+     * Breadth first numbering so that the children of a node are contiguous
+     */
+    List<LoadNode> nodes = new ArrayList<>();
+    List<String> labels = new ArrayList<>();
+    nodes.add(root);
+    labels.add("");
+    Queue<Integer> queue = new ArrayDeque<>();
+    queue.add(0);
+    int[] firstChildren = new int[16];
+    int[] childCounts = new int[16];
+    while (!queue.isEmpty()) {
+      int index = queue.poll();
+      LoadNode node = nodes.get(index);
+      if (index >= firstChildren.length) {
+        firstChildren = Arrays.copyOf(firstChildren, firstChildren.length * 2);
+        childCounts = Arrays.copyOf(childCounts, childCounts.length * 2);
+      }
+      firstChildren[index] = nodes.size();
+      childCounts[index] = node.children.size();
+      // the tree map is sorted by string, ascii labels are then sorted by bytes
+      node.children.forEach((label, child) -> {
+        queue.add(nodes.size());
+        nodes.add(child);
+        labels.add(label);
+      });
+    }
+
+    int nodeCount = nodes.size();
+    byte[] flags = new byte[nodeCount];
+    int[] labelStart = new int[nodeCount];
+    byte[] labelLength = new byte[nodeCount];
+    int labelDataSize = labels.stream().mapToInt(String::length).sum();
+    byte[] labelData = new byte[labelDataSize];
+    int position = 0;
+    for (int i = 0; i < nodeCount; i++) {
+      flags[i] = nodes.get(i).flags;
+      byte[] label = labels.get(i).getBytes(StandardCharsets.US_ASCII);
+      labelStart[i] = position;
+      labelLength[i] = (byte) label.length;
+      System.arraycopy(label, 0, labelData, position, label.length);
+      position += label.length;
+    }
+    return new DnsPublicSuffixList(
+      Arrays.copyOf(firstChildren, nodeCount),
+      Arrays.copyOf(childCounts, nodeCount),
+      flags,
+      labelStart,
+      labelLength,
+      labelData
+    );
+
+  }
+
+  /**
+   * @param name - the name
+   * @return the number of labels of the public suffix (without the root label),
+   * at minimum 1 (the default rule `*`) if the name has a label
+   */
+  int getPublicSuffixLabelCount(DnsNameXbill name) {
+
+    byte[] bytes = name.getBytes();
+    int labels = name.labels();
+    // the last label is the empty root label if the name is absolute
+    int lastLabel = name.isAbsolute() ? labels - 2 : labels - 1;
+    if (lastLabel < 0) {
+      return 0;
+    }
+    int suffixCount = 1;
+    int node = 0;
+    for (int depth = 1; depth <= lastLabel + 1; depth++) {
+      int labelOffset = name.getLabelOffset(lastLabel - depth + 1);
+      int child = findChild(node, bytes, labelOffset + 1, bytes[labelOffset]);
+      if (child != -1 && (flags[child] & EXCEPTION) != 0) {
+        // the exception rule has priority: the suffix is the exception without its leftmost label
+        return depth - 1;
+      }
+      if ((flags[node] & WILDCARD) != 0) {
+        suffixCount = depth;
+      }
+      if (child == -1) {
+        break;
+      }
+      if ((flags[child] & RULE) != 0) {
+        suffixCount = depth;
+      }
+      node = child;
+    }
+    return suffixCount;
+
+  }
+
+  /**
+   * Binary search of the label in the children of the node
+   *
+   * @return the child node or -1
+   */
+  private int findChild(int node, byte[] bytes, int start, int length) {
+    int low = firstChild[node];
+    int high = low + childCount[node] - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compare(mid, bytes, start, length);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Compare the label of the node with the label (case-insensitive)
+   */
+  private int compare(int node, byte[] bytes, int start, int length) {
+    int nodeStart = labelStart[node];
+    int nodeLength = labelLength[node];
+    int min = Math.min(nodeLength, length);
+    for (int i = 0; i < min; i++) {
+      int a = labelData[nodeStart + i] & 0xFF;
+      int b = bytes[start + i] & 0xFF;
+      if (b >= 'A' && b <= 'Z') {
+        b += 'a' - 'A';
+      }
+      if (a != b) {
+        return a - b;
+      }
+    }
+    return nodeLength - length;
+  }
+
+  /**
+   * @return the number of nodes in the trie
+   */
+  @SuppressWarnings("unused")
+  public int size() {
+    return flags.length;
+  }
+
+}
@@ -86,7 +86,7 @@ public class EmailAddress {
     if (this.domain.toStringWithoutRoot().startsWith("[")) {
       throw new EmailCastException("The domain should not start with a [");
     }
-    if (this.domain.getLabels().size() == 1) {
+    if (this.domain.getLabelCount() == 1) {
       throw new EmailCastException("The domain should have a tld");
     }
     try {
@@ -0,0 +1,78 @@
+package net.bytle.type;
+
+import net.bytle.exception.NotFoundException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DnsNameTest {
+
+  @Test
+  void registrableDomain() throws DnsCastException, NotFoundException {
+    Assertions.assertEquals("example.co.uk", DnsName.create("www.example.co.uk").getRegistrableDomain().toString());
+    Assertions.assertEquals("example.com", DnsName.create("sub.blog.example.com").getRegistrableDomain().toString());
+    Assertions.assertEquals("example.com", DnsName.create("example.com").getRegistrableDomain().toString());
+    Assertions.assertEquals("Example.COM", DnsName.create("www.Example.COM").getRegistrableDomain().toString());
+    // private domain
+    Assertions.assertEquals("gerardnico.github.io", DnsName.create("gerardnico.github.io").getRegistrableDomain().toString());
+    Assertions.assertThrows(NotFoundException.class, () -> DnsName.create("co.uk").getRegistrableDomain());
+  }
+
+  @Test
+  void publicSuffix() throws DnsCastException {
+    Assertions.assertEquals("co.uk", DnsName.create("www.example.co.uk").getPublicSuffix().toString());
+    Assertions.assertEquals("com", DnsName.create("example.com").getPublicSuffix().toString());
+    // unknown tld, default rule
+    Assertions.assertEquals("unknowntld", DnsName.create("www.example.unknowntld").getPublicSuffix().toString());
+    // wildcard and exception rules (*.ck, !www.ck)
+    Assertions.assertEquals("foo.ck", DnsName.create("www.bar.foo.ck").getPublicSuffix().toString());
+    Assertions.assertEquals("ck", DnsName.create("www.ck").getPublicSuffix().toString());
+    // idn rules are stored in their ascii form (公司.cn)
+    Assertions.assertEquals("xn--55qx5d.cn", DnsName.create("example.xn--55qx5d.cn").getPublicSuffix().toString());
+  }
+
+  @Test
+  void apexName() throws DnsCastException {
+    Assertions.assertEquals("example.co.uk", DnsName.create("www.example.co.uk").getApexName().toString());
+    Assertions.assertEquals("co.uk", DnsName.create("co.uk").getApexName().toString());
+    Assertions.assertTrue(DnsName.create("example.com").isApexDomain());
+    Assertions.assertFalse(DnsName.create("www.example.com").isApexDomain());
+  }
+
+  @Test
+  void fastPathParsing() throws DnsCastException {
+    // the fast path gives the same name as the full parser
+    for (String name : new String[]{"example.com", "example.com.", "a.b.c.d.e.f.g.h.i.j.k.example.com", "_dmarc.Example.COM", "x"}) {
+      DnsNameXbill expected = DnsNameXbill.fromString(name.endsWith(".") ? name : name + ".");
+      DnsNameXbill actual = DnsNameXbill.fromAbsoluteString(name);
+      Assertions.assertEquals(expected, actual);
+      Assertions.assertEquals(expected.toString(), actual.toString());
+      Assertions.assertEquals(expected.labels(), actual.labels());
+      Assertions.assertEquals(expected.getLabelString(expected.labels() - 2), actual.getLabelString(actual.labels() - 2));
+    }
+    // escaped name go through the full parser
+    Assertions.assertEquals("a\\.b.example.com", DnsName.create("a\\.b.example.com").toString());
+    // invalid names
+    Assertions.assertThrows(DnsCastException.class, () -> DnsName.create("foo..com"));
+    Assertions.assertThrows(DnsCastException.class, () -> DnsName.create("a".repeat(64) + ".com"));
+    Assertions.assertThrows(DnsCastException.class, () -> DnsName.create("a.".repeat(127) + "com"));
+  }
+
+  @Test
+  void interning() throws DnsCastException {
+    DnsNameInterner interner = new DnsNameInterner(16);
+    DnsNameXbill first = interner.intern("example.com");
+    Assertions.assertSame(first, interner.intern("example.com"));
+    Assertions.assertEquals(1, interner.getHitCount());
+    Assertions.assertEquals(1, interner.getMissCount());
+    Assertions.assertEquals(0.5, interner.getHitRate());
+    Assertions.assertThrows(DnsCastException.class, () -> interner.intern("foo..com"));
+
+    // a dns name is not shared (it's mutable)
+    DnsName dnsName = DnsName.create("example.com");
+    dnsName.addExpectedDkim("selector", "value");
+    Assertions.assertNotSame(dnsName, DnsName.create("example.com"));
+    Assertions.assertTrue(DnsName.create("example.com").getExpectedDkimSelector().isEmpty());
+    Assertions.assertEquals(dnsName, DnsName.create("example.com"));
+  }
+
+}
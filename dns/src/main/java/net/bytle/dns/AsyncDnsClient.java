@@ -0,0 +1,67 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsName;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An async Dns Client interface
+ * * lookup methods return the first record
+ * * resolve methods return a list of record
+ * <p>
+ * This is the mirror of {@link DnsClient}, no thread is parked while waiting for the answer.
+ * <p>
+ * The stage completes exceptionally with:
+ * * a {@link DnsNotFoundException} if the name or the record was not found
+ * * a {@link DnsException} for any other error
+ */
+public interface AsyncDnsClient {
+
+
+  /**
+   * @param dnsName - the DNS name
+   * @return all Txt
+   */
+  CompletionStage<List<String>> resolveTxt(DnsName dnsName);
+
+  /**
+   * @param dnsName - the DNS Name
+   * @return the mx records
+   */
+  CompletionStage<List<DnsMxRecord>> resolveMx(DnsName dnsName);
+
+  /**
+   * @param dnsName - the DNS name
+   * @return the first A record
+   * See {@link DnsClient#lookupA(DnsName)}
+   */
+  CompletionStage<DnsIp> lookupA(DnsName dnsName);
+
+  /**
+   * @param dnsName - the DNS name
+   * @return the first AAAA record
+   */
+  CompletionStage<DnsIp> lookupAAAA(DnsName dnsName);
+
+  CompletionStage<String> lookupTxt(DnsName dnsName);
+
+  /**
+   * Due to load balancer, we may get more than one
+   */
+  CompletionStage<Set<DnsIp>> resolveAAAA(DnsName dnsName);
+
+  CompletionStage<Set<DnsIp>> resolveA(DnsName dnsName);
+
+  CompletionStage<Set<DnsName>> resolveCName(DnsName dnsName);
+
+  CompletionStage<DnsName> lookupPtr(DnsIp dnsIp);
+
+  CompletionStage<String> lookupDkimRecord(DnsName dnsName, String dkimSelector);
+
+  CompletionStage<String> lookupSpf(DnsName dnsName);
+
+  CompletionStage<String> lookupDmarc(DnsName dnsName);
+
+}
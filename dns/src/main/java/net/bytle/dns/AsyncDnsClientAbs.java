@@ -0,0 +1,122 @@
+package net.bytle.dns;
+
+import net.bytle.exception.CastException;
+import net.bytle.type.DnsName;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The lookup methods derived from the resolve methods
+ */
+public abstract class AsyncDnsClientAbs implements AsyncDnsClient {
+
+
+  @Override
+  public CompletionStage<DnsIp> lookupA(DnsName dnsName) {
+    return this.resolveA(dnsName)
+      .thenCompose(dnsIps -> first(dnsIps, "There is no A record for the name (" + dnsName + ")"));
+  }
+
+  @Override
+  public CompletionStage<DnsIp> lookupAAAA(DnsName dnsName) {
+    return this.resolveAAAA(dnsName)
+      .thenCompose(dnsIps -> first(dnsIps, "There is no AAAA record for the name (" + dnsName + ")"));
+  }
+
+  @Override
+  public CompletionStage<String> lookupTxt(DnsName dnsName) {
+    return this.resolveTxt(dnsName)
+      .thenCompose(txtRecords -> first(txtRecords, "There is no TXT record for the name (" + dnsName + ")"));
+  }
+
+  @Override
+  public CompletionStage<String> lookupDkimRecord(DnsName dnsName, String dkimSelector) {
+    DnsName dkimSelectorName;
+    try {
+      dkimSelectorName = DnsName.create(dkimSelector + "._domainkey." + dnsName.toString());
+    } catch (CastException e) {
+      return CompletableFuture.failedFuture(new DnsException("The dkim selector (" + dkimSelector + ") is not a valid name label", e));
+    }
+    return getTextRecordThatStartsWith(dkimSelectorName, "v=DKIM1");
+  }
+
+  @Override
+  public CompletionStage<String> lookupSpf(DnsName dnsName) {
+    return getTextRecordThatStartsWith(dnsName, "v=spf1");
+  }
+
+  @Override
+  public CompletionStage<String> lookupDmarc(DnsName dnsName) {
+    DnsName dmarcName;
+    try {
+      dmarcName = dnsName.getSubdomain("_dmarc");
+    } catch (CastException e) {
+      return CompletableFuture.failedFuture(new DnsInternalException("_dmarc is a valid name", e));
+    }
+    return getTextRecordThatStartsWith(dmarcName, "v=DMARC1");
+  }
+
+  /**
+   * @param startsWith - the prefix
+   */
+  CompletionStage<String> getTextRecordThatStartsWith(DnsName dnsName, String startsWith) {
+    return this.resolveTxt(dnsName)
+      .thenCompose(txtRecords -> {
+        for (String txtRecord : txtRecords) {
+          if (txtRecord.startsWith(startsWith)) {
+            return CompletableFuture.completedFuture(txtRecord);
+          }
+        }
+        return CompletableFuture.failedFuture(new DnsNotFoundException("The (" + startsWith + ") text record for the name (" + dnsName + ") was not found"));
+      });
+  }
+
+  private static <T> CompletionStage<T> first(Iterable<T> records, String notFoundMessage) {
+    for (T record : records) {
+      return CompletableFuture.completedFuture(record);
+    }
+    return CompletableFuture.failedFuture(new DnsNotFoundException(notFoundMessage));
+  }
+
+  /**
+   * @param throwable - the throwable of a completion stage
+   * @return the throwable without the {@link CompletionException} wrapper
+   */
+  public static Throwable unwrap(Throwable throwable) {
+    Throwable actual = throwable;
+    while (actual instanceof CompletionException && actual.getCause() != null) {
+      actual = actual.getCause();
+    }
+    return actual;
+  }
+
+  /**
+   * Utility to wait for the result of a stage in a sync client
+   *
+   * @param stage - the async result
+   * @return the value
+   * @throws DnsNotFoundException if the stage failed with a not found
+   * @throws DnsException         for any other error
+   */
+  public static <T> T getSync(CompletionStage<T> stage) throws DnsException, DnsNotFoundException {
+    try {
+      return stage.toCompletableFuture().join();
+    } catch (CompletionException e) {
+      Throwable cause = unwrap(e);
+      if (cause instanceof DnsNotFoundException) {
+        throw (DnsNotFoundException) cause;
+      }
+      if (cause instanceof DnsException) {
+        throw (DnsException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new DnsException(cause.getMessage(), cause);
+    }
+  }
+
+}
@@ -0,0 +1,160 @@
+package net.bytle.dns;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+
+/**
+ * An {@link DnsAsyncLimiter} whose limit adapts to the server (AIMD)
+ * <p>
+ * * Slow start: until the first overload, the limit grows by one by success (ie doubles by round trip)
+ * * Additive increase: then, the limit grows by one when a full limit of operations has succeeded
+ * * Multiplicative decrease: an overload (timeout, refused query, throttling answer) halves the limit
+ * <p>
+ * The limit grows only when it is reached (an idle limiter keeps its limit)
+ * and decreases once by round trip: the overloads of the operations started before the last decrease
+ * are the consequence of the old limit and are not counted twice.
+ * <p>
+ * The operations waiting for a slot are bounded, when the queue is full, an operation fails immediately
+ * with a {@link DnsException} (see {@link DnsAdaptiveLimiters.DnsAdaptiveLimitersBuilder#setMaxPending(int)}).
+ * <p>
+ * The limiters are created by a {@link DnsAdaptiveLimiters} registry (one by resolver or by block list zone).
+ */
+public class DnsAdaptiveLimiter {
+
+  private final String name;
+  private final DnsAsyncLimiter limiter;
+  private final int minLimit;
+  private final int maxLimit;
+  private final LongAdder overloadCount = new LongAdder();
+  private final LongAdder decreaseCount = new LongAdder();
+  /**
+   * Incremented at each decrease
+   */
+  private int epoch = 0;
+  private boolean slowStart = true;
+  private int successes = 0;
+
+  DnsAdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, int maxPending) {
+    this.name = name;
+    this.limiter = new DnsAsyncLimiter(initialLimit, maxPending);
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+  }
+
+  /**
+   * @param operation  - the operation to start when a slot is free
+   * @param isOverload - the classifier of the outcome (value, throwable), true if the server is overloaded
+   * @return the result of the operation
+   */
+  public <T> CompletionStage<T> submit(Supplier<? extends CompletionStage<T>> operation, BiPredicate<? super T, Throwable> isOverload) {
+    return submit(operation, (value, throwable) -> true, isOverload);
+  }
+
+  /**
+   * @param operation  - the operation to start when a slot is free
+   * @param isSent     - the classifier of the outcome (value, throwable), false if the operation has not hit the server
+   *                   (ie short circuit), the outcome is then not recorded
+   * @param isOverload - the classifier of the outcome (value, throwable), true if the server is overloaded
+   * @return the result of the operation
+   */
+  public <T> CompletionStage<T> submit(Supplier<? extends CompletionStage<T>> operation, BiPredicate<? super T, Throwable> isSent, BiPredicate<? super T, Throwable> isOverload) {
+    return this.limiter.submit(() -> {
+      int startEpoch = getEpoch();
+      CompletionStage<T> stage;
+      try {
+        stage = operation.get();
+      } catch (RuntimeException e) {
+        stage = CompletableFuture.failedFuture(e);
+      }
+      // recorded before the release of the slot so that the new limit applies to the next operation
+      return stage.whenComplete((value, throwable) -> {
+        if (isSent.test(value, throwable)) {
+          record(startEpoch, isOverload.test(value, throwable));
+        }
+      });
+    });
+  }
+
+  private synchronized int getEpoch() {
+    return epoch;
+  }
+
+  private synchronized void record(int startEpoch, boolean overload) {
+    int limit = this.limiter.getLimit();
+    int newLimit;
+    if (overload) {
+      overloadCount.increment();
+      if (startEpoch != epoch) {
+        return;
+      }
+      epoch++;
+      slowStart = false;
+      successes = 0;
+      newLimit = Math.max(minLimit, limit / 2);
+      decreaseCount.increment();
+    } else {
+      // the running operation is still counted, the limit is reached if there is no free slot
+      if (this.limiter.getInFlight() < limit || limit >= maxLimit) {
+        return;
+      }
+      if (!slowStart && ++successes < limit) {
+        return;
+      }
+      successes = 0;
+      newLimit = limit + 1;
+    }
+    if (newLimit != limit) {
+      // the release of the slot that follows starts the pending operations
+      this.limiter.updateLimit(newLimit);
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the current limit
+   */
+  public int getLimit() {
+    return this.limiter.getLimit();
+  }
+
+  public int getInFlight() {
+    return this.limiter.getInFlight();
+  }
+
+  public int getPending() {
+    return this.limiter.getPending();
+  }
+
+  /**
+   * @return the number of operations that have failed because the queue was full
+   */
+  public long getRejectedCount() {
+    return this.limiter.getRejectedCount();
+  }
+
+  /**
+   * @return the number of operations that have seen an overloaded server
+   */
+  public long getOverloadCount() {
+    return overloadCount.sum();
+  }
+
+  /**
+   * @return the number of times the limit was decreased
+   */
+  public long getDecreaseCount() {
+    return decreaseCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    return name + " (limit: " + getLimit() + ", in flight: " + getInFlight() + ", pending: " + getPending() + ")";
+  }
+
+}
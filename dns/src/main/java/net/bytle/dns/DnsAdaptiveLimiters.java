@@ -0,0 +1,180 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.SimpleResolver;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The adaptive limiters of the servers that throttle the bursts (resolvers, block list zones)
+ * <p>
+ * * The clients limit the queries by resolver (see {@link XBillDnsClient.DnsClientBuilder#setAdaptiveLimiters(DnsAdaptiveLimiters)})
+ * * The block list checkers limit the queries by zone (see {@link DnsBlockListChecker.DnsBlockListCheckerBuilder#setAdaptiveLimiters(DnsAdaptiveLimiters)})
+ * <p>
+ * A server throttles by source ip, the clients and checkers use therefore by default the {@link #getShared() shared} registry.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * for (DnsAdaptiveLimiter limiter : DnsAdaptiveLimiters.getShared().getLimiters()) {
+ *   System.out.println(limiter);
+ * }
+ * }</pre>
+ */
+public class DnsAdaptiveLimiters {
+
+  private static final DnsAdaptiveLimiters SHARED = builder().build();
+
+  private final ConcurrentHashMap<String, DnsAdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+  /**
+   * The limiters of the resolvers that are not a {@link SimpleResolver} (no server address),
+   * by instance and weak so that the limiter of a resolver that is no more used is evicted
+   */
+  private final Map<Resolver, DnsAdaptiveLimiter> instanceLimiters = new WeakHashMap<>();
+  private final int initialLimit;
+  private final int minLimit;
+  private final int maxLimit;
+  private final int maxPending;
+
+  private DnsAdaptiveLimiters(DnsAdaptiveLimitersBuilder builder) {
+    this.initialLimit = builder.initialLimit;
+    this.minLimit = builder.minLimit;
+    this.maxLimit = builder.maxLimit;
+    this.maxPending = builder.maxPending;
+  }
+
+  public static DnsAdaptiveLimitersBuilder builder() {
+    return new DnsAdaptiveLimitersBuilder();
+  }
+
+  /**
+   * @return the registry shared by default by all clients and checkers
+   */
+  public static DnsAdaptiveLimiters getShared() {
+    return SHARED;
+  }
+
+  /**
+   * @param name - the name of the server (a resolver address, a block list zone)
+   * @return the limiter of the server (created if it does not exist)
+   */
+  public DnsAdaptiveLimiter getOrCreate(String name) {
+    return limiters.computeIfAbsent(name, n -> new DnsAdaptiveLimiter(n, initialLimit, minLimit, maxLimit, maxPending));
+  }
+
+  /**
+   * @param resolver - the resolver
+   * @return the limiter of the resolver (created if it does not exist): by server address for a {@link SimpleResolver},
+   * by instance otherwise
+   */
+  public DnsAdaptiveLimiter getOrCreate(Resolver resolver) {
+    if (resolver instanceof SimpleResolver) {
+      return getOrCreate(DnsResolver.getName(resolver));
+    }
+    synchronized (instanceLimiters) {
+      return instanceLimiters.computeIfAbsent(resolver, r -> new DnsAdaptiveLimiter(DnsResolver.getName(r), initialLimit, minLimit, maxLimit, maxPending));
+    }
+  }
+
+  /**
+   * @return the limiter or null if the server has not been queried
+   */
+  public DnsAdaptiveLimiter get(String name) {
+    return limiters.get(name);
+  }
+
+  /**
+   * @return the limiter of the resolver (see {@link DnsResolver#getName(Resolver)})
+   */
+  public DnsAdaptiveLimiter get(Resolver resolver) {
+    if (resolver instanceof SimpleResolver) {
+      return limiters.get(DnsResolver.getName(resolver));
+    }
+    synchronized (instanceLimiters) {
+      return instanceLimiters.get(resolver);
+    }
+  }
+
+  /**
+   * @return the limiter of the block list zone
+   */
+  public DnsAdaptiveLimiter get(DnsBlockList blockList) {
+    return limiters.get(blockList.getZone());
+  }
+
+  /**
+   * @return a copy of the limiters
+   */
+  public Collection<DnsAdaptiveLimiter> getLimiters() {
+    List<DnsAdaptiveLimiter> all = new ArrayList<>(limiters.values());
+    synchronized (instanceLimiters) {
+      all.addAll(instanceLimiters.values());
+    }
+    return Collections.unmodifiableList(all);
+  }
+
+  public static class DnsAdaptiveLimitersBuilder {
+
+    private int initialLimit = 32;
+    private int minLimit = 1;
+    private int maxLimit = 1024;
+    private int maxPending = 10_000;
+
+    /**
+     * @param initialLimit - the limit of a new limiter (the slow start begins at this limit)
+     */
+    public DnsAdaptiveLimitersBuilder setInitialLimit(int initialLimit) {
+      if (initialLimit <= 0) {
+        throw new IllegalArgumentException("The initial limit should be greater than zero");
+      }
+      this.initialLimit = initialLimit;
+      return this;
+    }
+
+    /**
+     * @param minLimit - the limit is never decreased below this value
+     */
+    public DnsAdaptiveLimitersBuilder setMinLimit(int minLimit) {
+      if (minLimit <= 0) {
+        throw new IllegalArgumentException("The min limit should be greater than zero");
+      }
+      this.minLimit = minLimit;
+      return this;
+    }
+
+    /**
+     * @param maxLimit - the limit is never increased above this value
+     */
+    public DnsAdaptiveLimitersBuilder setMaxLimit(int maxLimit) {
+      if (maxLimit <= 0) {
+        throw new IllegalArgumentException("The max limit should be greater than zero");
+      }
+      this.maxLimit = maxLimit;
+      return this;
+    }
+
+    /**
+     * @param maxPending - the maximum number of operations waiting for a slot by server,
+     *                   when the queue is full, an operation fails immediately
+     */
+    public DnsAdaptiveLimitersBuilder setMaxPending(int maxPending) {
+      if (maxPending < 0) {
+        throw new IllegalArgumentException("The max pending should not be negative");
+      }
+      this.maxPending = maxPending;
+      return this;
+    }
+
+    public DnsAdaptiveLimiters build() {
+      if (minLimit > maxLimit) {
+        throw new IllegalArgumentException("The min limit (" + minLimit + ") should not be greater than the max limit (" + maxLimit + ")");
+      }
+      if (initialLimit < minLimit || initialLimit > maxLimit) {
+        throw new IllegalArgumentException("The initial limit (" + initialLimit + ") should be between the min limit (" + minLimit + ") and the max limit (" + maxLimit + ")");
+      }
+      return new DnsAdaptiveLimiters(this);
+    }
+
+  }
+
+}
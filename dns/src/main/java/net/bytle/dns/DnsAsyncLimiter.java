@@ -0,0 +1,159 @@
+package net.bytle.dns;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bound the number of async operations in flight
+ * without parking any thread.
+ * <p>
+ * When the limit is reached, the operations are queued
+ * and started when a running operation completes.
+ * When the queue is full, an operation fails immediately with a {@link DnsException}.
+ */
+public class DnsAsyncLimiter {
+
+  private final Queue<Runnable> pending = new ArrayDeque<>();
+  private final ThreadLocal<Boolean> draining = ThreadLocal.withInitial(() -> false);
+  private final int maxPending;
+  private final LongAdder rejectedCount = new LongAdder();
+  private int limit;
+  private int inFlight = 0;
+
+  /**
+   * @param limit - the maximum number of operations in flight (the queue is not bounded)
+   */
+  public DnsAsyncLimiter(int limit) {
+    this(limit, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @param limit      - the maximum number of operations in flight
+   * @param maxPending - the maximum number of operations waiting for a slot
+   */
+  public DnsAsyncLimiter(int limit, int maxPending) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("The limit should be greater than zero");
+    }
+    if (maxPending < 0) {
+      throw new IllegalArgumentException("The max pending should not be negative");
+    }
+    this.limit = limit;
+    this.maxPending = maxPending;
+  }
+
+  /**
+   * @param operation - the operation to start when a slot is free
+   * @return the result of the operation, failed with a {@link DnsException} if the queue is full
+   */
+  public <T> CompletionStage<T> submit(Supplier<? extends CompletionStage<T>> operation) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Runnable start = () -> {
+      CompletionStage<T> stage;
+      try {
+        stage = operation.get();
+      } catch (RuntimeException e) {
+        stage = CompletableFuture.failedFuture(e);
+      }
+      stage.whenComplete((value, throwable) -> {
+        // completed before the release so that the dependent actions run before the next operation starts
+        if (throwable != null) {
+          result.completeExceptionally(throwable);
+        } else {
+          result.complete(value);
+        }
+        release();
+      });
+    };
+    synchronized (this) {
+      if (inFlight >= limit && pending.size() >= maxPending) {
+        rejectedCount.increment();
+        return CompletableFuture.failedFuture(new DnsException("The limiter is saturated (limit: " + limit + ", pending: " + pending.size() + ")"));
+      }
+      pending.add(start);
+    }
+    drain();
+    return result;
+  }
+
+  private void release() {
+    synchronized (this) {
+      inFlight--;
+    }
+    drain();
+  }
+
+  /**
+   * Start the pending operations while there is a free slot.
+   * <p>
+   * An operation that completes synchronously releases its slot while we are still in the loop,
+   * the nested call returns and the loop picks the next one (no recursion, no stack overflow)
+   */
+  private void drain() {
+    if (draining.get()) {
+      return;
+    }
+    draining.set(true);
+    try {
+      while (true) {
+        Runnable next;
+        synchronized (this) {
+          if (inFlight >= limit) {
+            return;
+          }
+          next = pending.poll();
+          if (next == null) {
+            return;
+          }
+          inFlight++;
+        }
+        next.run();
+      }
+    } finally {
+      draining.set(false);
+    }
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  public synchronized int getPending() {
+    return pending.size();
+  }
+
+  public synchronized int getLimit() {
+    return limit;
+  }
+
+  /**
+   * @return the number of operations that have failed because the queue was full
+   */
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  /**
+   * @param limit - the new limit, if lower, applied when the running operations complete
+   */
+  public void setLimit(int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("The limit should be greater than zero");
+    }
+    updateLimit(limit);
+    drain();
+  }
+
+  /**
+   * Set the limit without starting the pending operations
+   * (they are started when the next running operation completes)
+   */
+  synchronized void updateLimit(int limit) {
+    this.limit = limit;
+  }
+
+}
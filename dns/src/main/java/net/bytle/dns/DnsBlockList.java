@@ -1,6 +1,9 @@
 package net.bytle.dns;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static net.bytle.dns.DnsBlockListResponseCode.*;
 
@@ -133,4 +136,14 @@ public enum DnsBlockList {
   public DnsBlockListType getType() {
     return this.blockListQueryType;
   }
+
+  /**
+   * @param type - the type of query
+   * @return all block lists of this type
+   */
+  public static List<DnsBlockList> getBlockLists(DnsBlockListType type) {
+    return Arrays.stream(values())
+      .filter(b -> b.getType() == type)
+      .collect(Collectors.toList());
+  }
 }
@@ -0,0 +1,375 @@
+package net.bytle.dns;
+
+import net.bytle.exception.IllegalStructure;
+import net.bytle.type.DnsName;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Check an ip or a domain against multiple block list zones concurrently.
+ * <p>
+ * All zones are queried at once (bounded by the max in flight)
+ * and the verdict is returned:
+ * * {@link Mode#SHORT_CIRCUIT}: as soon as a blocking answer is found
+ * * {@link Mode#FULL_REPORT}: when all zones have answered
+ * <p>
+ * A zone that does not answer in time or fails is reported as an error in the verdict,
+ * it does not fail the check. The query of a zone that has timed out keeps its slot
+ * (max in flight and zone limiter) until the resolver answers or gives up.
+ * <p>
+ * Only the configured zones of the query type are queried: a checker configured with ip zones only
+ * returns an empty verdict for a domain.
+ * <p>
+ * An ip zone with a local mirror (see {@link DnsBlockListCheckerBuilder#setMirrors(DnsBlockListMirrors)})
+ * is answered without any DNS query.
+ * <p>
+ * The queries in flight of a zone are bounded by an adaptive limiter
+ * (see {@link DnsBlockListCheckerBuilder#setAdaptiveLimiters(DnsAdaptiveLimiters)}):
+ * a timeout, an error or a throttling answer (ie {@link DnsBlockListResponseCode#R_127_255_255_255 excessive number of queries})
+ * decreases the limit of the zone.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * DnsBlockListChecker checker = DnsBlockListChecker.builder(XBillAsyncDnsClient.createDefault())
+ *   .setMaxInFlight(20)
+ *   .build();
+ * DnsBlockListVerdict verdict = checker.checkIp("127.0.0.2").toCompletableFuture().join();
+ * }</pre>
+ */
+public class DnsBlockListChecker {
+
+  public enum Mode {
+    /**
+     * The verdict is returned as soon as a blocking answer is found
+     */
+    SHORT_CIRCUIT,
+    /**
+     * The verdict is returned when all zones have answered
+     */
+    FULL_REPORT
+  }
+
+  private final AsyncDnsClient dnsClient;
+  private final DnsAsyncLimiter limiter;
+  private final Duration zoneTimeout;
+  private final Mode mode;
+  private final boolean queryReason;
+  private final List<DnsBlockList> blockLists;
+  private final DnsBlockListMirrors mirrors;
+  private final DnsAdaptiveLimiters adaptiveLimiters;
+
+  private DnsBlockListChecker(DnsBlockListCheckerBuilder builder) {
+    this.dnsClient = builder.dnsClient;
+    this.limiter = new DnsAsyncLimiter(builder.maxInFlight);
+    this.zoneTimeout = builder.zoneTimeout;
+    this.mode = builder.mode;
+    this.queryReason = builder.queryReason;
+    this.blockLists = builder.blockLists;
+    this.mirrors = builder.mirrors;
+    this.adaptiveLimiters = builder.adaptiveLimiters;
+  }
+
+  /**
+   * @param dnsClient - the client that performs the queries
+   */
+  public static DnsBlockListCheckerBuilder builder(AsyncDnsClient dnsClient) {
+    return new DnsBlockListCheckerBuilder(dnsClient);
+  }
+
+  /**
+   * @param ipv4Address - the ip to check
+   * @throws IllegalStructure if this is not an ipv4
+   */
+  public CompletionStage<DnsBlockListVerdict> checkIp(String ipv4Address) throws IllegalStructure {
+    return check(ipv4Address, DnsBlockListQueryHelper.forIp(ipv4Address), DnsBlockListType.IP);
+  }
+
+  public CompletionStage<DnsBlockListVerdict> checkDomain(DnsName domain) {
+    return check(domain.toStringWithoutRoot(), DnsBlockListQueryHelper.forDomain(domain), DnsBlockListType.DOMAIN);
+  }
+
+  /**
+   * Batch mode: all ips share the max in flight
+   *
+   * @param ipv4Addresses - the ips to check
+   * @return the verdict by ip (in the order of the input)
+   * @throws IllegalStructure if one ip is not an ipv4 (no query is sent)
+   */
+  public CompletionStage<Map<String, DnsBlockListVerdict>> checkIps(Collection<String> ipv4Addresses) throws IllegalStructure {
+    Map<String, DnsBlockListQueryHelper.BuilderConf> builderConfs = new LinkedHashMap<>();
+    for (String ipv4Address : ipv4Addresses) {
+      builderConfs.put(ipv4Address, DnsBlockListQueryHelper.forIp(ipv4Address));
+    }
+    return checkAll(builderConfs, DnsBlockListType.IP);
+  }
+
+  /**
+   * Batch mode: all domains share the max in flight
+   *
+   * @param domains - the domains to check
+   * @return the verdict by domain (in the order of the input)
+   */
+  public CompletionStage<Map<String, DnsBlockListVerdict>> checkDomains(Collection<DnsName> domains) {
+    Map<String, DnsBlockListQueryHelper.BuilderConf> builderConfs = new LinkedHashMap<>();
+    for (DnsName domain : domains) {
+      builderConfs.put(domain.toStringWithoutRoot(), DnsBlockListQueryHelper.forDomain(domain));
+    }
+    return checkAll(builderConfs, DnsBlockListType.DOMAIN);
+  }
+
+  private CompletionStage<Map<String, DnsBlockListVerdict>> checkAll(Map<String, DnsBlockListQueryHelper.BuilderConf> builderConfs, DnsBlockListType type) {
+    Map<String, CompletableFuture<DnsBlockListVerdict>> verdictFutures = new LinkedHashMap<>();
+    for (Map.Entry<String, DnsBlockListQueryHelper.BuilderConf> entry : builderConfs.entrySet()) {
+      verdictFutures.put(entry.getKey(), check(entry.getKey(), entry.getValue(), type).toCompletableFuture());
+    }
+    return CompletableFuture
+      .allOf(verdictFutures.values().toArray(new CompletableFuture<?>[0]))
+      .thenApply(v -> {
+        Map<String, DnsBlockListVerdict> verdicts = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<DnsBlockListVerdict>> entry : verdictFutures.entrySet()) {
+          verdicts.put(entry.getKey(), entry.getValue().join());
+        }
+        return verdicts;
+      });
+  }
+
+  private CompletionStage<DnsBlockListVerdict> check(String queryTerm, DnsBlockListQueryHelper.BuilderConf builderConf, DnsBlockListType type) {
+
+    builderConf.setMirrors(this.mirrors);
+    List<DnsBlockList> zones = this.blockLists.isEmpty() ? DnsBlockList.getBlockLists(type) : this.blockLists;
+    for (DnsBlockList zone : zones) {
+      if (zone.getType() == type) {
+        builderConf.addBlockList(zone);
+      }
+    }
+    if (!builderConf.hasBlockList()) {
+      // no configured zone of this type, we don't fall back to the default zone of the helper
+      return CompletableFuture.completedFuture(new DnsBlockListVerdict(queryTerm, List.of(), 0));
+    }
+    List<DnsBlockListQueryHelper> queryHelpers = builderConf.build();
+
+    int zoneCount = queryHelpers.size();
+    CompletableFuture<DnsBlockListVerdict> verdict = new CompletableFuture<>();
+    List<DnsBlockListResult> results = new ArrayList<>();
+    AtomicInteger remaining = new AtomicInteger(zoneCount);
+    for (DnsBlockListQueryHelper queryHelper : queryHelpers) {
+      CompletableFuture<DnsBlockListResult> zoneResult = new CompletableFuture<>();
+      Supplier<CompletionStage<DnsBlockListResult>> query = () -> this.limiter
+        .submit(() -> {
+          if (verdict.isDone()) {
+            // short circuit: the verdict is known, we don't query
+            return CompletableFuture.completedFuture(null);
+          }
+          // the timeout applies to the verdict only,
+          // the slots are kept until the lookup completes (the query is still in flight on the resolver)
+          zoneResult.orTimeout(this.zoneTimeout.toMillis(), TimeUnit.MILLISECONDS);
+          return queryZone(queryHelper);
+        });
+      CompletionStage<DnsBlockListResult> resultStage;
+      if (this.adaptiveLimiters == null || queryHelper.hasMirror()) {
+        resultStage = query.get();
+      } else {
+        // the zone limiter is taken first so that a throttled zone does not hold the slots of the other zones
+        resultStage = this.adaptiveLimiters
+          .getOrCreate(queryHelper.getBlockList().getZone())
+          // a short circuit (null result) has not queried the zone, it is not recorded
+          .submit(query, (result, throwable) -> result != null, (result, throwable) -> isOverload(result));
+      }
+      resultStage.whenComplete((result, throwable) -> {
+        if (throwable != null) {
+          zoneResult.completeExceptionally(throwable);
+        } else {
+          zoneResult.complete(result);
+        }
+      });
+      zoneResult
+        .whenComplete((result, throwable) -> {
+          if (throwable != null) {
+            Throwable cause = AsyncDnsClientAbs.unwrap(throwable);
+            if (cause instanceof TimeoutException) {
+              result = DnsBlockListResult.createFromError(queryHelper, new DnsException("The zone (" + queryHelper.getBlockList() + ") has not answered in " + this.zoneTimeout, cause));
+            } else {
+              // the limiter is saturated
+              result = DnsBlockListResult.createFromError(queryHelper, cause instanceof Exception ? (Exception) cause : new DnsException(cause.getMessage(), cause));
+            }
+          }
+          DnsBlockListVerdict finalVerdict = null;
+          synchronized (results) {
+            if (result != null) {
+              results.add(result);
+              if (this.mode == Mode.SHORT_CIRCUIT && result.isBlocked()) {
+                finalVerdict = new DnsBlockListVerdict(queryTerm, List.copyOf(results), zoneCount);
+              }
+            }
+            if (remaining.decrementAndGet() == 0 && finalVerdict == null) {
+              finalVerdict = new DnsBlockListVerdict(queryTerm, List.copyOf(results), zoneCount);
+            }
+          }
+          if (finalVerdict != null) {
+            verdict.complete(finalVerdict);
+          }
+        });
+    }
+    return verdict;
+
+  }
+
+  /**
+   * Query one zone (A record and the TXT reason if blocked)
+   * The stage never fails, an error is returned as a result
+   */
+  private CompletionStage<DnsBlockListResult> queryZone(DnsBlockListQueryHelper queryHelper) {
+    if (queryHelper.hasMirror()) {
+      DnsBlockListResponseCode responseCode = queryHelper.getMirrorResponseCode();
+      String reason = this.queryReason && DnsBlockListResult.isBlocked(responseCode) ? queryHelper.getMirrorReason() : null;
+      return CompletableFuture.completedFuture(DnsBlockListResult.createFromResponse(queryHelper, responseCode, reason));
+    }
+    DnsName dnsNameToQuery = queryHelper.getDnsNameToQuery();
+    return this.dnsClient
+      .resolveA(dnsNameToQuery)
+      .thenCompose(dnsIps -> {
+        DnsBlockListResponseCode responseCode = toResponseCode(queryHelper, dnsIps);
+        if (!this.queryReason || !DnsBlockListResult.isBlocked(responseCode)) {
+          return CompletableFuture.completedFuture(DnsBlockListResult.createFromResponse(queryHelper, responseCode, null));
+        }
+        return this.dnsClient
+          .lookupTxt(dnsNameToQuery)
+          .handle((reason, throwable) -> DnsBlockListResult.createFromResponse(queryHelper, responseCode, throwable == null ? reason : null));
+      })
+      .handle((result, throwable) -> {
+        if (throwable == null) {
+          return result;
+        }
+        Throwable cause = AsyncDnsClientAbs.unwrap(throwable);
+        if (cause instanceof DnsNotFoundException) {
+          // no answer means not on the list
+          return DnsBlockListResult.createFromResponse(queryHelper, DnsBlockListResponseCode.R_INTERNAL_HOST_NOT_BLOCKED, null);
+        }
+        if (cause instanceof Exception) {
+          return DnsBlockListResult.createFromError(queryHelper, (Exception) cause);
+        }
+        return DnsBlockListResult.createFromError(queryHelper, new DnsException(cause.getMessage(), cause));
+      });
+  }
+
+  /**
+   * @return true if the zone has not answered or has answered with a throttling code
+   */
+  private static boolean isOverload(DnsBlockListResult result) {
+    if (result.isError()) {
+      return true;
+    }
+    DnsBlockListResponseCode responseCode = result.getResponseCode();
+    return responseCode == DnsBlockListResponseCode.R_127_255_255_255
+      || responseCode == DnsBlockListResponseCode.R_INTERNAL_RESPONSE_NOT_IN_LIST;
+  }
+
+  /**
+   * @return the first blocking response code, or the last one if none is blocking
+   */
+  private static DnsBlockListResponseCode toResponseCode(DnsBlockListQueryHelper queryHelper, Set<DnsIp> dnsIps) {
+    DnsBlockListResponseCode responseCode = DnsBlockListResponseCode.R_INTERNAL_HOST_NOT_BLOCKED;
+    for (DnsIp dnsIp : dnsIps) {
+      responseCode = queryHelper.createResponseCode(dnsIp);
+      if (DnsBlockListResult.isBlocked(responseCode)) {
+        return responseCode;
+      }
+    }
+    return responseCode;
+  }
+
+  public static class DnsBlockListCheckerBuilder {
+
+    private final AsyncDnsClient dnsClient;
+    private final List<DnsBlockList> blockLists = new ArrayList<>();
+    private int maxInFlight = 16;
+    private Duration zoneTimeout = Duration.ofSeconds(5);
+    private Mode mode = Mode.SHORT_CIRCUIT;
+    private boolean queryReason = false;
+    private DnsBlockListMirrors mirrors;
+    private DnsAdaptiveLimiters adaptiveLimiters = DnsAdaptiveLimiters.getShared();
+
+    public DnsBlockListCheckerBuilder(AsyncDnsClient dnsClient) {
+      this.dnsClient = dnsClient;
+    }
+
+    /**
+     * @param maxInFlight - the maximum number of queries in flight (shared by all checks of the checker)
+     */
+    public DnsBlockListCheckerBuilder setMaxInFlight(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * @param zoneTimeout - the time given to a zone to answer before the verdict reports it as an error
+     *                    (the query is not cancelled, the resolver timeout bounds it)
+     */
+    public DnsBlockListCheckerBuilder setZoneTimeout(Duration zoneTimeout) {
+      this.zoneTimeout = zoneTimeout;
+      return this;
+    }
+
+    public DnsBlockListCheckerBuilder setMode(Mode mode) {
+      this.mode = mode;
+      return this;
+    }
+
+    /**
+     * @param queryReason - if true, the TXT reason is queried for a blocking answer
+     */
+    public DnsBlockListCheckerBuilder setQueryReason(boolean queryReason) {
+      this.queryReason = queryReason;
+      return this;
+    }
+
+    /**
+     * By default, all block lists of the query type are queried.
+     * Once a block list is added, only the added block lists are queried.
+     */
+    public DnsBlockListCheckerBuilder addBlockList(DnsBlockList blockList) {
+      if (!this.blockLists.contains(blockList)) {
+        this.blockLists.add(blockList);
+      }
+      return this;
+    }
+
+    @SuppressWarnings("unused")
+    public DnsBlockListCheckerBuilder addAllBlockLists(Collection<DnsBlockList> blockLists) {
+      for (DnsBlockList blockList : blockLists) {
+        addBlockList(blockList);
+      }
+      return this;
+    }
+
+    /**
+     * @param mirrors - the local mirrors, the zones with a mirror are answered without DNS query
+     */
+    public DnsBlockListCheckerBuilder setMirrors(DnsBlockListMirrors mirrors) {
+      this.mirrors = mirrors;
+      return this;
+    }
+
+    /**
+     * @param adaptiveLimiters - the registry of the limiters of the queries in flight by zone
+     *                         (default to the {@link DnsAdaptiveLimiters#getShared() shared} registry, null to disable)
+     */
+    public DnsBlockListCheckerBuilder setAdaptiveLimiters(DnsAdaptiveLimiters adaptiveLimiters) {
+      this.adaptiveLimiters = adaptiveLimiters;
+      return this;
+    }
+
+    public DnsBlockListChecker build() {
+      return new DnsBlockListChecker(this);
+    }
+
+  }
+
+}
@@ -0,0 +1,438 @@
+package net.bytle.dns;
+
+import net.bytle.exception.IllegalStructure;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * A local in-memory copy of an IPv4 block list zone
+ * that answers without any DNS query.
+ * <p>
+ * The zone dump is in the <a href="https://rbldnsd.io/">rbldnsd</a> `ip4set` format (as distributed by rsync):
+ * <pre>
+ * # comment
+ * :127.0.0.2:Listed, see https://example.com/query/$
+ * 192.0.2.1
+ * 192.0.2.0/24 :127.0.0.3:Other reason
+ * 198.51.100.10-198.51.100.20
+ * 203.0.113
+ * !192.0.2.5
+ * </pre>
+ * * A line is an ip, a CIDR, a range or an incomplete ip (`203.0.113` is `203.0.113.0/24`)
+ * * `!` excludes the ips from the list
+ * * `:A:TXT` sets the answer and its reason (the default answer if on its own line), `$` in the reason is replaced by the ip
+ * * The most specific entry wins
+ * <p>
+ * The entries are flattened in sorted non-overlapping ranges (3 int arrays),
+ * a lookup is a binary search without allocation.
+ * <p>
+ * {@link #load(Reader)} builds a new snapshot and swaps it atomically,
+ * the lookups are never blocked by a reload.
+ */
+public class DnsBlockListMirror {
+
+  private static final int DEFAULT_ANSWER = 0x7F000002;
+
+  private final DnsBlockList blockList;
+  private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+  /**
+   * An immutable snapshot of the zone
+   */
+  private static class Snapshot {
+
+    private static final Snapshot EMPTY = new Snapshot(new int[0], new int[0], new int[0], new short[0], new String[0], null);
+
+    /**
+     * The start and end of the ranges (inclusive) with the sign bit flipped
+     * so that the signed order is the unsigned ip order
+     */
+    private final int[] starts;
+    private final int[] ends;
+    /**
+     * The answer ip (ie 127.0.0.2)
+     */
+    private final int[] answers;
+    /**
+     * The index of the reason in {@link #reasons}
+     */
+    private final short[] reasonIndexes;
+    private final String[] reasons;
+    private final Instant loadedAt;
+
+    private Snapshot(int[] starts, int[] ends, int[] answers, short[] reasonIndexes, String[] reasons, Instant loadedAt) {
+      this.starts = starts;
+      this.ends = ends;
+      this.answers = answers;
+      this.reasonIndexes = reasonIndexes;
+      this.reasons = reasons;
+      this.loadedAt = loadedAt;
+    }
+
+    /**
+     * @return the index of the range or -1
+     */
+    private int find(int ipv4) {
+      int key = ipv4 ^ Integer.MIN_VALUE;
+      int index = Arrays.binarySearch(starts, key);
+      if (index < 0) {
+        // the range before the insertion point
+        index = -index - 2;
+        if (index < 0 || ends[index] < key) {
+          return -1;
+        }
+      }
+      return index;
+    }
+
+  }
+
+  public DnsBlockListMirror(DnsBlockList blockList) {
+    if (blockList.getType() != DnsBlockListType.IP) {
+      throw new IllegalArgumentException("Only IP block lists can be mirrored, not the block list (" + blockList + ")");
+    }
+    this.blockList = blockList;
+  }
+
+  public DnsBlockList getBlockList() {
+    return blockList;
+  }
+
+  /**
+   * @param ip - the ip to check
+   * @return the answer of the zone (ie 127.0.0.2) or null if the ip is not listed
+   */
+  public DnsIp getAnswer(DnsIp ip) {
+    if (!ip.isIpv4()) {
+      return null;
+    }
+    Snapshot current = this.snapshot;
+    int index = current.find(ip.getIpv4Int());
+    if (index == -1) {
+      return null;
+    }
+    return DnsIp.createFromIpv4Int(current.answers[index]);
+  }
+
+  /**
+   * @param ip - the ip to check
+   * @return the reason (TXT) of the listing or null if the ip is not listed or has no reason
+   */
+  public String getReason(DnsIp ip) {
+    if (!ip.isIpv4()) {
+      return null;
+    }
+    Snapshot current = this.snapshot;
+    int index = current.find(ip.getIpv4Int());
+    if (index == -1) {
+      return null;
+    }
+    String reason = current.reasons[current.reasonIndexes[index]];
+    if (reason == null) {
+      return null;
+    }
+    return reason.replace("$", ip.toString());
+  }
+
+  /**
+   * @return true if the ip is listed
+   */
+  public boolean isListed(DnsIp ip) {
+    return ip.isIpv4() && this.snapshot.find(ip.getIpv4Int()) != -1;
+  }
+
+  /**
+   * @return the number of non-overlapping ranges
+   */
+  public int getRangeCount() {
+    return this.snapshot.starts.length;
+  }
+
+  /**
+   * @return true if a zone dump was loaded (a mirror that is not loaded does not answer, the zone is queried with DNS)
+   */
+  public boolean isLoaded() {
+    return this.snapshot.loadedAt != null;
+  }
+
+  /**
+   * @return the time of the last load, null if never loaded
+   */
+  public Instant getLoadedAt() {
+    return this.snapshot.loadedAt;
+  }
+
+  /**
+   * Load a zone dump file and replace the current data atomically
+   */
+  public DnsBlockListMirror load(Path path) throws IOException, IllegalStructure {
+    try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      return load(reader);
+    }
+  }
+
+  /**
+   * Load a zone dump and replace the current data atomically
+   *
+   * @throws IllegalStructure if a line is not valid (the current data is kept)
+   */
+  public DnsBlockListMirror load(Reader reader) throws IOException, IllegalStructure {
+
+    BufferedReader bufferedReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    List<Entry> entries = new ArrayList<>();
+    Map<String, Short> reasonIndexes = new HashMap<>();
+    List<String> reasons = new ArrayList<>();
+    reasons.add(null);
+    reasonIndexes.put(null, (short) 0);
+    int defaultAnswer = DEFAULT_ANSWER;
+    short defaultReason = 0;
+
+    String line;
+    int lineNumber = 0;
+    while ((line = bufferedReader.readLine()) != null) {
+      lineNumber++;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#") || line.startsWith(";") || line.startsWith("$")) {
+        continue;
+      }
+      try {
+        if (line.startsWith(":")) {
+          // default answer
+          defaultAnswer = parseAnswer(line, DEFAULT_ANSWER);
+          defaultReason = getReasonIndex(parseReason(line), reasonIndexes, reasons);
+          continue;
+        }
+        boolean excluded = line.startsWith("!");
+        if (excluded) {
+          line = line.substring(1).trim();
+        }
+        String ipSpec = line;
+        int answer = defaultAnswer;
+        short reason = defaultReason;
+        int space = indexOfWhitespace(line);
+        if (space != -1) {
+          ipSpec = line.substring(0, space);
+          String value = line.substring(space).trim();
+          if (value.startsWith(":")) {
+            answer = parseAnswer(value, defaultAnswer);
+            reason = getReasonIndex(parseReason(value), reasonIndexes, reasons);
+          } else if (!value.isEmpty()) {
+            reason = getReasonIndex(value, reasonIndexes, reasons);
+          }
+        }
+        long[] range = parseRange(ipSpec);
+        entries.add(new Entry(range[0], range[1], answer, reason, excluded, entries.size()));
+      } catch (IllegalStructure e) {
+        throw new IllegalStructure("The line " + lineNumber + " (" + line + ") of the zone dump is not valid. " + e.getMessage(), e);
+      }
+    }
+
+    this.snapshot = flatten(entries, reasons.toArray(new String[0]));
+    return this;
+
+  }
+
+  private static int indexOfWhitespace(String line) {
+    for (int i = 0; i < line.length(); i++) {
+      if (Character.isWhitespace(line.charAt(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static short getReasonIndex(String reason, Map<String, Short> reasonIndexes, List<String> reasons) throws IllegalStructure {
+    Short index = reasonIndexes.get(reason);
+    if (index != null) {
+      return index;
+    }
+    if (reasons.size() > Short.MAX_VALUE) {
+      throw new IllegalStructure("Too many distinct reasons (" + reasons.size() + ")");
+    }
+    short newIndex = (short) reasons.size();
+    reasons.add(reason);
+    reasonIndexes.put(reason, newIndex);
+    return newIndex;
+  }
+
+  /**
+   * @param value - `:A:TXT`
+   */
+  private static int parseAnswer(String value, int defaultAnswer) throws IllegalStructure {
+    int end = value.indexOf(':', 1);
+    String answer = end == -1 ? value.substring(1) : value.substring(1, end);
+    if (answer.isEmpty()) {
+      return defaultAnswer;
+    }
+    return (int) parseIp(answer.trim());
+  }
+
+  /**
+   * @param value - `:A:TXT`
+   */
+  private static String parseReason(String value) {
+    int end = value.indexOf(':', 1);
+    if (end == -1) {
+      return null;
+    }
+    String reason = value.substring(end + 1).trim();
+    return reason.isEmpty() ? null : reason;
+  }
+
+  /**
+   * @return the start and end ip (inclusive) as unsigned long
+   */
+  static long[] parseRange(String ipSpec) throws IllegalStructure {
+    int dash = ipSpec.indexOf('-');
+    if (dash != -1) {
+      long start = parseIp(ipSpec.substring(0, dash));
+      long end = parseIp(ipSpec.substring(dash + 1));
+      if (end < start) {
+        throw new IllegalStructure("The range end is before its start");
+      }
+      return new long[]{start, end};
+    }
+    int slash = ipSpec.indexOf('/');
+    String ip = slash == -1 ? ipSpec : ipSpec.substring(0, slash);
+    int octetCount = ip.split("\\.", -1).length;
+    int prefix = octetCount * 8;
+    if (slash != -1) {
+      try {
+        prefix = Integer.parseInt(ipSpec.substring(slash + 1));
+      } catch (NumberFormatException e) {
+        throw new IllegalStructure("The prefix is not a number", e);
+      }
+      if (prefix < 0 || prefix > 32) {
+        throw new IllegalStructure("The prefix should be between 0 and 32");
+      }
+    }
+    StringBuilder fullIp = new StringBuilder(ip);
+    for (int i = octetCount; i < 4; i++) {
+      fullIp.append(".0");
+    }
+    long start = parseIp(fullIp.toString());
+    long size = 1L << (32 - prefix);
+    start = start & ~(size - 1) & 0xFFFFFFFFL;
+    return new long[]{start, start + size - 1};
+  }
+
+  private static long parseIp(String ip) throws IllegalStructure {
+    String[] octets = ip.split("\\.", -1);
+    if (octets.length != 4) {
+      throw new IllegalStructure("The ip (" + ip + ") does not have 4 octets");
+    }
+    long value = 0;
+    for (String octet : octets) {
+      int octetValue;
+      try {
+        octetValue = Integer.parseInt(octet);
+      } catch (NumberFormatException e) {
+        throw new IllegalStructure("The octet (" + octet + ") of the ip (" + ip + ") is not a number", e);
+      }
+      if (octetValue < 0 || octetValue > 255) {
+        throw new IllegalStructure("The octet (" + octet + ") of the ip (" + ip + ") is not between 0 and 255");
+      }
+      value = value << 8 | octetValue;
+    }
+    return value;
+  }
+
+  /**
+   * An entry of the dump
+   */
+  private static class Entry {
+    private final long start;
+    private final long end;
+    private final int answer;
+    private final short reason;
+    private final boolean excluded;
+    private final int order;
+
+    private Entry(long start, long end, int answer, short reason, boolean excluded, int order) {
+      this.start = start;
+      this.end = end;
+      this.answer = answer;
+      this.reason = reason;
+      this.excluded = excluded;
+      this.order = order;
+    }
+  }
+
+  /**
+   * A painted segment: the ips from start to end (inclusive) take the value of the entry
+   */
+  private static class Segment {
+    private final long start;
+    private final long end;
+    private final Entry entry;
+
+    private Segment(long start, long end, Entry entry) {
+      this.start = start;
+      this.end = end;
+      this.entry = entry;
+    }
+  }
+
+  /**
+   * Paint the entries from the largest to the smallest (the most specific wins)
+   * and return the non-overlapping ranges
+   */
+  private static Snapshot flatten(List<Entry> entries, String[] reasons) {
+
+    entries.sort(Comparator.<Entry>comparingLong(e -> e.end - e.start).reversed().thenComparingInt(e -> e.order));
+    TreeMap<Long, Segment> segments = new TreeMap<>();
+    for (Entry entry : entries) {
+      split(segments, entry.start);
+      split(segments, entry.end + 1);
+      segments.subMap(entry.start, true, entry.end, true).clear();
+      if (!entry.excluded) {
+        segments.put(entry.start, new Segment(entry.start, entry.end, entry));
+      }
+    }
+
+    int size = segments.size();
+    int[] starts = new int[size];
+    int[] ends = new int[size];
+    int[] answers = new int[size];
+    short[] reasonIndexes = new short[size];
+    int i = 0;
+    for (Segment segment : segments.values()) {
+      starts[i] = (int) segment.start ^ Integer.MIN_VALUE;
+      ends[i] = (int) segment.end ^ Integer.MIN_VALUE;
+      answers[i] = segment.entry.answer;
+      reasonIndexes[i] = segment.entry.reason;
+      i++;
+    }
+    return new Snapshot(starts, ends, answers, reasonIndexes, reasons, Instant.now());
+
+  }
+
+  /**
+   * Split the segment that contains the position so that a segment starts at the position
+   */
+  private static void split(TreeMap<Long, Segment> segments, long position) {
+    Map.Entry<Long, Segment> floor = segments.floorEntry(position);
+    if (floor == null) {
+      return;
+    }
+    Segment segment = floor.getValue();
+    if (segment.start == position || segment.end < position) {
+      return;
+    }
+    segments.put(segment.start, new Segment(segment.start, position - 1, segment.entry));
+    segments.put(position, new Segment(position, segment.end, segment.entry));
+  }
+
+  @Override
+  public String toString() {
+    return "DnsBlockListMirror{" + blockList + ", ranges=" + getRangeCount() + ", loadedAt=" + getLoadedAt() + "}";
+  }
+
+}
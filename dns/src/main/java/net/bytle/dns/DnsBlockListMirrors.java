@@ -0,0 +1,49 @@
+package net.bytle.dns;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The local mirrors of block list zones
+ * <p>
+ * A zone with a loaded mirror is answered locally (see {@link DnsBlockListQueryHelper.BuilderConf#setMirrors(DnsBlockListMirrors)}),
+ * the other zones, and a zone whose mirror is not loaded yet, are queried with DNS.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * DnsBlockListMirrors mirrors = new DnsBlockListMirrors();
+ * mirrors.getOrCreate(DnsBlockList.ZEN_SPAMHAUS_ORG).load(Path.of("/var/lib/rbldnsd/zen"));
+ * DnsBlockListChecker checker = DnsBlockListChecker.builder(dnsClient)
+ *   .setMirrors(mirrors)
+ *   .build();
+ * }</pre>
+ */
+public class DnsBlockListMirrors {
+
+  private final ConcurrentHashMap<DnsBlockList, DnsBlockListMirror> mirrors = new ConcurrentHashMap<>();
+
+  /**
+   * @return the mirror of the block list (created empty if it does not exist)
+   */
+  public DnsBlockListMirror getOrCreate(DnsBlockList blockList) {
+    return mirrors.computeIfAbsent(blockList, DnsBlockListMirror::new);
+  }
+
+  /**
+   * @return the mirror or null if the block list is not mirrored
+   */
+  public DnsBlockListMirror get(DnsBlockList blockList) {
+    return mirrors.get(blockList);
+  }
+
+  @SuppressWarnings("unused")
+  public DnsBlockListMirror remove(DnsBlockList blockList) {
+    return mirrors.remove(blockList);
+  }
+
+  public Collection<DnsBlockListMirror> getMirrors() {
+    return Collections.unmodifiableCollection(mirrors.values());
+  }
+
+}
@@ -18,6 +18,14 @@ public class DnsBlockListQueryHelper {
   static Log LOGGER = Logs.createFromClazz(DnsBlockListQueryHelper.class);
   private final DnsBlockList dnsBlockList;
   private final String queryTerm;
+  /**
+   * The ip for an ip query, null for a domain query
+   */
+  private final DnsIp ip;
+  /**
+   * The local mirror of the zone if any
+   */
+  private final DnsBlockListMirror mirror;
 
   /**
    *
@@ -25,8 +33,14 @@ public class DnsBlockListQueryHelper {
    * @param queryTerm - the domain or the ip
    */
   public DnsBlockListQueryHelper(DnsBlockList dnsBlockList, String queryTerm) {
+    this(dnsBlockList, queryTerm, null, null);
+  }
+
+  private DnsBlockListQueryHelper(DnsBlockList dnsBlockList, String queryTerm, DnsIp ip, DnsBlockListMirror mirror) {
     this.dnsBlockList = dnsBlockList;
     this.queryTerm = queryTerm;
+    this.ip = ip;
+    this.mirror = mirror;
   }
 
   public static BuilderConf forDomain(DnsName domain) {
@@ -52,7 +66,7 @@ public class DnsBlockListQueryHelper {
      * Not all responses are blocking response
      * If we know the blocking responses, we check
      */
-    String responseCode = dnsIp.getInetAddress().getHostAddress().replace("." + dnsBlockList.getZone(), "");
+    String responseCode = dnsIp.getAddress();
     DnsBlockListResponseCode response = blockingKnownResponses.stream()
       .filter(r -> r.getCode().equals(responseCode))
       .findFirst()
@@ -110,34 +124,85 @@ public class DnsBlockListQueryHelper {
     if (ipOctets.size() != 4) {
       throw new IllegalStructure("This is not an IPv4 address");
     }
+    DnsIp dnsIp;
+    try {
+      dnsIp = DnsIp.createFromIpv4String(ipv4Address);
+    } catch (DnsException e) {
+      throw new IllegalStructure("This is not an IPv4 address", e);
+    }
     Collections.reverse(ipOctets);
     String ipToCheckReversed = String.join(".", ipOctets);
-    return new BuilderConf(DnsBlockListType.IP, ipToCheckReversed);
+    return new BuilderConf(DnsBlockListType.IP, ipToCheckReversed, dnsIp);
   }
 
   public DnsBlockList getBlockList() {
     return this.dnsBlockList;
   }
 
+  /**
+   * @return true if the zone is answered by a local mirror (no DNS query),
+   * false if the mirror is not loaded yet
+   */
+  public boolean hasMirror() {
+    return this.mirror != null && this.ip != null && this.mirror.isLoaded();
+  }
+
+  /**
+   * The answer of the local mirror with the same semantics as {@link #createResponseCode(DnsIp)} on a DNS answer
+   *
+   * @return the response code ({@link DnsBlockListResponseCode#R_INTERNAL_HOST_NOT_BLOCKED} if not listed)
+   */
+  public DnsBlockListResponseCode getMirrorResponseCode() {
+    DnsIp answer = this.mirror.getAnswer(this.ip);
+    if (answer == null) {
+      return DnsBlockListResponseCode.R_INTERNAL_HOST_NOT_BLOCKED;
+    }
+    return createResponseCode(answer);
+  }
+
+  /**
+   * @return the reason (TXT) of the local mirror or null
+   */
+  public String getMirrorReason() {
+    return this.mirror.getReason(this.ip);
+  }
+
 
   public static class BuilderConf {
     private final DnsBlockListType dnsBlockListType;
     private final String queryTerm;
+    private final DnsIp ip;
     private final List<DnsBlockList> blockLists = new ArrayList<>();
+    private DnsBlockListMirrors mirrors;
 
     /**
      * @param dnsBlockListType - the type (domain or ip)
      * @param queryTerm        - the term (the domain or the ip)
      */
     public BuilderConf(DnsBlockListType dnsBlockListType, String queryTerm) {
+      this(dnsBlockListType, queryTerm, null);
+    }
+
+    private BuilderConf(DnsBlockListType dnsBlockListType, String queryTerm, DnsIp ip) {
       this.dnsBlockListType = dnsBlockListType;
       this.queryTerm = queryTerm;
+      this.ip = ip;
+    }
+
+    /**
+     * @param mirrors - the local mirrors, the zones with a mirror are answered locally
+     */
+    public DnsBlockListQueryHelper.BuilderConf setMirrors(DnsBlockListMirrors mirrors) {
+      this.mirrors = mirrors;
+      return this;
     }
 
     @SuppressWarnings("unused")
     public DnsBlockListQueryHelper.BuilderConf addAllBlockLists(List<DnsBlockList> blockLists) {
       for (DnsBlockList blockList : blockLists) {
-        this.blockLists.addAll(blockLists);
+        if (!this.blockLists.contains(blockList)) {
+          this.blockLists.add(blockList);
+        }
       }
       return this;
     }
@@ -148,6 +213,13 @@ public class DnsBlockListQueryHelper {
       return this;
     }
 
+    /**
+     * @return true if a block list was added (otherwise {@link #build()} uses the default block list of the type)
+     */
+    public boolean hasBlockList() {
+      return !this.blockLists.isEmpty();
+    }
+
     public List<DnsBlockListQueryHelper> build() {
       if (this.blockLists.isEmpty()) {
         switch (this.dnsBlockListType) {
@@ -166,7 +238,8 @@ public class DnsBlockListQueryHelper {
         if (dnsBlockList.getType() != this.dnsBlockListType) {
           throw new RuntimeException("The block list is not from the good type");
         }
-        dnsBlockListQueries.add(new DnsBlockListQueryHelper(dnsBlockList, queryTerm));
+        DnsBlockListMirror mirror = this.mirrors == null ? null : this.mirrors.get(dnsBlockList);
+        dnsBlockListQueries.add(new DnsBlockListQueryHelper(dnsBlockList, queryTerm, ip, mirror));
       }
       return dnsBlockListQueries;
     }
@@ -0,0 +1,87 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsName;
+
+/**
+ * The answer of one block list zone for one query term
+ */
+public class DnsBlockListResult {
+
+  private final DnsBlockList blockList;
+  private final DnsName queriedName;
+  private final DnsBlockListResponseCode responseCode;
+  private final String reason;
+  private final Exception error;
+
+  private DnsBlockListResult(DnsBlockList blockList, DnsName queriedName, DnsBlockListResponseCode responseCode, String reason, Exception error) {
+    this.blockList = blockList;
+    this.queriedName = queriedName;
+    this.responseCode = responseCode;
+    this.reason = reason;
+    this.error = error;
+  }
+
+  static DnsBlockListResult createFromResponse(DnsBlockListQueryHelper helper, DnsBlockListResponseCode responseCode, String reason) {
+    return new DnsBlockListResult(helper.getBlockList(), helper.getDnsNameToQuery(), responseCode, reason, null);
+  }
+
+  static DnsBlockListResult createFromError(DnsBlockListQueryHelper helper, Exception error) {
+    return new DnsBlockListResult(helper.getBlockList(), helper.getDnsNameToQuery(), null, null, error);
+  }
+
+  public DnsBlockList getBlockList() {
+    return blockList;
+  }
+
+  /**
+   * @return the name queried (ie query term + zone)
+   */
+  public DnsName getQueriedName() {
+    return queriedName;
+  }
+
+  /**
+   * @return the response code, null if there was an error
+   */
+  public DnsBlockListResponseCode getResponseCode() {
+    return responseCode;
+  }
+
+  /**
+   * @return the TXT reason if asked and found, null otherwise
+   */
+  public String getReason() {
+    return reason;
+  }
+
+  /**
+   * @return the error (timeout, server error), null if the zone has answered
+   */
+  public Exception getError() {
+    return error;
+  }
+
+  public boolean isError() {
+    return error != null;
+  }
+
+  public boolean isBlocked() {
+    return isBlocked(responseCode);
+  }
+
+  static boolean isBlocked(DnsBlockListResponseCode responseCode) {
+    if (responseCode == null) {
+      return false;
+    }
+    return responseCode == DnsBlockListResponseCode.R_INTERNAL_HOST_BLOCKED || responseCode.getBlocked();
+  }
+
+  @Override
+  public String toString() {
+    if (error != null) {
+      return blockList + ": error (" + error.getMessage() + ")";
+    }
+    return blockList + ": " + responseCode + (reason != null ? " (" + reason + ")" : "");
+  }
+
+}
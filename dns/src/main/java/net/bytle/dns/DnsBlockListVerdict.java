@@ -0,0 +1,67 @@
+package net.bytle.dns;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The aggregated answer of the block list zones for one query term
+ */
+public class DnsBlockListVerdict {
+
+  private final String queryTerm;
+  private final List<DnsBlockListResult> results;
+  private final int zoneCount;
+
+  DnsBlockListVerdict(String queryTerm, List<DnsBlockListResult> results, int zoneCount) {
+    this.queryTerm = queryTerm;
+    this.results = results;
+    this.zoneCount = zoneCount;
+  }
+
+  /**
+   * @return the ip or the domain checked
+   */
+  public String getQueryTerm() {
+    return queryTerm;
+  }
+
+  /**
+   * @return true if at least one zone has returned a blocking answer
+   */
+  public boolean isBlocked() {
+    return results.stream().anyMatch(DnsBlockListResult::isBlocked);
+  }
+
+  public List<DnsBlockListResult> getBlockingResults() {
+    return results.stream()
+      .filter(DnsBlockListResult::isBlocked)
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * @return the zone results that have answered before the verdict (in completion order)
+   */
+  public List<DnsBlockListResult> getResults() {
+    return results;
+  }
+
+  @SuppressWarnings("unused")
+  public List<DnsBlockListResult> getErrors() {
+    return results.stream()
+      .filter(DnsBlockListResult::isError)
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * @return true if all zones have answered (false in short circuit mode when a blocking answer was found early)
+   */
+  public boolean isComplete() {
+    return results.size() == zoneCount;
+  }
+
+  @Override
+  public String toString() {
+    return queryTerm + (isBlocked() ? " blocked by " + getBlockingResults() : " not blocked") + " (" + results.size() + "/" + zoneCount + " zones)";
+  }
+
+}
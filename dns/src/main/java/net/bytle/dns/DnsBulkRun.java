@@ -0,0 +1,247 @@
+package net.bytle.dns;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A bulk run with bounded concurrency (used by {@link DnsDomainAuditor} and {@link DnsPtrScanner})
+ * <p>
+ * * The inputs are taken from the iterator only when there is a free slot,
+ * a big input is therefore never loaded in memory at once
+ * * The outputs are emitted as they complete (not in the input order)
+ * to a consumer ({@link #run(Consumer)}) or as a stream ({@link #stream()})
+ *
+ * @param <I> - the input
+ * @param <O> - the output
+ */
+abstract class DnsBulkRun<I, O> {
+
+  private final Iterator<I> inputs;
+  private final int maxInFlight;
+  private final CompletableFuture<Void> done = new CompletableFuture<>();
+  private final long startNanos = System.nanoTime();
+  /**
+   * Work in progress counter of the pump (the input is read by one thread at a time, without recursion)
+   */
+  private final AtomicInteger pumpRequests = new AtomicInteger();
+  private Consumer<O> outputsConsumer;
+  /**
+   * The outputs not yet consumed in stream mode (null in callback mode)
+   */
+  private BlockingQueue<Object> buffer;
+  private long started = 0;
+  private long completed = 0;
+  private boolean inputEnded = false;
+  /**
+   * The first error (input iterator or process), the run stops taking inputs
+   */
+  private Throwable failure;
+
+  DnsBulkRun(Iterator<I> inputs, int maxInFlight) {
+    this.inputs = inputs;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * @return the output, the stage should never fail (the errors are in the output),
+   * if it fails (or if this method throws), the run stops and fails with the error
+   */
+  abstract CompletionStage<O> process(I input);
+
+  /**
+   * Called after that an output was consumed and counted as completed (concurrently)
+   *
+   * @param started   - the number of inputs started when the output was counted
+   * @param completed - the number of outputs completed, this one included
+   */
+  void onCompleted(O output, long started, long completed) {
+  }
+
+  /**
+   * Callback mode: a slow consumer slows down the run (backpressure)
+   *
+   * @param outputsConsumer - the consumer of the outputs (called concurrently, as they complete)
+   * @return the stage completed when all inputs have been processed (or failed after the inputs in flight)
+   */
+  CompletionStage<Void> run(Consumer<O> outputsConsumer) {
+    this.outputsConsumer = outputsConsumer;
+    pump();
+    return done;
+  }
+
+  /**
+   * Stream mode: the inputs are taken when the outputs are consumed (backpressure)
+   * <p>
+   * At most `max in flight` inputs are processed or waiting to be consumed.
+   *
+   * @return the outputs in completion order, the error of a failed run is thrown at the end of the stream
+   */
+  Stream<O> stream() {
+    BlockingQueue<Object> outputs = new LinkedBlockingQueue<>();
+    this.buffer = outputs;
+    this.outputsConsumer = outputs::add;
+    done.whenComplete((v, throwable) -> outputs.add(new EndOfRun(throwable)));
+    Iterator<O> iterator = new Iterator<>() {
+
+      private Object next;
+
+      @Override
+      public boolean hasNext() {
+        if (next == null) {
+          try {
+            next = outputs.take();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DnsInternalException("The stream was interrupted", e);
+          }
+          // a slot is free
+          pump();
+        }
+        if (next instanceof EndOfRun) {
+          // for the next call
+          outputs.add(next);
+          Throwable error = ((EndOfRun) next).error;
+          if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+          }
+          if (error instanceof Error) {
+            throw (Error) error;
+          }
+          if (error != null) {
+            throw new DnsInternalException("The run has failed", (Exception) error);
+          }
+          return false;
+        }
+        return true;
+      }
+
+      @Override
+      public O next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        @SuppressWarnings("unchecked")
+        O output = (O) next;
+        next = null;
+        return output;
+      }
+
+    };
+    pump();
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false);
+  }
+
+  /**
+   * Start processing while there is a free slot
+   * If called while pumping, the pumping thread loops once more
+   */
+  private void pump() {
+    if (pumpRequests.getAndIncrement() != 0) {
+      return;
+    }
+    do {
+      while (true) {
+        I input;
+        synchronized (this) {
+          int buffered = buffer == null ? 0 : buffer.size();
+          if (inputEnded || started - completed + buffered >= maxInFlight) {
+            break;
+          }
+          try {
+            if (!inputs.hasNext()) {
+              inputEnded = true;
+              break;
+            }
+            input = inputs.next();
+          } catch (RuntimeException e) {
+            fail(e);
+            break;
+          }
+          started++;
+        }
+        CompletionStage<O> output;
+        try {
+          output = process(input);
+        } catch (RuntimeException e) {
+          output = CompletableFuture.failedFuture(e);
+        }
+        output.whenComplete(this::complete);
+      }
+      synchronized (this) {
+        if (inputEnded && started == completed) {
+          if (failure == null) {
+            done.complete(null);
+          } else {
+            done.completeExceptionally(failure);
+          }
+        }
+      }
+    } while (pumpRequests.decrementAndGet() != 0);
+  }
+
+  private void complete(O output, Throwable throwable) {
+    if (throwable != null) {
+      synchronized (this) {
+        fail(throwable);
+        completed++;
+      }
+      pump();
+      return;
+    }
+    outputsConsumer.accept(output);
+    long startedSnapshot;
+    long completedSnapshot;
+    synchronized (this) {
+      completed++;
+      startedSnapshot = started;
+      completedSnapshot = completed;
+    }
+    onCompleted(output, startedSnapshot, completedSnapshot);
+    pump();
+  }
+
+  /**
+   * Stop taking inputs, the run fails when the inputs in flight have completed
+   */
+  private synchronized void fail(Throwable throwable) {
+    inputEnded = true;
+    if (failure == null) {
+      failure = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+  }
+
+  synchronized long getStarted() {
+    return started;
+  }
+
+  synchronized long getCompleted() {
+    return completed;
+  }
+
+  Duration getElapsed() {
+    return Duration.ofNanos(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * The end of a stream run
+   */
+  private static class EndOfRun {
+
+    private final Throwable error;
+
+    private EndOfRun(Throwable error) {
+      this.error = error;
+    }
+
+  }
+
+}
@@ -0,0 +1,352 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.Record;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded answer cache that respects the TTL of the records.
+ * <p>
+ * * Positive answers are kept for the minimum TTL of the records (clamped between the min and max TTL)
+ * * Negative answers (NXDOMAIN, SERVFAIL ie {@link DnsNotFoundException}) are kept for the negative TTL
+ * * When the cache is full, the least recently used entry is evicted
+ * * With refresh ahead, a positive answer accessed after the refresh fraction of its TTL
+ *   is re-resolved in the background by the client so that a hot name never expires
+ *   (See {@link DnsCacheBuilder#setRefreshAhead(double)})
+ * <p>
+ * The cache can be saved to a binary snapshot file with {@link #save(Path)} (ie at shutdown)
+ * and reloaded with {@link #load(Path)} (ie at startup) to start warm.
+ * <p>
+ * The cache is thread safe and can be shared between clients with {@link XBillDnsClient.DnsClientBuilder#setCache(DnsCache)}
+ */
+public class DnsCache {
+
+  private final long minTtlMs;
+  private final long maxTtlMs;
+  private final long negativeTtlMs;
+  /**
+   * The fraction of the TTL after which an accessed answer is refreshed (0: disabled)
+   */
+  private final double refreshAhead;
+  private final int maxConcurrentRefreshes;
+  private final AtomicInteger refreshesInFlight = new AtomicInteger();
+  private final LinkedHashMap<DnsQueryKey, DnsCacheEntry> entries;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder refreshFailures = new LongAdder();
+  private final LongAdder refreshRejections = new LongAdder();
+
+  private DnsCache(DnsCacheBuilder builder) {
+    this.minTtlMs = builder.minTtl.toMillis();
+    this.maxTtlMs = builder.maxTtl.toMillis();
+    this.negativeTtlMs = builder.negativeTtl.toMillis();
+    this.refreshAhead = builder.refreshAhead;
+    this.maxConcurrentRefreshes = builder.maxConcurrentRefreshes;
+    int maxEntries = builder.maxEntries;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<DnsQueryKey, DnsCacheEntry> eldest) {
+        if (size() > maxEntries) {
+          evictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public static DnsCacheBuilder builder() {
+    return new DnsCacheBuilder();
+  }
+
+  /**
+   * @return the entry if present and not expired, null otherwise
+   */
+  DnsCacheEntry get(DnsQueryKey key) {
+    long now = System.currentTimeMillis();
+    DnsCacheEntry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (entry != null && entry.isExpired(now)) {
+        entries.remove(key);
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return entry;
+  }
+
+  void putRecords(DnsQueryKey key, List<Record> records) {
+    long ttlMs = Long.MAX_VALUE;
+    for (Record record : records) {
+      ttlMs = Math.min(ttlMs, record.getTTL() * 1000);
+    }
+    if (records.isEmpty()) {
+      ttlMs = negativeTtlMs;
+    }
+    ttlMs = Math.max(minTtlMs, Math.min(maxTtlMs, ttlMs));
+    long expiresAt = System.currentTimeMillis() + ttlMs;
+    put(key, DnsCacheEntry.createPositive(records, expiresAt, getRefreshAt(records, expiresAt, ttlMs)));
+  }
+
+  /**
+   * @param ttlMs - the time to live of the entry
+   * @return the time of the refresh ahead (Long.MAX_VALUE: never)
+   */
+  private long getRefreshAt(List<Record> records, long expiresAt, long ttlMs) {
+    if (refreshAhead <= 0 || records.isEmpty()) {
+      return Long.MAX_VALUE;
+    }
+    return expiresAt - (long) (ttlMs * (1 - refreshAhead));
+  }
+
+  /**
+   * Called on a cache hit
+   *
+   * @return true if the caller should refresh the entry in the background and call {@link #endRefresh(boolean)} when done
+   * (the entry is due for refresh, it was not already refreshed and a refresh slot is free)
+   */
+  boolean startRefresh(DnsCacheEntry entry) {
+    if (!entry.claimRefresh(System.currentTimeMillis())) {
+      return false;
+    }
+    if (refreshesInFlight.incrementAndGet() > maxConcurrentRefreshes) {
+      refreshesInFlight.decrementAndGet();
+      // a later access may get a free slot
+      entry.releaseRefresh();
+      refreshRejections.increment();
+      return false;
+    }
+    refreshes.increment();
+    return true;
+  }
+
+  /**
+   * @param success - false if the refresh query has failed (the current entry is kept until its expiration)
+   */
+  void endRefresh(boolean success) {
+    refreshesInFlight.decrementAndGet();
+    if (!success) {
+      refreshFailures.increment();
+    }
+  }
+
+  void putNotFound(DnsQueryKey key, DnsNotFoundException notFoundException) {
+    put(key, DnsCacheEntry.createNegative(notFoundException.getMessage(), System.currentTimeMillis() + negativeTtlMs));
+  }
+
+  void put(DnsQueryKey key, DnsCacheEntry entry) {
+    if (entry.isExpired(System.currentTimeMillis())) {
+      return;
+    }
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+  }
+
+  /**
+   * Save the entries not expired to a snapshot file
+   * <p>
+   * The file is replaced atomically.
+   *
+   * @param path - the snapshot file
+   * @return the number of entries saved
+   */
+  public int save(Path path) throws IOException {
+    long now = System.currentTimeMillis();
+    List<Map.Entry<DnsQueryKey, DnsCacheEntry>> snapshot;
+    synchronized (entries) {
+      snapshot = new ArrayList<>(entries.size());
+      // least recently used first, the load restores the access order
+      for (Map.Entry<DnsQueryKey, DnsCacheEntry> entry : entries.entrySet()) {
+        if (!entry.getValue().isExpired(now)) {
+          snapshot.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+      }
+    }
+    DnsCacheSnapshot.write(path, snapshot);
+    return snapshot.size();
+  }
+
+  /**
+   * Load a snapshot file created with {@link #save(Path)}
+   * <p>
+   * The expired entries are discarded, the entries keep their original expiration time.
+   *
+   * @param path - the snapshot file
+   * @return the number of entries loaded
+   * @throws IOException if the file cannot be read or is not a valid snapshot
+   */
+  public int load(Path path) throws IOException {
+    long now = System.currentTimeMillis();
+    LongAdder loaded = new LongAdder();
+    DnsCacheSnapshot.read(path, now, (key, records, notFoundMessage, expiresAt) -> {
+      DnsCacheEntry entry;
+      if (records == null) {
+        entry = DnsCacheEntry.createNegative(notFoundMessage, expiresAt);
+      } else {
+        long ttlMs = Long.MAX_VALUE;
+        for (Record record : records) {
+          ttlMs = Math.min(ttlMs, record.getTTL() * 1000);
+        }
+        ttlMs = Math.max(minTtlMs, Math.min(maxTtlMs, ttlMs));
+        entry = DnsCacheEntry.createPositive(records, expiresAt, getRefreshAt(records, expiresAt, ttlMs));
+      }
+      synchronized (entries) {
+        entries.put(key, entry);
+      }
+      loaded.increment();
+    });
+    return loaded.intValue();
+  }
+
+  @SuppressWarnings("unused")
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * @return the number of background refreshes started
+   */
+  public long getRefreshCount() {
+    return refreshes.sum();
+  }
+
+  /**
+   * @return the number of background refreshes that have failed
+   */
+  public long getRefreshFailureCount() {
+    return refreshFailures.sum();
+  }
+
+  /**
+   * @return the number of refreshes not started because the maximum of concurrent refreshes was reached
+   */
+  public long getRefreshRejectedCount() {
+    return refreshRejections.sum();
+  }
+
+  /**
+   * @return the number of background refreshes in flight
+   */
+  public int getRefreshInFlight() {
+    return refreshesInFlight.get();
+  }
+
+  @Override
+  public String toString() {
+    return "DnsCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + ", refreshes=" + getRefreshCount() + "}";
+  }
+
+  public static class DnsCacheBuilder {
+
+    private int maxEntries = 10000;
+    private Duration minTtl = Duration.ZERO;
+    private Duration maxTtl = Duration.ofDays(1);
+    private Duration negativeTtl = Duration.ofMinutes(1);
+    private double refreshAhead = 0;
+    private int maxConcurrentRefreshes = 8;
+
+    /**
+     * @param maxEntries - the maximum number of answers kept (the least recently used is evicted)
+     */
+    public DnsCacheBuilder setMaxEntries(int maxEntries) {
+      if (maxEntries <= 0) {
+        throw new IllegalArgumentException("The max entries should be greater than zero");
+      }
+      this.maxEntries = maxEntries;
+      return this;
+    }
+
+    /**
+     * @param minTtl - an answer is kept at least this duration even if the record TTL is lower
+     */
+    public DnsCacheBuilder setMinTtl(Duration minTtl) {
+      this.minTtl = minTtl;
+      return this;
+    }
+
+    /**
+     * @param maxTtl - an answer is kept at most this duration even if the record TTL is higher
+     */
+    public DnsCacheBuilder setMaxTtl(Duration maxTtl) {
+      this.maxTtl = maxTtl;
+      return this;
+    }
+
+    /**
+     * @param negativeTtl - the duration of a not found answer (NXDOMAIN, SERVFAIL)
+     */
+    public DnsCacheBuilder setNegativeTtl(Duration negativeTtl) {
+      this.negativeTtl = negativeTtl;
+      return this;
+    }
+
+    /**
+     * @param refreshAhead - the fraction of the TTL (between 0 and 1) after which an accessed answer
+     *                     is re-resolved in the background (ie 0.8 for a refresh at 80% of the TTL, 0 disables the refresh, default)
+     */
+    public DnsCacheBuilder setRefreshAhead(double refreshAhead) {
+      if (refreshAhead < 0 || refreshAhead >= 1) {
+        throw new IllegalArgumentException("The refresh ahead fraction (" + refreshAhead + ") should be between 0 and 1 (exclusive)");
+      }
+      this.refreshAhead = refreshAhead;
+      return this;
+    }
+
+    /**
+     * @param maxConcurrentRefreshes - the maximum number of background refreshes in flight (default 8)
+     */
+    public DnsCacheBuilder setMaxConcurrentRefreshes(int maxConcurrentRefreshes) {
+      if (maxConcurrentRefreshes <= 0) {
+        throw new IllegalArgumentException("The max concurrent refreshes should be greater than zero");
+      }
+      this.maxConcurrentRefreshes = maxConcurrentRefreshes;
+      return this;
+    }
+
+    public DnsCache build() {
+      if (minTtl.compareTo(maxTtl) > 0) {
+        throw new IllegalArgumentException("The min ttl (" + minTtl + ") should be lower than the max ttl (" + maxTtl + ")");
+      }
+      return new DnsCache(this);
+    }
+
+  }
+
+}
@@ -0,0 +1,93 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.Record;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A cached answer
+ * * positive: the records
+ * * negative: the not found message (NXDOMAIN, SERVFAIL)
+ */
+final class DnsCacheEntry {
+
+  private final List<Record> records;
+  private final String notFoundMessage;
+  /**
+   * Absolute expiration time in epoch milliseconds
+   */
+  private final long expiresAt;
+  /**
+   * Absolute time in epoch milliseconds after which an access triggers a background refresh
+   * (Long.MAX_VALUE: never)
+   */
+  private final long refreshAt;
+  /**
+   * 1 when a refresh was started for this entry (one refresh by entry)
+   * (a field updater and not an atomic object as a cache may have millions of entries)
+   */
+  private volatile int refreshing = 0;
+  private static final AtomicIntegerFieldUpdater<DnsCacheEntry> REFRESHING = AtomicIntegerFieldUpdater.newUpdater(DnsCacheEntry.class, "refreshing");
+
+  private DnsCacheEntry(List<Record> records, String notFoundMessage, long expiresAt, long refreshAt) {
+    this.records = records;
+    this.notFoundMessage = notFoundMessage;
+    this.expiresAt = expiresAt;
+    this.refreshAt = refreshAt;
+  }
+
+  static DnsCacheEntry createPositive(List<Record> records, long expiresAt) {
+    return createPositive(records, expiresAt, Long.MAX_VALUE);
+  }
+
+  static DnsCacheEntry createPositive(List<Record> records, long expiresAt, long refreshAt) {
+    return new DnsCacheEntry(List.copyOf(records), null, expiresAt, refreshAt);
+  }
+
+  static DnsCacheEntry createNegative(String notFoundMessage, long expiresAt) {
+    return new DnsCacheEntry(null, notFoundMessage, expiresAt, Long.MAX_VALUE);
+  }
+
+  boolean isNegative() {
+    return records == null;
+  }
+
+  /**
+   * @return the records or null if this is a negative entry
+   */
+  List<Record> getRecords() {
+    return records;
+  }
+
+  String getNotFoundMessage() {
+    return notFoundMessage;
+  }
+
+  long getExpiresAt() {
+    return expiresAt;
+  }
+
+  boolean isExpired(long now) {
+    return now >= expiresAt;
+  }
+
+  long getRefreshAt() {
+    return refreshAt;
+  }
+
+  /**
+   * @return true if the caller has claimed the refresh of this entry (the entry is due and was not claimed)
+   */
+  boolean claimRefresh(long now) {
+    return now >= refreshAt && REFRESHING.compareAndSet(this, 0, 1);
+  }
+
+  /**
+   * Give the refresh back (ie no refresh slot available)
+   */
+  void releaseRefresh() {
+    refreshing = 0;
+  }
+
+}
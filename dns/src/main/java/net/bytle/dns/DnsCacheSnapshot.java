@@ -0,0 +1,198 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.DNSInput;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.WireParseException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary file format of a {@link DnsCache} snapshot
+ * <p>
+ * * header: magic, version, entry count
+ * * by entry: the kind, the query name (wire format), the query type, the absolute expiration time,
+ * then the records or the not found message
+ * * by record: the owner name if not the query name, the type, the class, the TTL and the rdata (wire format)
+ * <p>
+ * The file is memory-mapped and parsed in place (no reflection or object serialization),
+ * the query name is parsed once by entry.
+ */
+final class DnsCacheSnapshot {
+
+  private static final int MAGIC = 0x45444E53; // EDNS
+  private static final int VERSION = 1;
+  private static final int POSITIVE = 0;
+  private static final int NEGATIVE = 1;
+  /**
+   * Flag added to the kind when the query name is relative
+   */
+  private static final int RELATIVE = 2;
+  /**
+   * The owner name of the record is the query name
+   */
+  private static final int SAME_NAME = 0;
+  private static final int OTHER_NAME = 1;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private DnsCacheSnapshot() {
+  }
+
+  /**
+   * Write the entries to a temporary file then move it to the path
+   * so that a reader never sees a partial snapshot
+   *
+   * @param entries - the entries in the order of the snapshot
+   */
+  static void write(Path path, List<Map.Entry<DnsQueryKey, DnsCacheEntry>> entries) throws IOException {
+    Path parent = path.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<DnsQueryKey, DnsCacheEntry> mapEntry : entries) {
+          DnsQueryKey key = mapEntry.getKey();
+          DnsCacheEntry entry = mapEntry.getValue();
+          Name name = key.getName();
+          Name absoluteName = name.isAbsolute() ? name : Name.concatenate(name, Name.root);
+          int kind = entry.isNegative() ? NEGATIVE : POSITIVE;
+          if (!name.isAbsolute()) {
+            kind |= RELATIVE;
+          }
+          out.writeByte(kind);
+          out.write(absoluteName.toWire());
+          out.writeShort(key.getType());
+          out.writeLong(entry.getExpiresAt());
+          if (entry.isNegative()) {
+            String message = entry.getNotFoundMessage() == null ? "" : entry.getNotFoundMessage();
+            writeBytes(out, message.getBytes(StandardCharsets.UTF_8), 0);
+            continue;
+          }
+          List<Record> records = entry.getRecords();
+          out.writeShort(records.size());
+          for (Record record : records) {
+            Name owner = record.getName();
+            if (owner.equals(absoluteName)) {
+              out.writeByte(SAME_NAME);
+            } else {
+              out.writeByte(OTHER_NAME);
+              out.write(owner.toWire());
+            }
+            out.writeShort(record.getType());
+            out.writeShort(record.getDClass());
+            out.writeInt((int) record.getTTL());
+            // the record wire format is the owner name, type, class, ttl, rdata length then the rdata
+            writeBytes(out, record.toWire(Section.ANSWER), owner.length() + 10);
+          }
+        }
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * @param now      - the entries expired at this time are discarded
+   * @param consumer - the receiver of the entries not expired (in the order of the snapshot)
+   * @return the number of entries read (expired or not)
+   */
+  static int read(Path path, long now, EntryConsumer consumer) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("The DNS cache snapshot (" + path + ") is too big (" + channel.size() + " bytes)");
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    DNSInput in = new DNSInput(buffer);
+    try {
+      if (in.readU32() != MAGIC) {
+        throw new IOException("The file (" + path + ") is not a DNS cache snapshot");
+      }
+      long version = in.readU32();
+      if (version != VERSION) {
+        throw new IOException("The DNS cache snapshot version (" + version + ") is not supported");
+      }
+      int count = (int) in.readU32();
+      for (int i = 0; i < count; i++) {
+        int kind = in.readU8();
+        Name name = new Name(in);
+        int type = in.readU16();
+        long expiresAt = in.readU32() << 32 | in.readU32();
+        boolean expired = expiresAt <= now;
+        boolean relative = (kind & RELATIVE) != 0;
+        kind &= ~RELATIVE;
+        if (kind == NEGATIVE) {
+          byte[] message = in.readByteArray(in.readU16());
+          if (!expired) {
+            consumer.accept(createKey(name, relative, type), null, new String(message, StandardCharsets.UTF_8), expiresAt);
+          }
+          continue;
+        }
+        if (kind != POSITIVE) {
+          throw new IOException("The DNS cache snapshot (" + path + ") is corrupted (entry " + i + ")");
+        }
+        int recordCount = in.readU16();
+        Record[] records = new Record[recordCount];
+        for (int j = 0; j < recordCount; j++) {
+          Name owner = in.readU8() == SAME_NAME ? name : new Name(in);
+          int recordType = in.readU16();
+          int dClass = in.readU16();
+          long ttl = in.readU32();
+          byte[] rdata = in.readByteArray(in.readU16());
+          if (!expired) {
+            records[j] = Record.newRecord(owner, recordType, dClass, ttl, rdata);
+          }
+        }
+        if (!expired) {
+          // List.of of one element does not keep the array
+          List<Record> recordList = recordCount == 1 ? List.of(records[0]) : List.of(records);
+          consumer.accept(createKey(name, relative, type), recordList, null, expiresAt);
+        }
+      }
+      return count;
+    } catch (WireParseException e) {
+      throw new IOException("The DNS cache snapshot (" + path + ") is truncated or corrupted", e);
+    }
+  }
+
+  private static DnsQueryKey createKey(Name absoluteName, boolean relative, int type) {
+    return new DnsQueryKey(relative ? absoluteName.relativize(Name.root) : absoluteName, type);
+  }
+
+  /**
+   * Write a length prefixed byte array
+   *
+   * @param offset - the start of the data in the array
+   */
+  private static void writeBytes(DataOutputStream out, byte[] bytes, int offset) throws IOException {
+    out.writeShort(bytes.length - offset);
+    out.write(bytes, offset, bytes.length - offset);
+  }
+
+  interface EntryConsumer {
+
+    /**
+     * @param records         - the records or null for a negative entry
+     * @param notFoundMessage - the message of a negative entry
+     */
+    void accept(DnsQueryKey key, List<Record> records, String notFoundMessage, long expiresAt);
+
+  }
+
+}
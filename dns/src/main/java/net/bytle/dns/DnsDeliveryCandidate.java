@@ -0,0 +1,52 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsName;
+
+/**
+ * A host and an ip to connect to in order to deliver mail to a domain (see {@link DnsDeliveryResolver})
+ */
+public class DnsDeliveryCandidate {
+
+  private final DnsName host;
+  private final DnsIp ip;
+  private final int priority;
+  private final boolean implicitMx;
+
+  DnsDeliveryCandidate(DnsName host, DnsIp ip, int priority, boolean implicitMx) {
+    this.host = host;
+    this.ip = ip;
+    this.priority = priority;
+    this.implicitMx = implicitMx;
+  }
+
+  /**
+   * @return the MX host (the name to check the TLS certificate against)
+   */
+  public DnsName getHost() {
+    return host;
+  }
+
+  public DnsIp getIp() {
+    return ip;
+  }
+
+  /**
+   * @return the MX priority (the lower, the more preferred)
+   */
+  public int getPriority() {
+    return priority;
+  }
+
+  /**
+   * @return true if the domain has no MX record and the host is the domain itself (RFC 5321 implicit MX)
+   */
+  public boolean isImplicitMx() {
+    return implicitMx;
+  }
+
+  @Override
+  public String toString() {
+    return host.toStringWithoutRoot() + " (" + ip + ", priority " + priority + ")";
+  }
+
+}
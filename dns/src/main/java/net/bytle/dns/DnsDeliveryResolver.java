@@ -0,0 +1,310 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsName;
+import org.xbill.DNS.*;
+import org.xbill.DNS.Record;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolve the hosts and ips to connect to in order to deliver mail to a domain
+ * <p>
+ * * The MX records are ordered by priority (RFC 5321)
+ * * The A and AAAA records of all MX hosts are resolved concurrently
+ * * A domain without MX record is its own MX host (RFC 5321 implicit MX),
+ * a domain with a null MX (RFC 7505) does not accept mail (no candidate)
+ * * The ips of a host alternate the IPv6 and IPv4 families, IPv6 first (RFC 8305 happy eyeballs)
+ * so that a broken family costs one connection attempt, not all of them
+ * * The candidates are cached by domain for the minimum TTL of the records used
+ * (not cached if there is no record, ie an implicit MX without address)
+ * <p>
+ * A host whose addresses cannot be resolved is skipped,
+ * the resolution fails only if no candidate was found because of an error.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * DnsDeliveryResolver resolver = DnsDeliveryResolver.builder(XBillAsyncDnsClient.createDefault()).build();
+ * for (DnsDeliveryCandidate candidate : resolver.resolve(domain).toCompletableFuture().join()) {
+ *   // connect to candidate.getIp() and check the certificate against candidate.getHost()
+ * }
+ * }</pre>
+ */
+public class DnsDeliveryResolver {
+
+  private final XBillAsyncDnsClient dnsClient;
+  private final boolean ipv6;
+  private final long maxTtlMs;
+  /**
+   * The candidates by domain (least recently used order)
+   */
+  private final LinkedHashMap<DnsName, CacheEntry> candidates;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder resolutions = new LongAdder();
+
+  private DnsDeliveryResolver(DnsDeliveryResolverBuilder builder) {
+    this.dnsClient = builder.dnsClient;
+    this.ipv6 = builder.ipv6;
+    this.maxTtlMs = builder.maxTtl.toMillis();
+    int maxEntries = builder.maxEntries;
+    this.candidates = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<DnsName, CacheEntry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @param dnsClient - the client that performs the queries
+   */
+  public static DnsDeliveryResolverBuilder builder(XBillAsyncDnsClient dnsClient) {
+    return new DnsDeliveryResolverBuilder(dnsClient);
+  }
+
+  /**
+   * @param domain - the domain of the recipient
+   * @return the candidates in connection order (empty if the domain does not accept mail),
+   * the stage fails with a {@link DnsNotFoundException} if the domain does not exist
+   */
+  public CompletionStage<List<DnsDeliveryCandidate>> resolve(DnsName domain) {
+    long now = System.currentTimeMillis();
+    CacheEntry entry;
+    synchronized (candidates) {
+      entry = candidates.get(domain);
+      if (entry != null && entry.expiresAt > now) {
+        hits.increment();
+        return entry.candidates.copy();
+      }
+      entry = new CacheEntry();
+      candidates.put(domain, entry);
+    }
+    resolutions.increment();
+    CacheEntry newEntry = entry;
+    resolveCandidates(domain)
+      .whenComplete((resolution, throwable) -> {
+        synchronized (candidates) {
+          if (throwable != null || resolution.ttlMs <= 0 || resolution.ttlMs == Long.MAX_VALUE) {
+            candidates.remove(domain, newEntry);
+          } else {
+            newEntry.expiresAt = System.currentTimeMillis() + Math.min(resolution.ttlMs, maxTtlMs);
+          }
+        }
+        if (throwable != null) {
+          newEntry.candidates.completeExceptionally(AsyncDnsClientAbs.unwrap(throwable));
+        } else {
+          newEntry.candidates.complete(resolution.candidates);
+        }
+      });
+    return newEntry.candidates.copy();
+  }
+
+  private CompletionStage<Resolution> resolveCandidates(DnsName domain) {
+    return this.dnsClient
+      .lookupRecords(domain, Type.MX)
+      .thenCompose(records -> {
+        Resolution resolution = new Resolution();
+        List<MXRecord> mxRecords = new ArrayList<>();
+        for (Record record : records) {
+          resolution.addTtl(record);
+          mxRecords.add((MXRecord) record);
+        }
+        if (mxRecords.size() == 1 && mxRecords.get(0).getTarget().equals(Name.root)) {
+          // null MX: the domain does not accept mail
+          return CompletableFuture.completedFuture(resolution);
+        }
+        List<Host> hosts = new ArrayList<>();
+        if (mxRecords.isEmpty()) {
+          hosts.add(new Host(domain, 0, true));
+        } else {
+          // stable sort: the DNS order is kept for an equal priority
+          mxRecords.sort(Comparator.comparingInt(MXRecord::getPriority));
+          for (MXRecord mxRecord : mxRecords) {
+            if (!mxRecord.getTarget().equals(Name.root)) {
+              hosts.add(new Host(XBillAsyncDnsClient.toDnsName(mxRecord.getTarget()), mxRecord.getPriority(), false));
+            }
+          }
+        }
+        List<CompletableFuture<?>> lookups = new ArrayList<>();
+        for (Host host : hosts) {
+          lookups.add(lookupAddresses(host.name, Type.A, host.ipv4, resolution));
+          if (this.ipv6) {
+            lookups.add(lookupAddresses(host.name, Type.AAAA, host.ipv6, resolution));
+          }
+        }
+        return CompletableFuture
+          .allOf(lookups.toArray(new CompletableFuture<?>[0]))
+          .thenApply(v -> {
+            resolution.candidates = toCandidates(hosts);
+            if (resolution.candidates.isEmpty() && resolution.error != null) {
+              throw new CompletionException(resolution.error);
+            }
+            return resolution;
+          });
+      });
+  }
+
+  /**
+   * The stage does not fail, the error is kept in the resolution
+   */
+  private CompletableFuture<?> lookupAddresses(DnsName host, int type, List<DnsIp> ips, Resolution resolution) {
+    return this.dnsClient
+      .lookupRecords(host, type)
+      .handle((records, throwable) -> {
+        synchronized (resolution) {
+          if (throwable != null) {
+            Throwable cause = AsyncDnsClientAbs.unwrap(throwable);
+            if (!(cause instanceof DnsNotFoundException) && resolution.error == null) {
+              resolution.error = cause;
+            }
+            return null;
+          }
+          for (Record record : records) {
+            resolution.addTtl(record);
+            InetAddress address = type == Type.A ? ((ARecord) record).getAddress() : ((AAAARecord) record).getAddress();
+            ips.add(DnsIp.createFromInetAddress(address));
+          }
+          return null;
+        }
+      })
+      .toCompletableFuture();
+  }
+
+  /**
+   * @return the candidates by host priority, the ip families of a host interleaved (IPv6 first), without duplicate ip
+   */
+  private static List<DnsDeliveryCandidate> toCandidates(List<Host> hosts) {
+    List<DnsDeliveryCandidate> candidates = new ArrayList<>();
+    Set<DnsIp> seen = new HashSet<>();
+    for (Host host : hosts) {
+      int size = Math.max(host.ipv4.size(), host.ipv6.size());
+      for (int i = 0; i < size; i++) {
+        if (i < host.ipv6.size() && seen.add(host.ipv6.get(i))) {
+          candidates.add(new DnsDeliveryCandidate(host.name, host.ipv6.get(i), host.priority, host.implicitMx));
+        }
+        if (i < host.ipv4.size() && seen.add(host.ipv4.get(i))) {
+          candidates.add(new DnsDeliveryCandidate(host.name, host.ipv4.get(i), host.priority, host.implicitMx));
+        }
+      }
+    }
+    return Collections.unmodifiableList(candidates);
+  }
+
+  /**
+   * @return the number of resolutions answered from the cache
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of resolutions sent to the DNS
+   */
+  public long getResolutionCount() {
+    return resolutions.sum();
+  }
+
+  @SuppressWarnings("unused")
+  public void clear() {
+    synchronized (candidates) {
+      candidates.clear();
+    }
+  }
+
+  /**
+   * A MX host and its addresses (filled by the lookups)
+   */
+  private static class Host {
+
+    private final DnsName name;
+    private final int priority;
+    private final boolean implicitMx;
+    private final List<DnsIp> ipv4 = new ArrayList<>();
+    private final List<DnsIp> ipv6 = new ArrayList<>();
+
+    private Host(DnsName name, int priority, boolean implicitMx) {
+      this.name = name;
+      this.priority = priority;
+      this.implicitMx = implicitMx;
+    }
+
+  }
+
+  /**
+   * The state of a resolution, the lookups update it under its lock
+   */
+  private static class Resolution {
+
+    private List<DnsDeliveryCandidate> candidates = List.of();
+    /**
+     * The minimum TTL of the records used (max value if there is none)
+     */
+    private long ttlMs = Long.MAX_VALUE;
+    /**
+     * The first error (other than not found)
+     */
+    private Throwable error;
+
+    private synchronized void addTtl(Record record) {
+      ttlMs = Math.min(ttlMs, record.getTTL() * 1000);
+    }
+
+  }
+
+  private static class CacheEntry {
+
+    private final CompletableFuture<List<DnsDeliveryCandidate>> candidates = new CompletableFuture<>();
+    private volatile long expiresAt = Long.MAX_VALUE;
+
+  }
+
+  public static class DnsDeliveryResolverBuilder {
+
+    private final XBillAsyncDnsClient dnsClient;
+    private int maxEntries = 10000;
+    private Duration maxTtl = Duration.ofHours(1);
+    private boolean ipv6 = true;
+
+    public DnsDeliveryResolverBuilder(XBillAsyncDnsClient dnsClient) {
+      this.dnsClient = dnsClient;
+    }
+
+    /**
+     * @param maxEntries - the maximum number of domains kept (the least recently used is evicted)
+     */
+    public DnsDeliveryResolverBuilder setMaxEntries(int maxEntries) {
+      if (maxEntries <= 0) {
+        throw new IllegalArgumentException("The max entries should be greater than zero");
+      }
+      this.maxEntries = maxEntries;
+      return this;
+    }
+
+    /**
+     * @param maxTtl - the maximum duration the candidates of a domain are kept (default 1 hour)
+     */
+    public DnsDeliveryResolverBuilder setMaxTtl(Duration maxTtl) {
+      this.maxTtl = maxTtl;
+      return this;
+    }
+
+    /**
+     * @param ipv6 - if false, the AAAA records are not resolved (a host without IPv6 connectivity)
+     */
+    public DnsDeliveryResolverBuilder setIpv6(boolean ipv6) {
+      this.ipv6 = ipv6;
+      return this;
+    }
+
+    public DnsDeliveryResolver build() {
+      return new DnsDeliveryResolver(this);
+    }
+
+  }
+
+}
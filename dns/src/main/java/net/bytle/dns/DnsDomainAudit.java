@@ -0,0 +1,180 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsName;
+
+import java.util.*;
+
+/**
+ * The email authentication audit of a domain (MX, SPF, DMARC, DKIM)
+ * created by {@link DnsDomainAuditor}
+ * <p>
+ * A record that was not found is not an error, it's absent (null or empty).
+ * An error is a lookup that has failed (timeout, server error, ...).
+ */
+public class DnsDomainAudit {
+
+  static final String MX_CHECK = "mx";
+  static final String SPF_CHECK = "spf";
+  static final String DMARC_CHECK = "dmarc";
+  static final String DKIM_CHECK_PREFIX = "dkim:";
+
+  private final DnsName domain;
+  private List<DnsMxRecord> mxRecords = Collections.emptyList();
+  private final Map<DnsName, Set<DnsIp>> mxHostAddresses = new LinkedHashMap<>();
+  private String spf;
+  /**
+   * The include domain and its spf record (null if not found)
+   */
+  private final Map<DnsName, String> spfIncludes = new LinkedHashMap<>();
+  private String dmarc;
+  /**
+   * The selector and its dkim record (null if not found)
+   */
+  private final Map<String, String> dkims = new TreeMap<>();
+  private final Map<String, Exception> errors = new TreeMap<>();
+
+  DnsDomainAudit(DnsName domain) {
+    this.domain = domain;
+  }
+
+  public DnsName getDomain() {
+    return domain;
+  }
+
+  /**
+   * @return the mx records (empty if none)
+   */
+  public synchronized List<DnsMxRecord> getMxRecords() {
+    return mxRecords;
+  }
+
+  /**
+   * @return the ips of the mx hosts (an empty set if the host has no A record)
+   */
+  public synchronized Map<DnsName, Set<DnsIp>> getMxHostAddresses() {
+    return mxHostAddresses;
+  }
+
+  /**
+   * @return the spf record or null if not found
+   */
+  public synchronized String getSpf() {
+    return spf;
+  }
+
+  /**
+   * @return the included domains of the spf record that have no spf record
+   */
+  public synchronized List<DnsName> getMissingSpfIncludes() {
+    List<DnsName> missingIncludes = new ArrayList<>();
+    for (Map.Entry<DnsName, String> include : spfIncludes.entrySet()) {
+      if (include.getValue() == null) {
+        missingIncludes.add(include.getKey());
+      }
+    }
+    return missingIncludes;
+  }
+
+  /**
+   * @return the dmarc record or null if not found
+   */
+  public synchronized String getDmarc() {
+    return dmarc;
+  }
+
+  /**
+   * @param selector - a selector added with {@link DnsName#addExpectedDkim(String, String)}
+   * @return the dkim record or null if not found
+   */
+  public synchronized String getDkim(String selector) {
+    return dkims.get(selector);
+  }
+
+  /**
+   * @param selector - a selector added with {@link DnsName#addExpectedDkim(String, String)}
+   * @return true if the dkim record is the expected one (whitespaces are not significant)
+   */
+  public synchronized boolean isDkimAsExpected(String selector) {
+    String expected = domain.getExpectedDkimValue(selector);
+    String actual = dkims.get(selector);
+    if (expected == null || actual == null) {
+      return false;
+    }
+    return removeWhitespaces(expected).equals(removeWhitespaces(actual));
+  }
+
+  private static String removeWhitespaces(String s) {
+    return s.replaceAll("\\s", "");
+  }
+
+  /**
+   * @return the failed lookups by check (`mx`, `spf`, `dmarc`, `dkim:selector`)
+   */
+  public synchronized Map<String, Exception> getErrors() {
+    return errors;
+  }
+
+  public synchronized boolean hasErrors() {
+    return !errors.isEmpty();
+  }
+
+  /**
+   * @return true if:
+   * * there is no error
+   * * the mx hosts have an ip
+   * * there is an spf record and all its includes exist
+   * * there is a dmarc record
+   * * the expected dkim records are published
+   */
+  public synchronized boolean isValid() {
+    if (!errors.isEmpty() || mxRecords.isEmpty() || spf == null || dmarc == null) {
+      return false;
+    }
+    if (mxHostAddresses.values().stream().anyMatch(Set::isEmpty)) {
+      return false;
+    }
+    if (!getMissingSpfIncludes().isEmpty()) {
+      return false;
+    }
+    for (String selector : domain.getExpectedDkimSelector()) {
+      if (!isDkimAsExpected(selector)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  synchronized void setMxRecords(List<DnsMxRecord> mxRecords) {
+    this.mxRecords = mxRecords;
+  }
+
+  synchronized void putMxHostAddresses(DnsName host, Set<DnsIp> addresses) {
+    this.mxHostAddresses.put(host, addresses);
+  }
+
+  synchronized void setSpf(String spf) {
+    this.spf = spf;
+  }
+
+  synchronized void putSpfInclude(DnsName include, String spf) {
+    this.spfIncludes.put(include, spf);
+  }
+
+  synchronized void setDmarc(String dmarc) {
+    this.dmarc = dmarc;
+  }
+
+  synchronized void putDkim(String selector, String dkim) {
+    this.dkims.put(selector, dkim);
+  }
+
+  synchronized void addError(String check, Exception exception) {
+    this.errors.put(check, exception);
+  }
+
+  @Override
+  public String toString() {
+    return domain + (isValid() ? " (valid)" : " (not valid)");
+  }
+
+}
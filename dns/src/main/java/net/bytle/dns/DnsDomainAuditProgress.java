@@ -0,0 +1,70 @@
+package net.bytle.dns;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the progress of a {@link DnsDomainAuditor} run
+ */
+public class DnsDomainAuditProgress {
+
+  private final long started;
+  private final long completed;
+  private final long notValid;
+  private final long sharedAnswerHits;
+  private final Duration elapsed;
+
+  DnsDomainAuditProgress(long started, long completed, long notValid, long sharedAnswerHits, Duration elapsed) {
+    this.started = started;
+    this.completed = completed;
+    this.notValid = notValid;
+    this.sharedAnswerHits = sharedAnswerHits;
+    this.elapsed = elapsed;
+  }
+
+  /**
+   * @return the number of domains taken from the input
+   */
+  public long getStarted() {
+    return started;
+  }
+
+  public long getCompleted() {
+    return completed;
+  }
+
+  public long getInFlight() {
+    return started - completed;
+  }
+
+  /**
+   * @return the number of completed audits that are not valid (see {@link DnsDomainAudit#isValid()})
+   */
+  public long getNotValid() {
+    return notValid;
+  }
+
+  /**
+   * @return the number of answers (mx host ips, spf includes) that were taken from another domain of the run
+   */
+  public long getSharedAnswerHits() {
+    return sharedAnswerHits;
+  }
+
+  public Duration getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   * @return the number of completed audits by second
+   */
+  public double getRate() {
+    long millis = elapsed.toMillis();
+    return millis == 0 ? 0 : completed * 1000.0 / millis;
+  }
+
+  @Override
+  public String toString() {
+    return "DnsDomainAuditProgress{completed=" + completed + ", inFlight=" + getInFlight() + ", notValid=" + notValid + ", sharedAnswerHits=" + sharedAnswerHits + ", elapsed=" + elapsed + "}";
+  }
+
+}
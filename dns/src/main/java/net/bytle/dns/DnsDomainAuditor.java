@@ -0,0 +1,329 @@
+package net.bytle.dns;
+
+import net.bytle.exception.CastException;
+import net.bytle.type.DnsName;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A bulk email authentication audit (MX, SPF, DMARC, DKIM) of a list of domains
+ * <p>
+ * * The domains are taken from the input only when there is a free slot (bounded concurrency),
+ * a list of 100k domains is therefore never loaded in memory at once
+ * * The audits are emitted as they complete (not in the input order)
+ * * The answers shared by the domains of a run (mx host ips, spf includes of the common providers)
+ * are resolved once by run
+ * * The DKIM selectors are the expected ones added with {@link DnsName#addExpectedDkim(String, String)}
+ * <p>
+ * Example:
+ * <pre>{@code
+ * DnsDomainAuditor auditor = DnsDomainAuditor.builder(XBillAsyncDnsClient.createDefault())
+ *   .setMaxInFlight(64)
+ *   .setProgressListener(progress -> System.out.println(progress))
+ *   .build();
+ * auditor.audit(domains, audit -> System.out.println(audit)).toCompletableFuture().join();
+ * }</pre>
+ */
+public class DnsDomainAuditor {
+
+  private final AsyncDnsClient dnsClient;
+  private final int maxInFlight;
+  private final Consumer<DnsDomainAuditProgress> progressListener;
+  private final boolean checkMxHosts;
+  private final boolean checkSpfIncludes;
+
+  private DnsDomainAuditor(DnsDomainAuditorBuilder builder) {
+    this.dnsClient = builder.dnsClient;
+    this.maxInFlight = builder.maxInFlight;
+    this.progressListener = builder.progressListener;
+    this.checkMxHosts = builder.checkMxHosts;
+    this.checkSpfIncludes = builder.checkSpfIncludes;
+  }
+
+  /**
+   * @param dnsClient - the client that performs the queries
+   */
+  public static DnsDomainAuditorBuilder builder(AsyncDnsClient dnsClient) {
+    return new DnsDomainAuditorBuilder(dnsClient);
+  }
+
+  /**
+   * Callback mode: the slow consumer slows down the run (backpressure)
+   *
+   * @param domains        - the domains to audit
+   * @param auditsConsumer - the consumer of the audits (called concurrently, as they complete)
+   * @return the final progress when all domains have been audited
+   */
+  public CompletionStage<DnsDomainAuditProgress> audit(Iterable<DnsName> domains, Consumer<DnsDomainAudit> auditsConsumer) {
+    Run run = new Run(domains.iterator());
+    return run.run(auditsConsumer).thenApply(v -> run.getProgress());
+  }
+
+  /**
+   * Stream mode: the domains are taken from the input stream when the audits are consumed (backpressure)
+   * <p>
+   * At most `max in flight` audits are running or waiting to be consumed.
+   *
+   * @param domains - the domains to audit
+   * @return the audits in completion order
+   */
+  public Stream<DnsDomainAudit> audit(Stream<DnsName> domains) {
+    return new Run(domains.iterator())
+      .stream()
+      .onClose(domains::close);
+  }
+
+  /**
+   * The state of a run
+   */
+  private class Run extends DnsBulkRun<DnsName, DnsDomainAudit> {
+
+    /**
+     * The answers shared by the domains of the run
+     */
+    private final ConcurrentHashMap<DnsName, CompletionStage<Set<DnsIp>>> hostAddresses = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<DnsName, CompletionStage<String>> spfRecords = new ConcurrentHashMap<>();
+    private final LongAdder sharedAnswerHits = new LongAdder();
+    private final LongAdder notValid = new LongAdder();
+
+    private Run(Iterator<DnsName> domains) {
+      super(domains, maxInFlight);
+    }
+
+    @Override
+    CompletionStage<DnsDomainAudit> process(DnsName domain) {
+      return auditDomain(domain, this);
+    }
+
+    @Override
+    void onCompleted(DnsDomainAudit audit, long started, long completed) {
+      if (!audit.isValid()) {
+        notValid.increment();
+      }
+      if (progressListener != null) {
+        progressListener.accept(getProgress(started, completed));
+      }
+    }
+
+    private DnsDomainAuditProgress getProgress() {
+      long started;
+      long completed;
+      synchronized (this) {
+        started = getStarted();
+        completed = getCompleted();
+      }
+      return getProgress(started, completed);
+    }
+
+    private DnsDomainAuditProgress getProgress(long started, long completed) {
+      return new DnsDomainAuditProgress(started, completed, notValid.sum(), sharedAnswerHits.sum(), getElapsed());
+    }
+
+    /**
+     * @return the answer of the run or the answer computed and shared
+     */
+    private <T> CompletionStage<T> shared(ConcurrentHashMap<DnsName, CompletionStage<T>> answers, DnsName name, Function<DnsName, CompletionStage<T>> lookup) {
+      CompletionStage<T> answer = answers.get(name);
+      if (answer != null) {
+        sharedAnswerHits.increment();
+        return answer;
+      }
+      CompletableFuture<T> newAnswer = new CompletableFuture<>();
+      answer = answers.putIfAbsent(name, newAnswer);
+      if (answer != null) {
+        sharedAnswerHits.increment();
+        return answer;
+      }
+      lookup.apply(name).whenComplete((value, throwable) -> {
+        if (throwable != null) {
+          newAnswer.completeExceptionally(throwable);
+        } else {
+          newAnswer.complete(value);
+        }
+      });
+      return newAnswer;
+    }
+
+  }
+
+  /**
+   * The stage never fails, the errors are in the audit
+   */
+  private CompletionStage<DnsDomainAudit> auditDomain(DnsName domain, Run run) {
+
+    DnsDomainAudit audit = new DnsDomainAudit(domain);
+    List<CompletableFuture<?>> checks = new ArrayList<>();
+
+    checks.add(this.dnsClient
+      .resolveMx(domain)
+      .thenCompose(mxRecords -> {
+        audit.setMxRecords(mxRecords);
+        if (!this.checkMxHosts) {
+          return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<?>> hostChecks = new ArrayList<>();
+        for (DnsMxRecord mxRecord : mxRecords) {
+          DnsName host = mxRecord.getTarget();
+          hostChecks.add(run.shared(run.hostAddresses, host, this.dnsClient::resolveA)
+            .handle((ips, throwable) -> {
+              audit.putMxHostAddresses(host, throwable == null ? ips : Collections.emptySet());
+              return handleError(audit, DnsDomainAudit.MX_CHECK, throwable);
+            })
+            .toCompletableFuture());
+        }
+        return CompletableFuture.allOf(hostChecks.toArray(new CompletableFuture<?>[0]));
+      })
+      .handle((v, throwable) -> handleError(audit, DnsDomainAudit.MX_CHECK, throwable))
+      .toCompletableFuture());
+
+    checks.add(this.dnsClient
+      .lookupSpf(domain)
+      .thenCompose(spf -> {
+        audit.setSpf(spf);
+        if (!this.checkSpfIncludes) {
+          return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<?>> includeChecks = new ArrayList<>();
+        for (DnsName include : getSpfIncludes(spf)) {
+          includeChecks.add(run.shared(run.spfRecords, include, this.dnsClient::lookupSpf)
+            .handle((includeSpf, throwable) -> {
+              audit.putSpfInclude(include, throwable == null ? includeSpf : null);
+              return handleError(audit, DnsDomainAudit.SPF_CHECK, throwable);
+            })
+            .toCompletableFuture());
+        }
+        return CompletableFuture.allOf(includeChecks.toArray(new CompletableFuture<?>[0]));
+      })
+      .handle((v, throwable) -> handleError(audit, DnsDomainAudit.SPF_CHECK, throwable))
+      .toCompletableFuture());
+
+    checks.add(this.dnsClient
+      .lookupDmarc(domain)
+      .handle((dmarc, throwable) -> {
+        audit.setDmarc(dmarc);
+        return handleError(audit, DnsDomainAudit.DMARC_CHECK, throwable);
+      })
+      .toCompletableFuture());
+
+    for (String selector : domain.getExpectedDkimSelector()) {
+      checks.add(this.dnsClient
+        .lookupDkimRecord(domain, selector)
+        .handle((dkim, throwable) -> {
+          audit.putDkim(selector, dkim);
+          return handleError(audit, DnsDomainAudit.DKIM_CHECK_PREFIX + selector, throwable);
+        })
+        .toCompletableFuture());
+    }
+
+    return CompletableFuture
+      .allOf(checks.toArray(new CompletableFuture<?>[0]))
+      .handle((v, throwable) -> audit);
+
+  }
+
+  /**
+   * A not found is an absent record, not an error
+   */
+  private static Void handleError(DnsDomainAudit audit, String check, Throwable throwable) {
+    if (throwable == null) {
+      return null;
+    }
+    Throwable cause = AsyncDnsClientAbs.unwrap(throwable);
+    if (cause instanceof DnsNotFoundException) {
+      return null;
+    }
+    if (cause instanceof Exception) {
+      audit.addError(check, (Exception) cause);
+    } else {
+      audit.addError(check, new DnsException(cause.getMessage(), cause));
+    }
+    return null;
+  }
+
+  /**
+   * @param spf - an spf record
+   * @return the domains of the `include` mechanisms and of the `redirect` modifier (macros are skipped)
+   */
+  static List<DnsName> getSpfIncludes(String spf) {
+    List<DnsName> includes = new ArrayList<>();
+    for (String term : spf.trim().split("\\s+")) {
+      String lowerTerm = term.toLowerCase();
+      String domain;
+      if (lowerTerm.matches("^[+\\-~?]?include:.*")) {
+        domain = term.substring(lowerTerm.indexOf(':') + 1);
+      } else if (lowerTerm.startsWith("redirect=")) {
+        domain = term.substring("redirect=".length());
+      } else {
+        continue;
+      }
+      if (domain.contains("%")) {
+        continue;
+      }
+      try {
+        includes.add(DnsName.create(domain));
+      } catch (CastException e) {
+        // not a valid domain, the include is then missing
+      }
+    }
+    return includes;
+  }
+
+  public static class DnsDomainAuditorBuilder {
+
+    private final AsyncDnsClient dnsClient;
+    private int maxInFlight = 32;
+    private Consumer<DnsDomainAuditProgress> progressListener;
+    private boolean checkMxHosts = true;
+    private boolean checkSpfIncludes = true;
+
+    public DnsDomainAuditorBuilder(AsyncDnsClient dnsClient) {
+      this.dnsClient = dnsClient;
+    }
+
+    /**
+     * @param maxInFlight - the maximum number of domains audited at the same time
+     */
+    public DnsDomainAuditorBuilder setMaxInFlight(int maxInFlight) {
+      if (maxInFlight <= 0) {
+        throw new IllegalArgumentException("The max in flight should be greater than zero");
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * @param progressListener - called after each completed audit (concurrently)
+     */
+    public DnsDomainAuditorBuilder setProgressListener(Consumer<DnsDomainAuditProgress> progressListener) {
+      this.progressListener = progressListener;
+      return this;
+    }
+
+    /**
+     * @param checkMxHosts - if true (default), the ips of the mx hosts are resolved
+     */
+    public DnsDomainAuditorBuilder setCheckMxHosts(boolean checkMxHosts) {
+      this.checkMxHosts = checkMxHosts;
+      return this;
+    }
+
+    /**
+     * @param checkSpfIncludes - if true (default), the spf records of the includes are resolved
+     */
+    public DnsDomainAuditorBuilder setCheckSpfIncludes(boolean checkSpfIncludes) {
+      this.checkSpfIncludes = checkSpfIncludes;
+      return this;
+    }
+
+    public DnsDomainAuditor build() {
+      return new DnsDomainAuditor(this);
+    }
+
+  }
+
+}
@@ -5,32 +5,87 @@ import org.xbill.DNS.Address;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.Objects;
 import java.util.Random;
 
-public class DnsIp {
+/**
+ * An ip address
+ * <p>
+ * The address is stored as primitive (an int for an IPv4, two longs for an IPv6)
+ * so that equality, hashing and comparison do not allocate.
+ * The {@link InetAddress} is created on demand.
+ * <p>
+ * The IPv6 scope (ie `%eth0`) is not part of the identity.
+ */
+public class DnsIp implements Comparable<DnsIp> {
 
-  private final InetAddress address;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private final int family;
+  /**
+   * IPv4: the address in the low 32 bits of {@link #low}
+   * IPv6: the first 64 bits in {@link #high}, the last 64 bits in {@link #low}
+   */
+  private final long high;
+  private final long low;
+  /**
+   * Lazy, or the address given at creation (it may have a host name)
+   */
+  private volatile InetAddress address;
 
   public DnsIp(InetAddress inetAddress) {
 
+    this(inetAddress.getAddress());
     this.address = inetAddress;
 
   }
 
+  /**
+   * @param bytes - the network order bytes (4 for an IPv4, 16 for an IPv6)
+   */
+  private DnsIp(byte[] bytes) {
+    switch (bytes.length) {
+      case 4:
+        this.family = Address.IPv4;
+        this.high = 0;
+        this.low = toInt(bytes, 0) & 0xFFFFFFFFL;
+        break;
+      case 16:
+        this.family = Address.IPv6;
+        this.high = toLong(bytes, 0);
+        this.low = toLong(bytes, 8);
+        break;
+      default:
+        throw new InternalException("An ip address has 4 or 16 bytes, not " + bytes.length);
+    }
+  }
+
+  private DnsIp(int ipv4) {
+    this.family = Address.IPv4;
+    this.high = 0;
+    this.low = ipv4 & 0xFFFFFFFFL;
+  }
+
   public static DnsIp createFromInetAddress(InetAddress inetAddress) {
     return new DnsIp(inetAddress);
   }
 
+  /**
+   * @param ipv4 - the IPv4 address as int (ie `0x7F000001` for `127.0.0.1`)
+   */
+  public static DnsIp createFromIpv4Int(int ipv4) {
+    return new DnsIp(ipv4);
+  }
+
   @SuppressWarnings("unused")
   public static DnsIp createFromString(String ipAddress) throws DnsException {
-    InetAddress inetAddress;
-    try {
-      inetAddress = Address.getByAddress(ipAddress);
-    } catch (UnknownHostException e) {
-      throw new DnsException("Invalid Address", e);
+    byte[] bytes = Address.toByteArray(ipAddress, Address.IPv4);
+    if (bytes == null) {
+      bytes = Address.toByteArray(ipAddress, Address.IPv6);
     }
-    return createFromInetAddress(inetAddress);
+    if (bytes == null) {
+      throw new DnsException("Invalid Address (" + ipAddress + ")");
+    }
+    return createFromBytes(bytes);
   }
 
   public static DnsIp createRandomIpv4() {
@@ -48,54 +103,150 @@ public class DnsIp {
     int thirdOctet = random.nextInt(256);
     int fourthOctet = random.nextInt(256);
 
-    String ipv4 = String.format("%d.%d.%d.%d", firstOctet, secondOctet, thirdOctet, fourthOctet);
-    try {
-      return createFromIpv4String(ipv4);
-    } catch (DnsException e) {
-      throw new InternalException("The IPv4 is generated by us, it should work", e);
-    }
+    return new DnsIp(firstOctet << 24 | secondOctet << 16 | thirdOctet << 8 | fourthOctet);
 
   }
 
   public static DnsIp createFromIpv4String(String ipv4) throws DnsException {
-    InetAddress inetAddress;
-    try {
-      inetAddress = InetAddress.getByAddress(Address.toByteArray(ipv4, Address.IPv4));
-    } catch (UnknownHostException e) {
-      throw new DnsException("Bad Ip v4 (" + ipv4 + ")", e);
+    byte[] bytes = Address.toByteArray(ipv4, Address.IPv4);
+    if (bytes == null) {
+      throw new DnsException("Bad Ip v4 (" + ipv4 + ")");
     }
-    return new DnsIp(inetAddress);
+    return new DnsIp(bytes);
   }
 
   public static DnsIp createFromIpv6String(String ipv6) throws DnsException {
-    InetAddress inetAddress;
-    try {
-      inetAddress = InetAddress.getByAddress(Address.toByteArray(ipv6, Address.IPv6));
-    } catch (UnknownHostException e) {
-      throw new DnsException("Bad Ip v6 (" + ipv6 + "). Message: " + e.getMessage(), e);
+    byte[] bytes = Address.toByteArray(ipv6, Address.IPv6);
+    if (bytes == null) {
+      throw new DnsException("Bad Ip v6 (" + ipv6 + ")");
     }
-    return new DnsIp(inetAddress);
+    return createFromBytes(bytes);
+  }
+
+  /**
+   * An IPv4-mapped IPv6 address (`::ffff:1.2.3.4`) is an IPv4 as in {@link InetAddress#getByAddress(byte[])}
+   */
+  private static DnsIp createFromBytes(byte[] bytes) {
+    if (bytes.length == 16 && toLong(bytes, 0) == 0 && toInt(bytes, 8) == 0x0000FFFF) {
+      return new DnsIp(toInt(bytes, 12));
+    }
+    return new DnsIp(bytes);
+  }
+
+  private static int toInt(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) << 24
+      | (bytes[offset + 1] & 0xFF) << 16
+      | (bytes[offset + 2] & 0xFF) << 8
+      | (bytes[offset + 3] & 0xFF);
+  }
+
+  private static long toLong(byte[] bytes, int offset) {
+    return (toInt(bytes, offset) & 0xFFFFFFFFL) << 32 | (toInt(bytes, offset + 4) & 0xFFFFFFFFL);
   }
 
 
   public InetAddress getInetAddress() {
-    return this.address;
+    InetAddress inetAddress = this.address;
+    if (inetAddress == null) {
+      try {
+        inetAddress = InetAddress.getByAddress(toBytes());
+      } catch (UnknownHostException e) {
+        throw new InternalException("The address has a valid length, it should not throw", e);
+      }
+      this.address = inetAddress;
+    }
+    return inetAddress;
+  }
+
+  /**
+   * @return the address in network order (4 or 16 bytes)
+   */
+  public byte[] toBytes() {
+    if (family == Address.IPv4) {
+      int ipv4 = getIpv4Int();
+      return new byte[]{(byte) (ipv4 >>> 24), (byte) (ipv4 >>> 16), (byte) (ipv4 >>> 8), (byte) ipv4};
+    }
+    byte[] bytes = new byte[16];
+    for (int i = 0; i < 8; i++) {
+      bytes[i] = (byte) (high >>> (56 - 8 * i));
+      bytes[i + 8] = (byte) (low >>> (56 - 8 * i));
+    }
+    return bytes;
+  }
+
+  public boolean isIpv4() {
+    return family == Address.IPv4;
+  }
+
+  /**
+   * @return the IPv4 address as int (ie `0x7F000001` for `127.0.0.1`)
+   * @throws IllegalStateException if this is an IPv6
+   */
+  public int getIpv4Int() {
+    if (family != Address.IPv4) {
+      throw new IllegalStateException("The address (" + this + ") is not an IPv4");
+    }
+    return (int) low;
+  }
+
+  /**
+   * @return the first 64 bits of an IPv6 (0 for an IPv4)
+   */
+  long getHigh() {
+    return high;
+  }
+
+  /**
+   * @return the last 64 bits of an IPv6 or the unsigned IPv4
+   */
+  long getLow() {
+    return low;
   }
 
   @Override
   public String toString() {
-    return address.getHostAddress();
+    return getAddress();
   }
 
 
   @SuppressWarnings("unused")
   public int familyOf() {
-    return Address.familyOf(this.address);
+    return family;
   }
 
 
+  /**
+   * @return the text representation (the format of {@link InetAddress#getHostAddress()} without any IPv6 scope)
+   */
   public String getAddress() {
-    return this.address.getHostAddress();
+    if (family == Address.IPv4) {
+      int ipv4 = getIpv4Int();
+      StringBuilder sb = new StringBuilder(15);
+      sb.append(ipv4 >>> 24).append('.')
+        .append((ipv4 >>> 16) & 0xFF).append('.')
+        .append((ipv4 >>> 8) & 0xFF).append('.')
+        .append(ipv4 & 0xFF);
+      return sb.toString();
+    }
+    StringBuilder sb = new StringBuilder(39);
+    for (int i = 0; i < 8; i++) {
+      long half = i < 4 ? high : low;
+      int group = (int) (half >>> (48 - 16 * (i % 4))) & 0xFFFF;
+      if (i > 0) {
+        sb.append(':');
+      }
+      // hexadecimal without leading zero
+      boolean leading = true;
+      for (int shift = 12; shift >= 0; shift -= 4) {
+        int digit = (group >>> shift) & 0xF;
+        if (leading && digit == 0 && shift > 0) {
+          continue;
+        }
+        leading = false;
+        sb.append(HEX_DIGITS[digit]);
+      }
+    }
+    return sb.toString();
   }
 
   @Override
@@ -103,12 +254,27 @@ public class DnsIp {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
     DnsIp dnsIp = (DnsIp) o;
-    return Objects.equals(address.getHostAddress(), dnsIp.address.getHostAddress());
+    return family == dnsIp.family && high == dnsIp.high && low == dnsIp.low;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(address.getHostAddress());
+    return 31 * Long.hashCode(high) + Long.hashCode(low);
+  }
+
+  /**
+   * The IPv4 are before the IPv6, then in numerical order
+   */
+  @Override
+  public int compareTo(DnsIp o) {
+    if (family != o.family) {
+      return family == Address.IPv4 ? -1 : 1;
+    }
+    int compare = Long.compareUnsigned(high, o.high);
+    if (compare != 0) {
+      return compare;
+    }
+    return Long.compareUnsigned(low, o.low);
   }
 
 
@@ -0,0 +1,83 @@
+package net.bytle.dns;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * A point in time copy of a latency histogram and its outcome counters (see {@link DnsMetrics})
+ * <p>
+ * The percentiles are the upper bound of the histogram bucket (25% precision).
+ */
+public class DnsLatencySnapshot {
+
+  private final long[] bucketCounts;
+  private final Map<DnsOutcome, Long> outcomeCounts;
+  private final long count;
+  private final long totalNanos;
+  private final long maxNanos;
+
+  DnsLatencySnapshot(long[] bucketCounts, Map<DnsOutcome, Long> outcomeCounts, long totalNanos, long maxNanos) {
+    this.bucketCounts = bucketCounts;
+    this.outcomeCounts = outcomeCounts;
+    long count = 0;
+    for (long bucketCount : bucketCounts) {
+      count += bucketCount;
+    }
+    this.count = count;
+    this.totalNanos = totalNanos;
+    this.maxNanos = maxNanos;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getCount(DnsOutcome outcome) {
+    return outcomeCounts.get(outcome);
+  }
+
+  public Map<DnsOutcome, Long> getOutcomeCounts() {
+    return outcomeCounts;
+  }
+
+  public Duration getMean() {
+    return count == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos / count);
+  }
+
+  public Duration getMax() {
+    return Duration.ofNanos(maxNanos);
+  }
+
+  /**
+   * @param percentile - the percentile between 0 and 1 (ie 0.99)
+   * @return the latency under which the percentile of the queries has completed
+   */
+  public Duration getPercentile(double percentile) {
+    if (percentile < 0 || percentile > 1) {
+      throw new IllegalArgumentException("The percentile should be between 0 and 1");
+    }
+    if (count == 0) {
+      return Duration.ZERO;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile * count));
+    long cumulated = 0;
+    for (int i = 0; i < bucketCounts.length; i++) {
+      cumulated += bucketCounts[i];
+      if (cumulated >= rank) {
+        // the bucket bound is never above the max seen
+        return Duration.ofNanos(Math.min(DnsMetrics.Series.getBucketUpperBound(i), maxNanos));
+      }
+    }
+    return getMax();
+  }
+
+  @Override
+  public String toString() {
+    return "count: " + count
+      + ", p50: " + getPercentile(0.5).toMillis() + "ms"
+      + ", p99: " + getPercentile(0.99).toMillis() + "ms"
+      + ", max: " + getMax().toMillis() + "ms"
+      + ", outcomes: " + outcomeCounts;
+  }
+
+}
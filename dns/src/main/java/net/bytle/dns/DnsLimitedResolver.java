@@ -0,0 +1,88 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.*;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A resolver whose queries in flight are bounded by an adaptive limiter
+ * <p>
+ * A timeout or a REFUSED answer is an overload of the resolver.
+ * A SERVFAIL is not: a recursive resolver returns it for a lame or broken delegation,
+ * that are common in a bulk audit and are not a sign of load.
+ */
+class DnsLimitedResolver implements Resolver {
+
+  private final Resolver resolver;
+  private final DnsAdaptiveLimiter limiter;
+
+  DnsLimitedResolver(Resolver resolver, DnsAdaptiveLimiter limiter) {
+    this.resolver = resolver;
+    this.limiter = limiter;
+  }
+
+  @Override
+  public CompletionStage<Message> sendAsync(Message query) {
+    return sendAsync(query, ForkJoinPool.commonPool());
+  }
+
+  @Override
+  public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+    return limiter.submit(() -> resolver.sendAsync(query, executor), DnsLimitedResolver::isOverload);
+  }
+
+  private static boolean isOverload(Message response, Throwable throwable) {
+    if (throwable != null) {
+      Throwable cause = AsyncDnsClientAbs.unwrap(throwable);
+      return cause instanceof SocketTimeoutException || cause instanceof TimeoutException;
+    }
+    return response.getRcode() == Rcode.REFUSED;
+  }
+
+  @Override
+  public void setPort(int port) {
+    resolver.setPort(port);
+  }
+
+  @Override
+  public void setTCP(boolean flag) {
+    resolver.setTCP(flag);
+  }
+
+  @Override
+  public void setIgnoreTruncation(boolean flag) {
+    resolver.setIgnoreTruncation(flag);
+  }
+
+  @Override
+  public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+    resolver.setEDNS(version, payloadSize, flags, options);
+  }
+
+  @Override
+  public void setTSIGKey(TSIG key) {
+    resolver.setTSIGKey(key);
+  }
+
+  @Override
+  public void setTimeout(Duration timeout) {
+    resolver.setTimeout(timeout);
+  }
+
+  @Override
+  public Duration getTimeout() {
+    return resolver.getTimeout();
+  }
+
+  @Override
+  public String toString() {
+    return resolver.toString();
+  }
+
+}
@@ -0,0 +1,79 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A resolver that records the latency and the outcome of its queries by record type
+ */
+class DnsMeteredResolver implements Resolver {
+
+  private final Resolver resolver;
+  private final ConcurrentHashMap<Integer, DnsMetrics.Series> seriesByType;
+
+  DnsMeteredResolver(Resolver resolver, ConcurrentHashMap<Integer, DnsMetrics.Series> seriesByType) {
+    this.resolver = resolver;
+    this.seriesByType = seriesByType;
+  }
+
+  @Override
+  public CompletionStage<Message> sendAsync(Message query) {
+    return sendAsync(query, ForkJoinPool.commonPool());
+  }
+
+  @Override
+  public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+    DnsMetrics.Series series = seriesByType.computeIfAbsent(query.getQuestion().getType(), t -> new DnsMetrics.Series());
+    long start = System.nanoTime();
+    return resolver
+      .sendAsync(query, executor)
+      .whenComplete((response, throwable) -> series.record(System.nanoTime() - start, DnsOutcome.ofResponse(response, throwable)));
+  }
+
+  @Override
+  public void setPort(int port) {
+    resolver.setPort(port);
+  }
+
+  @Override
+  public void setTCP(boolean flag) {
+    resolver.setTCP(flag);
+  }
+
+  @Override
+  public void setIgnoreTruncation(boolean flag) {
+    resolver.setIgnoreTruncation(flag);
+  }
+
+  @Override
+  public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+    resolver.setEDNS(version, payloadSize, flags, options);
+  }
+
+  @Override
+  public void setTSIGKey(TSIG key) {
+    resolver.setTSIGKey(key);
+  }
+
+  @Override
+  public void setTimeout(Duration timeout) {
+    resolver.setTimeout(timeout);
+  }
+
+  @Override
+  public Duration getTimeout() {
+    return resolver.getTimeout();
+  }
+
+  @Override
+  public String toString() {
+    return resolver.toString();
+  }
+
+}
@@ -0,0 +1,164 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.Type;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a DNS client
+ * <p>
+ * * the lookups (cache misses) by record type: latency histogram and outcome counters
+ * * the queries sent by resolver and record type: latency histogram and outcome counters
+ * * the lookups in flight and the cache hits
+ * <p>
+ * The recording is lock free (a few atomic increments),
+ * the export is a {@link DnsMetricsSnapshot} (no metrics library dependency).
+ * <p>
+ * Example:
+ * <pre>{@code
+ * DnsMetrics metrics = new DnsMetrics();
+ * XBillAsyncDnsClient client = XBillAsyncDnsClient.builder()
+ *   .setMetrics(metrics)
+ *   .buildAsync();
+ * System.out.println(metrics.getSnapshot().getLookups().get("MX").getPercentile(0.99));
+ * }</pre>
+ * The queries of the resolvers of a {@link DnsResolverPool} are recorded
+ * if the metrics are also set on the pool (see {@link DnsResolverPool.DnsResolverPoolBuilder#setMetrics(DnsMetrics)}).
+ */
+public class DnsMetrics {
+
+  private final ConcurrentHashMap<Integer, Series> lookups = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, ConcurrentHashMap<Integer, Series>> resolvers = new ConcurrentHashMap<>();
+  private final LongAdder inFlight = new LongAdder();
+  private final LongAdder cacheHits = new LongAdder();
+
+  void lookupStarted() {
+    inFlight.increment();
+  }
+
+  void lookupCompleted(int type, long latencyNanos, DnsOutcome outcome) {
+    inFlight.decrement();
+    lookups.computeIfAbsent(type, t -> new Series()).record(latencyNanos, outcome);
+  }
+
+  void cacheHit() {
+    cacheHits.increment();
+  }
+
+  /**
+   * @return the series of the queries of a resolver (by record type)
+   */
+  ConcurrentHashMap<Integer, Series> getResolverSeries(String resolverName) {
+    return resolvers.computeIfAbsent(resolverName, r -> new ConcurrentHashMap<>());
+  }
+
+  public DnsMetricsSnapshot getSnapshot() {
+    Map<String, Map<String, DnsLatencySnapshot>> resolverSnapshots = new TreeMap<>();
+    for (Map.Entry<String, ConcurrentHashMap<Integer, Series>> entry : resolvers.entrySet()) {
+      resolverSnapshots.put(entry.getKey(), toSnapshots(entry.getValue()));
+    }
+    return new DnsMetricsSnapshot(inFlight.sum(), cacheHits.sum(), toSnapshots(lookups), resolverSnapshots);
+  }
+
+  private static Map<String, DnsLatencySnapshot> toSnapshots(Map<Integer, Series> seriesByType) {
+    Map<String, DnsLatencySnapshot> snapshots = new LinkedHashMap<>();
+    new TreeMap<>(seriesByType).forEach((type, series) -> snapshots.put(Type.string(type), series.getSnapshot()));
+    return snapshots;
+  }
+
+  /**
+   * A latency histogram and outcome counters
+   * <p>
+   * The histogram buckets are log-linear: 4 buckets by power of two (25% precision)
+   * from 1 microsecond to 2 minutes.
+   */
+  static class Series {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * The first power of two (1024ns)
+     */
+    private static final int MIN_EXPONENT = 10;
+    /**
+     * The last power of two (2^37ns, 137s)
+     */
+    private static final int MAX_EXPONENT = 37;
+    /**
+     * The underflow bucket, the sub buckets of each power of two and the overflow bucket
+     */
+    static final int BUCKET_COUNT = (MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKET_COUNT + 2;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder[] outcomes = new LongAdder[DnsOutcome.values().length];
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    Series() {
+      for (int i = 0; i < outcomes.length; i++) {
+        outcomes[i] = new LongAdder();
+      }
+    }
+
+    void record(long latencyNanos, DnsOutcome outcome) {
+      buckets.incrementAndGet(getBucketIndex(latencyNanos));
+      outcomes[outcome.ordinal()].increment();
+      totalNanos.add(latencyNanos);
+      long max = maxNanos.get();
+      while (latencyNanos > max && !maxNanos.compareAndSet(max, latencyNanos)) {
+        max = maxNanos.get();
+      }
+    }
+
+    /**
+     * @return the bucket: 0 below 1 microsecond, then the power of two and the 2 bits that follow the leading bit,
+     * the last one above the last power of two
+     */
+    static int getBucketIndex(long latencyNanos) {
+      if (latencyNanos < 1L << MIN_EXPONENT) {
+        return 0;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(latencyNanos);
+      if (exponent >= MAX_EXPONENT) {
+        return BUCKET_COUNT - 1;
+      }
+      int subBucket = (int) (latencyNanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+      return (exponent - MIN_EXPONENT) * SUB_BUCKET_COUNT + subBucket + 1;
+    }
+
+    /**
+     * @return the exclusive upper bound of the latencies of the bucket
+     */
+    static long getBucketUpperBound(int index) {
+      if (index == 0) {
+        return 1L << MIN_EXPONENT;
+      }
+      if (index == BUCKET_COUNT - 1) {
+        return Long.MAX_VALUE;
+      }
+      int exponent = (index - 1) / SUB_BUCKET_COUNT + MIN_EXPONENT;
+      int subBucket = (index - 1) % SUB_BUCKET_COUNT;
+      return (long) (SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    DnsLatencySnapshot getSnapshot() {
+      long[] bucketCounts = new long[BUCKET_COUNT];
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        bucketCounts[i] = buckets.get(i);
+      }
+      Map<DnsOutcome, Long> outcomeCounts = new LinkedHashMap<>();
+      for (DnsOutcome outcome : DnsOutcome.values()) {
+        outcomeCounts.put(outcome, outcomes[outcome.ordinal()].sum());
+      }
+      return new DnsLatencySnapshot(bucketCounts, outcomeCounts, totalNanos.sum(), maxNanos.get());
+    }
+
+  }
+
+}
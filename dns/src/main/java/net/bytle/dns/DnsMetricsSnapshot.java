@@ -0,0 +1,61 @@
+package net.bytle.dns;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A point in time copy of the {@link DnsMetrics} of a client
+ */
+public class DnsMetricsSnapshot {
+
+  private final long inFlight;
+  private final long cacheHitCount;
+  private final Map<String, DnsLatencySnapshot> lookups;
+  private final Map<String, Map<String, DnsLatencySnapshot>> resolvers;
+
+  DnsMetricsSnapshot(long inFlight, long cacheHitCount, Map<String, DnsLatencySnapshot> lookups, Map<String, Map<String, DnsLatencySnapshot>> resolvers) {
+    this.inFlight = inFlight;
+    this.cacheHitCount = cacheHitCount;
+    this.lookups = lookups;
+    this.resolvers = resolvers;
+  }
+
+  /**
+   * @return the number of lookups sent and not yet answered
+   */
+  public long getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * @return the number of lookups answered from the cache (they are not in the lookups)
+   */
+  public long getCacheHitCount() {
+    return cacheHitCount;
+  }
+
+  /**
+   * @return the lookups by record type (ie `MX`)
+   */
+  public Map<String, DnsLatencySnapshot> getLookups() {
+    return Collections.unmodifiableMap(lookups);
+  }
+
+  /**
+   * @return the queries by resolver name (see {@link DnsResolver#getName(org.xbill.DNS.Resolver)}) and record type
+   */
+  public Map<String, Map<String, DnsLatencySnapshot>> getResolvers() {
+    return Collections.unmodifiableMap(resolvers);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("in flight: ").append(inFlight).append(", cache hits: ").append(cacheHitCount);
+    lookups.forEach((type, snapshot) -> sb.append(System.lineSeparator()).append(type).append(": ").append(snapshot));
+    resolvers.forEach((resolver, snapshots) -> snapshots.forEach((type, snapshot) ->
+      sb.append(System.lineSeparator()).append(resolver).append(" ").append(type).append(": ").append(snapshot)));
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,97 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.lookup.NoSuchDomainException;
+import org.xbill.DNS.lookup.NoSuchRRSetException;
+import org.xbill.DNS.lookup.ServerFailedException;
+
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The outcome of a DNS query (see {@link DnsMetrics})
+ */
+public enum DnsOutcome {
+
+  /**
+   * An answer with records
+   */
+  OK,
+  /**
+   * The name does not exist
+   */
+  NXDOMAIN,
+  /**
+   * The name exists but has no record of the queried type
+   */
+  NODATA,
+  /**
+   * The server has failed to answer (SERVFAIL)
+   */
+  SERVFAIL,
+  /**
+   * The server has refused to answer (REFUSED)
+   */
+  REFUSED,
+  /**
+   * No answer in time
+   */
+  TIMEOUT,
+  /**
+   * Any other error
+   */
+  ERROR;
+
+  /**
+   * @return the outcome of a lookup
+   */
+  static DnsOutcome ofLookup(List<Record> records, Throwable throwable) {
+    if (throwable == null) {
+      return records.isEmpty() ? NODATA : OK;
+    }
+    Throwable cause = AsyncDnsClientAbs.unwrap(throwable);
+    if (cause instanceof NoSuchDomainException) {
+      return NXDOMAIN;
+    }
+    if (cause instanceof NoSuchRRSetException) {
+      return NODATA;
+    }
+    if (cause instanceof ServerFailedException) {
+      return SERVFAIL;
+    }
+    return ofError(cause);
+  }
+
+  /**
+   * @return the outcome of a query sent to a resolver
+   */
+  static DnsOutcome ofResponse(Message response, Throwable throwable) {
+    if (throwable != null) {
+      return ofError(AsyncDnsClientAbs.unwrap(throwable));
+    }
+    switch (response.getRcode()) {
+      case Rcode.NOERROR:
+        return response.getSection(Section.ANSWER).isEmpty() ? NODATA : OK;
+      case Rcode.NXDOMAIN:
+        return NXDOMAIN;
+      case Rcode.SERVFAIL:
+        return SERVFAIL;
+      case Rcode.REFUSED:
+        return REFUSED;
+      default:
+        return ERROR;
+    }
+  }
+
+  private static DnsOutcome ofError(Throwable cause) {
+    if (cause instanceof TimeoutException || cause instanceof SocketTimeoutException) {
+      return TIMEOUT;
+    }
+    return ERROR;
+  }
+
+}
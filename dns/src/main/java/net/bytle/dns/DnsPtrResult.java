@@ -0,0 +1,94 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsName;
+
+import java.util.Set;
+
+/**
+ * The reverse DNS (PTR) of an ip created by {@link DnsPtrScanner}
+ * <p>
+ * A PTR record that was not found is a miss, not an error.
+ * An error is a lookup that has failed (timeout, server error, ...).
+ */
+public class DnsPtrResult {
+
+  private final DnsIp ip;
+  private final DnsName hostName;
+  private final Set<DnsIp> forwardAddresses;
+  private final Exception error;
+
+  private DnsPtrResult(DnsIp ip, DnsName hostName, Set<DnsIp> forwardAddresses, Exception error) {
+    this.ip = ip;
+    this.hostName = hostName;
+    this.forwardAddresses = forwardAddresses;
+    this.error = error;
+  }
+
+  static DnsPtrResult createFound(DnsIp ip, DnsName hostName, Set<DnsIp> forwardAddresses) {
+    return new DnsPtrResult(ip, hostName, forwardAddresses, null);
+  }
+
+  static DnsPtrResult createMiss(DnsIp ip) {
+    return new DnsPtrResult(ip, null, null, null);
+  }
+
+  static DnsPtrResult createError(DnsIp ip, DnsName hostName, Exception error) {
+    return new DnsPtrResult(ip, hostName, null, error);
+  }
+
+  public DnsIp getIp() {
+    return ip;
+  }
+
+  /**
+   * @return the host name of the PTR record or null if not found
+   */
+  public DnsName getHostName() {
+    return hostName;
+  }
+
+  /**
+   * @return true if the ip has a PTR record
+   */
+  public boolean isFound() {
+    return hostName != null;
+  }
+
+  public boolean isError() {
+    return error != null;
+  }
+
+  /**
+   * @return the error of the PTR or forward lookup or null
+   */
+  public Exception getError() {
+    return error;
+  }
+
+  /**
+   * @return the ips of the host name (empty if the host name has no ip),
+   * null if the forward confirmation was not checked
+   */
+  public Set<DnsIp> getForwardAddresses() {
+    return forwardAddresses;
+  }
+
+  /**
+   * @return true if the host name resolves back to the ip (forward-confirmed reverse DNS, FCrDNS)
+   */
+  public boolean isForwardConfirmed() {
+    return forwardAddresses != null && forwardAddresses.contains(ip);
+  }
+
+  @Override
+  public String toString() {
+    if (error != null) {
+      return ip + " error: " + error.getMessage();
+    }
+    if (hostName == null) {
+      return ip + " no PTR";
+    }
+    return ip + " " + hostName + (forwardAddresses == null ? "" : (isForwardConfirmed() ? " (FCrDNS)" : " (not forward confirmed)"));
+  }
+
+}
@@ -0,0 +1,193 @@
+package net.bytle.dns;
+
+import net.bytle.exception.IllegalStructure;
+import net.bytle.type.DnsName;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+
+/**
+ * A bulk reverse DNS (PTR) scan of ips (a CIDR range or a collection)
+ * <p>
+ * * At most `max in flight` ips are checked at the same time and an ip sends one query at a time
+ * (the PTR then the forward lookup), the forward confirmation uses therefore the same concurrency budget
+ * * The ips are taken from the input only when there is a free slot (a CIDR range is never materialized)
+ * * The results are emitted as they complete (not in the input order)
+ * * A missing PTR record is a result ({@link DnsPtrResult#isFound()}), not an exception
+ * <p>
+ * Example:
+ * <pre>{@code
+ * DnsPtrScanner scanner = DnsPtrScanner.builder(XBillAsyncDnsClient.createDefault())
+ *   .setForwardConfirmation(true)
+ *   .build();
+ * scanner.scan("192.0.2.0/24")
+ *   .filter(result -> !result.isForwardConfirmed())
+ *   .forEach(System.out::println);
+ * }</pre>
+ */
+public class DnsPtrScanner {
+
+  private final AsyncDnsClient dnsClient;
+  private final int maxInFlight;
+  private final boolean forwardConfirmation;
+
+  private DnsPtrScanner(DnsPtrScannerBuilder builder) {
+    this.dnsClient = builder.dnsClient;
+    this.maxInFlight = builder.maxInFlight;
+    this.forwardConfirmation = builder.forwardConfirmation;
+  }
+
+  /**
+   * @param dnsClient - the client that performs the queries
+   */
+  public static DnsPtrScannerBuilder builder(AsyncDnsClient dnsClient) {
+    return new DnsPtrScannerBuilder(dnsClient);
+  }
+
+  /**
+   * @param ipv4Cidr - an IPv4 CIDR range (ie `192.0.2.0/24`) or a single ip
+   * @return the results in completion order
+   * @throws IllegalStructure if the range is not valid
+   */
+  public Stream<DnsPtrResult> scan(String ipv4Cidr) throws IllegalStructure {
+    long[] range = DnsBlockListMirror.parseRange(ipv4Cidr);
+    Iterator<DnsIp> ips = new Iterator<>() {
+
+      private long next = range[0];
+
+      @Override
+      public boolean hasNext() {
+        return next <= range[1];
+      }
+
+      @Override
+      public DnsIp next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return DnsIp.createFromIpv4Int((int) next++);
+      }
+
+    };
+    return new Run(ips).stream();
+  }
+
+  /**
+   * @param ips - the ips to scan
+   * @return the results in completion order
+   */
+  public Stream<DnsPtrResult> scan(Collection<DnsIp> ips) {
+    return new Run(ips.iterator()).stream();
+  }
+
+  /**
+   * @param ips - the ips to scan (taken when the results are consumed)
+   * @return the results in completion order
+   */
+  public Stream<DnsPtrResult> scan(Stream<DnsIp> ips) {
+    return new Run(ips.iterator())
+      .stream()
+      .onClose(ips::close);
+  }
+
+  private class Run extends DnsBulkRun<DnsIp, DnsPtrResult> {
+
+    private Run(Iterator<DnsIp> ips) {
+      super(ips, maxInFlight);
+    }
+
+    @Override
+    CompletionStage<DnsPtrResult> process(DnsIp ip) {
+      return scanIp(ip);
+    }
+
+  }
+
+  /**
+   * The stage never fails, the errors are in the result
+   */
+  private CompletionStage<DnsPtrResult> scanIp(DnsIp ip) {
+    return this.dnsClient
+      .lookupPtr(ip)
+      .handle((hostName, throwable) -> {
+        if (throwable != null) {
+          Throwable cause = AsyncDnsClientAbs.unwrap(throwable);
+          if (cause instanceof DnsNotFoundException) {
+            return CompletableFuture.completedFuture(DnsPtrResult.createMiss(ip));
+          }
+          return CompletableFuture.completedFuture(DnsPtrResult.createError(ip, null, toException(cause)));
+        }
+        if (!this.forwardConfirmation) {
+          return CompletableFuture.completedFuture(DnsPtrResult.createFound(ip, hostName, null));
+        }
+        return forwardLookup(ip, hostName)
+          .handle((addresses, forwardThrowable) -> {
+            if (forwardThrowable == null) {
+              return DnsPtrResult.createFound(ip, hostName, addresses);
+            }
+            Throwable cause = AsyncDnsClientAbs.unwrap(forwardThrowable);
+            if (cause instanceof DnsNotFoundException) {
+              return DnsPtrResult.createFound(ip, hostName, Set.of());
+            }
+            return DnsPtrResult.createError(ip, hostName, toException(cause));
+          });
+      })
+      .thenCompose(result -> result);
+  }
+
+  private CompletionStage<Set<DnsIp>> forwardLookup(DnsIp ip, DnsName hostName) {
+    if (ip.isIpv4()) {
+      return this.dnsClient.resolveA(hostName);
+    }
+    return this.dnsClient.resolveAAAA(hostName);
+  }
+
+  private static Exception toException(Throwable cause) {
+    if (cause instanceof Exception) {
+      return (Exception) cause;
+    }
+    return new DnsException(cause.getMessage(), cause);
+  }
+
+  public static class DnsPtrScannerBuilder {
+
+    private final AsyncDnsClient dnsClient;
+    private int maxInFlight = 32;
+    private boolean forwardConfirmation = false;
+
+    public DnsPtrScannerBuilder(AsyncDnsClient dnsClient) {
+      this.dnsClient = dnsClient;
+    }
+
+    /**
+     * @param maxInFlight - the maximum number of ips checked at the same time (ie the maximum of queries in flight)
+     */
+    public DnsPtrScannerBuilder setMaxInFlight(int maxInFlight) {
+      if (maxInFlight <= 0) {
+        throw new IllegalArgumentException("The max in flight should be greater than zero");
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * @param forwardConfirmation - if true, the host name of the PTR record is resolved and should contain the ip
+     *                            (forward-confirmed reverse DNS, FCrDNS)
+     */
+    public DnsPtrScannerBuilder setForwardConfirmation(boolean forwardConfirmation) {
+      this.forwardConfirmation = forwardConfirmation;
+      return this;
+    }
+
+    public DnsPtrScanner build() {
+      return new DnsPtrScanner(this);
+    }
+
+  }
+
+}
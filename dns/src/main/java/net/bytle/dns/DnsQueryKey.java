@@ -0,0 +1,49 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Type;
+
+import java.util.Objects;
+
+/**
+ * The identity of a query: a name and a record type
+ */
+final class DnsQueryKey {
+
+  private final Name name;
+  private final int type;
+  private final int hashCode;
+
+  DnsQueryKey(Name name, int type) {
+    this.name = name;
+    this.type = type;
+    this.hashCode = 31 * name.hashCode() + type;
+  }
+
+  Name getName() {
+    return name;
+  }
+
+  int getType() {
+    return type;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    DnsQueryKey that = (DnsQueryKey) o;
+    return type == that.type && Objects.equals(name, that.name);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return name + " " + Type.string(type);
+  }
+
+}
@@ -4,7 +4,11 @@ import org.xbill.DNS.Resolver;
 import org.xbill.DNS.ResolverConfig;
 import org.xbill.DNS.SimpleResolver;
 
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Resolver transforms a user request into a query
@@ -18,6 +22,12 @@ public class DnsResolver {
   private static final Resolver DEFAULT;
   private static final Resolver CLOUDFLARE_RESOLVER;
   private static final Resolver GOOGLE_RESOLVER;
+  /**
+   * The names of the resolvers that are not a {@link SimpleResolver},
+   * weak so that a resolver that is no more used is evicted
+   */
+  private static final Map<Resolver, String> INSTANCE_NAMES = new WeakHashMap<>();
+  private static final AtomicInteger INSTANCE_SEQUENCE = new AtomicInteger();
 
   static {
     try {
@@ -46,4 +56,50 @@ public class DnsResolver {
     return DEFAULT;
   }
 
+  /**
+   * @return a pool with the local, Cloudflare and Google resolvers
+   * that hedges and fails over between them
+   */
+  public static DnsResolverPool createPool() {
+    return DnsResolverPool.builder()
+      .addResolver(DEFAULT)
+      .addResolver(CLOUDFLARE_RESOLVER)
+      .addResolver(GOOGLE_RESOLVER)
+      .build();
+  }
+
+  /**
+   * @return the name of a resolver in the metrics and the limiters: the server address (ie `1.1.1.1:53`),
+   * or the class and a sequence number unique to the instance for a resolver that is not a {@link SimpleResolver}
+   * (ie `ExtendedResolver#3`)
+   */
+  public static String getName(Resolver resolver) {
+    if (resolver instanceof SimpleResolver) {
+      InetSocketAddress address = ((SimpleResolver) resolver).getAddress();
+      return address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+    synchronized (INSTANCE_NAMES) {
+      return INSTANCE_NAMES.computeIfAbsent(resolver, r -> r.getClass().getSimpleName() + "#" + INSTANCE_SEQUENCE.incrementAndGet());
+    }
+  }
+
+  /**
+   * @param resolver - the resolver that sends the queries
+   * @param metrics  - the metrics (may be null)
+   * @param limiters - the adaptive limiters (may be null)
+   * @return the resolver that records its queries and bounds them
+   */
+  static Resolver decorate(Resolver resolver, DnsMetrics metrics, DnsAdaptiveLimiters limiters) {
+    String name = getName(resolver);
+    Resolver decorated = resolver;
+    if (metrics != null) {
+      // the latency of the resolver, the time waiting for a slot is not counted
+      decorated = new DnsMeteredResolver(decorated, metrics.getResolverSeries(name));
+    }
+    if (limiters != null) {
+      decorated = new DnsLimitedResolver(decorated, limiters.getOrCreate(resolver));
+    }
+    return decorated;
+  }
+
 }
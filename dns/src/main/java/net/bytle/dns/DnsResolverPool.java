@@ -0,0 +1,439 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * A resolver that sends a query to a pool of resolvers
+ * <p>
+ * * The query is sent to the primary (the resolver with the best score)
+ * * Hedge: if no answer arrives within the hedge delay, the query is also sent to the next resolver
+ * and the first answer wins
+ * * Failover: if a resolver fails (error, timeout, SERVFAIL, REFUSED), the query is sent to the next resolver immediately
+ * * The queries in flight of a resolver are bounded by an adaptive limiter (see {@link DnsAdaptiveLimiters})
+ * <p>
+ * The score of a resolver is a rolling (exponentially weighted) latency penalized by its rolling error rate,
+ * slow or failing resolvers are therefore demoted (a failure counts as a query that took the resolver timeout).
+ * <p>
+ * The score of a resolver that does not get any query decays with time (halved every score half-life)
+ * so that a demoted resolver is tried again once its score is below the one of the primary.
+ * The weight of the first sample after an idle period grows with the idle time:
+ * a resolver that has recovered from a transient outage gets its rank back with its first answer.
+ * <p>
+ * The hedge delay is fixed or, if a percentile is set, the observed latency percentile of the primary.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * XBillDnsClient.builder()
+ *   .setResolver(DnsResolverPool.builder()
+ *     .addResolver(DnsResolver.getCloudflare())
+ *     .addResolver(DnsResolver.getGoogle())
+ *     .build())
+ *   .build();
+ * }</pre>
+ */
+public class DnsResolverPool implements Resolver {
+
+  /**
+   * The weight of a new sample in the rolling scores
+   */
+  private static final double ALPHA = 0.2;
+  /**
+   * The latency multiplier of a resolver that always fails
+   */
+  private static final double ERROR_PENALTY = 10;
+  /**
+   * The number of latency samples kept to compute the percentile
+   */
+  private static final int LATENCY_WINDOW = 64;
+
+  private final List<Member> members;
+  private final Duration hedgeDelay;
+  private final double hedgeLatencyPercentile;
+  private final Duration minHedgeDelay;
+  private final LongAdder hedgeCount = new LongAdder();
+  private final LongAdder failoverCount = new LongAdder();
+  private Duration timeout;
+
+  private DnsResolverPool(DnsResolverPoolBuilder builder) {
+    long scoreHalfLifeNanos = builder.scoreHalfLife.toNanos();
+    this.members = builder.resolvers.stream().map(r -> new Member(r, builder.metrics, builder.adaptiveLimiters, scoreHalfLifeNanos)).collect(Collectors.toList());
+    this.hedgeDelay = builder.hedgeDelay;
+    this.hedgeLatencyPercentile = builder.hedgeLatencyPercentile;
+    this.minHedgeDelay = builder.minHedgeDelay;
+    this.timeout = this.members.get(0).resolver.getTimeout();
+  }
+
+  public static DnsResolverPoolBuilder builder() {
+    return new DnsResolverPoolBuilder();
+  }
+
+  @Override
+  public CompletionStage<Message> sendAsync(Message query) {
+    return sendAsync(query, ForkJoinPool.commonPool());
+  }
+
+  @Override
+  public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+
+    List<Member> orderedMembers = getMembersByScore();
+    Query poolQuery = new Query(query, orderedMembers, executor);
+    poolQuery.sendToNext();
+    if (orderedMembers.size() > 1) {
+      long delayNanos = getHedgeDelayNanos(orderedMembers.get(0));
+      Executor hedgeExecutor = CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, executor);
+      hedgeExecutor.execute(() -> {
+        if (!poolQuery.result.isDone() && poolQuery.sendToNext()) {
+          hedgeCount.increment();
+        }
+      });
+    }
+    return poolQuery.result;
+
+  }
+
+  private long getHedgeDelayNanos(Member primary) {
+    if (this.hedgeLatencyPercentile > 0) {
+      long percentileNanos = primary.getLatencyPercentileNanos(this.hedgeLatencyPercentile);
+      if (percentileNanos > 0) {
+        return Math.max(this.minHedgeDelay.toNanos(), percentileNanos);
+      }
+    }
+    return this.hedgeDelay.toNanos();
+  }
+
+  private List<Member> getMembersByScore() {
+    // the scores decay with time, they are computed once at the same instant for the sort
+    long now = System.nanoTime();
+    Map<Member, Double> scores = new IdentityHashMap<>();
+    for (Member member : this.members) {
+      scores.put(member, member.getScore(now));
+    }
+    List<Member> orderedMembers = new ArrayList<>(this.members);
+    // stable sort, the resolver added first wins on equal score
+    orderedMembers.sort(Comparator.comparingDouble(scores::get));
+    return orderedMembers;
+  }
+
+  /**
+   * @return the resolvers ordered by score (the primary first)
+   */
+  public List<Resolver> getResolversByScore() {
+    return getMembersByScore().stream().map(m -> m.resolver).collect(Collectors.toList());
+  }
+
+  /**
+   * @return the number of queries that were also sent to a second resolver because the primary was slow
+   */
+  public long getHedgeCount() {
+    return hedgeCount.sum();
+  }
+
+  /**
+   * @return the number of queries that were sent to another resolver because a resolver failed
+   */
+  public long getFailoverCount() {
+    return failoverCount.sum();
+  }
+
+  @Override
+  public void setPort(int port) {
+    members.forEach(m -> m.resolver.setPort(port));
+  }
+
+  @Override
+  public void setTCP(boolean flag) {
+    members.forEach(m -> m.resolver.setTCP(flag));
+  }
+
+  @Override
+  public void setIgnoreTruncation(boolean flag) {
+    members.forEach(m -> m.resolver.setIgnoreTruncation(flag));
+  }
+
+  @Override
+  public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+    members.forEach(m -> m.resolver.setEDNS(version, payloadSize, flags, options));
+  }
+
+  @Override
+  public void setTSIGKey(TSIG key) {
+    members.forEach(m -> m.resolver.setTSIGKey(key));
+  }
+
+  @Override
+  public void setTimeout(Duration timeout) {
+    this.timeout = timeout;
+    members.forEach(m -> m.resolver.setTimeout(timeout));
+  }
+
+  @Override
+  public Duration getTimeout() {
+    return this.timeout;
+  }
+
+  @Override
+  public String toString() {
+    return "DnsResolverPool" + getMembersByScore();
+  }
+
+  /**
+   * The state of a query sent to the pool
+   */
+  private class Query {
+
+    private final Message query;
+    private final List<Member> orderedMembers;
+    private final Executor executor;
+    private final CompletableFuture<Message> result = new CompletableFuture<>();
+    private final AtomicInteger next = new AtomicInteger(0);
+    private final AtomicInteger outstanding = new AtomicInteger(0);
+    /**
+     * The last failure: a SERVFAIL/REFUSED response or an exception
+     */
+    private final AtomicReference<Object> lastFailure = new AtomicReference<>();
+
+    private Query(Message query, List<Member> orderedMembers, Executor executor) {
+      this.query = query;
+      this.orderedMembers = orderedMembers;
+      this.executor = executor;
+    }
+
+    /**
+     * @return true if the query was sent, false if there was no resolver left
+     */
+    private boolean sendToNext() {
+      // incremented before taking a resolver so that a concurrent failure does not see zero outstanding
+      outstanding.incrementAndGet();
+      int index = next.getAndIncrement();
+      if (index >= orderedMembers.size()) {
+        release();
+        return false;
+      }
+      Member member = orderedMembers.get(index);
+      long start = System.nanoTime();
+      CompletionStage<Message> stage;
+      try {
+        stage = member.sender.sendAsync(query.clone(), executor);
+      } catch (RuntimeException e) {
+        stage = CompletableFuture.failedFuture(e);
+      }
+      stage.whenComplete((response, throwable) -> {
+        long latencyNanos = System.nanoTime() - start;
+        boolean success = throwable == null && isAnswer(response);
+        member.record(latencyNanos, success);
+        if (success) {
+          result.complete(response);
+          release();
+          return;
+        }
+        lastFailure.set(throwable != null ? throwable : response);
+        if (!result.isDone() && sendToNext()) {
+          failoverCount.increment();
+        }
+        release();
+      });
+      return true;
+    }
+
+    /**
+     * Release a send (answered or not sent).
+     * The last one out (a failover, a hedge, or an answer) completes the query with the last failure
+     * if no answer has completed it
+     */
+    private void release() {
+      if (outstanding.decrementAndGet() != 0 || result.isDone()) {
+        return;
+      }
+      Object failure = lastFailure.get();
+      if (failure instanceof Message) {
+        // the resolver answer (SERVFAIL, REFUSED) is returned to the lookup session
+        result.complete((Message) failure);
+      } else {
+        result.completeExceptionally((Throwable) failure);
+      }
+    }
+
+  }
+
+  /**
+   * @return true if the response is an answer (ie not a server failure)
+   */
+  private static boolean isAnswer(Message response) {
+    int rcode = response.getRcode();
+    return rcode != Rcode.SERVFAIL && rcode != Rcode.REFUSED;
+  }
+
+  /**
+   * A resolver of the pool with its rolling statistics
+   */
+  private static class Member {
+
+    private final Resolver resolver;
+    /**
+     * The resolver metered and limited by its adaptive limiter
+     */
+    private final Resolver sender;
+    private final long scoreHalfLifeNanos;
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyCount = 0;
+    private int sampleCount = 0;
+    private double latencyEwma = 0;
+    private double errorEwma = 0;
+    private long lastSampleNanos;
+
+    private Member(Resolver resolver, DnsMetrics metrics, DnsAdaptiveLimiters adaptiveLimiters, long scoreHalfLifeNanos) {
+      this.resolver = resolver;
+      this.sender = DnsResolver.decorate(resolver, metrics, adaptiveLimiters);
+      this.scoreHalfLifeNanos = scoreHalfLifeNanos;
+    }
+
+    private synchronized void record(long latencyNanos, boolean success) {
+      long now = System.nanoTime();
+      // a fast failure is not a fast answer
+      long sampleNanos = success ? latencyNanos : Math.max(latencyNanos, resolver.getTimeout().toNanos());
+      // the history of an idle resolver is stale, the weight of the new sample grows with the idle time
+      double weight = sampleCount == 0 ? 1 : Math.max(ALPHA, 1 - getDecay(now - lastSampleNanos));
+      latencyEwma += weight * (sampleNanos - latencyEwma);
+      errorEwma += weight * ((success ? 0 : 1) - errorEwma);
+      sampleCount++;
+      lastSampleNanos = now;
+      if (success) {
+        // the hedge delay percentile is computed on the answers only
+        latencies[latencyCount % LATENCY_WINDOW] = latencyNanos;
+        latencyCount++;
+      }
+    }
+
+    /**
+     * @return the rolling latency penalized by the rolling error rate and decayed by the idle time (the lower, the better)
+     */
+    private synchronized double getScore(long now) {
+      if (sampleCount == 0) {
+        return 0;
+      }
+      return latencyEwma * (1 + ERROR_PENALTY * errorEwma) * getDecay(now - lastSampleNanos);
+    }
+
+    /**
+     * @return the fraction of the score that is left after the idle time (1 without idle time, 0.5 after a half-life)
+     */
+    private double getDecay(long idleNanos) {
+      return Math.pow(0.5, (double) Math.max(0, idleNanos) / scoreHalfLifeNanos);
+    }
+
+    /**
+     * @return the latency percentile of the window, 0 if there is not enough samples
+     */
+    private synchronized long getLatencyPercentileNanos(double percentile) {
+      int size = Math.min(latencyCount, LATENCY_WINDOW);
+      if (size < LATENCY_WINDOW / 4) {
+        return 0;
+      }
+      long[] window = Arrays.copyOf(latencies, size);
+      Arrays.sort(window);
+      int index = (int) Math.ceil(percentile * size) - 1;
+      return window[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    @Override
+    public synchronized String toString() {
+      return resolver + " (latency: " + Math.round(latencyEwma / 1_000_000) + "ms, errors: " + Math.round(errorEwma * 100) + "%)";
+    }
+
+  }
+
+  public static class DnsResolverPoolBuilder {
+
+    private final List<Resolver> resolvers = new ArrayList<>();
+    private Duration hedgeDelay = Duration.ofMillis(100);
+    private double hedgeLatencyPercentile = 0;
+    private Duration minHedgeDelay = Duration.ofMillis(10);
+    private Duration scoreHalfLife = Duration.ofSeconds(30);
+    private DnsAdaptiveLimiters adaptiveLimiters = DnsAdaptiveLimiters.getShared();
+    private DnsMetrics metrics;
+
+    /**
+     * @param resolver - a resolver (the first added is the primary until there is some statistics)
+     */
+    public DnsResolverPoolBuilder addResolver(Resolver resolver) {
+      this.resolvers.add(resolver);
+      return this;
+    }
+
+    /**
+     * @param hedgeDelay - the time to wait for the primary before sending the query to a second resolver
+     */
+    public DnsResolverPoolBuilder setHedgeDelay(Duration hedgeDelay) {
+      this.hedgeDelay = hedgeDelay;
+      return this;
+    }
+
+    /**
+     * @param percentile    - if greater than 0 (for instance 0.95), the hedge delay is this percentile of the observed latency of the primary
+     * @param minHedgeDelay - the minimum hedge delay when the delay is derived from the percentile
+     */
+    public DnsResolverPoolBuilder setHedgeLatencyPercentile(double percentile, Duration minHedgeDelay) {
+      if (percentile < 0 || percentile > 1) {
+        throw new IllegalArgumentException("The percentile should be between 0 and 1");
+      }
+      this.hedgeLatencyPercentile = percentile;
+      this.minHedgeDelay = minHedgeDelay;
+      return this;
+    }
+
+    /**
+     * @param scoreHalfLife - the idle time after which the score of a resolver is halved
+     *                      (a demoted resolver is tried again when its score is below the one of the primary)
+     */
+    public DnsResolverPoolBuilder setScoreHalfLife(Duration scoreHalfLife) {
+      if (scoreHalfLife.isZero() || scoreHalfLife.isNegative()) {
+        throw new IllegalArgumentException("The score half-life should be positive");
+      }
+      this.scoreHalfLife = scoreHalfLife;
+      return this;
+    }
+
+    /**
+     * @param adaptiveLimiters - the registry of the limiters of the queries in flight by resolver
+     *                         (default to the {@link DnsAdaptiveLimiters#getShared() shared} registry, null to disable)
+     */
+    public DnsResolverPoolBuilder setAdaptiveLimiters(DnsAdaptiveLimiters adaptiveLimiters) {
+      this.adaptiveLimiters = adaptiveLimiters;
+      return this;
+    }
+
+    /**
+     * @param metrics - the metrics where the queries of each resolver are recorded (may be the metrics of the client)
+     */
+    public DnsResolverPoolBuilder setMetrics(DnsMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    public DnsResolverPool build() {
+      if (this.resolvers.isEmpty()) {
+        throw new IllegalArgumentException("A resolver pool should have at least one resolver");
+      }
+      return new DnsResolverPool(this);
+    }
+
+  }
+
+}
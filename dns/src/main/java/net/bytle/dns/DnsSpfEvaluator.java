@@ -0,0 +1,759 @@
+package net.bytle.dns;
+
+import net.bytle.exception.IllegalStructure;
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.xbill.DNS.Address;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An SPF evaluator (<a href="https://datatracker.ietf.org/doc/html/rfc7208">RFC 7208</a>)
+ * <p>
+ * * The record of a domain is compiled into a {@link DnsSpfPolicy} (ip ranges):
+ * the `include`, `redirect`, `a`, `mx` and `exists` mechanisms are resolved once
+ * and the evaluation of an ip is then a binary search
+ * * The compiled policies are cached by domain, the policy of a shared provider
+ * (ie `_spf.google.com`) is compiled once and reused by all the domains that include it
+ * * The limit of 10 DNS lookups (and 2 void lookups) is enforced on the evaluation path of each ip.
+ * The terms that can only be reached after 10 lookups (from the include path) are not resolved,
+ * the number of queries of a compilation is therefore bounded whatever the records.
+ * * The macros and the `ptr` mechanism are not supported, they don't match
+ * (See {@link DnsSpfPolicy#isComplete()})
+ * <p>
+ * Example:
+ * <pre>{@code
+ * DnsSpfEvaluator evaluator = DnsSpfEvaluator.builder(XBillAsyncDnsClient.createDefault()).build();
+ * DnsSpfResult result = evaluator.evaluate(ip, domain).toCompletableFuture().join();
+ * }</pre>
+ */
+public class DnsSpfEvaluator {
+
+  private final AsyncDnsClient dnsClient;
+  private final long ttlMs;
+  private final Duration includeTimeout;
+  /**
+   * The compiled policies by domain (least recently used order)
+   */
+  private final LinkedHashMap<DnsName, CacheEntry> policies;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder compiles = new LongAdder();
+
+  private DnsSpfEvaluator(DnsSpfEvaluatorBuilder builder) {
+    this.dnsClient = builder.dnsClient;
+    this.ttlMs = builder.ttl.toMillis();
+    this.includeTimeout = builder.includeTimeout;
+    int maxEntries = builder.maxEntries;
+    this.policies = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<DnsName, CacheEntry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @param dnsClient - the client that performs the queries
+   */
+  public static DnsSpfEvaluatorBuilder builder(AsyncDnsClient dnsClient) {
+    return new DnsSpfEvaluatorBuilder(dnsClient);
+  }
+
+  /**
+   * @param ip     - the ip of the sender
+   * @param domain - the domain of the sender
+   * @return the SPF result (the stage does not fail, a DNS error is a {@link DnsSpfResult#TEMPERROR})
+   */
+  public CompletionStage<DnsSpfResult> evaluate(DnsIp ip, DnsName domain) {
+    return getPolicy(domain).thenApply(policy -> policy.evaluate(ip));
+  }
+
+  /**
+   * @return the compiled policy of the domain (from the cache or compiled)
+   */
+  public CompletionStage<DnsSpfPolicy> getPolicy(DnsName domain) {
+    return getPolicy(domain, List.of(), DnsSpfPolicy.MAX_LOOKUPS, null);
+  }
+
+  /**
+   * @param path         - the domains that include this domain (loop detection)
+   * @param lookupBudget - the lookups left to the record of the domain (the limit minus the lookups of the include path)
+   * @param includer     - the compilation in flight that includes this domain (null for an evaluation)
+   */
+  private CompletionStage<DnsSpfPolicy> getPolicy(DnsName domain, List<DnsName> path, int lookupBudget, CacheEntry includer) {
+    if (path.contains(domain) || path.size() > DnsSpfPolicy.MAX_LOOKUPS) {
+      // loop or too deep, depends on the path, not cached
+      return CompletableFuture.completedFuture(DnsSpfPolicy.createConstant(domain, DnsSpfResult.PERMERROR));
+    }
+    long now = System.currentTimeMillis();
+    CacheEntry entry;
+    synchronized (policies) {
+      entry = policies.get(domain);
+      if (entry != null && entry.expiresAt > now && entry.lookupBudget >= lookupBudget) {
+        hits.increment();
+        if (includer != null && !entry.policy.isDone()) {
+          if (entry.waitsFor(includer)) {
+            // the compilation in flight (of another evaluation) includes the includer:
+            // an include loop, waiting would be a deadlock until the include timeout
+            return CompletableFuture.completedFuture(DnsSpfPolicy.createConstant(domain, DnsSpfResult.PERMERROR));
+          }
+          includer.waitsOn.add(entry);
+        }
+        return entry.policy.copy();
+      }
+      entry = new CacheEntry(lookupBudget);
+      policies.put(domain, entry);
+      if (includer != null) {
+        includer.waitsOn.add(entry);
+      }
+    }
+    compiles.increment();
+    List<DnsName> includePath = new ArrayList<>(path);
+    includePath.add(domain);
+    CacheEntry newEntry = entry;
+    compile(domain, includePath, lookupBudget, newEntry)
+      .whenComplete((policy, throwable) -> {
+        if (throwable != null) {
+          // should not happen, the compilation handles the errors
+          policy = DnsSpfPolicy.createConstant(domain, DnsSpfResult.TEMPERROR);
+        }
+        synchronized (policies) {
+          newEntry.waitsOn.clear();
+          if (policy.hasTempError()) {
+            policies.remove(domain, newEntry);
+          } else {
+            if (!policy.isTruncated()) {
+              // all terms resolved, valid from any include path
+              newEntry.lookupBudget = DnsSpfPolicy.MAX_LOOKUPS;
+            }
+            newEntry.expiresAt = System.currentTimeMillis() + ttlMs;
+          }
+        }
+        newEntry.policy.complete(policy);
+      });
+    return newEntry.policy.copy();
+  }
+
+  /**
+   * The stage does not fail, the errors are in the policy
+   */
+  private CompletionStage<DnsSpfPolicy> compile(DnsName domain, List<DnsName> includePath, int lookupBudget, CacheEntry entry) {
+    return this.dnsClient
+      .resolveTxt(domain)
+      .handle((txtRecords, throwable) -> {
+        if (throwable != null) {
+          if (AsyncDnsClientAbs.unwrap(throwable) instanceof DnsNotFoundException) {
+            return CompletableFuture.completedFuture(DnsSpfPolicy.createConstant(domain, DnsSpfResult.NONE));
+          }
+          return CompletableFuture.completedFuture(DnsSpfPolicy.createConstant(domain, DnsSpfResult.TEMPERROR));
+        }
+        List<String> spfRecords = new ArrayList<>();
+        for (String txtRecord : txtRecords) {
+          if (isSpfRecord(txtRecord)) {
+            spfRecords.add(txtRecord);
+          }
+        }
+        if (spfRecords.isEmpty()) {
+          return CompletableFuture.completedFuture(DnsSpfPolicy.createConstant(domain, DnsSpfResult.NONE));
+        }
+        if (spfRecords.size() > 1) {
+          return CompletableFuture.completedFuture(DnsSpfPolicy.createConstant(domain, DnsSpfResult.PERMERROR));
+        }
+        SpfRecord spfRecord;
+        try {
+          spfRecord = parse(spfRecords.get(0), domain);
+        } catch (IllegalStructure e) {
+          return CompletableFuture.completedFuture(DnsSpfPolicy.createConstant(domain, DnsSpfResult.PERMERROR));
+        }
+        return resolve(spfRecord, includePath, lookupBudget, entry)
+          .thenApply(v -> build(domain, spfRecord));
+      })
+      .thenCompose(policy -> policy);
+  }
+
+  /**
+   * Resolve the terms of the record concurrently
+   * <p>
+   * The lookup terms after the budget are not resolved (marked as skipped):
+   * they can only be reached after the limit of lookups
+   */
+  private CompletionStage<Void> resolve(SpfRecord spfRecord, List<DnsName> includePath, int lookupBudget, CacheEntry entry) {
+    List<CompletableFuture<?>> resolutions = new ArrayList<>();
+    int lookups = 0;
+    for (Term term : spfRecord.terms) {
+      if (term.isLookup()) {
+        lookups++;
+        if (lookups > lookupBudget) {
+          term.skipped = true;
+          continue;
+        }
+      }
+      switch (term.mechanism) {
+        case A:
+          resolutions.add(resolveAddresses(term.target)
+            .handle((addresses, throwable) -> term.resolved(addresses, throwable))
+            .toCompletableFuture());
+          break;
+        case MX:
+          resolutions.add(this.dnsClient
+            .resolveMx(term.target)
+            .thenCompose(mxRecords -> {
+              if (mxRecords.size() > DnsSpfPolicy.MAX_LOOKUPS) {
+                term.tooManyMxRecords = true;
+                return CompletableFuture.completedFuture(Collections.<DnsIp>emptySet());
+              }
+              List<CompletableFuture<Set<DnsIp>>> hostAddresses = new ArrayList<>();
+              for (DnsMxRecord mxRecord : mxRecords) {
+                hostAddresses.add(resolveAddresses(mxRecord.getTarget()).toCompletableFuture());
+              }
+              return CompletableFuture
+                .allOf(hostAddresses.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                  Set<DnsIp> addresses = new HashSet<>();
+                  for (CompletableFuture<Set<DnsIp>> hostAddress : hostAddresses) {
+                    addresses.addAll(hostAddress.join());
+                  }
+                  return addresses;
+                });
+            })
+            .handle((addresses, throwable) -> term.resolved(addresses, throwable))
+            .toCompletableFuture());
+          break;
+        case EXISTS:
+          resolutions.add(this.dnsClient
+            .resolveA(term.target)
+            .handle((addresses, throwable) -> term.resolved(addresses, throwable))
+            .toCompletableFuture());
+          break;
+        case INCLUDE:
+          resolutions.add(getIncludedPolicy(term.target, includePath, lookupBudget - lookups, entry)
+            .handle((policy, throwable) -> term.resolved(policy, throwable))
+            .toCompletableFuture());
+          break;
+        default:
+          break;
+      }
+    }
+    Term redirect = spfRecord.redirect;
+    if (redirect != null && !spfRecord.hasAll() && redirect.mechanism == Mechanism.INCLUDE) {
+      lookups++;
+      if (lookups > lookupBudget) {
+        redirect.skipped = true;
+      } else {
+        resolutions.add(getIncludedPolicy(redirect.target, includePath, lookupBudget - lookups, entry)
+          .handle((policy, throwable) -> redirect.resolved(policy, throwable))
+          .toCompletableFuture());
+      }
+    }
+    return CompletableFuture.allOf(resolutions.toArray(new CompletableFuture<?>[0]));
+  }
+
+  /**
+   * An include or a redirect
+   * <p>
+   * An include loop between two evaluations (A includes B while B includes A) is detected on the compilations in flight,
+   * the timeout is a safety net
+   */
+  private CompletionStage<DnsSpfPolicy> getIncludedPolicy(DnsName domain, List<DnsName> includePath, int lookupBudget, CacheEntry includer) {
+    return getPolicy(domain, includePath, lookupBudget, includer)
+      .toCompletableFuture()
+      .orTimeout(includeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return the A and AAAA ips of the name (a name without ip is not an error)
+   */
+  private CompletionStage<Set<DnsIp>> resolveAddresses(DnsName name) {
+    CompletableFuture<Set<DnsIp>> ipv4 = withoutNotFound(this.dnsClient.resolveA(name));
+    CompletableFuture<Set<DnsIp>> ipv6 = withoutNotFound(this.dnsClient.resolveAAAA(name));
+    return ipv4.thenCombine(ipv6, (ipv4Addresses, ipv6Addresses) -> {
+      Set<DnsIp> addresses = new HashSet<>(ipv4Addresses);
+      addresses.addAll(ipv6Addresses);
+      return addresses;
+    });
+  }
+
+  private static CompletableFuture<Set<DnsIp>> withoutNotFound(CompletionStage<Set<DnsIp>> addresses) {
+    return addresses
+      .exceptionally(throwable -> {
+        Throwable cause = AsyncDnsClientAbs.unwrap(throwable);
+        if (cause instanceof DnsNotFoundException) {
+          return Collections.emptySet();
+        }
+        throw new CompletionException(cause);
+      })
+      .toCompletableFuture();
+  }
+
+  /**
+   * Apply the resolved terms in order
+   */
+  private static DnsSpfPolicy build(DnsName domain, SpfRecord spfRecord) {
+    DnsSpfPolicy.Compiler compiler = new DnsSpfPolicy.Compiler();
+    for (Term term : spfRecord.terms) {
+      if (term.skipped) {
+        // after the limit: the ips not yet decided have done more than the maximum of lookups
+        compiler.addLookup();
+        compiler.matchAll(DnsSpfResult.PERMERROR);
+        compiler.setTruncated();
+        continue;
+      }
+      switch (term.mechanism) {
+        case ALL:
+          compiler.matchAll(term.qualifier);
+          break;
+        case IP:
+          compiler.matchNetwork(term.networkHigh, term.networkLow, term.prefixLength, term.qualifier);
+          break;
+        case A:
+        case MX:
+          compiler.addLookup();
+          if (term.error != null) {
+            compiler.matchAll(DnsSpfResult.TEMPERROR);
+          } else if (term.tooManyMxRecords) {
+            compiler.matchAll(DnsSpfResult.PERMERROR);
+          } else {
+            if (term.addresses.isEmpty()) {
+              compiler.addVoidLookup();
+            }
+            for (DnsIp address : term.addresses) {
+              compiler.matchNetwork(address, term.ipv4PrefixLength, term.ipv6PrefixLength, term.qualifier);
+            }
+          }
+          break;
+        case EXISTS:
+          compiler.addLookup();
+          if (term.error != null) {
+            compiler.matchAll(DnsSpfResult.TEMPERROR);
+          } else if (!term.addresses.isEmpty()) {
+            compiler.matchAll(term.qualifier);
+          } else {
+            compiler.addVoidLookup();
+          }
+          break;
+        case INCLUDE:
+          compiler.addLookup();
+          if (term.error != null) {
+            compiler.matchAll(DnsSpfResult.TEMPERROR);
+          } else {
+            compiler.include(term.qualifier, term.policy);
+          }
+          break;
+        case NOT_SUPPORTED:
+          compiler.addLookup();
+          compiler.setIncomplete();
+          break;
+        default:
+          throw new DnsInternalException("The mechanism " + term.mechanism + " is not handled");
+      }
+    }
+    Term redirect = spfRecord.redirect;
+    if (redirect != null && !spfRecord.hasAll()) {
+      compiler.addLookup();
+      if (redirect.skipped) {
+        compiler.matchAll(DnsSpfResult.PERMERROR);
+        compiler.setTruncated();
+      } else if (redirect.mechanism == Mechanism.NOT_SUPPORTED) {
+        compiler.setIncomplete();
+      } else if (redirect.error != null) {
+        compiler.matchAll(DnsSpfResult.TEMPERROR);
+      } else {
+        compiler.redirect(redirect.policy);
+      }
+    }
+    return compiler.build(domain);
+  }
+
+  private static boolean isSpfRecord(String txtRecord) {
+    return txtRecord.regionMatches(true, 0, "v=spf1", 0, 6)
+      && (txtRecord.length() == 6 || txtRecord.charAt(6) == ' ');
+  }
+
+  /**
+   * @param record - an SPF record (`v=spf1 ...`)
+   * @param domain - the domain of the record (the default target of `a` and `mx`)
+   * @throws IllegalStructure if the syntax is not valid
+   */
+  private static SpfRecord parse(String record, DnsName domain) throws IllegalStructure {
+    SpfRecord spfRecord = new SpfRecord();
+    String[] tokens = record.trim().split(" +");
+    for (int i = 1; i < tokens.length; i++) {
+      String token = tokens[i];
+      int equal = token.indexOf('=');
+      int colon = token.indexOf(':');
+      int slash = token.indexOf('/');
+      if (equal > 0 && (colon == -1 || equal < colon) && (slash == -1 || equal < slash)) {
+        // modifier
+        String name = token.substring(0, equal).toLowerCase(Locale.ROOT);
+        if (name.equals("redirect")) {
+          if (spfRecord.redirect != null) {
+            throw new IllegalStructure("The redirect modifier is present twice");
+          }
+          String value = token.substring(equal + 1);
+          if (isMacro(value)) {
+            // not supported, the policy is incomplete
+            spfRecord.redirect = new Term(Mechanism.NOT_SUPPORTED, DnsSpfResult.PASS);
+            continue;
+          }
+          Term redirect = new Term(Mechanism.INCLUDE, DnsSpfResult.PASS);
+          redirect.target = toDnsName(value);
+          spfRecord.redirect = redirect;
+        }
+        // exp and unknown modifiers are ignored
+        continue;
+      }
+      spfRecord.terms.add(parseMechanism(token, domain));
+    }
+    return spfRecord;
+  }
+
+  private static Term parseMechanism(String token, DnsName domain) throws IllegalStructure {
+    DnsSpfResult qualifier = DnsSpfResult.PASS;
+    int start = 0;
+    switch (token.charAt(0)) {
+      case '+':
+        start = 1;
+        break;
+      case '-':
+        qualifier = DnsSpfResult.FAIL;
+        start = 1;
+        break;
+      case '~':
+        qualifier = DnsSpfResult.SOFTFAIL;
+        start = 1;
+        break;
+      case '?':
+        qualifier = DnsSpfResult.NEUTRAL;
+        start = 1;
+        break;
+      default:
+        break;
+    }
+    int nameEnd = start;
+    while (nameEnd < token.length() && token.charAt(nameEnd) != ':' && token.charAt(nameEnd) != '/') {
+      nameEnd++;
+    }
+    String name = token.substring(start, nameEnd).toLowerCase(Locale.ROOT);
+    String argument = token.substring(nameEnd);
+    switch (name) {
+      case "all": {
+        if (!argument.isEmpty()) {
+          throw new IllegalStructure("The all mechanism has no argument (" + token + ")");
+        }
+        return new Term(Mechanism.ALL, qualifier);
+      }
+      case "ip4":
+      case "ip6": {
+        if (!argument.startsWith(":")) {
+          throw new IllegalStructure("The " + name + " mechanism requires a network (" + token + ")");
+        }
+        Term term = new Term(Mechanism.IP, qualifier);
+        boolean ipv4 = name.equals("ip4");
+        String network = argument.substring(1);
+        int prefixLength = ipv4 ? 32 : 128;
+        int prefixSlash = network.indexOf('/');
+        if (prefixSlash != -1) {
+          prefixLength = parsePrefixLength(network.substring(prefixSlash + 1), ipv4 ? 32 : 128, token);
+          network = network.substring(0, prefixSlash);
+        }
+        byte[] bytes = Address.toByteArray(network, ipv4 ? Address.IPv4 : Address.IPv6);
+        if (bytes == null) {
+          throw new IllegalStructure("The network is not valid (" + token + ")");
+        }
+        if (ipv4) {
+          DnsIp ip = DnsIp.createFromIpv4Int((bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF));
+          term.networkHigh = DnsSpfPolicy.getHigh(ip);
+          term.networkLow = DnsSpfPolicy.getLow(ip);
+          term.prefixLength = 96 + prefixLength;
+        } else {
+          for (int i = 0; i < 8; i++) {
+            term.networkHigh = term.networkHigh << 8 | (bytes[i] & 0xFF);
+            term.networkLow = term.networkLow << 8 | (bytes[i + 8] & 0xFF);
+          }
+          term.prefixLength = prefixLength;
+        }
+        return term;
+      }
+      case "a":
+      case "mx": {
+        Term term = new Term(name.equals("a") ? Mechanism.A : Mechanism.MX, qualifier);
+        String target = argument;
+        int cidrSlash = argument.indexOf('/');
+        if (cidrSlash != -1) {
+          target = argument.substring(0, cidrSlash);
+          String cidr = argument.substring(cidrSlash);
+          int dualSlash = cidr.indexOf("//");
+          if (dualSlash != -1) {
+            term.ipv6PrefixLength = parsePrefixLength(cidr.substring(dualSlash + 2), 128, token);
+            cidr = cidr.substring(0, dualSlash);
+          }
+          if (!cidr.isEmpty()) {
+            term.ipv4PrefixLength = parsePrefixLength(cidr.substring(1), 32, token);
+          }
+        }
+        return setTarget(term, target, domain, false);
+      }
+      case "include":
+        return setTarget(new Term(Mechanism.INCLUDE, qualifier), argument, domain, true);
+      case "exists":
+        return setTarget(new Term(Mechanism.EXISTS, qualifier), argument, domain, true);
+      case "ptr":
+        return new Term(Mechanism.NOT_SUPPORTED, qualifier);
+      default:
+        throw new IllegalStructure("The mechanism (" + token + ") is unknown");
+    }
+  }
+
+  /**
+   * @param argument - the `:domain` argument
+   * @param required - if the domain is required
+   */
+  private static Term setTarget(Term term, String argument, DnsName domain, boolean required) throws IllegalStructure {
+    if (argument.isEmpty()) {
+      if (required) {
+        throw new IllegalStructure("The " + term.mechanism + " mechanism requires a domain");
+      }
+      term.target = domain;
+      return term;
+    }
+    if (!argument.startsWith(":")) {
+      throw new IllegalStructure("The argument (" + argument + ") of the " + term.mechanism + " mechanism is not valid");
+    }
+    String target = argument.substring(1);
+    if (isMacro(target)) {
+      return new Term(Mechanism.NOT_SUPPORTED, term.qualifier);
+    }
+    term.target = toDnsName(target);
+    return term;
+  }
+
+  private static boolean isMacro(String domainSpec) {
+    return domainSpec.indexOf('%') != -1;
+  }
+
+  private static DnsName toDnsName(String domain) throws IllegalStructure {
+    try {
+      return DnsName.create(domain);
+    } catch (DnsCastException e) {
+      throw new IllegalStructure("The domain (" + domain + ") is not valid", e);
+    }
+  }
+
+  private static int parsePrefixLength(String prefixLength, int max, String token) throws IllegalStructure {
+    try {
+      int length = Integer.parseInt(prefixLength);
+      if (length < 0 || length > max) {
+        throw new IllegalStructure("The prefix length (" + prefixLength + ") is not valid (" + token + ")");
+      }
+      return length;
+    } catch (NumberFormatException e) {
+      throw new IllegalStructure("The prefix length (" + prefixLength + ") is not a number (" + token + ")", e);
+    }
+  }
+
+  /**
+   * @return the number of policies compiled (cache misses)
+   */
+  public long getCompileCount() {
+    return compiles.sum();
+  }
+
+  /**
+   * @return the number of policies taken from the cache (includes and redirects counted)
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public void clear() {
+    synchronized (policies) {
+      policies.clear();
+    }
+  }
+
+  private enum Mechanism {
+    ALL,
+    IP,
+    A,
+    MX,
+    INCLUDE,
+    EXISTS,
+    /**
+     * ptr and macros
+     */
+    NOT_SUPPORTED
+  }
+
+  /**
+   * A parsed record
+   */
+  private static class SpfRecord {
+
+    private final List<Term> terms = new ArrayList<>();
+    private Term redirect;
+
+    /**
+     * The redirect is ignored if there is an all mechanism
+     */
+    private boolean hasAll() {
+      for (Term term : terms) {
+        if (term.mechanism == Mechanism.ALL) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+  }
+
+  /**
+   * A mechanism (or the redirect) with its resolution
+   */
+  private static class Term {
+
+    private final Mechanism mechanism;
+    private final DnsSpfResult qualifier;
+    private DnsName target;
+    private long networkHigh;
+    private long networkLow;
+    private int prefixLength;
+    private int ipv4PrefixLength = 32;
+    private int ipv6PrefixLength = 128;
+    private volatile Set<DnsIp> addresses;
+    private volatile DnsSpfPolicy policy;
+    private volatile Throwable error;
+    private volatile boolean tooManyMxRecords;
+    /**
+     * Not resolved, after the limit of lookups
+     */
+    private boolean skipped;
+
+    private Term(Mechanism mechanism, DnsSpfResult qualifier) {
+      this.mechanism = mechanism;
+      this.qualifier = qualifier;
+    }
+
+    /**
+     * @return true if the term counts in the limit of lookups
+     */
+    private boolean isLookup() {
+      return mechanism != Mechanism.ALL && mechanism != Mechanism.IP;
+    }
+
+    private Void resolved(Set<DnsIp> addresses, Throwable throwable) {
+      if (throwable != null && !(AsyncDnsClientAbs.unwrap(throwable) instanceof DnsNotFoundException)) {
+        this.error = throwable;
+        return null;
+      }
+      this.addresses = addresses == null ? Collections.emptySet() : addresses;
+      return null;
+    }
+
+    private Void resolved(DnsSpfPolicy policy, Throwable throwable) {
+      if (throwable != null) {
+        this.error = throwable;
+        return null;
+      }
+      this.policy = policy;
+      return null;
+    }
+
+  }
+
+  /**
+   * A cached policy, in flight until the expiration is set
+   */
+  private static class CacheEntry {
+
+    private final CompletableFuture<DnsSpfPolicy> policy = new CompletableFuture<>();
+    private volatile long expiresAt = Long.MAX_VALUE;
+    /**
+     * The lookup budget of the compilation, the policy is valid for a budget lower or equal
+     */
+    private volatile int lookupBudget;
+
+    /**
+     * The compilations in flight that this compilation waits on (its includes), guarded by the cache lock
+     */
+    private final Set<CacheEntry> waitsOn = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private CacheEntry(int lookupBudget) {
+      this.lookupBudget = lookupBudget;
+    }
+
+    /**
+     * @return true if this compilation waits (transitively) on the other one (called with the cache lock)
+     */
+    private boolean waitsFor(CacheEntry other) {
+      Set<CacheEntry> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+      Deque<CacheEntry> toVisit = new ArrayDeque<>();
+      toVisit.push(this);
+      while (!toVisit.isEmpty()) {
+        CacheEntry entry = toVisit.pop();
+        if (entry == other) {
+          return true;
+        }
+        if (visited.add(entry)) {
+          for (CacheEntry next : entry.waitsOn) {
+            if (!next.policy.isDone()) {
+              toVisit.push(next);
+            }
+          }
+        }
+      }
+      return false;
+    }
+
+  }
+
+  public static class DnsSpfEvaluatorBuilder {
+
+    private final AsyncDnsClient dnsClient;
+    private int maxEntries = 10000;
+    private Duration ttl = Duration.ofMinutes(5);
+    private Duration includeTimeout = Duration.ofSeconds(30);
+
+    public DnsSpfEvaluatorBuilder(AsyncDnsClient dnsClient) {
+      this.dnsClient = dnsClient;
+    }
+
+    /**
+     * @param maxEntries - the maximum number of compiled policies kept (the least recently used is evicted)
+     */
+    public DnsSpfEvaluatorBuilder setMaxEntries(int maxEntries) {
+      if (maxEntries <= 0) {
+        throw new IllegalArgumentException("The max entries should be greater than zero");
+      }
+      this.maxEntries = maxEntries;
+      return this;
+    }
+
+    /**
+     * @param ttl - the duration a compiled policy is kept (default 5 minutes)
+     */
+    public DnsSpfEvaluatorBuilder setTtl(Duration ttl) {
+      this.ttl = ttl;
+      return this;
+    }
+
+    /**
+     * @param includeTimeout - the maximum wait of an include or redirect compilation, after it is a {@link DnsSpfResult#TEMPERROR}
+     */
+    public DnsSpfEvaluatorBuilder setIncludeTimeout(Duration includeTimeout) {
+      this.includeTimeout = includeTimeout;
+      return this;
+    }
+
+    public DnsSpfEvaluator build() {
+      return new DnsSpfEvaluator(this);
+    }
+
+  }
+
+}
@@ -0,0 +1,419 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * The compiled SPF policy of a domain created by {@link DnsSpfEvaluator}
+ * <p>
+ * The record, its includes, redirect, `a` and `mx` mechanisms are resolved
+ * and flattened into sorted ip ranges, each with the result of the RFC evaluation:
+ * * the evaluation of an ip is a binary search, without any DNS lookup
+ * * each range keeps the number of DNS lookups (and void lookups) that the RFC evaluation has done to reach it
+ * so that a policy can be included in another one and still enforce the limit of 10 lookups (and 2 void lookups)
+ * * the IPv4 ranges are in the IPv4-mapped IPv6 space (`::ffff:0:0/96`)
+ */
+public class DnsSpfPolicy {
+
+  /**
+   * The maximum number of lookups (include, a, mx, ptr, exists, redirect) of an evaluation
+   */
+  static final int MAX_LOOKUPS = 10;
+  /**
+   * The maximum number of lookups without answer (empty or NXDOMAIN) of an evaluation
+   */
+  static final int MAX_VOID_LOOKUPS = 2;
+  private static final DnsSpfResult[] RESULTS = DnsSpfResult.values();
+  private static final long IPV4_MAPPED_PREFIX = 0xFFFF00000000L;
+
+  private final DnsName domain;
+  private final long[] startHighs;
+  private final long[] startLows;
+  private final byte[] results;
+  private final byte[] lookups;
+  private final byte[] voidLookups;
+  private final boolean complete;
+  private final boolean truncated;
+  private final boolean tempError;
+
+  private DnsSpfPolicy(DnsName domain, long[] startHighs, long[] startLows, byte[] results, byte[] lookups, byte[] voidLookups, boolean complete, boolean truncated) {
+    this.domain = domain;
+    this.startHighs = startHighs;
+    this.startLows = startLows;
+    this.results = results;
+    this.lookups = lookups;
+    this.voidLookups = voidLookups;
+    this.complete = complete;
+    this.truncated = truncated;
+    boolean tempError = false;
+    for (byte result : results) {
+      if (result == DnsSpfResult.TEMPERROR.ordinal()) {
+        tempError = true;
+        break;
+      }
+    }
+    this.tempError = tempError;
+  }
+
+  /**
+   * @return a policy with the same result for all ips (no record, error)
+   */
+  static DnsSpfPolicy createConstant(DnsName domain, DnsSpfResult result) {
+    return new DnsSpfPolicy(domain, new long[]{0}, new long[]{0}, new byte[]{(byte) result.ordinal()}, new byte[]{0}, new byte[]{0}, true, false);
+  }
+
+  /**
+   * @return the result of the SPF evaluation for the ip
+   */
+  public DnsSpfResult evaluate(DnsIp ip) {
+    return RESULTS[results[find(getHigh(ip), getLow(ip))]];
+  }
+
+  /**
+   * @return the index of the range of the address
+   */
+  private int find(long high, long low) {
+    int lowIndex = 0;
+    int highIndex = startHighs.length - 1;
+    // the first range starts at 0, the last range whose start is lower or equal is the range of the address
+    while (lowIndex < highIndex) {
+      int middle = (lowIndex + highIndex + 1) >>> 1;
+      if (compare(startHighs[middle], startLows[middle], high, low) <= 0) {
+        lowIndex = middle;
+      } else {
+        highIndex = middle - 1;
+      }
+    }
+    return lowIndex;
+  }
+
+  public DnsName getDomain() {
+    return domain;
+  }
+
+  /**
+   * @return the number of ip ranges
+   */
+  public int getRangeCount() {
+    return results.length;
+  }
+
+  /**
+   * @return false if a mechanism that is not supported (macro, ptr) was considered as not matching
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * @return true if some terms were not resolved because they can only be reached
+   * after the limit of lookups from the include path of the compilation
+   * (the policy is then valid only from an include path as short)
+   */
+  boolean isTruncated() {
+    return truncated;
+  }
+
+  /**
+   * @return true if a DNS lookup has failed (the policy is then not cached)
+   */
+  boolean hasTempError() {
+    return tempError;
+  }
+
+  static long getHigh(DnsIp ip) {
+    return ip.isIpv4() ? 0 : ip.getHigh();
+  }
+
+  static long getLow(DnsIp ip) {
+    return ip.isIpv4() ? IPV4_MAPPED_PREFIX | (ip.getIpv4Int() & 0xFFFFFFFFL) : ip.getLow();
+  }
+
+  private static int compare(long high1, long low1, long high2, long low2) {
+    int compare = Long.compareUnsigned(high1, high2);
+    return compare != 0 ? compare : Long.compareUnsigned(low1, low2);
+  }
+
+  @Override
+  public String toString() {
+    return "DnsSpfPolicy{" + domain + ", ranges=" + getRangeCount() + "}";
+  }
+
+  /**
+   * Build a policy by applying the terms of a record in order:
+   * an ip range is decided by the first term that matches it
+   */
+  static class Compiler {
+
+    private static final byte UNDECIDED = -1;
+    private static final Key MIN = new Key(0, 0);
+    private static final Key MAX = new Key(-1, -1);
+
+    /**
+     * The ranges by start, they cover the whole address space
+     */
+    private final TreeMap<Key, Segment> segments = new TreeMap<>();
+    private boolean complete = true;
+    private boolean truncated = false;
+
+    Compiler() {
+      segments.put(MIN, new Segment(UNDECIDED, 0, 0));
+    }
+
+    /**
+     * A term that does a DNS lookup: the ips not yet decided have done one more lookup
+     */
+    void addLookup() {
+      for (Segment segment : segments.values()) {
+        if (segment.result == UNDECIDED) {
+          segment.lookups++;
+          if (segment.lookups > MAX_LOOKUPS) {
+            segment.result = (byte) DnsSpfResult.PERMERROR.ordinal();
+          }
+        }
+      }
+    }
+
+    /**
+     * A lookup without answer: the ips not yet decided have done one more void lookup
+     */
+    void addVoidLookup() {
+      for (Segment segment : segments.values()) {
+        if (segment.result == UNDECIDED) {
+          segment.voidLookups++;
+          if (segment.voidLookups > MAX_VOID_LOOKUPS) {
+            segment.result = (byte) DnsSpfResult.PERMERROR.ordinal();
+          }
+        }
+      }
+    }
+
+    /**
+     * The ips not yet decided get the result
+     */
+    void matchAll(DnsSpfResult result) {
+      for (Segment segment : segments.values()) {
+        if (segment.result == UNDECIDED) {
+          segment.result = (byte) result.ordinal();
+        }
+      }
+    }
+
+    /**
+     * The ips of the network not yet decided get the result
+     *
+     * @param prefixLength - the prefix length in the IPv6 space (96 + the prefix length for an IPv4)
+     */
+    void matchNetwork(long high, long low, int prefixLength, DnsSpfResult result) {
+      long highMask = prefixLength >= 64 ? -1L : (prefixLength == 0 ? 0 : -1L << (64 - prefixLength));
+      long lowMask = prefixLength <= 64 ? 0 : (prefixLength == 128 ? -1L : -1L << (128 - prefixLength));
+      Key start = new Key(high & highMask, low & lowMask);
+      Key end = new Key(high | ~highMask, low | ~lowMask);
+      for (Segment segment : split(start, end).values()) {
+        if (segment.result == UNDECIDED) {
+          segment.result = (byte) result.ordinal();
+        }
+      }
+    }
+
+    void matchNetwork(DnsIp ip, int ipv4PrefixLength, int ipv6PrefixLength, DnsSpfResult result) {
+      matchNetwork(getHigh(ip), getLow(ip), ip.isIpv4() ? 96 + ipv4PrefixLength : ipv6PrefixLength, result);
+    }
+
+    /**
+     * Include mechanism: it matches where the included policy passes,
+     * it does not match where it fails, softfails or is neutral
+     */
+    void include(DnsSpfResult qualifier, DnsSpfPolicy included) {
+      compose(included, result -> {
+        switch (result) {
+          case PASS:
+            return qualifier;
+          case TEMPERROR:
+          case PERMERROR:
+            return result;
+          case NONE:
+            return DnsSpfResult.PERMERROR;
+          default:
+            return null;
+        }
+      });
+    }
+
+    /**
+     * Redirect modifier: the ips not yet decided get the result of the redirect policy
+     */
+    void redirect(DnsSpfPolicy redirect) {
+      compose(redirect, result -> result == DnsSpfResult.NONE ? DnsSpfResult.PERMERROR : result);
+    }
+
+    /**
+     * @param mapping - the result for an ip range of the other policy (null: no match)
+     */
+    private void compose(DnsSpfPolicy other, Function<DnsSpfResult, DnsSpfResult> mapping) {
+      if (other.truncated) {
+        this.truncated = true;
+      }
+      int size = other.results.length;
+      for (int i = 0; i < size; i++) {
+        Key start = new Key(other.startHighs[i], other.startLows[i]);
+        Key end = i == size - 1 ? MAX : new Key(other.startHighs[i + 1], other.startLows[i + 1]).previous();
+        DnsSpfResult otherResult = RESULTS[other.results[i]];
+        for (Segment segment : split(start, end).values()) {
+          if (segment.result != UNDECIDED) {
+            continue;
+          }
+          int lookups = segment.lookups + other.lookups[i];
+          if (lookups > MAX_LOOKUPS) {
+            segment.result = (byte) DnsSpfResult.PERMERROR.ordinal();
+            segment.lookups = MAX_LOOKUPS + 1;
+            continue;
+          }
+          segment.lookups = lookups;
+          segment.voidLookups += other.voidLookups[i];
+          if (segment.voidLookups > MAX_VOID_LOOKUPS) {
+            segment.result = (byte) DnsSpfResult.PERMERROR.ordinal();
+            continue;
+          }
+          DnsSpfResult result = mapping.apply(otherResult);
+          if (result != null) {
+            segment.result = (byte) result.ordinal();
+          }
+        }
+      }
+    }
+
+    /**
+     * A mechanism that is not supported does not match
+     */
+    void setIncomplete() {
+      this.complete = false;
+    }
+
+    /**
+     * A term was not resolved because of the limit of lookups
+     */
+    void setTruncated() {
+      this.truncated = true;
+    }
+
+    /**
+     * @return the segments of the range (split at the boundaries)
+     */
+    private Map<Key, Segment> split(Key start, Key end) {
+      splitAt(start);
+      if (!end.equals(MAX)) {
+        splitAt(end.next());
+      }
+      return segments.subMap(start, true, end, true);
+    }
+
+    private void splitAt(Key position) {
+      Map.Entry<Key, Segment> floor = segments.floorEntry(position);
+      if (!floor.getKey().equals(position)) {
+        segments.put(position, floor.getValue().copy());
+      }
+    }
+
+    /**
+     * @return the policy, the ips not decided are neutral
+     */
+    DnsSpfPolicy build(DnsName domain) {
+      List<Key> starts = new ArrayList<>();
+      List<Segment> merged = new ArrayList<>();
+      Segment previous = null;
+      for (Map.Entry<Key, Segment> entry : segments.entrySet()) {
+        Segment segment = entry.getValue();
+        if (segment.result == UNDECIDED) {
+          segment.result = (byte) DnsSpfResult.NEUTRAL.ordinal();
+        }
+        if (previous != null && previous.result == segment.result && previous.lookups == segment.lookups && previous.voidLookups == segment.voidLookups) {
+          continue;
+        }
+        starts.add(entry.getKey());
+        merged.add(segment);
+        previous = segment;
+      }
+      int size = merged.size();
+      long[] startHighs = new long[size];
+      long[] startLows = new long[size];
+      byte[] results = new byte[size];
+      byte[] lookups = new byte[size];
+      byte[] voidLookups = new byte[size];
+      for (int i = 0; i < size; i++) {
+        startHighs[i] = starts.get(i).high;
+        startLows[i] = starts.get(i).low;
+        results[i] = merged.get(i).result;
+        lookups[i] = (byte) merged.get(i).lookups;
+        voidLookups[i] = (byte) merged.get(i).voidLookups;
+      }
+      return new DnsSpfPolicy(domain, startHighs, startLows, results, lookups, voidLookups, complete, truncated);
+    }
+
+  }
+
+  /**
+   * An unsigned 128 bit address
+   */
+  private static final class Key implements Comparable<Key> {
+
+    private final long high;
+    private final long low;
+
+    private Key(long high, long low) {
+      this.high = high;
+      this.low = low;
+    }
+
+    private Key next() {
+      return low == -1L ? new Key(high + 1, 0) : new Key(high, low + 1);
+    }
+
+    private Key previous() {
+      return low == 0 ? new Key(high - 1, -1L) : new Key(high, low - 1);
+    }
+
+    @Override
+    public int compareTo(Key o) {
+      return compare(high, low, o.high, o.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Key key = (Key) o;
+      return high == key.high && low == key.low;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Long.hashCode(high) + Long.hashCode(low);
+    }
+
+  }
+
+  private static final class Segment {
+
+    private byte result;
+    private int lookups;
+    private int voidLookups;
+
+    private Segment(byte result, int lookups, int voidLookups) {
+      this.result = result;
+      this.lookups = lookups;
+      this.voidLookups = voidLookups;
+    }
+
+    private Segment copy() {
+      return new Segment(result, lookups, voidLookups);
+    }
+
+  }
+
+}
@@ -0,0 +1,38 @@
+package net.bytle.dns;
+
+/**
+ * The result of an SPF evaluation
+ * <a href="https://datatracker.ietf.org/doc/html/rfc7208#section-2.6">RFC 7208</a>
+ */
+public enum DnsSpfResult {
+
+  /**
+   * The domain has no SPF record
+   */
+  NONE,
+  /**
+   * The domain makes no assertion about the ip (`?` qualifier or no match)
+   */
+  NEUTRAL,
+  /**
+   * The ip is authorized
+   */
+  PASS,
+  /**
+   * The ip is not authorized
+   */
+  FAIL,
+  /**
+   * The ip is probably not authorized
+   */
+  SOFTFAIL,
+  /**
+   * A transient DNS error
+   */
+  TEMPERROR,
+  /**
+   * The record is not valid (syntax, more than 10 lookups, include without record, loop)
+   */
+  PERMERROR
+
+}
@@ -0,0 +1,312 @@
+package net.bytle.dns;
+
+import net.bytle.exception.CastException;
+import net.bytle.type.DnsName;
+import org.xbill.DNS.*;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.lookup.LookupResult;
+import org.xbill.DNS.lookup.LookupSession;
+import org.xbill.DNS.lookup.NoSuchDomainException;
+import org.xbill.DNS.lookup.ServerFailedException;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * An async client implemented natively on the dnsjava async {@link LookupSession}
+ * <p>
+ * No thread is parked during the round trip.
+ * The sync {@link XBillDnsClient} is an adapter over this client.
+ */
+public class XBillAsyncDnsClient extends AsyncDnsClientAbs {
+
+  private final LookupSession lookupSession;
+  /**
+   * The answer cache (may be null)
+   */
+  private final DnsCache cache;
+  /**
+   * The queries sent to the resolver and not yet answered
+   * (null if coalescing is disabled)
+   */
+  private final ConcurrentHashMap<DnsQueryKey, CompletableFuture<List<Record>>> inFlightQueries;
+  private final LongAdder coalescedQueries = new LongAdder();
+  /**
+   * The metrics (may be null)
+   */
+  private final DnsMetrics metrics;
+
+  public XBillAsyncDnsClient(XBillDnsClient.DnsClientBuilder dnsClientBuilder) {
+    Resolver dnsResolver = dnsClientBuilder.getResolver();
+    metrics = dnsClientBuilder.getMetrics();
+    if (!(dnsResolver instanceof DnsResolverPool)) {
+      dnsResolver = DnsResolver.decorate(dnsResolver, metrics, dnsClientBuilder.getAdaptiveLimiters());
+    }
+    lookupSession = LookupSession
+      .builder()
+      .resolver(dnsResolver)
+      .build();
+    cache = dnsClientBuilder.getCache();
+    inFlightQueries = dnsClientBuilder.getCoalescing() ? new ConcurrentHashMap<>() : null;
+  }
+
+  public static XBillDnsClient.DnsClientBuilder builder() {
+    return new XBillDnsClient.DnsClientBuilder();
+  }
+
+  public static XBillAsyncDnsClient createDefault() {
+    return XBillAsyncDnsClient.builder().buildAsync();
+  }
+
+  private static String getStringFromTxtRecord(TXTRecord txtRecord) {
+    return String.join("", txtRecord.getStrings());
+  }
+
+  /**
+   * The function where all queries go through
+   *
+   * @param dnsName - the name (used in the error message)
+   * @param name    - the xbill name
+   * @param type    - the record type
+   * @return the records, the stage fails with a {@link DnsNotFoundException} or a {@link DnsException}
+   */
+  CompletionStage<List<Record>> lookupRecords(DnsName dnsName, Name name, int type) {
+    DnsQueryKey key = new DnsQueryKey(name, type);
+    if (this.cache != null) {
+      DnsCacheEntry entry = this.cache.get(key);
+      if (entry != null) {
+        if (this.metrics != null) {
+          this.metrics.cacheHit();
+        }
+        if (this.cache.startRefresh(entry)) {
+          refresh(dnsName, key);
+        }
+        if (entry.isNegative()) {
+          return CompletableFuture.failedFuture(new DnsNotFoundException(entry.getNotFoundMessage()));
+        }
+        return CompletableFuture.completedFuture(entry.getRecords());
+      }
+    }
+    if (this.inFlightQueries == null) {
+      return queryAndCache(dnsName, key);
+    }
+    /**
+     * Single flight: concurrent callers of the same query share the same answer
+     */
+    CompletableFuture<List<Record>> flight = new CompletableFuture<>();
+    CompletableFuture<List<Record>> existingFlight = this.inFlightQueries.putIfAbsent(key, flight);
+    if (existingFlight != null) {
+      this.coalescedQueries.increment();
+      return existingFlight.copy();
+    }
+    queryAndCache(dnsName, key)
+      .whenComplete((records, throwable) -> {
+        // removed before completion so that a caller that comes after gets the cache or a new query
+        this.inFlightQueries.remove(key, flight);
+        if (throwable != null) {
+          flight.completeExceptionally(throwable);
+        } else {
+          flight.complete(records);
+        }
+      });
+    return flight.copy();
+  }
+
+  /**
+   * Refresh ahead: re-resolve a cached answer in the background,
+   * the callers keep getting the cached answer until the new one is stored
+   */
+  private void refresh(DnsName dnsName, DnsQueryKey key) {
+    queryAndCache(dnsName, key)
+      .whenComplete((records, throwable) -> this.cache.endRefresh(throwable == null || unwrap(throwable) instanceof DnsNotFoundException));
+  }
+
+  private CompletionStage<List<Record>> queryAndCache(DnsName dnsName, DnsQueryKey key) {
+    CompletionStage<List<Record>> query = query(dnsName, key.getName(), key.getType());
+    if (this.cache == null) {
+      return query;
+    }
+    return query
+      .whenComplete((records, throwable) -> {
+        if (throwable == null) {
+          this.cache.putRecords(key, records);
+          return;
+        }
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof DnsNotFoundException) {
+          this.cache.putNotFound(key, (DnsNotFoundException) cause);
+        }
+      });
+  }
+
+  /**
+   * Send the query to the resolver
+   */
+  private CompletionStage<List<Record>> query(DnsName dnsName, Name name, int type) {
+    long start = this.metrics != null ? System.nanoTime() : 0;
+    CompletionStage<LookupResult> lookup;
+    try {
+      lookup = this.lookupSession.lookupAsync(name, type);
+    } catch (RuntimeException e) {
+      lookup = CompletableFuture.failedFuture(e);
+    }
+    if (this.metrics != null) {
+      // the stage exists, its completion decrements the lookups in flight
+      this.metrics.lookupStarted();
+    }
+    return lookup
+      .thenApply(LookupResult::getRecords)
+      .handle((records, throwable) -> {
+        if (this.metrics != null) {
+          this.metrics.lookupCompleted(type, System.nanoTime() - start, DnsOutcome.ofLookup(records, throwable));
+        }
+        if (throwable != null) {
+          throw new CompletionException(toDnsException(dnsName, throwable));
+        }
+        return records;
+      });
+  }
+
+  /**
+   * @return the answer cache or null if there is none
+   */
+  @SuppressWarnings("unused")
+  public DnsCache getCache() {
+    return this.cache;
+  }
+
+  /**
+   * @return the metrics or null if they are not enabled
+   */
+  public DnsMetrics getMetrics() {
+    return this.metrics;
+  }
+
+  /**
+   * @return the number of requests that have shared the answer of an identical query in flight
+   */
+  public long getCoalescedCount() {
+    return this.coalescedQueries.sum();
+  }
+
+  CompletionStage<List<Record>> lookupRecords(DnsName dnsName, int type) {
+    Name name;
+    try {
+      name = XBillDnsClient.getXbillName(dnsName);
+    } catch (DnsException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return lookupRecords(dnsName, name, type);
+  }
+
+  /**
+   * @param dnsName   - the name queried
+   * @param throwable - the lookup error
+   * @return a {@link DnsNotFoundException} or a {@link DnsException}
+   */
+  static Exception toDnsException(DnsName dnsName, Throwable throwable) {
+    Throwable cause = unwrap(throwable);
+    if (cause instanceof DnsNotFoundException || cause instanceof DnsException) {
+      return (Exception) cause;
+    }
+    if (cause instanceof NoSuchDomainException) {
+      return new DnsNotFoundException("The domain name does not exist (" + dnsName + ")", (Exception) cause);
+    }
+    if (cause instanceof ServerFailedException) {
+      // The DNS server returned a SERVFAIL status
+      // issue reaching the DNS server for your domain
+      // domain does not exists any more
+      return new DnsNotFoundException("The domain name does not have any server (" + dnsName + ")", (Exception) cause);
+    }
+    return new DnsException(cause.getMessage(), cause);
+  }
+
+  static DnsName toDnsName(Name name) {
+    try {
+      return DnsName.create(name.toString());
+    } catch (CastException e) {
+      throw new DnsInternalException("The name returned by the DNS server should be valid (" + name + ")", e);
+    }
+  }
+
+  @Override
+  public CompletionStage<Set<DnsIp>> resolveA(DnsName dnsName) {
+    return lookupRecords(dnsName, Type.A)
+      .thenApply(records -> records
+        .stream()
+        .map(ARecord.class::cast)
+        .map(ARecord::getAddress)
+        .map(DnsIp::createFromInetAddress)
+        .collect(Collectors.toSet()));
+  }
+
+  @Override
+  public CompletionStage<Set<DnsIp>> resolveAAAA(DnsName dnsName) {
+    return lookupRecords(dnsName, Type.AAAA)
+      .thenApply(records -> records
+        .stream()
+        .map(AAAARecord.class::cast)
+        .map(r -> DnsIp.createFromInetAddress(r.getAddress()))
+        .collect(Collectors.toSet()));
+  }
+
+  @Override
+  public CompletionStage<Set<DnsName>> resolveCName(DnsName dnsName) {
+    return lookupRecords(dnsName, Type.CNAME)
+      .thenApply(records -> records
+        .stream()
+        .map(CNAMERecord.class::cast)
+        .map(rec -> toDnsName(rec.getTarget()))
+        .collect(Collectors.toSet()));
+  }
+
+  @Override
+  public CompletionStage<List<String>> resolveTxt(DnsName dnsName) {
+    return lookupRecords(dnsName, Type.TXT)
+      .thenApply(records -> records
+        .stream()
+        .map(TXTRecord.class::cast)
+        .map(XBillAsyncDnsClient::getStringFromTxtRecord)
+        .collect(Collectors.toList()));
+  }
+
+  @Override
+  public CompletionStage<List<DnsMxRecord>> resolveMx(DnsName dnsName) {
+    return lookupRecords(dnsName, Type.MX)
+      .thenApply(records -> records
+        .stream()
+        .map(MXRecord.class::cast)
+        .map(mx -> new DnsMxRecord() {
+          @Override
+          public int getPriority() {
+            return mx.getPriority();
+          }
+
+          @Override
+          public DnsName getTarget() {
+            return toDnsName(mx.getTarget());
+          }
+        })
+        .collect(Collectors.toList()));
+  }
+
+  @Override
+  public CompletionStage<DnsName> lookupPtr(DnsIp dnsIp) {
+    Name name = ReverseMap.fromAddress(dnsIp.getInetAddress());
+    DnsName reverseName = toDnsName(name);
+    return lookupRecords(reverseName, name, Type.PTR)
+      .thenCompose(records -> {
+        for (Record record : records) {
+          return CompletableFuture.completedFuture(toDnsName(((PTRRecord) record).getTarget()));
+        }
+        return CompletableFuture.failedFuture(new DnsNotFoundException("There is no PTR record for the ip (" + dnsIp + ")"));
+      });
+  }
+
+}
@@ -1,26 +1,26 @@
 package net.bytle.dns;
 
-import net.bytle.exception.CastException;
 import net.bytle.type.DnsName;
 import org.xbill.DNS.*;
-import org.xbill.DNS.lookup.LookupSession;
-import org.xbill.DNS.lookup.NoSuchDomainException;
-import org.xbill.DNS.lookup.ServerFailedException;
 
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
+/**
+ * A sync client
+ * <p>
+ * This is a thin adapter that waits on the result of the {@link XBillAsyncDnsClient}
+ */
 public class XBillDnsClient extends DnsClientAbs {
 
-  private final LookupSession lookupSession;
+  private final XBillAsyncDnsClient asyncClient;
 
   public XBillDnsClient(DnsClientBuilder dnsClientBuilder) {
-    Resolver dnsResolver = dnsClientBuilder.resolver;
-    lookupSession = LookupSession
-      .builder()
-      .resolver(dnsResolver)
-      .build();
+    this(new XBillAsyncDnsClient(dnsClientBuilder));
+  }
+
+  public XBillDnsClient(XBillAsyncDnsClient asyncClient) {
+    this.asyncClient = asyncClient;
   }
 
 
@@ -32,101 +32,50 @@ public class XBillDnsClient extends DnsClientAbs {
     return XBillDnsClient.builder().build();
   }
 
-  private static String getStringFromTxtRecord(TXTRecord txtRecord) {
-    return String.join("", txtRecord.getStrings());
+  /**
+   * @return the async client that performs the queries
+   */
+  public XBillAsyncDnsClient getAsyncClient() {
+    return this.asyncClient;
   }
 
+  /**
+   * @return the metrics or null if they are not enabled
+   */
+  @SuppressWarnings("unused")
+  public DnsMetrics getMetrics() {
+    return this.asyncClient.getMetrics();
+  }
 
   @Override
   public Set<DnsIp> resolveA(DnsName dnsName) throws DnsNotFoundException, DnsException {
-    try {
-      return this
-        .getLookupSession().lookupAsync(getXbillName(dnsName), Type.A)
-        .toCompletableFuture()
-        .get()
-        .getRecords()
-        .stream().map(ARecord.class::cast)
-        .map(ARecord::getAddress)
-        .map(DnsIp::createFromInetAddress)
-        .collect(Collectors.toSet());
-    } catch (Exception e) {
-      throw handleLookupException(dnsName, e);
-    }
+    return AsyncDnsClientAbs.getSync(this.asyncClient.resolveA(dnsName));
   }
 
   @Override
   public Set<DnsName> resolveCName(DnsName dnsName) throws DnsNotFoundException, DnsException {
-    try {
-      return this.getLookupSession()
-        .lookupAsync(getXbillName(dnsName), Type.CNAME)
-        .toCompletableFuture()
-        .get()
-        .getRecords()
-        .stream()
-        .map(CNAMERecord.class::cast)
-        .map(rec-> {
-          try {
-            return DnsName.create(rec.getTarget().toString());
-          } catch (CastException e) {
-            throw new RuntimeException(e);
-          }
-        })
-        .collect(Collectors.toSet());
-    } catch (Exception e) {
-      throw handleLookupException(dnsName, e);
-    }
+    return AsyncDnsClientAbs.getSync(this.asyncClient.resolveCName(dnsName));
   }
 
   @Override
   public DnsName lookupPtr(DnsIp dnsIp) throws DnsNotFoundException, DnsException {
-    Name name = ReverseMap.fromAddress(dnsIp.getInetAddress());
-    try {
-      return this
-        .getLookupSession()
-        .lookupAsync(name, Type.PTR)
-        .toCompletableFuture()
-        .get()
-        .getRecords()
-        .stream()
-        .map(PTRRecord.class::cast)
-        .map(rec-> {
-          try {
-            return DnsName.create(rec.getTarget().toString());
-          } catch (CastException e) {
-            throw new RuntimeException(e);
-          }
-        })
-        .findFirst()
-        .orElseThrow(DnsNotFoundException::new);
-    } catch (Exception e) {
-      DnsName dnsName;
-      String reverseName = name.toString();
-      try {
-        dnsName = DnsName.create(reverseName);
-      } catch (CastException ex) {
-        throw new DnsInternalException("The reverse name should be good ("+reverseName+")");
-      }
-      throw handleLookupException(dnsName, e);
-    }
-  }
-
-
-  private LookupSession getLookupSession() {
-    return this.lookupSession;
+    return AsyncDnsClientAbs.getSync(this.asyncClient.lookupPtr(dnsIp));
   }
 
-
+  /**
+   * @param dnsName - the looked up name
+   * @param e       - the lookup error (its cause is the xbill lookup exception)
+   * @return the error as a {@link DnsException}
+   * @throws DnsNotFoundException if the domain does not exist or has no server
+   * @deprecated the clients map the lookup errors themselves, this method is not called anymore and will be removed
+   */
+  @Deprecated
   public static DnsException handleLookupException(DnsName dnsName, Exception e) throws DnsNotFoundException {
-    if (e.getCause() instanceof NoSuchDomainException) {
-      throw new DnsNotFoundException("The domain name does not exist (" + dnsName + ")", e);
-    }
-    if (e.getCause() instanceof ServerFailedException) {
-      // The DNS server returned a SERVFAIL status
-      // issue reaching the DNS server for your domain
-      // domain does not exists any more
-      throw new DnsNotFoundException("The domain name does not have any server (" + dnsName + ")", e);
+    Exception dnsException = XBillAsyncDnsClient.toDnsException(dnsName, e.getCause() != null ? e.getCause() : e);
+    if (dnsException instanceof DnsNotFoundException) {
+      throw (DnsNotFoundException) dnsException;
     }
-    return new DnsException(e);
+    return dnsException instanceof DnsException ? (DnsException) dnsException : new DnsException(e);
   }
 
   public DnsHost.DnsHostConfig configHost(String name) throws DnsIllegalArgumentException {
@@ -135,21 +84,7 @@ public class XBillDnsClient extends DnsClientAbs {
 
   @Override
   public List<String> resolveTxt(DnsName dnsName) throws DnsException, DnsNotFoundException {
-
-    try {
-      return this
-        .getLookupSession()
-        .lookupAsync(getXbillName(dnsName), Type.TXT)
-        .toCompletableFuture()
-        .get()
-        .getRecords()
-        .stream()
-        .map(TXTRecord.class::cast)
-        .map(XBillDnsClient::getStringFromTxtRecord)
-        .collect(Collectors.toList());
-    } catch (Exception e) {
-      throw handleLookupException(dnsName, e);
-    }
+    return AsyncDnsClientAbs.getSync(this.asyncClient.resolveTxt(dnsName));
   }
 
   public static Name getXbillName(DnsName dnsName) throws DnsException {
@@ -162,65 +97,115 @@ public class XBillDnsClient extends DnsClientAbs {
 
   @Override
   public List<DnsMxRecord> resolveMx(DnsName dnsName) throws DnsNotFoundException, DnsException {
-    try {
-      return this
-        .getLookupSession()
-        .lookupAsync(getXbillName(dnsName), Type.MX)
-        .toCompletableFuture()
-        .get()
-        .getRecords()
-        .stream()
-        .map(MXRecord.class::cast)
-        .map(mx -> new DnsMxRecord() {
-          @Override
-          public int getPriority() {
-            return mx.getPriority();
-          }
-
-          @Override
-          public DnsName getTarget() {
-            try {
-              return DnsName.create(mx.getTarget().toString());
-            } catch (CastException e) {
-              throw new RuntimeException(e);
-            }
-          }
-        })
-        .collect(Collectors.toList());
-    } catch (Exception e) {
-      throw handleLookupException(dnsName, e);
-    }
+    return AsyncDnsClientAbs.getSync(this.asyncClient.resolveMx(dnsName));
   }
 
 
   @Override
   public Set<DnsIp> resolveAAAA(DnsName dnsName) throws DnsNotFoundException, DnsException {
-    try {
-      return this.getLookupSession().lookupAsync(getXbillName(dnsName), Type.AAAA)
-        .toCompletableFuture()
-        .get()
-        .getRecords()
-        .stream()
-        .map(AAAARecord.class::cast)
-        .map(r -> DnsIp.createFromInetAddress(r.getAddress()))
-        .collect(Collectors.toSet());
-    } catch (Exception e) {
-      throw handleLookupException(dnsName, e);
-    }
+    return AsyncDnsClientAbs.getSync(this.asyncClient.resolveAAAA(dnsName));
   }
 
 
   public static class DnsClientBuilder {
 
     private Resolver resolver = DnsResolver.getLocal();
+    private DnsCache cache;
+    private boolean coalescing = true;
+    private DnsAdaptiveLimiters adaptiveLimiters = DnsAdaptiveLimiters.getShared();
+    private DnsMetrics metrics;
 
     public DnsClientBuilder setResolverToCloudflare() {
       this.resolver = DnsResolver.getCloudflare();
       return this;
     }
 
+    /**
+     * Send the queries to the local, Cloudflare and Google resolvers
+     * with hedging and failover
+     * (See {@link DnsResolverPool} to configure your own pool)
+     */
+    @SuppressWarnings("unused")
+    public DnsClientBuilder setResolverToPool() {
+      this.resolver = DnsResolver.createPool();
+      return this;
+    }
+
+    /**
+     * @param resolver - the resolver that receives the queries
+     */
+    public DnsClientBuilder setResolver(Resolver resolver) {
+      this.resolver = resolver;
+      return this;
+    }
+
+    /**
+     * @param cache - the answer cache (can be shared between clients)
+     */
+    public DnsClientBuilder setCache(DnsCache cache) {
+      this.cache = cache;
+      return this;
+    }
+
+    /**
+     * Enable a cache with the default configuration
+     */
+    public DnsClientBuilder enableCache() {
+      return setCache(DnsCache.builder().build());
+    }
+
+    /**
+     * @param coalescing - if true (default), concurrent identical queries (name, type) share the same answer
+     */
+    public DnsClientBuilder setCoalescing(boolean coalescing) {
+      this.coalescing = coalescing;
+      return this;
+    }
+
+    /**
+     * @param adaptiveLimiters - the registry of the limiters of the queries in flight by resolver
+     *                         (default to the {@link DnsAdaptiveLimiters#getShared() shared} registry, null to disable)
+     *                         A {@link DnsResolverPool} limits its resolvers with its own registry.
+     */
+    public DnsClientBuilder setAdaptiveLimiters(DnsAdaptiveLimiters adaptiveLimiters) {
+      this.adaptiveLimiters = adaptiveLimiters;
+      return this;
+    }
+
+    /**
+     * @param metrics - the metrics where the lookups and the queries of the resolver are recorded (null by default, disabled)
+     */
+    public DnsClientBuilder setMetrics(DnsMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    Resolver getResolver() {
+      return this.resolver;
+    }
+
+    DnsCache getCache() {
+      return this.cache;
+    }
+
+    boolean getCoalescing() {
+      return this.coalescing;
+    }
+
+    DnsAdaptiveLimiters getAdaptiveLimiters() {
+      return this.adaptiveLimiters;
+    }
+
+    DnsMetrics getMetrics() {
+      return this.metrics;
+    }
+
     public XBillDnsClient build() {
       return new XBillDnsClient(this);
     }
+
+    public XBillAsyncDnsClient buildAsync() {
+      return new XBillAsyncDnsClient(this);
+    }
   }
 }
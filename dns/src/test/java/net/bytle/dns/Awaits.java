@@ -0,0 +1,26 @@
+package net.bytle.dns;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Wait for an async condition in a test
+ */
+public class Awaits {
+
+  public static void until(BooleanSupplier condition, Duration timeout) {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) {
+        throw new AssertionError("The condition was not met in " + timeout);
+      }
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,177 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class DnsAdaptiveLimiterTest {
+
+  @Test
+  public void increaseAndDecrease() {
+
+    DnsAdaptiveLimiter limiter = DnsAdaptiveLimiters.builder()
+      .setInitialLimit(2)
+      .setMaxLimit(16)
+      .build()
+      .getOrCreate("server");
+
+    List<CompletableFuture<Boolean>> operations = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      CompletableFuture<Boolean> operation = new CompletableFuture<>();
+      operations.add(operation);
+      // the value of the operation is the overload flag
+      limiter.submit(() -> operation, (overload, throwable) -> overload);
+    }
+    Assert.assertEquals(2, limiter.getInFlight());
+    Assert.assertEquals(1, limiter.getPending());
+
+    // slow start: a success when the limit is reached increases it
+    operations.get(0).complete(false);
+    Assert.assertEquals(3, limiter.getLimit());
+    Assert.assertEquals(2, limiter.getInFlight());
+    Assert.assertEquals(0, limiter.getPending());
+
+    // an overload halves the limit
+    operations.get(1).complete(true);
+    Assert.assertEquals(1, limiter.getLimit());
+    Assert.assertEquals(1, limiter.getDecreaseCount());
+
+    // the operation was started before the decrease, the limit is not decreased twice
+    operations.get(2).complete(true);
+    Assert.assertEquals(1, limiter.getLimit());
+    Assert.assertEquals(2, limiter.getOverloadCount());
+    Assert.assertEquals(1, limiter.getDecreaseCount());
+    Assert.assertEquals(0, limiter.getInFlight());
+
+  }
+
+  @Test
+  public void pendingIsBounded() {
+
+    DnsAdaptiveLimiter limiter = DnsAdaptiveLimiters.builder()
+      .setInitialLimit(1)
+      .setMaxPending(1)
+      .build()
+      .getOrCreate("server");
+
+    CompletableFuture<Boolean> running = new CompletableFuture<>();
+    limiter.submit(() -> running, (overload, throwable) -> overload);
+    CompletableFuture<Boolean> pending = limiter.submit(() -> CompletableFuture.completedFuture(false), (overload, throwable) -> overload).toCompletableFuture();
+    CompletableFuture<Boolean> rejected = limiter.submit(() -> CompletableFuture.completedFuture(false), (overload, throwable) -> overload).toCompletableFuture();
+
+    Assert.assertTrue("The queue is full, the operation fails fast", rejected.isCompletedExceptionally());
+    try {
+      rejected.join();
+      Assert.fail("The operation should be rejected");
+    } catch (CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof DnsException);
+    }
+    Assert.assertEquals(1, limiter.getRejectedCount());
+    Assert.assertFalse(pending.isDone());
+
+    running.complete(false);
+    Assert.assertTrue(pending.isDone());
+    Assert.assertEquals(0, limiter.getInFlight());
+
+  }
+
+  @Test
+  public void notSentIsNotRecorded() {
+
+    DnsAdaptiveLimiter limiter = DnsAdaptiveLimiters.builder()
+      .setInitialLimit(1)
+      .build()
+      .getOrCreate("server");
+
+    // a short circuit when the limit is reached does not increase the limit
+    limiter.submit(() -> CompletableFuture.completedFuture((Boolean) null), (value, throwable) -> value != null, (value, throwable) -> value);
+    Assert.assertEquals(1, limiter.getLimit());
+    limiter.submit(() -> CompletableFuture.completedFuture(false), (value, throwable) -> value != null, (value, throwable) -> value);
+    Assert.assertEquals(2, limiter.getLimit());
+
+  }
+
+  @Test
+  public void resolverIsLimited() throws DnsCastException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300)
+      .setRefused(true);
+    DnsAdaptiveLimiter limiter = resolveWithLimiter(resolver);
+    Assert.assertNotNull("The resolver is limited", limiter);
+    Assert.assertTrue("A refused query is an overload", limiter.getDecreaseCount() >= 1);
+    Assert.assertTrue(limiter.getLimit() < 8);
+    assertNoneInFlight(limiter);
+
+  }
+
+  /**
+   * A SERVFAIL (ie a lame delegation) does not decrease the limit
+   */
+  @Test
+  public void serverFailureIsNotAnOverload() throws DnsCastException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300)
+      .setServerFailure(true);
+    DnsAdaptiveLimiter limiter = resolveWithLimiter(resolver);
+    Assert.assertEquals(0, limiter.getOverloadCount());
+    Assert.assertEquals(8, limiter.getLimit());
+    assertNoneInFlight(limiter);
+
+  }
+
+  /**
+   * A resolver without server address has its own limiter
+   */
+  @Test
+  public void limiterByInstance() {
+
+    DnsAdaptiveLimiters limiters = DnsAdaptiveLimiters.builder().build();
+    DnsTestResolver first = new DnsTestResolver();
+    DnsTestResolver second = new DnsTestResolver();
+    Assert.assertNotEquals(DnsResolver.getName(first), DnsResolver.getName(second));
+    Assert.assertEquals(DnsResolver.getName(first), DnsResolver.getName(first));
+    DnsAdaptiveLimiter limiter = limiters.getOrCreate(first);
+    Assert.assertSame(limiter, limiters.getOrCreate(first));
+    Assert.assertSame(limiter, limiters.get(first));
+    Assert.assertNotSame(limiter, limiters.getOrCreate(second));
+    Assert.assertEquals(2, limiters.getLimiters().size());
+
+  }
+
+  private static DnsAdaptiveLimiter resolveWithLimiter(DnsTestResolver resolver) throws DnsCastException {
+    DnsAdaptiveLimiters limiters = DnsAdaptiveLimiters.builder()
+      .setInitialLimit(8)
+      .build();
+    XBillAsyncDnsClient dnsClient = XBillAsyncDnsClient.builder()
+      .setResolver(resolver)
+      .setAdaptiveLimiters(limiters)
+      .buildAsync();
+
+    dnsClient.resolveA(DnsName.create("example.com"))
+      .handle((ips, throwable) -> null)
+      .toCompletableFuture()
+      .join();
+
+    return limiters.get(resolver);
+  }
+
+  /**
+   * The result is completed before the release of the slot (in the thread of the resolver)
+   */
+  static void assertNoneInFlight(DnsAdaptiveLimiter limiter) {
+    long deadline = System.currentTimeMillis() + 1000;
+    while (limiter.getInFlight() != 0 && System.currentTimeMillis() < deadline) {
+      Thread.onSpinWait();
+    }
+    Assert.assertEquals(0, limiter.getInFlight());
+  }
+
+}
@@ -0,0 +1,200 @@
+package net.bytle.dns;
+
+import net.bytle.exception.IllegalStructure;
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public class DnsBlockListCheckerTest {
+
+  private static DnsTestResolver createResolver() {
+    return new DnsTestResolver()
+      .addA("2.0.0.127.zen.spamhaus.org", "127.0.0.2", 300)
+      .addTxt("2.0.0.127.zen.spamhaus.org", "https://www.spamhaus.org/query/ip/127.0.0.2", 300);
+  }
+
+  @Test
+  public void fullReport() throws IllegalStructure {
+
+    DnsTestResolver resolver = createResolver();
+    DnsBlockListChecker checker = DnsBlockListChecker.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .setMode(DnsBlockListChecker.Mode.FULL_REPORT)
+      .setQueryReason(true)
+      .setMaxInFlight(8)
+      .build();
+
+    DnsBlockListVerdict verdict = checker.checkIp("127.0.0.2").toCompletableFuture().join();
+    int ipZones = DnsBlockList.getBlockLists(DnsBlockListType.IP).size();
+    Assert.assertTrue(verdict.isBlocked());
+    Assert.assertTrue(verdict.isComplete());
+    Assert.assertEquals(ipZones, verdict.getResults().size());
+    List<DnsBlockListResult> blockingResults = verdict.getBlockingResults();
+    Assert.assertEquals(1, blockingResults.size());
+    Assert.assertEquals(DnsBlockList.ZEN_SPAMHAUS_ORG, blockingResults.get(0).getBlockList());
+    Assert.assertEquals(DnsBlockListResponseCode.R_127_0_0_2, blockingResults.get(0).getResponseCode());
+    Assert.assertEquals("https://www.spamhaus.org/query/ip/127.0.0.2", blockingResults.get(0).getReason());
+
+  }
+
+  @Test
+  public void shortCircuit() throws IllegalStructure {
+
+    DnsTestResolver resolver = createResolver();
+    DnsBlockListChecker checker = DnsBlockListChecker.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .addBlockList(DnsBlockList.ZEN_SPAMHAUS_ORG)
+      .addBlockList(DnsBlockList.bl_spamcop_net)
+      .addBlockList(DnsBlockList.xbl_spamhaus_org)
+      .setMaxInFlight(1)
+      .build();
+
+    DnsBlockListVerdict verdict = checker.checkIp("127.0.0.2").toCompletableFuture().join();
+    Assert.assertTrue(verdict.isBlocked());
+    Assert.assertFalse("The other zones are not queried", verdict.isComplete());
+    Assert.assertEquals(1, resolver.getQueryCount());
+
+  }
+
+  @Test
+  public void batchAndTimeout() throws IllegalStructure {
+
+    DnsTestResolver resolver = createResolver().setDelay(Duration.ofMillis(200));
+    DnsBlockListChecker checker = DnsBlockListChecker.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .addBlockList(DnsBlockList.ZEN_SPAMHAUS_ORG)
+      .setZoneTimeout(Duration.ofMillis(20))
+      .build();
+
+    Map<String, DnsBlockListVerdict> verdicts = checker.checkIps(List.of("127.0.0.2", "127.0.0.1")).toCompletableFuture().join();
+    Assert.assertEquals(2, verdicts.size());
+    for (DnsBlockListVerdict verdict : verdicts.values()) {
+      Assert.assertFalse(verdict.isBlocked());
+      Assert.assertTrue(verdict.getResults().get(0).isError());
+    }
+
+  }
+
+  /**
+   * The timeout completes the verdict but the slot is kept until the lookup completes
+   */
+  @Test
+  public void timeoutKeepsTheSlot() throws IllegalStructure, InterruptedException {
+
+    DnsTestResolver resolver = createResolver().setDelay(Duration.ofMillis(300));
+    DnsBlockListChecker checker = DnsBlockListChecker.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .addBlockList(DnsBlockList.ZEN_SPAMHAUS_ORG)
+      .setZoneTimeout(Duration.ofMillis(20))
+      .setMaxInFlight(1)
+      .setAdaptiveLimiters(null)
+      .build();
+
+    CompletableFuture<DnsBlockListVerdict> first = checker.checkIp("127.0.0.2").toCompletableFuture();
+    CompletableFuture<DnsBlockListVerdict> second = checker.checkIp("127.0.0.1").toCompletableFuture();
+    Assert.assertTrue(first.join().getResults().get(0).isError());
+    Thread.sleep(100);
+    Assert.assertFalse("The second query waits for the lookup of the first one", second.isDone());
+    Assert.assertTrue(second.join().getResults().get(0).isError());
+    Assert.assertEquals(1, resolver.getQueryCount());
+
+  }
+
+  /**
+   * A checker configured with ip zones only does not query the default domain zone
+   */
+  @Test
+  public void noZoneOfTheQueryType() throws DnsCastException {
+
+    DnsTestResolver resolver = createResolver();
+    DnsBlockListChecker checker = DnsBlockListChecker.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .addBlockList(DnsBlockList.ZEN_SPAMHAUS_ORG)
+      .build();
+
+    DnsBlockListVerdict verdict = checker.checkDomain(DnsName.create("example.com")).toCompletableFuture().join();
+    Assert.assertFalse(verdict.isBlocked());
+    Assert.assertTrue(verdict.isComplete());
+    Assert.assertEquals(0, verdict.getResults().size());
+    Map<String, DnsBlockListVerdict> verdicts = checker.checkDomains(List.of(DnsName.create("example.org"))).toCompletableFuture().join();
+    Assert.assertEquals(0, verdicts.get("example.org").getResults().size());
+    Assert.assertEquals(0, resolver.getQueryCount());
+
+  }
+
+  @Test
+  public void mirror() throws IllegalStructure, IOException {
+
+    DnsTestResolver resolver = createResolver();
+    DnsBlockListMirrors mirrors = new DnsBlockListMirrors();
+    mirrors.getOrCreate(DnsBlockList.ZEN_SPAMHAUS_ORG).load(new StringReader(":127.0.0.4:Mirrored $\n192.0.2.0/24\n"));
+    // a loaded empty zone
+    mirrors.getOrCreate(DnsBlockList.bl_spamcop_net).load(new StringReader(""));
+    DnsBlockListChecker checker = DnsBlockListChecker.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .addBlockList(DnsBlockList.ZEN_SPAMHAUS_ORG)
+      .addBlockList(DnsBlockList.bl_spamcop_net)
+      .setMode(DnsBlockListChecker.Mode.FULL_REPORT)
+      .setQueryReason(true)
+      .setMirrors(mirrors)
+      .build();
+
+    Map<String, DnsBlockListVerdict> verdicts = checker.checkIps(List.of("192.0.2.10", "127.0.0.2")).toCompletableFuture().join();
+    Assert.assertEquals("The mirrored zones are not queried", 0, resolver.getQueryCount());
+
+    DnsBlockListVerdict listed = verdicts.get("192.0.2.10");
+    Assert.assertTrue(listed.isBlocked());
+    Assert.assertTrue(listed.isComplete());
+    List<DnsBlockListResult> blockingResults = listed.getBlockingResults();
+    Assert.assertEquals(1, blockingResults.size());
+    Assert.assertEquals(DnsBlockListResponseCode.R_127_0_0_4, blockingResults.get(0).getResponseCode());
+    Assert.assertEquals("Mirrored 192.0.2.10", blockingResults.get(0).getReason());
+
+    Assert.assertFalse("The mirror has precedence over the DNS", verdicts.get("127.0.0.2").isBlocked());
+
+  }
+
+  @Test
+  public void mirrorNotLoaded() throws IllegalStructure {
+
+    DnsTestResolver resolver = createResolver();
+    DnsBlockListMirrors mirrors = new DnsBlockListMirrors();
+    DnsBlockListMirror mirror = mirrors.getOrCreate(DnsBlockList.ZEN_SPAMHAUS_ORG);
+    Assert.assertFalse(mirror.isLoaded());
+    DnsBlockListChecker checker = DnsBlockListChecker.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .addBlockList(DnsBlockList.ZEN_SPAMHAUS_ORG)
+      .setMirrors(mirrors)
+      .build();
+
+    DnsBlockListVerdict verdict = checker.checkIp("127.0.0.2").toCompletableFuture().join();
+    Assert.assertTrue("Until the mirror is loaded, the zone is queried", verdict.isBlocked());
+    Assert.assertEquals(1, resolver.getQueryCount());
+
+  }
+
+  @Test
+  public void throttledZone() throws IllegalStructure {
+
+    DnsTestResolver resolver = createResolver()
+      .addA("1.0.0.127.zen.spamhaus.org", "127.255.255.255", 300);
+    DnsAdaptiveLimiters limiters = DnsAdaptiveLimiters.builder()
+      .setInitialLimit(8)
+      .build();
+    DnsBlockListChecker checker = DnsBlockListChecker.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .addBlockList(DnsBlockList.ZEN_SPAMHAUS_ORG)
+      .setAdaptiveLimiters(limiters)
+      .build();
+
+    DnsBlockListVerdict verdict = checker.checkIp("127.0.0.1").toCompletableFuture().join();
+    Assert.assertFalse("A throttling answer is not a block", verdict.isBlocked());
+
+    DnsAdaptiveLimiter zoneLimiter = limiters.get(DnsBlockList.ZEN_SPAMHAUS_ORG);
+    Assert.assertEquals(1, zoneLimiter.getOverloadCount());
+    Assert.assertEquals(4, zoneLimiter.getLimit());
+    DnsAdaptiveLimiterTest.assertNoneInFlight(zoneLimiter);
+
+  }
+
+}
@@ -0,0 +1,88 @@
+package net.bytle.dns;
+
+import net.bytle.exception.IllegalStructure;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public class DnsBlockListMirrorTest {
+
+  private static final String ZONE = String.join("\n",
+    "# ip4set dump",
+    "$TTL 3600",
+    ":127.0.0.2:Listed, see https://example.com/query/$",
+    "192.0.2.0/24",
+    "192.0.2.128/25 :127.0.0.4:Exploit",
+    "!192.0.2.200",
+    "198.51.100.10-198.51.100.20",
+    "203.0.113 Partial",
+    "10.1.2.3"
+  );
+
+  private static DnsBlockListMirror load(String zone) throws IOException, IllegalStructure {
+    return new DnsBlockListMirror(DnsBlockList.ZEN_SPAMHAUS_ORG).load(new StringReader(zone));
+  }
+
+  private static DnsIp ip(String ip) throws DnsException {
+    return DnsIp.createFromIpv4String(ip);
+  }
+
+  @Test
+  public void lookup() throws IOException, IllegalStructure, DnsException {
+
+    DnsBlockListMirror mirror = load(ZONE);
+    Assert.assertNotNull(mirror.getLoadedAt());
+
+    Assert.assertEquals(ip("127.0.0.2"), mirror.getAnswer(ip("192.0.2.1")));
+    Assert.assertEquals("Listed, see https://example.com/query/192.0.2.1", mirror.getReason(ip("192.0.2.1")));
+
+    // the most specific entry wins
+    Assert.assertEquals(ip("127.0.0.4"), mirror.getAnswer(ip("192.0.2.129")));
+    Assert.assertEquals("Exploit", mirror.getReason(ip("192.0.2.129")));
+    Assert.assertFalse("Excluded", mirror.isListed(ip("192.0.2.200")));
+    Assert.assertTrue(mirror.isListed(ip("192.0.2.201")));
+
+    Assert.assertTrue(mirror.isListed(ip("198.51.100.10")));
+    Assert.assertTrue(mirror.isListed(ip("198.51.100.20")));
+    Assert.assertFalse(mirror.isListed(ip("198.51.100.21")));
+
+    Assert.assertEquals("Partial", mirror.getReason(ip("203.0.113.50")));
+    Assert.assertTrue(mirror.isListed(ip("10.1.2.3")));
+    Assert.assertFalse(mirror.isListed(ip("10.1.2.4")));
+    Assert.assertNull(mirror.getAnswer(ip("8.8.8.8")));
+    Assert.assertNull(mirror.getReason(ip("8.8.8.8")));
+
+  }
+
+  @Test
+  public void parseRange() throws IllegalStructure {
+    Assert.assertArrayEquals(new long[]{0xC0000200L, 0xC00002FFL}, DnsBlockListMirror.parseRange("192.0.2.0/24"));
+    Assert.assertArrayEquals(new long[]{0xC0000200L, 0xC00002FFL}, DnsBlockListMirror.parseRange("192.0.2"));
+    Assert.assertArrayEquals(new long[]{0L, 0xFFFFFFFFL}, DnsBlockListMirror.parseRange("0.0.0.0/0"));
+    Assert.assertArrayEquals(new long[]{0xC0000205L, 0xC0000205L}, DnsBlockListMirror.parseRange("192.0.2.5"));
+  }
+
+  @Test
+  public void reload() throws IOException, IllegalStructure, DnsException {
+
+    DnsBlockListMirror mirror = load(ZONE);
+    int rangeCount = mirror.getRangeCount();
+    try {
+      mirror.load(new StringReader("192.0.2.1\n192.0.2.300\n"));
+      Assert.fail("The line is not valid");
+    } catch (IllegalStructure e) {
+      // the current data is kept
+      Assert.assertEquals(rangeCount, mirror.getRangeCount());
+      Assert.assertTrue(mirror.isListed(ip("10.1.2.3")));
+    }
+
+    mirror.load(new StringReader("8.8.8.8\n"));
+    Assert.assertTrue(mirror.isListed(ip("8.8.8.8")));
+    Assert.assertFalse(mirror.isListed(ip("10.1.2.3")));
+    Assert.assertEquals(1, mirror.getRangeCount());
+
+  }
+
+}
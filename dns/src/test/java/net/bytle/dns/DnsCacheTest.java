@@ -0,0 +1,213 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+public class DnsCacheTest {
+
+  @Test
+  public void positiveAnswerIsCached() throws DnsCastException, DnsException, DnsNotFoundException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300);
+    DnsCache cache = DnsCache.builder().build();
+    XBillDnsClient client = XBillDnsClient.builder()
+      .setResolver(resolver)
+      .setCache(cache)
+      .build();
+
+    DnsName dnsName = DnsName.create("example.com");
+    Assert.assertEquals("192.0.2.1", client.lookupA(dnsName).getAddress());
+    Assert.assertEquals("192.0.2.1", client.lookupA(dnsName).getAddress());
+    Assert.assertEquals("One query to the resolver", 1, resolver.getQueryCount());
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+
+  }
+
+  @Test
+  public void negativeAnswerIsCached() throws DnsCastException, DnsException {
+
+    DnsTestResolver resolver = new DnsTestResolver();
+    DnsCache cache = DnsCache.builder().build();
+    XBillDnsClient client = XBillDnsClient.builder()
+      .setResolver(resolver)
+      .setCache(cache)
+      .build();
+
+    DnsName dnsName = DnsName.create("nxdomain.example");
+    for (int i = 0; i < 2; i++) {
+      try {
+        client.resolveA(dnsName);
+        Assert.fail("Should be not found");
+      } catch (DnsNotFoundException e) {
+        // ok
+      }
+    }
+    Assert.assertEquals("One query to the resolver", 1, resolver.getQueryCount());
+    Assert.assertEquals(1, cache.getHitCount());
+
+  }
+
+  @Test
+  public void minTtlClampAndEviction() throws DnsCastException, DnsException, DnsNotFoundException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addA("zero.example", "192.0.2.1", 0)
+      .addA("one.example", "192.0.2.2", 300);
+    DnsCache cache = DnsCache.builder()
+      .setMaxEntries(1)
+      .setMinTtl(Duration.ofMinutes(1))
+      .build();
+    XBillDnsClient client = XBillDnsClient.builder()
+      .setResolver(resolver)
+      .setCache(cache)
+      .build();
+
+    DnsName zero = DnsName.create("zero.example");
+    client.resolveA(zero);
+    client.resolveA(zero);
+    Assert.assertEquals("A zero ttl is clamped to the min ttl", 1, resolver.getQueryCount());
+
+    client.resolveA(DnsName.create("one.example"));
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(1, cache.getEvictionCount());
+
+  }
+
+  @Test
+  public void refreshAhead() throws DnsCastException, DnsException, DnsNotFoundException, InterruptedException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addA("hot.example", "192.0.2.1", 2);
+    DnsCache cache = DnsCache.builder()
+      .setRefreshAhead(0.1)
+      .build();
+    XBillDnsClient client = XBillDnsClient.builder()
+      .setResolver(resolver)
+      .setCache(cache)
+      .build();
+
+    DnsName hot = DnsName.create("hot.example");
+    client.resolveA(hot);
+    client.resolveA(hot);
+    Assert.assertEquals("Not yet due for refresh", 1, resolver.getQueryCount());
+
+    Thread.sleep(300);
+    // served from the cache, the refresh is in the background
+    Assert.assertEquals("192.0.2.1", client.lookupA(hot).getAddress());
+    client.resolveA(hot);
+    Awaits.until(() -> resolver.getQueryCount() == 2, Duration.ofSeconds(5));
+    Awaits.until(() -> cache.getRefreshInFlight() == 0, Duration.ofSeconds(5));
+    Assert.assertEquals("One refresh by entry", 1, cache.getRefreshCount());
+    Assert.assertEquals("Only the first resolution was a miss", 1, cache.getMissCount());
+
+  }
+
+  @Test
+  public void refreshAheadIsBounded() throws DnsCastException, InterruptedException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addA("one.example", "192.0.2.1", 2)
+      .addA("two.example", "192.0.2.2", 2);
+    DnsCache cache = DnsCache.builder()
+      .setRefreshAhead(0.1)
+      .setMaxConcurrentRefreshes(1)
+      .build();
+    XBillAsyncDnsClient client = XBillAsyncDnsClient.builder()
+      .setResolver(resolver)
+      .setCache(cache)
+      .buildAsync();
+
+    DnsName one = DnsName.create("one.example");
+    DnsName two = DnsName.create("two.example");
+    client.resolveA(one).toCompletableFuture().join();
+    client.resolveA(two).toCompletableFuture().join();
+
+    Thread.sleep(300);
+    resolver.setDelay(Duration.ofMillis(300));
+    client.resolveA(one).toCompletableFuture().join();
+    client.resolveA(two).toCompletableFuture().join();
+    Assert.assertEquals(1, cache.getRefreshCount());
+    Assert.assertEquals(1, cache.getRefreshRejectedCount());
+
+    // the rejected entry is refreshed on a later access
+    Awaits.until(() -> cache.getRefreshInFlight() == 0, Duration.ofSeconds(5));
+    client.resolveA(two).toCompletableFuture().join();
+    Assert.assertEquals(2, cache.getRefreshCount());
+
+  }
+
+  @Test
+  public void snapshot() throws DnsCastException, DnsException, DnsNotFoundException, IOException, InterruptedException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300)
+      .addMx("example.com", 10, "mx.example.com", 300)
+      .addTxt("example.com", "v=spf1 -all", 300)
+      .addA("short.example", "192.0.2.2", 1);
+    DnsCache cache = DnsCache.builder().build();
+    XBillDnsClient client = XBillDnsClient.builder()
+      .setResolver(resolver)
+      .setCache(cache)
+      .build();
+    DnsName example = DnsName.create("example.com");
+    client.resolveA(example);
+    client.resolveMx(example);
+    client.resolveTxt(example);
+    client.resolveA(DnsName.create("short.example"));
+    try {
+      client.resolveA(DnsName.create("nxdomain.example"));
+      Assert.fail("Should be not found");
+    } catch (DnsNotFoundException e) {
+      // ok
+    }
+
+    Path path = Files.createTempFile("dns-cache", ".bin");
+    try {
+      Assert.assertEquals(5, cache.save(path));
+      // the short ttl entry expires
+      Thread.sleep(1100);
+
+      DnsTestResolver coldResolver = new DnsTestResolver();
+      DnsCache warmCache = DnsCache.builder().build();
+      Assert.assertEquals("The expired entry is discarded", 4, warmCache.load(path));
+      XBillDnsClient warmClient = XBillDnsClient.builder()
+        .setResolver(coldResolver)
+        .setCache(warmCache)
+        .build();
+      Assert.assertEquals("192.0.2.1", warmClient.lookupA(example).getAddress());
+      Assert.assertEquals("mx.example.com", warmClient.resolveMx(example).get(0).getTarget().toStringWithoutRoot());
+      Assert.assertEquals("v=spf1 -all", warmClient.resolveTxt(example).get(0));
+      try {
+        warmClient.resolveA(DnsName.create("nxdomain.example"));
+        Assert.fail("Should be not found");
+      } catch (DnsNotFoundException e) {
+        // ok
+      }
+      Assert.assertEquals("The answers come from the snapshot", 0, coldResolver.getQueryCount());
+    } finally {
+      Files.deleteIfExists(path);
+    }
+
+  }
+
+  @Test(expected = IOException.class)
+  public void snapshotNotValid() throws IOException {
+    Path path = Files.createTempFile("dns-cache", ".bin");
+    try {
+      Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+      DnsCache.builder().build().load(path);
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+}
@@ -0,0 +1,43 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+public class DnsCoalescingTest {
+
+  @Test
+  public void concurrentIdenticalQueriesShareOneQuery() throws DnsCastException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300)
+      .setDelay(Duration.ofMillis(100));
+    XBillAsyncDnsClient client = XBillAsyncDnsClient.builder()
+      .setResolver(resolver)
+      .buildAsync();
+
+    DnsName dnsName = DnsName.create("example.com");
+    List<CompletableFuture<Set<DnsIp>>> futures = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      futures.add(client.resolveA(dnsName).toCompletableFuture());
+    }
+    for (CompletableFuture<Set<DnsIp>> future : futures) {
+      Assert.assertEquals(1, future.join().size());
+    }
+    Assert.assertEquals(1, resolver.getQueryCount());
+    Assert.assertEquals(9, client.getCoalescedCount());
+
+    // not in flight anymore, a new query is sent
+    client.resolveA(dnsName).toCompletableFuture().join();
+    Assert.assertEquals(2, resolver.getQueryCount());
+
+  }
+
+}
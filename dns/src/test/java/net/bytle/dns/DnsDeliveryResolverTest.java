@@ -0,0 +1,79 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+public class DnsDeliveryResolverTest {
+
+  private static DnsTestResolver createResolver() {
+    return new DnsTestResolver()
+      .addMx("example.com", 20, "mx2.example.com", 300)
+      .addMx("example.com", 10, "mx1.example.com", 300)
+      .addA("mx1.example.com", "192.0.2.1", 300)
+      .addA("mx1.example.com", "192.0.2.2", 300)
+      .addAAAA("mx1.example.com", "2001:db8::1", 300)
+      .addA("mx2.example.com", "192.0.2.3", 60)
+      .addA("implicit.com", "192.0.2.9", 300)
+      .addMx("nomail.com", 0, ".", 300);
+  }
+
+  private static DnsDeliveryResolver createDeliveryResolver(DnsTestResolver resolver) {
+    return DnsDeliveryResolver.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync()).build();
+  }
+
+  @Test
+  public void priorityAndHappyEyeballs() throws DnsCastException {
+
+    DnsTestResolver resolver = createResolver();
+    DnsDeliveryResolver deliveryResolver = createDeliveryResolver(resolver);
+
+    List<DnsDeliveryCandidate> candidates = deliveryResolver.resolve(DnsName.create("example.com")).toCompletableFuture().join();
+    Assert.assertEquals(
+      List.of("mx1.example.com 2001:db8:0:0:0:0:0:1", "mx1.example.com 192.0.2.1", "mx1.example.com 192.0.2.2", "mx2.example.com 192.0.2.3"),
+      candidates.stream().map(c -> c.getHost().toStringWithoutRoot() + " " + c.getIp()).collect(Collectors.toList())
+    );
+    Assert.assertEquals(10, candidates.get(0).getPriority());
+    Assert.assertFalse(candidates.get(0).isImplicitMx());
+
+    int queryCount = resolver.getQueryCount();
+    deliveryResolver.resolve(DnsName.create("example.com")).toCompletableFuture().join();
+    Assert.assertEquals("The candidates are cached", queryCount, resolver.getQueryCount());
+    Assert.assertEquals(1, deliveryResolver.getHitCount());
+    Assert.assertEquals(1, deliveryResolver.getResolutionCount());
+
+  }
+
+  @Test
+  public void implicitAndNullMx() throws DnsCastException {
+
+    DnsDeliveryResolver deliveryResolver = createDeliveryResolver(createResolver());
+
+    List<DnsDeliveryCandidate> candidates = deliveryResolver.resolve(DnsName.create("implicit.com")).toCompletableFuture().join();
+    Assert.assertEquals(1, candidates.size());
+    Assert.assertTrue(candidates.get(0).isImplicitMx());
+    Assert.assertEquals(DnsName.create("implicit.com"), candidates.get(0).getHost());
+
+    Assert.assertTrue("A null MX does not accept mail", deliveryResolver.resolve(DnsName.create("nomail.com")).toCompletableFuture().join().isEmpty());
+
+  }
+
+  @Test
+  public void notFound() throws DnsCastException {
+
+    DnsDeliveryResolver deliveryResolver = createDeliveryResolver(createResolver());
+    try {
+      deliveryResolver.resolve(DnsName.create("missing.com")).toCompletableFuture().join();
+      Assert.fail("The domain does not exist");
+    } catch (CompletionException e) {
+      Assert.assertTrue(e.getCause() instanceof DnsNotFoundException);
+    }
+
+  }
+
+}
@@ -0,0 +1,113 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class DnsDomainAuditorTest {
+
+  private static DnsTestResolver createResolver() {
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addA("mx.provider.com", "192.0.2.1", 300)
+      .addTxt("_spf.provider.com", "v=spf1 ip4:192.0.2.0/24 -all", 300);
+    for (String domain : List.of("valid.com", "other.com")) {
+      resolver
+        .addMx(domain, 10, "mx.provider.com", 300)
+        .addTxt(domain, "v=spf1 include:_spf.provider.com -all", 300)
+        .addTxt("_dmarc." + domain, "v=DMARC1; p=none", 300);
+    }
+    resolver.addTxt("selector._domainkey.valid.com", "v=DKIM1; k=rsa; p=abc", 300);
+    // no dmarc, a missing spf include and an mx host without ip
+    resolver
+      .addMx("broken.com", 10, "mx.broken.com", 300)
+      .addTxt("broken.com", "v=spf1 include:_spf.missing.com -all", 300);
+    return resolver;
+  }
+
+  @Test
+  public void audit() throws DnsCastException {
+
+    DnsTestResolver resolver = createResolver();
+    DnsDomainAuditor auditor = DnsDomainAuditor.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .build();
+
+    DnsName valid = DnsName.create("valid.com");
+    valid.addExpectedDkim("selector", "v=DKIM1; k=rsa; p=abc");
+    DnsName other = DnsName.create("other.com");
+    other.addExpectedDkim("selector", "v=DKIM1; k=rsa; p=abc");
+    DnsName broken = DnsName.create("broken.com");
+
+    Map<DnsName, DnsDomainAudit> audits = Collections.synchronizedMap(new HashMap<>());
+    DnsDomainAuditProgress progress = auditor
+      .audit(List.of(valid, other, broken), audit -> audits.put(audit.getDomain(), audit))
+      .toCompletableFuture()
+      .join();
+
+    Assert.assertEquals(3, progress.getCompleted());
+    Assert.assertEquals(0, progress.getInFlight());
+    Assert.assertEquals(2, progress.getNotValid());
+    Assert.assertTrue("The mx host ips and the spf include are shared", progress.getSharedAnswerHits() >= 2);
+
+    DnsDomainAudit validAudit = audits.get(valid);
+    Assert.assertTrue(validAudit.isValid());
+    Assert.assertEquals(Set.of(DnsName.create("mx.provider.com")), validAudit.getMxHostAddresses().keySet());
+    Assert.assertTrue(validAudit.isDkimAsExpected("selector"));
+
+    DnsDomainAudit otherAudit = audits.get(other);
+    Assert.assertFalse("The dkim is not published", otherAudit.isValid());
+    Assert.assertNull(otherAudit.getDkim("selector"));
+    Assert.assertFalse("A not found is not an error", otherAudit.hasErrors());
+
+    DnsDomainAudit brokenAudit = audits.get(broken);
+    Assert.assertNull(brokenAudit.getDmarc());
+    Assert.assertEquals(List.of(DnsName.create("_spf.missing.com")), brokenAudit.getMissingSpfIncludes());
+    Assert.assertEquals(Set.of(), brokenAudit.getMxHostAddresses().get(DnsName.create("mx.broken.com")));
+
+  }
+
+  @Test
+  public void streamWithBoundedConcurrency() {
+
+    DnsTestResolver resolver = createResolver().setDelay(Duration.ofMillis(5));
+    int maxInFlight = 4;
+    AtomicLong maxObservedInFlight = new AtomicLong();
+    DnsDomainAuditor auditor = DnsDomainAuditor.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .setMaxInFlight(maxInFlight)
+      .setProgressListener(progress -> maxObservedInFlight.accumulateAndGet(progress.getStarted() - progress.getCompleted() + 1, Math::max))
+      .build();
+
+    int domainCount = 50;
+    List<DnsDomainAudit> audits = auditor
+      .audit(IntStream.range(0, domainCount).mapToObj(i -> create("valid.com")))
+      .collect(Collectors.toList());
+
+    Assert.assertEquals(domainCount, audits.size());
+    Assert.assertTrue(audits.stream().allMatch(DnsDomainAudit::isValid));
+    Assert.assertTrue("At most " + maxInFlight + " domains in flight (was " + maxObservedInFlight.get() + ")", maxObservedInFlight.get() <= maxInFlight);
+
+  }
+
+  private static DnsName create(String name) {
+    try {
+      return DnsName.create(name);
+    } catch (DnsCastException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  @Test
+  public void spfIncludes() throws DnsCastException {
+    Assert.assertEquals(
+      List.of(DnsName.create("_spf.google.com"), DnsName.create("spf.example.com")),
+      DnsDomainAuditor.getSpfIncludes("v=spf1 ip4:192.0.2.0/24 include:_spf.google.com ~include:%{i}.example.com redirect=spf.example.com")
+    );
+  }
+
+}
@@ -1,10 +1,16 @@
 package net.bytle.dns;
 
 import net.bytle.exception.CastException;
+import org.junit.Assert;
 import org.junit.Test;
 
 
 import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class DnsIpAddressTest {
 
@@ -22,4 +28,42 @@ public class DnsIpAddressTest {
 
   }
 
+  @Test
+  public void primitiveRepresentation() throws DnsException, UnknownHostException {
+
+    for (String ip : List.of("127.0.0.1", "0.0.0.0", "255.255.255.255", "192.0.2.10")) {
+      DnsIp dnsIp = DnsIp.createFromIpv4String(ip);
+      Assert.assertEquals(ip, dnsIp.toString());
+      Assert.assertEquals(InetAddress.getByName(ip), dnsIp.getInetAddress());
+      Assert.assertEquals(dnsIp, DnsIp.createFromInetAddress(InetAddress.getByName(ip)));
+      Assert.assertEquals(dnsIp.hashCode(), DnsIp.createFromInetAddress(InetAddress.getByName(ip)).hashCode());
+    }
+    Assert.assertEquals(0x7F000001, DnsIp.createFromIpv4String("127.0.0.1").getIpv4Int());
+    Assert.assertEquals(DnsIp.createFromIpv4String("127.0.0.1"), DnsIp.createFromIpv4Int(0x7F000001));
+
+    for (String ip : List.of("2001:db8::1", "::", "fe80::1:abcd:0:ff", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff")) {
+      DnsIp dnsIp = DnsIp.createFromIpv6String(ip);
+      InetAddress inetAddress = InetAddress.getByName(ip);
+      Assert.assertEquals(inetAddress.getHostAddress(), dnsIp.toString());
+      Assert.assertEquals(inetAddress, dnsIp.getInetAddress());
+      Assert.assertEquals(dnsIp, DnsIp.createFromInetAddress(inetAddress));
+      Assert.assertFalse(dnsIp.isIpv4());
+    }
+    // an IPv4-mapped IPv6 is an IPv4
+    Assert.assertEquals(DnsIp.createFromIpv4String("192.0.2.1"), DnsIp.createFromIpv6String("::ffff:192.0.2.1"));
+
+    Set<DnsIp> set = new HashSet<>();
+    set.add(DnsIp.createFromIpv4String("192.0.2.1"));
+    set.add(DnsIp.createFromInetAddress(InetAddress.getByName("192.0.2.1")));
+    Assert.assertEquals(1, set.size());
+
+    TreeSet<DnsIp> sorted = new TreeSet<>(List.of(
+      DnsIp.createFromIpv6String("::1"),
+      DnsIp.createFromIpv4String("200.0.0.1"),
+      DnsIp.createFromIpv4String("10.0.0.1")
+    ));
+    Assert.assertEquals("[10.0.0.1, 200.0.0.1, 0:0:0:0:0:0:0:1]", sorted.toString());
+
+  }
+
 }
@@ -0,0 +1,83 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+public class DnsMetricsTest {
+
+  @Test
+  public void lookupsAndResolvers() throws DnsCastException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300);
+    DnsMetrics metrics = new DnsMetrics();
+    XBillAsyncDnsClient dnsClient = XBillAsyncDnsClient.builder()
+      .setResolver(resolver)
+      .setMetrics(metrics)
+      .enableCache()
+      .buildAsync();
+
+    DnsName example = DnsName.create("example.com");
+    dnsClient.resolveA(example).toCompletableFuture().join();
+    dnsClient.resolveA(example).toCompletableFuture().join();
+    dnsClient.resolveA(DnsName.create("missing.com")).handle((ips, throwable) -> null).toCompletableFuture().join();
+    dnsClient.resolveMx(example).handle((mx, throwable) -> null).toCompletableFuture().join();
+
+    DnsMetricsSnapshot snapshot = metrics.getSnapshot();
+    Assert.assertEquals(0, snapshot.getInFlight());
+    Assert.assertEquals(1, snapshot.getCacheHitCount());
+
+    DnsLatencySnapshot aLookups = snapshot.getLookups().get("A");
+    Assert.assertEquals(2, aLookups.getCount());
+    Assert.assertEquals(1, aLookups.getCount(DnsOutcome.OK));
+    Assert.assertEquals(1, aLookups.getCount(DnsOutcome.NXDOMAIN));
+    Assert.assertEquals(1, snapshot.getLookups().get("MX").getCount(DnsOutcome.NODATA));
+
+    Map<String, DnsLatencySnapshot> resolverQueries = snapshot.getResolvers().get(DnsResolver.getName(resolver));
+    Assert.assertNotNull("The queries of the resolver are recorded", resolverQueries);
+    Assert.assertEquals(1, resolverQueries.get("A").getCount(DnsOutcome.OK));
+    Assert.assertEquals(1, resolverQueries.get("A").getCount(DnsOutcome.NXDOMAIN));
+
+  }
+
+  @Test
+  public void percentiles() {
+
+    DnsMetrics.Series series = new DnsMetrics.Series();
+    for (int i = 0; i < 99; i++) {
+      series.record(Duration.ofMillis(1).toNanos(), DnsOutcome.OK);
+    }
+    series.record(Duration.ofMillis(100).toNanos(), DnsOutcome.TIMEOUT);
+
+    DnsLatencySnapshot snapshot = series.getSnapshot();
+    Assert.assertEquals(100, snapshot.getCount());
+    Assert.assertEquals(1, snapshot.getCount(DnsOutcome.TIMEOUT));
+    long p99 = snapshot.getPercentile(0.99).toNanos();
+    Assert.assertTrue("The p99 (" + p99 + ") is 1ms with a 25% precision", p99 >= Duration.ofMillis(1).toNanos() && p99 <= Duration.ofMillis(1).toNanos() * 5 / 4);
+    Assert.assertEquals(Duration.ofMillis(100), snapshot.getPercentile(1));
+    Assert.assertEquals(Duration.ofMillis(100), snapshot.getMax());
+
+  }
+
+  @Test
+  public void bucketBounds() {
+    for (long nanos = 1; nanos < Duration.ofSeconds(300).toNanos(); nanos = nanos * 3 / 2 + 1) {
+      int index = DnsMetrics.Series.getBucketIndex(nanos);
+      Assert.assertTrue(nanos < DnsMetrics.Series.getBucketUpperBound(index));
+      if (index > 0) {
+        Assert.assertTrue(nanos >= DnsMetrics.Series.getBucketUpperBound(index - 1));
+      }
+    }
+    // the last sub bucket (just below 2^37ns) is not the overflow bucket
+    int last = DnsMetrics.Series.getBucketIndex((1L << 37) - 1);
+    Assert.assertEquals(DnsMetrics.Series.BUCKET_COUNT - 2, last);
+    Assert.assertEquals(1L << 37, DnsMetrics.Series.getBucketUpperBound(last));
+    Assert.assertEquals(DnsMetrics.Series.BUCKET_COUNT - 1, DnsMetrics.Series.getBucketIndex(1L << 37));
+  }
+
+}
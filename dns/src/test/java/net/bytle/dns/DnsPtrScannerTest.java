@@ -0,0 +1,107 @@
+package net.bytle.dns;
+
+import net.bytle.exception.IllegalStructure;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class DnsPtrScannerTest {
+
+  private static DnsTestResolver createResolver() {
+    return new DnsTestResolver()
+      .addPtr("1.2.0.192.in-addr.arpa", "mail1.example.com", 300)
+      .addA("mail1.example.com", "192.0.2.1", 300)
+      // the host name does not resolve back to the ip
+      .addPtr("2.2.0.192.in-addr.arpa", "mail2.example.com", 300)
+      .addA("mail2.example.com", "198.51.100.2", 300)
+      // the host name has no ip
+      .addPtr("3.2.0.192.in-addr.arpa", "mail3.example.com", 300);
+  }
+
+  @Test
+  public void scanCidr() throws IllegalStructure, DnsException {
+
+    DnsTestResolver resolver = createResolver();
+    DnsPtrScanner scanner = DnsPtrScanner.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .setForwardConfirmation(true)
+      .build();
+
+    Map<DnsIp, DnsPtrResult> results = scanner.scan("192.0.2.0/30")
+      .collect(Collectors.toMap(DnsPtrResult::getIp, Function.identity()));
+    Assert.assertEquals(4, results.size());
+
+    DnsPtrResult miss = results.get(DnsIp.createFromIpv4String("192.0.2.0"));
+    Assert.assertFalse(miss.isFound());
+    Assert.assertFalse("A miss is not an error", miss.isError());
+
+    DnsPtrResult confirmed = results.get(DnsIp.createFromIpv4String("192.0.2.1"));
+    Assert.assertEquals("mail1.example.com", confirmed.getHostName().toStringWithoutRoot());
+    Assert.assertTrue(confirmed.isForwardConfirmed());
+
+    DnsPtrResult notConfirmed = results.get(DnsIp.createFromIpv4String("192.0.2.2"));
+    Assert.assertTrue(notConfirmed.isFound());
+    Assert.assertFalse(notConfirmed.isForwardConfirmed());
+
+    DnsPtrResult noForward = results.get(DnsIp.createFromIpv4String("192.0.2.3"));
+    Assert.assertTrue(noForward.isFound());
+    Assert.assertEquals(0, noForward.getForwardAddresses().size());
+    Assert.assertFalse(noForward.isError());
+
+  }
+
+  @Test
+  public void withoutForwardConfirmation() throws DnsException {
+
+    DnsTestResolver resolver = createResolver();
+    DnsPtrScanner scanner = DnsPtrScanner.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .build();
+
+    List<DnsPtrResult> results = scanner.scan(List.of(DnsIp.createFromIpv4String("192.0.2.2")))
+      .collect(Collectors.toList());
+    Assert.assertEquals(1, results.size());
+    Assert.assertNull(results.get(0).getForwardAddresses());
+    Assert.assertEquals("Only the PTR query", 1, resolver.getQueryCount());
+
+  }
+
+  @Test
+  public void boundedConcurrency() throws IllegalStructure {
+
+    DnsTestResolver resolver = createResolver().setDelay(Duration.ofMillis(20));
+    DnsPtrScanner scanner = DnsPtrScanner.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .setMaxInFlight(4)
+      .build();
+
+    long start = System.nanoTime();
+    long count = scanner.scan("192.0.2.0/28").count();
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+    Assert.assertEquals(16, count);
+    // 16 ips, 4 at a time, at least 4 round trips of 20ms
+    Assert.assertTrue("The scan was bounded (" + elapsed + ")", elapsed.toMillis() >= 80);
+
+  }
+
+  /**
+   * An error of the run is thrown at the end of the stream (the stream does not hang)
+   */
+  @Test(expected = NullPointerException.class)
+  public void processError() throws DnsException {
+
+    DnsPtrScanner scanner = DnsPtrScanner.builder(XBillAsyncDnsClient.builder().setResolver(createResolver()).buildAsync())
+      .build();
+    scanner.scan(Arrays.asList(DnsIp.createFromIpv4String("192.0.2.1"), null)).count();
+
+  }
+
+  @Test(expected = IllegalStructure.class)
+  public void notValidCidr() throws IllegalStructure {
+    DnsPtrScanner.builder(XBillAsyncDnsClient.createDefault()).build().scan("192.0.2.0/33");
+  }
+
+}
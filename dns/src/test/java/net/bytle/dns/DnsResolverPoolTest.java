@@ -0,0 +1,131 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+
+public class DnsResolverPoolTest {
+
+  @Test
+  public void hedgeToTheFastResolver() throws DnsCastException, DnsException, DnsNotFoundException {
+
+    DnsTestResolver slowResolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300)
+      .setDelay(Duration.ofMillis(1000));
+    DnsTestResolver fastResolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300)
+      .setDelay(Duration.ofMillis(5));
+    DnsResolverPool pool = DnsResolverPool.builder()
+      .addResolver(slowResolver)
+      .addResolver(fastResolver)
+      .setHedgeDelay(Duration.ofMillis(20))
+      .build();
+    XBillDnsClient client = XBillDnsClient.builder()
+      .setResolver(pool)
+      .setCoalescing(false)
+      .build();
+
+    DnsName dnsName = DnsName.create("example.com");
+    long start = System.nanoTime();
+    Assert.assertEquals("192.0.2.1", client.lookupA(dnsName).getAddress());
+    long durationMs = (System.nanoTime() - start) / 1_000_000;
+    Assert.assertTrue("The hedged query should answer before the slow resolver (" + durationMs + "ms)", durationMs < 800);
+    Assert.assertEquals(1, pool.getHedgeCount());
+    Assert.assertEquals(1, fastResolver.getQueryCount());
+
+    // the fast resolver has a score, the slow one has not yet answered (score 0, tried first)
+    // wait that the slow one answers to be scored
+    Awaits.until(() -> pool.getResolversByScore().get(0) == fastResolver, Duration.ofSeconds(3));
+    client.lookupA(dnsName);
+    Assert.assertEquals("The fast resolver is the primary, no hedge", 1, pool.getHedgeCount());
+
+  }
+
+  @Test
+  public void failover() throws DnsCastException, DnsException, DnsNotFoundException {
+
+    DnsTestResolver failingResolver = new DnsTestResolver()
+      .setServerFailure(true);
+    DnsTestResolver goodResolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300);
+    DnsResolverPool pool = DnsResolverPool.builder()
+      .addResolver(failingResolver)
+      .addResolver(goodResolver)
+      .setHedgeDelay(Duration.ofSeconds(10))
+      .build();
+    XBillDnsClient client = XBillDnsClient.builder()
+      .setResolver(pool)
+      .build();
+
+    Assert.assertEquals("192.0.2.1", client.lookupA(DnsName.create("example.com")).getAddress());
+    Assert.assertEquals(1, pool.getFailoverCount());
+    Assert.assertEquals(0, pool.getHedgeCount());
+    Assert.assertSame("The failing resolver is demoted", goodResolver, pool.getResolversByScore().get(0));
+
+  }
+
+  /**
+   * The score of a demoted resolver decays, it is tried again and gets its rank back once recovered
+   */
+  @Test
+  public void recoveredResolverIsTriedAgain() throws DnsCastException, DnsException, DnsNotFoundException {
+
+    DnsTestResolver recoveringResolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300)
+      .setServerFailure(true);
+    DnsTestResolver goodResolver = new DnsTestResolver()
+      .addA("example.com", "192.0.2.1", 300)
+      .setDelay(Duration.ofMillis(5));
+    DnsResolverPool pool = DnsResolverPool.builder()
+      .addResolver(recoveringResolver)
+      .addResolver(goodResolver)
+      .setHedgeDelay(Duration.ofSeconds(10))
+      .setScoreHalfLife(Duration.ofMillis(20))
+      .setAdaptiveLimiters(null)
+      .build();
+    XBillDnsClient client = XBillDnsClient.builder()
+      .setResolver(pool)
+      .setCoalescing(false)
+      .build();
+    DnsName dnsName = DnsName.create("example.com");
+
+    client.lookupA(dnsName);
+    Assert.assertSame("The failing resolver is demoted", goodResolver, pool.getResolversByScore().get(0));
+
+    recoveringResolver.setServerFailure(false);
+    Awaits.until(() -> {
+      try {
+        client.lookupA(dnsName);
+      } catch (DnsException | DnsNotFoundException e) {
+        throw new AssertionError(e);
+      }
+      return recoveringResolver.getQueryCount() > 1;
+    }, Duration.ofSeconds(5));
+    Assert.assertEquals("The recovered resolver has answered", 1, pool.getFailoverCount());
+    Assert.assertSame("The recovered resolver (faster) is the primary again", recoveringResolver, pool.getResolversByScore().get(0));
+
+  }
+
+  @Test
+  public void allFailing() throws DnsCastException, DnsException {
+
+    DnsResolverPool pool = DnsResolverPool.builder()
+      .addResolver(new DnsTestResolver().setServerFailure(true))
+      .addResolver(new DnsTestResolver().setServerFailure(true))
+      .build();
+    XBillDnsClient client = XBillDnsClient.builder()
+      .setResolver(pool)
+      .build();
+    try {
+      client.resolveA(DnsName.create("example.com"));
+      Assert.fail("Should fail");
+    } catch (DnsNotFoundException e) {
+      // SERVFAIL
+    }
+
+  }
+
+}
@@ -0,0 +1,200 @@
+package net.bytle.dns;
+
+import net.bytle.type.DnsCastException;
+import net.bytle.type.DnsName;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+public class DnsSpfEvaluatorTest {
+
+  private static DnsTestResolver createResolver() {
+    return new DnsTestResolver()
+      .addTxt("example.com", "v=spf1 ip4:192.0.2.0/24 include:_spf.provider.com a:mail.example.com mx ?ip6:2001:db8:1::/48 -all", 300)
+      .addTxt("example.com", "google-site-verification=abc", 300)
+      .addA("mail.example.com", "203.0.113.10", 300)
+      .addMx("example.com", 10, "mx.example.com", 300)
+      .addA("mx.example.com", "203.0.113.20", 300)
+      .addTxt("_spf.provider.com", "v=spf1 ip4:198.51.100.0/25 -ip4:198.51.100.128/25 ip6:2001:db8:2::/48 ~all", 300)
+      .addTxt("redirected.com", "v=spf1 redirect=example.com", 300)
+      .addTxt("other.com", "v=spf1 include:_spf.provider.com ~all", 300);
+  }
+
+  private static DnsSpfResult evaluate(DnsSpfEvaluator evaluator, String ip, String domain) throws DnsException, DnsCastException {
+    return evaluator.evaluate(DnsIp.createFromString(ip), DnsName.create(domain)).toCompletableFuture().join();
+  }
+
+  @Test
+  public void evaluate() throws DnsException, DnsCastException {
+
+    DnsSpfEvaluator evaluator = DnsSpfEvaluator.builder(XBillAsyncDnsClient.builder().setResolver(createResolver()).buildAsync()).build();
+
+    Assert.assertEquals(DnsSpfResult.PASS, evaluate(evaluator, "192.0.2.10", "example.com"));
+    Assert.assertEquals("include", DnsSpfResult.PASS, evaluate(evaluator, "198.51.100.1", "example.com"));
+    Assert.assertEquals("include", DnsSpfResult.PASS, evaluate(evaluator, "2001:db8:2::1", "example.com"));
+    Assert.assertEquals("a", DnsSpfResult.PASS, evaluate(evaluator, "203.0.113.10", "example.com"));
+    Assert.assertEquals("mx", DnsSpfResult.PASS, evaluate(evaluator, "203.0.113.20", "example.com"));
+    Assert.assertEquals(DnsSpfResult.NEUTRAL, evaluate(evaluator, "2001:db8:1::5", "example.com"));
+    // the include fails: no match, the evaluation continues
+    Assert.assertEquals(DnsSpfResult.FAIL, evaluate(evaluator, "198.51.100.200", "example.com"));
+    Assert.assertEquals(DnsSpfResult.FAIL, evaluate(evaluator, "203.0.113.21", "example.com"));
+
+    Assert.assertEquals(DnsSpfResult.PASS, evaluate(evaluator, "192.0.2.10", "redirected.com"));
+    Assert.assertEquals(DnsSpfResult.FAIL, evaluate(evaluator, "10.0.0.1", "redirected.com"));
+    Assert.assertEquals(DnsSpfResult.SOFTFAIL, evaluate(evaluator, "10.0.0.1", "other.com"));
+    Assert.assertEquals(DnsSpfResult.NONE, evaluate(evaluator, "10.0.0.1", "nospf.com"));
+
+  }
+
+  @Test
+  public void includeIsCompiledOnce() throws DnsException, DnsCastException {
+
+    DnsTestResolver resolver = createResolver();
+    DnsSpfEvaluator evaluator = DnsSpfEvaluator.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync()).build();
+
+    evaluate(evaluator, "192.0.2.10", "example.com");
+    int queryCount = resolver.getQueryCount();
+    Assert.assertEquals(DnsSpfResult.PASS, evaluate(evaluator, "198.51.100.1", "other.com"));
+    Assert.assertEquals("Only the other.com record is queried", queryCount + 1, resolver.getQueryCount());
+    Assert.assertEquals(3, evaluator.getCompileCount());
+
+    for (int i = 0; i < 100; i++) {
+      evaluate(evaluator, "198.51.100." + i, "other.com");
+    }
+    Assert.assertEquals(queryCount + 1, resolver.getQueryCount());
+
+  }
+
+  /**
+   * Two evaluations of an include loop started at the same time wait on the compilation of each other:
+   * the loop is detected, the result is a PERMERROR without waiting the include timeout
+   */
+  @Test
+  public void includeLoopBetweenEvaluations() throws DnsException, DnsCastException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addTxt("a.com", "v=spf1 include:b.com ip4:192.0.2.0/24 -all", 300)
+      .addTxt("b.com", "v=spf1 include:a.com -all", 300)
+      .setDelay(Duration.ofMillis(100));
+    DnsSpfEvaluator evaluator = DnsSpfEvaluator.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync())
+      .setIncludeTimeout(Duration.ofSeconds(10))
+      .build();
+
+    DnsIp ip = DnsIp.createFromString("10.0.0.1");
+    long start = System.nanoTime();
+    CompletableFuture<DnsSpfResult> a = evaluator.evaluate(ip, DnsName.create("a.com")).toCompletableFuture();
+    CompletableFuture<DnsSpfResult> b = evaluator.evaluate(ip, DnsName.create("b.com")).toCompletableFuture();
+    Assert.assertEquals(DnsSpfResult.PERMERROR, a.join());
+    Assert.assertEquals(DnsSpfResult.PERMERROR, b.join());
+    long durationMs = (System.nanoTime() - start) / 1_000_000;
+    Assert.assertTrue("The loop is detected before the include timeout (" + durationMs + "ms)", durationMs < 5000);
+
+  }
+
+  @Test
+  public void lookupLimit() throws DnsException, DnsCastException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addTxt("ok.com", "v=spf1 ip4:192.0.2.1 include:chain1.com -all", 300)
+      .addTxt("limit.com", "v=spf1 include:chain1.com ip4:192.0.2.1 -all", 300);
+    // a chain of 11 includes
+    for (int i = 1; i <= 10; i++) {
+      resolver.addTxt("chain" + i + ".com", "v=spf1 include:chain" + (i + 1) + ".com -all", 300);
+    }
+    resolver.addTxt("chain11.com", "v=spf1 ip4:198.51.100.1 -all", 300);
+    DnsSpfEvaluator evaluator = DnsSpfEvaluator.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync()).build();
+
+    // the ip matches before the includes
+    Assert.assertEquals(DnsSpfResult.PASS, evaluate(evaluator, "192.0.2.1", "ok.com"));
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "198.51.100.1", "ok.com"));
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "192.0.2.1", "limit.com"));
+    // 10 includes from chain2
+    Assert.assertEquals(DnsSpfResult.PASS, evaluate(evaluator, "198.51.100.1", "chain2.com"));
+
+  }
+
+  @Test
+  public void lookupsAfterTheLimitAreNotQueried() throws DnsException, DnsCastException {
+
+    // 12 includes of 12 includes: 144 records without the limit
+    DnsTestResolver resolver = new DnsTestResolver();
+    StringBuilder fanOut = new StringBuilder("v=spf1");
+    for (int i = 1; i <= 12; i++) {
+      fanOut.append(" include:f").append(i).append(".com");
+      StringBuilder record = new StringBuilder("v=spf1");
+      for (int j = 1; j <= 12; j++) {
+        record.append(" include:").append(i).append("-").append(j).append(".com");
+        resolver.addTxt(i + "-" + j + ".com", "v=spf1 ip4:10." + i + "." + j + ".1 -all", 300);
+      }
+      resolver.addTxt("f" + i + ".com", record.append(" -all").toString(), 300);
+    }
+    resolver.addTxt("fan.com", fanOut.append(" -all").toString(), 300);
+    DnsSpfEvaluator evaluator = DnsSpfEvaluator.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync()).build();
+
+    // f1 and its 9 first leaves (10 lookups)
+    Assert.assertEquals(DnsSpfResult.PASS, evaluate(evaluator, "10.1.9.1", "fan.com"));
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "10.1.10.1", "fan.com"));
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "10.2.1.1", "fan.com"));
+    Assert.assertTrue("Only the records before the limit are queried", resolver.getQueryCount() <= 60);
+
+    // f1 has 12 lookups on its own
+    Assert.assertEquals(DnsSpfResult.PASS, evaluate(evaluator, "10.1.10.1", "f1.com"));
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "10.1.11.1", "f1.com"));
+
+  }
+
+  @Test
+  public void voidLookupLimit() throws DnsException, DnsCastException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addTxt("void.com", "v=spf1 a:none1.void.com a:none2.void.com a:none3.void.com ip4:192.0.2.1 -all", 300)
+      .addTxt("twovoid.com", "v=spf1 a:none1.void.com exists:none2.void.com ip4:192.0.2.1 -all", 300);
+    DnsSpfEvaluator evaluator = DnsSpfEvaluator.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync()).build();
+
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "192.0.2.1", "void.com"));
+    Assert.assertEquals(DnsSpfResult.PASS, evaluate(evaluator, "192.0.2.1", "twovoid.com"));
+
+  }
+
+  @Test
+  public void redirectMacroIsIncomplete() throws DnsException, DnsCastException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addTxt("redirectmacro.com", "v=spf1 ip4:192.0.2.1 redirect=%{d}._spf.example.com", 300);
+    DnsSpfEvaluator evaluator = DnsSpfEvaluator.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync()).build();
+
+    Assert.assertEquals(DnsSpfResult.PASS, evaluate(evaluator, "192.0.2.1", "redirectmacro.com"));
+    DnsSpfPolicy policy = evaluator.getPolicy(DnsName.create("redirectmacro.com")).toCompletableFuture().join();
+    Assert.assertFalse("The redirect macro is not supported", policy.isComplete());
+
+  }
+
+  @Test
+  public void errors() throws DnsException, DnsCastException {
+
+    DnsTestResolver resolver = new DnsTestResolver()
+      .addTxt("loop1.com", "v=spf1 include:loop2.com -all", 300)
+      .addTxt("loop2.com", "v=spf1 include:loop1.com -all", 300)
+      .addTxt("syntax.com", "v=spf1 ip4:192.0.2.0/33 -all", 300)
+      .addTxt("unknown.com", "v=spf1 foo:bar -all", 300)
+      .addTxt("twice.com", "v=spf1 -all", 300)
+      .addTxt("twice.com", "v=spf1 +all", 300)
+      .addTxt("missing.com", "v=spf1 include:nospf.com -all", 300)
+      .addTxt("macro.com", "v=spf1 exists:%{i}._spf.macro.com ip4:192.0.2.1 -all", 300);
+    DnsSpfEvaluator evaluator = DnsSpfEvaluator.builder(XBillAsyncDnsClient.builder().setResolver(resolver).buildAsync()).build();
+
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "192.0.2.1", "loop1.com"));
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "192.0.2.1", "syntax.com"));
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "192.0.2.1", "unknown.com"));
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "192.0.2.1", "twice.com"));
+    Assert.assertEquals(DnsSpfResult.PERMERROR, evaluate(evaluator, "192.0.2.1", "missing.com"));
+
+    Assert.assertEquals(DnsSpfResult.PASS, evaluate(evaluator, "192.0.2.1", "macro.com"));
+    DnsSpfPolicy policy = evaluator.getPolicy(DnsName.create("macro.com")).toCompletableFuture().join();
+    Assert.assertFalse("The macro is not supported", policy.isComplete());
+
+  }
+
+}
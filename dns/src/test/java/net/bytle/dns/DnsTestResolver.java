@@ -0,0 +1,173 @@
+package net.bytle.dns;
+
+import org.xbill.DNS.*;
+import org.xbill.DNS.Record;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory resolver that answers from canned records
+ * so that the tests do not hit the network.
+ * <p>
+ * * a name without any record returns NXDOMAIN
+ * * a name with records but not of the queried type returns an empty answer
+ */
+public class DnsTestResolver implements Resolver {
+
+  private final Map<Name, List<Record>> zone = new ConcurrentHashMap<>();
+  private final AtomicInteger queryCount = new AtomicInteger();
+  private Duration delay = Duration.ZERO;
+  private Duration timeout = Duration.ofSeconds(5);
+  private volatile boolean serverFailure = false;
+  private volatile boolean refused = false;
+
+  public static Name name(String name) {
+    try {
+      return Name.fromString(name.endsWith(".") ? name : name + ".");
+    } catch (TextParseException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  public DnsTestResolver addRecord(Record record) {
+    zone.computeIfAbsent(record.getName(), k -> Collections.synchronizedList(new ArrayList<>())).add(record);
+    return this;
+  }
+
+  public DnsTestResolver addA(String name, String ip, long ttl) {
+    try {
+      return addRecord(new ARecord(name(name), DClass.IN, ttl, InetAddress.getByName(ip)));
+    } catch (UnknownHostException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  public DnsTestResolver addAAAA(String name, String ip, long ttl) {
+    try {
+      return addRecord(new AAAARecord(name(name), DClass.IN, ttl, InetAddress.getByName(ip)));
+    } catch (UnknownHostException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  public DnsTestResolver addTxt(String name, String txt, long ttl) {
+    return addRecord(new TXTRecord(name(name), DClass.IN, ttl, txt));
+  }
+
+  public DnsTestResolver addMx(String name, int priority, String target, long ttl) {
+    return addRecord(new MXRecord(name(name), DClass.IN, ttl, priority, name(target)));
+  }
+
+  public DnsTestResolver addPtr(String name, String target, long ttl) {
+    return addRecord(new PTRRecord(name(name), DClass.IN, ttl, name(target)));
+  }
+
+  /**
+   * @param delay - the time before the answer is sent
+   */
+  public DnsTestResolver setDelay(Duration delay) {
+    this.delay = delay;
+    return this;
+  }
+
+  /**
+   * @param serverFailure - if true, answer SERVFAIL to all queries
+   */
+  public DnsTestResolver setServerFailure(boolean serverFailure) {
+    this.serverFailure = serverFailure;
+    return this;
+  }
+
+  /**
+   * @param refused - if true, answer REFUSED to all queries
+   */
+  public DnsTestResolver setRefused(boolean refused) {
+    this.refused = refused;
+    return this;
+  }
+
+  public int getQueryCount() {
+    return queryCount.get();
+  }
+
+  Message answer(Message query) {
+    queryCount.incrementAndGet();
+    Record question = query.getQuestion();
+    Message response = new Message(query.getHeader().getID());
+    response.getHeader().setFlag(Flags.QR);
+    response.getHeader().setFlag(Flags.RA);
+    response.addRecord(question, Section.QUESTION);
+    if (serverFailure) {
+      response.getHeader().setRcode(Rcode.SERVFAIL);
+      return response;
+    }
+    if (refused) {
+      response.getHeader().setRcode(Rcode.REFUSED);
+      return response;
+    }
+    List<Record> records = zone.get(question.getName());
+    if (records == null) {
+      response.getHeader().setRcode(Rcode.NXDOMAIN);
+      return response;
+    }
+    synchronized (records) {
+      for (Record record : records) {
+        if (record.getType() == question.getType()) {
+          response.addRecord(record, Section.ANSWER);
+        }
+      }
+    }
+    return response;
+  }
+
+  @Override
+  public CompletionStage<Message> sendAsync(Message query) {
+    return sendAsync(query, CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS));
+  }
+
+  @Override
+  public CompletionStage<Message> sendAsync(Message query, Executor executor) {
+    Executor delayedExecutor = CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS, executor);
+    return CompletableFuture.supplyAsync(() -> answer(query), delayedExecutor);
+  }
+
+  @Override
+  public void setPort(int port) {
+  }
+
+  @Override
+  public void setTCP(boolean flag) {
+  }
+
+  @Override
+  public void setIgnoreTruncation(boolean flag) {
+  }
+
+  @Override
+  public void setEDNS(int version, int payloadSize, int flags, List<EDNSOption> options) {
+  }
+
+  @Override
+  public void setTSIGKey(TSIG key) {
+  }
+
+  @Override
+  public void setTimeout(Duration timeout) {
+    this.timeout = timeout;
+  }
+
+  @Override
+  public Duration getTimeout() {
+    return timeout;
+  }
+
+}
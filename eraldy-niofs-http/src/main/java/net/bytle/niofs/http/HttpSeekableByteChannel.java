@@ -6,6 +6,7 @@ import net.bytle.log.Logs;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
@@ -14,11 +15,27 @@ import java.util.logging.Level;
 /**
  * https://docs.oracle.com/javase/8/docs/api/index.html?java/net/HttpURLConnection.html
  * Implemented with a range request
+ * <p>
+ * The request is sent at the first read.
+ * When the channel is read from the start (ie a copy), the range is open (`bytes=0-`)
+ * and the whole resource is fetched in one response.
+ * After a move, the ranges are bounded (`bytes=start-end`) so that a random access
+ * (ie the central directory and some entries of a zip) does not fetch the rest of the resource.
+ * The length of the range starts at {@link #MIN_RANGE_LENGTH} and doubles
+ * while the reads are sequential up to {@link #MAX_RANGE_LENGTH}.
  */
 class HttpSeekableByteChannel implements SeekableByteChannel {
 
   protected static final Log logger = Logs.createFromClazz(HttpSeekableByteChannel.class);
 
+  static final long MIN_RANGE_LENGTH = 64 * 1024;
+  static final long MAX_RANGE_LENGTH = 8 * 1024 * 1024;
+  /**
+   * A forward move below this distance skips the data of the current response
+   * (cheaper than a new request)
+   */
+  private static final long MAX_SKIP = 64 * 1024;
+
 
   // The connection Url
   private final HttpRequestPath httpPath;
@@ -26,44 +43,136 @@ class HttpSeekableByteChannel implements SeekableByteChannel {
   private long currentPosition = 0;
   // The connection (fetch)
   private HttpURLConnection fetch;
+  // The input stream of the current response, null if there is none
+  private InputStream currentStream;
   // The channel wrapper around the input stream to read in byte and got easy channel status
   private ReadableByteChannel currentChannel;
+  // The position after the last byte of the current response
+  private long currentEnd;
+  // The length of the next range request, 0 for an open range
+  private long rangeLength = 0;
 
-  private long byteSize;
+  private long byteSize = -1;
+  private boolean open = true;
 
   HttpSeekableByteChannel(final HttpRequestPath httpPath) {
     assert httpPath != null : "httpPath cannot be null";
     this.httpPath = httpPath;
-    build(currentPosition);
-
   }
 
-  private void build(long start) {
+  private void build(long start, long length) throws IOException {
 
     fetch = HttpStatic.getHttpFetchObject(httpPath);
-    fetch.addRequestProperty("Range", "bytes=" + start + "-");
+    String range = "bytes=" + start + "-";
+    if (length > 0) {
+      range += (start + length - 1);
+    }
+    fetch.addRequestProperty("Range", range);
     fetch.setInstanceFollowRedirects(true);
 
-
-    /**
-     * The size is mandatory for
-     * {@link java.nio.file.Files.readAllBytes()}
-     * because it creates an array in advance to get the data
-     *
-     * If the server does not publish it, we read the input stream
-     * to determine it
-     */
     HttpResponse httpResponse = HttpResponse.createFrom(fetch);
-    this.byteSize = httpResponse.getSize();
-    currentChannel = Channels.newChannel(new BufferedInputStream(httpResponse.getInputStream()));
+    int responseCode = fetch.getResponseCode();
+    switch (responseCode) {
+      case HttpURLConnection.HTTP_PARTIAL:
+        String contentRange = fetch.getHeaderField("Content-Range");
+        long total = getTotalSize(contentRange);
+        if (total != -1) {
+          this.byteSize = total;
+        }
+        long contentLength = fetch.getContentLengthLong();
+        currentEnd = contentLength == -1 ? Long.MAX_VALUE : start + contentLength;
+        currentStream = new BufferedInputStream(httpResponse.getInputStream());
+        break;
+      case HttpURLConnection.HTTP_OK:
+        /*
+         * The server does not support range request, the whole resource is sent
+         *
+         * The size is mandatory for
+         * {@link java.nio.file.Files.readAllBytes()}
+         * because it creates an array in advance to get the data
+         *
+         * If the server does not publish it, we read the input stream
+         * to determine it
+         */
+        this.byteSize = httpResponse.getSize();
+        currentEnd = this.byteSize;
+        currentStream = new BufferedInputStream(httpResponse.getInputStream());
+        skipFully(start);
+        break;
+      case 416: // Range Not Satisfiable, the start is after the end
+        this.byteSize = getTotalSize(fetch.getHeaderField("Content-Range"));
+        currentEnd = start;
+        currentStream = new BufferedInputStream(InputStream.nullInputStream());
+        fetch.disconnect();
+        break;
+      default:
+        fetch.disconnect();
+        throw new IOException("The range request (" + range + ") on " + httpPath + " was not successful, we got the following response code: " + responseCode);
+    }
+    currentChannel = Channels.newChannel(currentStream);
+
+  }
+
+  /**
+   * @param contentRange - the value of the Content-Range header (ie `bytes 0-99/1000`)
+   * @return the total size or -1 if unknown
+   */
+  static long getTotalSize(String contentRange) {
+    if (contentRange == null) {
+      return -1;
+    }
+    int slash = contentRange.lastIndexOf('/');
+    if (slash == -1) {
+      return -1;
+    }
+    String total = contentRange.substring(slash + 1).trim();
+    if (total.equals("*")) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(total);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
 
+  private void skipFully(long bytesToSkip) throws IOException {
+    while (bytesToSkip > 0) {
+      long skipped = currentStream.skip(bytesToSkip);
+      if (skipped <= 0) {
+        if (currentStream.read() == -1) {
+          break;
+        }
+        skipped = 1;
+      }
+      bytesToSkip -= skipped;
+    }
   }
 
   @Override
   public synchronized int read(final ByteBuffer dst) throws IOException {
-    // We could also send a range HTTP request
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    if (byteSize != -1 && currentPosition >= byteSize) {
+      return -1;
+    }
+    if (currentChannel == null || currentPosition >= currentEnd) {
+      long length = 0;
+      if (currentChannel != null || rangeLength > 0) {
+        // sequential read after a bounded range or first read after a move
+        if (currentChannel != null) {
+          rangeLength = Math.min(Math.max(rangeLength, MIN_RANGE_LENGTH) * 2, MAX_RANGE_LENGTH);
+        }
+        length = Math.max(rangeLength, dst.remaining());
+      }
+      closeResponse();
+      build(currentPosition, length);
+    }
     final int read = currentChannel.read(dst);
-    this.currentPosition += read;
+    if (read > 0) {
+      this.currentPosition += read;
+    }
     return read;
   }
 
@@ -88,19 +197,22 @@ class HttpSeekableByteChannel implements SeekableByteChannel {
     if (!isOpen()) {
       throw new ClosedChannelException();
     }
+    if (newPosition == this.currentPosition) {
+      return this;
+    }
 
-    if (newPosition > this.currentPosition) {
-
-      final long bytesToSkip = newPosition - this.currentPosition;
-      final long skipped = fetch.getInputStream().skip(bytesToSkip);
-      logger.logf(Level.FINE, "Skipped {} bytes out of {} for setting position to {} (previously on {})",
-        bytesToSkip, skipped, newPosition, currentPosition);
+    final long bytesToSkip = newPosition - this.currentPosition;
+    if (currentChannel != null && bytesToSkip > 0 && bytesToSkip <= MAX_SKIP && newPosition < currentEnd) {
 
+      skipFully(bytesToSkip);
+      logger.logf(Level.FINE, "Skipped {} bytes for setting position to {} (previously on {})",
+        bytesToSkip, newPosition, currentPosition);
 
-    } else if (this.currentPosition > newPosition) {
+    } else {
 
-      close();
-      build(newPosition);
+      // the next read sends a bounded range request
+      closeResponse();
+      rangeLength = MIN_RANGE_LENGTH;
 
     }
 
@@ -110,10 +222,23 @@ class HttpSeekableByteChannel implements SeekableByteChannel {
     return this;
   }
 
+  /**
+   * The size is given by the response if a request was sent,
+   * otherwise by a `HEAD` request
+   * and if the server does not publish it, by a `GET` request
+   */
   @Override
   public synchronized long size() throws IOException {
 
-
+    if (this.byteSize == -1) {
+      Long size = HttpStatic.getSizeWithHeadRequest(httpPath);
+      if (size != null) {
+        this.byteSize = size;
+      } else {
+        closeResponse();
+        build(currentPosition, 0);
+      }
+    }
     return this.byteSize;
 
   }
@@ -125,12 +250,21 @@ class HttpSeekableByteChannel implements SeekableByteChannel {
 
   @Override
   public synchronized boolean isOpen() {
-    return currentChannel.isOpen();
+    return open;
+  }
+
+  private void closeResponse() throws IOException {
+    if (currentChannel != null) {
+      currentChannel.close();
+      currentChannel = null;
+      currentStream = null;
+    }
   }
 
   @Override
   public synchronized void close() throws IOException {
-    currentChannel.close();
+    open = false;
+    closeResponse();
   }
 
 
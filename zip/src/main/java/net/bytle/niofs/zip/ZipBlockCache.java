@@ -0,0 +1,125 @@
+package net.bytle.niofs.zip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read only channel on a zip file that is not a local file (ie an http
+ * resource) where a read or a move costs a request.
+ *
+ * The zip file is read by blocks of a fixed size and the last blocks read
+ * are kept in memory. The headers of an entry and the start of its data are
+ * then in the same block, as the END header and the end of the central
+ * directory.
+ */
+final class ZipBlockCache implements SeekableByteChannel {
+
+    private final SeekableByteChannel ch;
+    private final int blockSize;
+    private final long size;
+    private final Map<Long, byte[]> blocks;    // block index -> data, LRU
+    private long position = 0;
+
+    ZipBlockCache(SeekableByteChannel ch, int blockSize, final int maxBlocks)
+        throws IOException
+    {
+        if (blockSize <= 0 || maxBlocks <= 0)
+            throw new IllegalArgumentException("block size and cache size should be positive");
+        this.ch = ch;
+        this.blockSize = blockSize;
+        this.size = ch.size();
+        this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > maxBlocks;
+            }
+        };
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size)
+            return -1;
+        int n = 0;
+        while (dst.hasRemaining() && position < size) {
+            long index = position / blockSize;
+            byte[] block = block(index);
+            int off = (int)(position - index * blockSize);
+            int len = Math.min(dst.remaining(), block.length - off);
+            dst.put(block, off, len);
+            position += len;
+            n += len;
+        }
+        return n;
+    }
+
+    private byte[] block(long index) throws IOException {
+        byte[] block = blocks.get(index);
+        if (block == null) {
+            long pos = index * blockSize;
+            block = new byte[(int)Math.min(blockSize, size - pos)];
+            ByteBuffer bb = ByteBuffer.wrap(block);
+            ch.position(pos);
+            while (bb.hasRemaining()) {
+                if (ch.read(bb) == -1)
+                    throw new EOFException("unexpected end of zip file at " + (pos + bb.position()));
+            }
+            blocks.put(index, block);
+        }
+        return block;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0)
+            throw new IllegalArgumentException("negative position");
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return ch.isOpen();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        blocks.clear();
+        ch.close();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!ch.isOpen())
+            throw new ClosedChannelException();
+    }
+}
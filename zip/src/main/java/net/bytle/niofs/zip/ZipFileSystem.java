@@ -51,6 +51,12 @@ import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
@@ -83,6 +89,19 @@ public class ZipFileSystem extends FileSystem {
     private final boolean useTempFile;   // use a temp file for newOS, default
                                          // is to use BAOS for better performance
     private final boolean createNew;     // create a new zip if not exists
+    private final boolean appendMode;    // sync appends the updated entries
+    private final double compactionThreshold; // dead space ratio that triggers
+                                         // a rewrite in append mode
+    private final ExecutorService deflatePool; // deflate the entries in parallel
+                                         // if "parallelism" > 0, null otherwise
+    private final long maxDeflatingBytes; // uncompressed bytes waiting for
+                                         // the deflate pool before a close blocks
+    private long deflatingBytes = 0;     // guarded by deflatingLock
+    private final Object deflatingLock = new Object();
+    private final boolean compactIndex;  // index the cen without IndexNode
+                                         // (read only)
+    private final long inflateCheckpointSpan; // uncompressed bytes between 2
+                                         // checkpoints of an inflate index
     private static final boolean isWindows =
         System.getProperty("os.name").startsWith("Windows");
 
@@ -96,6 +115,32 @@ public class ZipFileSystem extends FileSystem {
         this.nameEncoding = env.containsKey("encoding") ?
                             (String)env.get("encoding") : "UTF-8";
         this.useTempFile  = TRUE.equals(env.get("useTempFile"));
+        this.appendMode   = TRUE.equals(env.get("appendMode"));
+        Object threshold  = env.get("compactionThreshold");
+        this.compactionThreshold = threshold == null ? 0.5 :
+                            Double.parseDouble(threshold.toString());
+        if (this.compactionThreshold < 0 || this.compactionThreshold > 1)
+            throw new IllegalArgumentException("compaction threshold should be between 0 and 1");
+        this.compactIndex = TRUE.equals(env.get("compactIndex"));
+        Object span = env.get("inflateCheckpointSpan");
+        this.inflateCheckpointSpan = span == null ? 4 << 20 :
+                            Long.parseLong(span.toString());
+        Object parallelism = env.get("parallelism");
+        int nThreads = parallelism == null ? 0 :
+                            Integer.parseInt(parallelism.toString());
+        if (nThreads < 0)
+            throw new IllegalArgumentException("parallelism should not be negative");
+        this.deflatePool  = nThreads == 0 ? null :
+                            Executors.newFixedThreadPool(nThreads, r -> {
+                                Thread t = new Thread(r, "zipfs-deflate");
+                                t.setDaemon(true);
+                                return t;
+                            });
+        Object maxDeflating = env.get("maxDeflatingBytes");
+        this.maxDeflatingBytes = maxDeflating == null ? 64 << 20 :
+                            Long.parseLong(maxDeflating.toString());
+        if (this.maxDeflatingBytes <= 0)
+            throw new IllegalArgumentException("maxDeflatingBytes should be positive");
         this.defaultDir   = env.containsKey("default.dir") ?
                             (String)env.get("default.dir") : "/";
         if (this.defaultDir.charAt(0) != '/')
@@ -114,11 +159,29 @@ public class ZipFileSystem extends FileSystem {
         }
         // sm and existence check
         zfpath.getFileSystem().provider().checkAccess(zfpath, AccessMode.READ);
-        if (!Files.isWritable(zfpath))
+        if (!Files.isWritable(zfpath) || compactIndex)
             this.readOnly = true;
         this.zc = ZipCoder.get(nameEncoding);
         this.defaultdir = new ZipPath(this, getBytes(defaultDir));
-        this.ch = Files.newByteChannel(zfpath, READ);
+        SeekableByteChannel zfch = Files.newByteChannel(zfpath, READ);
+        if (zfch instanceof FileChannel) {
+            this.ch = zfch;
+        } else {
+            // a zip file of another file system (ie http), read by blocks.
+            // The sync writes temp files next to the zip file and moves
+            // them, it is read only.
+            Object blockSize = env.get("blockSize");
+            Object blockCacheSize = env.get("blockCacheSize");
+            try {
+                this.ch = new ZipBlockCache(zfch,
+                    blockSize == null ? 64 * 1024 : Integer.parseInt(blockSize.toString()),
+                    blockCacheSize == null ? 16 : Integer.parseInt(blockCacheSize.toString()));
+            } catch (IOException | RuntimeException x) {
+                zfch.close();
+                throw x;
+            }
+            this.readOnly = true;
+        }
         this.cen = initCEN();
     }
 
@@ -270,6 +333,8 @@ public class ZipFileSystem extends FileSystem {
             ch.close();                 // close the ch just in case no update
         } finally {                     // and sync dose not close the ch
             endWrite();
+            if (deflatePool != null)
+                shutdownDeflatePool();
         }
 
         synchronized (inflaters) {
@@ -307,6 +372,8 @@ public class ZipFileSystem extends FileSystem {
         try {
             ensureOpen();
             e = getEntry0(path);
+            if (e != null)
+                awaitDeflate(e);             // csize and crc
             if (e == null) {
                 IndexNode inode = getInode(path);
                 if (inode == null)
@@ -389,7 +456,8 @@ public class ZipFileSystem extends FileSystem {
             if (inode == null)
                 throw new NotDirectoryException(getString(path));
             List<Path> list = new ArrayList<>();
-            IndexNode child = inode.child;
+            IndexNode child = (cenIndex != null) ? cenIndex.childOf(inode)
+                                                 : inode.child;
             while (child != null) {
                 ZipPath zp = toZipPath(child.name);
                 if (filter == null || filter.accept(zp))
@@ -453,6 +521,7 @@ public class ZipFileSystem extends FileSystem {
             } else {
                 checkParents(dst);
             }
+            awaitDeflate(eSrc);
             Entry u = new Entry(eSrc, Entry.COPY);    // copy eSrc entry
             u.name(dst);                              // change name
             if (eSrc.type == Entry.NEW || eSrc.type == Entry.FILECH)
@@ -626,57 +695,391 @@ public class ZipFileSystem extends FileSystem {
                 Entry e = getEntry0(path);
                 if (e == null || e.isDir())
                     throw new NoSuchFileException(getString(path));
-                final ReadableByteChannel rbc =
-                    Channels.newChannel(getInputStream(e));
-                final long size = e.size;
-                return new SeekableByteChannel() {
-                    long read = 0;
-                    public boolean isOpen() {
-                        return rbc.isOpen();
-                    }
+                if (isStoredInZip(e))
+                    return new EntryFileChannel(e);
+                return new EntryReadChannel(e);
+            } finally {
+                endRead();
+            }
+        }
+    }
 
-                    public long position() throws IOException {
-                        return read;
-                    }
+    // Readable channel of an entry. The data of a DEFLATED entry of the zip
+    // file is inflated again from the nearest checkpoint of the entry inflate
+    // index (built on the first seek), the other entries are read again from
+    // the start when the position is moved backward.
+    private class EntryReadChannel implements SeekableByteChannel {
+        private final Entry e;
+        private InputStream is;     // null if at or after the end
+        private ReadableByteChannel rbc;
+        private long position = 0;
+        private boolean isOpen = true;
 
-                    public SeekableByteChannel position(long pos)
-                        throws IOException
-                    {
-                        throw new UnsupportedOperationException();
-                    }
+        EntryReadChannel(Entry e) throws IOException {
+            this.e = e;
+            this.is = getInputStream(e);
+            this.rbc = Channels.newChannel(is);
+        }
 
-                    public int read(ByteBuffer dst) throws IOException {
-                        int n = rbc.read(dst);
-                        if (n > 0) {
-                            read += n;
-                        }
-                        return n;
-                    }
+        public boolean isOpen() {
+            return isOpen;
+        }
 
-                    public SeekableByteChannel truncate(long size)
-                    throws IOException
-                    {
-                        throw new NonWritableChannelException();
-                    }
+        public long position() throws IOException {
+            return position;
+        }
 
-                    public int write (ByteBuffer src) throws IOException {
-                        throw new NonWritableChannelException();
-                    }
+        public SeekableByteChannel position(long pos)
+            throws IOException
+        {
+            if (!isOpen)
+                throw new ClosedChannelException();
+            if (pos < 0)
+                throw new IllegalArgumentException("negative position");
+            if (pos == position)
+                return this;
+            if (pos >= e.size) {
+                closeStream();
+                position = pos;
+                return this;
+            }
+            boolean indexed = hasInflateIndex(e);
+            long skip = pos - position;
+            if (is == null || skip < 0 || (indexed && skip > inflateCheckpointSpan)) {
+                closeStream();
+                long from = 0;
+                if (indexed) {
+                    ZipInflateIndex.Checkpoint cp = getInflateIndex(e).find(pos);
+                    is = getInputStream(e, cp);
+                    from = cp.out;
+                } else {
+                    is = getInputStream(e);
+                }
+                rbc = Channels.newChannel(is);
+                skip = pos - from;
+            }
+            while (skip > 0) {
+                long n = is.skip(skip);
+                if (n <= 0) {
+                    if (is.read() == -1)
+                        throw new EOFException("entry data is missing");
+                    n = 1;
+                }
+                skip -= n;
+            }
+            position = pos;
+            return this;
+        }
 
-                    public long size() throws IOException {
-                        return size;
-                    }
+        public int read(ByteBuffer dst) throws IOException {
+            if (!isOpen)
+                throw new ClosedChannelException();
+            if (is == null)
+                return -1;
+            int n = rbc.read(dst);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
 
-                    public void close() throws IOException {
-                        rbc.close();
-                    }
-                };
-            } finally {
-                endRead();
+        public SeekableByteChannel truncate(long size)
+        throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+
+        public int write (ByteBuffer src) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        public long size() throws IOException {
+            return e.size;
+        }
+
+        public void close() throws IOException {
+            isOpen = false;
+            closeStream();
+        }
+
+        private void closeStream() throws IOException {
+            if (is != null) {
+                rbc.close();
+                is = null;
+                rbc = null;
+            }
+        }
+    }
+
+    // Returns true if the data of the entry is stored (not compressed) in the
+    // zip file and can be read directly from the zip file channel.
+    private boolean isStoredInZip(Entry e) {
+        return e.method == METHOD_STORED &&
+               (e.type == Entry.CEN || e.type == Entry.COPY) &&
+               ch instanceof FileChannel;
+    }
+
+    // Read only FileChannel on the range of a STORED entry data in the zip
+    // file. The reads are positional reads of the zip file channel and
+    // transferTo/map are the ones of the zip file channel (zero copy).
+    private class EntryFileChannel extends FileChannel {
+        private final FileChannel zfch;
+        private final long start;    // position of the data in the zip file
+        private final long size;
+        private final List<FileLock> locks = new ArrayList<>();
+        private long position = 0;
+
+        EntryFileChannel(Entry e) throws IOException {
+            this.zfch = (FileChannel)ch;
+            this.start = getDataPos(e);
+            this.size = e.size;
+        }
+
+        private void ensureChannelOpen() throws IOException {
+            if (!isOpen())
+                throw new ClosedChannelException();
+        }
+
+        // Reads at most the rest of the entry data from "pos"
+        private int readAt(ByteBuffer dst, long pos) throws IOException {
+            ensureChannelOpen();
+            if (pos >= size)
+                return -1;
+            long rem = size - pos;
+            if (dst.remaining() <= rem)
+                return zfch.read(dst, start + pos);
+            ByteBuffer bb = dst.duplicate();
+            bb.limit(bb.position() + (int)rem);
+            int n = zfch.read(bb, start + pos);
+            if (n > 0)
+                dst.position(dst.position() + n);
+            return n;
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            int n = readAt(dst, position);
+            if (n > 0)
+                position += n;
+            return n;
+        }
+
+        public long read(ByteBuffer[] dsts, int offset, int length)
+            throws IOException
+        {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) {
+                if (!dsts[i].hasRemaining())
+                    continue;
+                int n = read(dsts[i]);
+                if (n == -1)
+                    return total == 0 ? -1 : total;
+                total += n;
+                if (dsts[i].hasRemaining())
+                    break;
+            }
+            return total;
+        }
+
+        public int read(ByteBuffer dst, long position) throws IOException {
+            if (position < 0)
+                throw new IllegalArgumentException("negative position");
+            return readAt(dst, position);
+        }
+
+        public long position() throws IOException {
+            ensureChannelOpen();
+            return position;
+        }
+
+        public FileChannel position(long newPosition) throws IOException {
+            ensureChannelOpen();
+            if (newPosition < 0)
+                throw new IllegalArgumentException("negative position");
+            position = newPosition;
+            return this;
+        }
+
+        public long size() throws IOException {
+            ensureChannelOpen();
+            return size;
+        }
+
+        public long transferTo(long position, long count,
+                               WritableByteChannel target)
+            throws IOException
+        {
+            ensureChannelOpen();
+            if (position < 0 || count < 0)
+                throw new IllegalArgumentException();
+            if (position >= size)
+                return 0;
+            return zfch.transferTo(start + position,
+                                   Math.min(count, size - position), target);
+        }
+
+        public MappedByteBuffer map(MapMode mode, long position, long size)
+            throws IOException
+        {
+            ensureChannelOpen();
+            if (mode != MapMode.READ_ONLY)
+                throw new NonWritableChannelException();
+            if (position < 0 || size < 0 || position + size > this.size)
+                throw new IllegalArgumentException("out of the entry data");
+            return zfch.map(MapMode.READ_ONLY, start + position, size);
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        public long write(ByteBuffer[] srcs, int offset, int length)
+            throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+
+        public int write(ByteBuffer src, long position) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        public FileChannel truncate(long size) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        public long transferFrom(ReadableByteChannel src,
+                                 long position, long count)
+            throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+
+        public void force(boolean metaData) throws IOException {
+            ensureChannelOpen();
+        }
+
+        // A shared lock is a lock of the entry data range in the zip file,
+        // the channel is read only, an exclusive lock is not permitted.
+        public FileLock lock(long position, long size, boolean shared)
+            throws IOException
+        {
+            return addLock(position, size,
+                zfch.lock(lockStart(position, size, shared),
+                          lockSize(position, size), true));
+        }
+
+        public FileLock tryLock(long position, long size, boolean shared)
+            throws IOException
+        {
+            FileLock lock = zfch.tryLock(lockStart(position, size, shared),
+                                         lockSize(position, size), true);
+            return lock == null ? null : addLock(position, size, lock);
+        }
+
+        private FileLock addLock(long position, long size, FileLock lock) {
+            FileLock entryLock = new EntryFileLock(position,
+                                                   lockSize(position, size),
+                                                   lock);
+            synchronized (locks) {
+                locks.add(lock);
+            }
+            return entryLock;
+        }
+
+        private long lockStart(long position, long size, boolean shared)
+            throws IOException
+        {
+            ensureChannelOpen();
+            if (position < 0 || size < 0)
+                throw new IllegalArgumentException("negative position or size");
+            if (!shared)
+                throw new NonWritableChannelException();
+            return start + Math.min(position, this.size);
+        }
+
+        // the range is limited to the entry data (ie size is Long.MAX_VALUE
+        // for a lock of the whole channel)
+        private long lockSize(long position, long size) {
+            return Math.min(size, Math.max(0, this.size - position));
+        }
+
+        // the lock of the zip file range seen as a lock of this channel
+        private class EntryFileLock extends FileLock {
+            private final FileLock lock;
+
+            EntryFileLock(long position, long size, FileLock lock) {
+                super(EntryFileChannel.this, position, size, true);
+                this.lock = lock;
+            }
+
+            public boolean isValid() {
+                return lock.isValid() && EntryFileChannel.this.isOpen();
+            }
+
+            public void release() throws IOException {
+                lock.release();
+                synchronized (locks) {
+                    locks.remove(lock);
+                }
+            }
+        }
+
+        protected void implCloseChannel() throws IOException {
+            // the zip file channel is closed with the file system, the locks
+            // of this channel are released now
+            synchronized (locks) {
+                for (FileLock lock : locks) {
+                    if (lock.isValid())
+                        lock.release();
+                }
+                locks.clear();
             }
         }
     }
 
+    /**
+     * Builds the inflate index of a DEFLATED entry (if not already built) so
+     * that its byte channel can be positioned without inflating the data
+     * before the position. Otherwise, the index is built on the first move
+     * of the position.
+     */
+    public void buildInflateIndex(Path path) throws IOException {
+        byte[] bytes = ((ZipPath)path).getResolvedPath();
+        beginRead();
+        try {
+            ensureOpen();
+            Entry e = getEntry0(bytes);
+            if (e == null || e.isDir())
+                throw new NoSuchFileException(getString(bytes));
+            if (hasInflateIndex(e))
+                getInflateIndex(e);
+        } finally {
+            endRead();
+        }
+    }
+
+    // the inflate index of the DEFLATED entries read from the zip file
+    private final Map<IndexNode, ZipInflateIndex> inflateIndexes =
+        Collections.synchronizedMap(new HashMap<IndexNode, ZipInflateIndex>());
+
+    private boolean hasInflateIndex(Entry e) {
+        return inflateCheckpointSpan > 0 &&
+               e.method == METHOD_DEFLATED &&
+               (e.type == Entry.CEN || e.type == Entry.COPY);
+    }
+
+    private ZipInflateIndex getInflateIndex(Entry e) throws IOException {
+        IndexNode key = IndexNode.keyOf(e.name);
+        ZipInflateIndex index = inflateIndexes.get(key);
+        if (index == null) {
+            try (InputStream is = new BufferedInputStream(
+                                      new EntryInputStream(e, ch), 65536)) {
+                index = ZipInflateIndex.build(is, inflateCheckpointSpan);
+            }
+            inflateIndexes.put(key, index);
+        }
+        return index;
+    }
+
     // Returns a FileChannel of the specified entry.
     //
     // This implementation creates a temporary file on the default file system,
@@ -709,6 +1112,8 @@ public class ZipFileSystem extends FileSystem {
                 options.remove(StandardOpenOption.CREATE_NEW); // for tmpfile
             } else if (e == null || e.isDir()) {
                 throw new NoSuchFileException(getString(path));
+            } else if (isStoredInZip(e)) {
+                return new EntryFileChannel(e);    // no tmp file
             }
 
             final boolean isFCH = (e != null && e.type == Entry.FILECH);
@@ -899,6 +1304,9 @@ public class ZipFileSystem extends FileSystem {
 
     // name -> pos (in cen), IndexNode itself can be used as a "key"
     private LinkedHashMap<IndexNode, IndexNode> inodes;
+    // the compact index of the cen that replaces "inodes" in compactIndex
+    // mode, null otherwise
+    private CenIndex cenIndex;
 
     final byte[] getBytes(String name) {
         return zc.getBytes(name);
@@ -940,8 +1348,20 @@ public class ZipFileSystem extends FileSystem {
     private final long readFullyAt(ByteBuffer bb, long pos)
         throws IOException
     {
-        synchronized(ch) {
-            return ch.position(pos).read(bb);
+        return readAt(ch, bb, pos);
+    }
+
+    // Reads from the specified position of the channel. A FileChannel has
+    // positional reads that do not change the channel position, so the
+    // readers of different entries do not wait for each other. Any other
+    // channel has to be locked between the position and the read.
+    private static int readAt(SeekableByteChannel zfch, ByteBuffer bb, long pos)
+        throws IOException
+    {
+        if (zfch instanceof FileChannel)
+            return ((FileChannel)zfch).read(bb, pos);
+        synchronized(zfch) {
+            return zfch.position(pos).read(bb);
         }
     }
 
@@ -1042,7 +1462,8 @@ public class ZipFileSystem extends FileSystem {
             zerror("read CEN tables failed");
         }
         // Iterate through the entries in the central directory
-        inodes = new LinkedHashMap<>(end.centot + 1);
+        inodes = new LinkedHashMap<>(compactIndex ? 1 : end.centot + 1);
+        CenIndex index = compactIndex ? new CenIndex(cen, end.centot) : null;
         int pos = 0;
         int limit = cen.length - ENDHDR;
         while (pos < limit) {
@@ -1058,15 +1479,24 @@ public class ZipFileSystem extends FileSystem {
                 zerror("invalid CEN header (unsupported compression method: " + method + ")");
             if (pos + CENHDR + nlen > limit)
                 zerror("invalid CEN header (bad header size)");
-            byte[] name = Arrays.copyOfRange(cen, pos + CENHDR, pos + CENHDR + nlen);
-            IndexNode inode = new IndexNode(name, pos);
-            inodes.put(inode, inode);
+            if (index != null) {
+                index.add(pos);
+            } else {
+                byte[] name = Arrays.copyOfRange(cen, pos + CENHDR, pos + CENHDR + nlen);
+                IndexNode inode = new IndexNode(name, pos);
+                inodes.put(inode, inode);
+            }
             // skip ext and comment
             pos += (CENHDR + nlen + elen + clen);
         }
         if (pos + ENDHDR != cen.length) {
             zerror("invalid CEN header (bad header size)");
         }
+        if (index != null) {
+            index.build();
+            cenIndex = index;
+            return cen;
+        }
         buildNodeTree();
         return cen;
     }
@@ -1100,6 +1530,7 @@ public class ZipFileSystem extends FileSystem {
         try {
             removeFromTree(inode);
             inodes.remove(inode);
+            inflateIndexes.remove(inode);
             hasUpdate = true;
         } finally {
              endWrite();
@@ -1112,6 +1543,7 @@ public class ZipFileSystem extends FileSystem {
             IndexNode old = inodes.put(e, e);
             if (old != null) {
                 removeFromTree(old);
+                inflateIndexes.remove(old);
             }
             if (e.type == Entry.NEW || e.type == Entry.FILECH || e.type == Entry.COPY) {
                 IndexNode parent = inodes.get(LOOKUPKEY.as(getParent(e.name)));
@@ -1171,6 +1603,89 @@ public class ZipFileSystem extends FileSystem {
         return written;
     }
 
+    // write the LOC header and the data of an updated entry (NEW, FILECH or
+    // COPY) at the "written" position.
+    private long writeLOCEntry(Entry e, OutputStream os, long written, byte[] buf)
+        throws IOException
+    {
+        if (e.type == Entry.COPY) {
+            // entry copy: the only thing changed is the "name"
+            // and "nlen" in LOC header, so we udpate/rewrite the
+            // LOC in new file and simply copy the rest (data and
+            // ext) without enflating/deflating from the old zip
+            // file LOC entry.
+            return copyLOCEntry(e, true, os, written, buf);
+        }
+        awaitDeflate(e);
+        e.locoff = written;
+        long n0 = e.writeLOC(os);             // write loc header
+        if (e.bytes != null) {                // in-memory, deflated
+            os.write(e.bytes);                // already
+            n0 += e.bytes.length;
+        } else if (e.file != null) {          // tmp file
+            try (InputStream is = Files.newInputStream(e.file)) {
+                int n;
+                if (e.type == Entry.NEW) {    // deflated already
+                    while ((n = is.read(buf)) != -1) {
+                        os.write(buf, 0, n);
+                        n0 += n;
+                    }
+                } else if (e.type == Entry.FILECH) {
+                    // the data are not deflated, use ZEOS
+                    try (OutputStream os2 = new EntryOutputStream(e, os)) {
+                        while ((n = is.read(buf)) != -1) {
+                            os2.write(buf, 0, n);
+                        }
+                    }
+                    n0 += e.csize;
+                    if ((e.flag & FLAG_DATADESCR) != 0)
+                        n0 += e.writeEXT(os);
+                }
+            }
+            Files.delete(e.file);
+            tmppaths.remove(e.file);
+        } else {
+            // dir, 0-length data
+        }
+        return n0;
+    }
+
+    // write the cen and end table at the "written" position.
+    private void writeCENAndEND(List<Entry> elist, OutputStream os, long written)
+        throws IOException
+    {
+        end.cenoff = written;
+        for (Entry entry : elist) {
+            written += entry.writeCEN(os);
+        }
+        end.centot = elist.size();
+        end.cenlen = written - end.cenoff;
+        end.write(os, written);
+    }
+
+    // Returns the part of the zip file (before the appended entries) that is
+    // not referenced anymore by an entry after an append: deleted or
+    // replaced entries and the old CEN and END.
+    // The LOC header size is estimated with the CEN name and extra length.
+    private double getDeadSpaceRatio() throws IOException {
+        long dataLen = ch.size() - locpos;
+        if (end.cenoff <= 0)
+            return 0;
+        long live = 0;
+        for (IndexNode inode : inodes.values()) {
+            if (inode instanceof Entry || inode.pos == -1)
+                continue;                       // updated or pseudo directory
+            int pos = inode.pos;
+            long csize = CENSIZ(cen, pos);
+            if (csize == ZIP64_MINVAL)
+                csize = Entry.readCEN(this, pos).csize;
+            live += LOCHDR + CENNAM(cen, pos) + CENEXT(cen, pos) + csize;
+            if ((CENFLG(cen, pos) & FLAG_DATADESCR) != 0)
+                live += 16;
+        }
+        return (double)Math.max(0, dataLen - live) / dataLen;
+    }
+
     // sync the zip file system, if there is any udpate
     private void sync() throws IOException {
         //System.out.printf("->sync(%s) starting....!%n", toString());
@@ -1186,6 +1701,53 @@ public class ZipFileSystem extends FileSystem {
         }
         if (!hasUpdate)
             return;
+        if (appendMode && getDeadSpaceRatio() <= compactionThreshold)
+            syncAppend();
+        else
+            syncRewrite();
+        hasUpdate = false;    // clear
+        //System.out.printf("->sync(%s) done!%n", toString());
+    }
+
+    // Append mode: the unchanged entries stay in place, the updated entries
+    // are written after the old END, followed by the new CEN and END. The
+    // cost is proportional to the size of the updated entries, the data of
+    // the deleted/replaced entries and the old CEN are dead space until the
+    // next rewrite.
+    // The old CEN and END are not modified: on failure, the zip file is
+    // truncated to its original size.
+    private void syncAppend() throws IOException {
+        try (FileChannel fc = FileChannel.open(zfpath, WRITE)) {
+            long originalSize = fc.size();
+            try {
+                fc.position(originalSize);
+                OutputStream os = new BufferedOutputStream(Channels.newOutputStream(fc));
+                ArrayList<Entry> elist = new ArrayList<>(inodes.size());
+                long written = originalSize - locpos;
+                byte[] buf = new byte[8192];
+
+                // write loc of the updated entries only
+                for (IndexNode inode : inodes.values()) {
+                    if (inode instanceof Entry) {    // an updated inode
+                        Entry e = (Entry)inode;
+                        written += writeLOCEntry(e, os, written, buf);
+                        elist.add(e);
+                    } else if (inode.pos != -1) {   // unchanged inode, same loc
+                        elist.add(Entry.readCEN(this, inode.pos));
+                    }
+                }
+                writeCENAndEND(elist, os, written);
+                os.flush();
+            } catch (IOException | RuntimeException x) {
+                fc.truncate(originalSize);
+                throw x;
+            }
+        }
+    }
+
+    // Rewrite all entries into a temp file that replaces the zip file
+    // (compaction).
+    private void syncRewrite() throws IOException {
         Path tmpFile = createTempFileInSameDirectoryAs(zfpath);
         try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmpFile, WRITE)))
         {
@@ -1199,45 +1761,7 @@ public class ZipFileSystem extends FileSystem {
                 if (inode instanceof Entry) {    // an updated inode
                     e = (Entry)inode;
                     try {
-                        if (e.type == Entry.COPY) {
-                            // entry copy: the only thing changed is the "name"
-                            // and "nlen" in LOC header, so we udpate/rewrite the
-                            // LOC in new file and simply copy the rest (data and
-                            // ext) without enflating/deflating from the old zip
-                            // file LOC entry.
-                            written += copyLOCEntry(e, true, os, written, buf);
-                        } else {                          // NEW, FILECH or CEN
-                            e.locoff = written;
-                            written += e.writeLOC(os);    // write loc header
-                            if (e.bytes != null) {        // in-memory, deflated
-                                os.write(e.bytes);        // already
-                                written += e.bytes.length;
-                            } else if (e.file != null) {  // tmp file
-                                try (InputStream is = Files.newInputStream(e.file)) {
-                                    int n;
-                                    if (e.type == Entry.NEW) {  // deflated already
-                                        while ((n = is.read(buf)) != -1) {
-                                            os.write(buf, 0, n);
-                                            written += n;
-                                        }
-                                    } else if (e.type == Entry.FILECH) {
-                                        // the data are not deflated, use ZEOS
-                                        try (OutputStream os2 = new EntryOutputStream(e, os)) {
-                                            while ((n = is.read(buf)) != -1) {
-                                                os2.write(buf, 0, n);
-                                            }
-                                        }
-                                        written += e.csize;
-                                        if ((e.flag & FLAG_DATADESCR) != 0)
-                                            written += e.writeEXT(os);
-                                    }
-                                }
-                                Files.delete(e.file);
-                                tmppaths.remove(e.file);
-                            } else {
-                                // dir, 0-length data
-                            }
-                        }
+                        written += writeLOCEntry(e, os, written, buf);
                         elist.add(e);
                     } catch (IOException x) {
                         x.printStackTrace();    // skip any in-accurate entry
@@ -1257,13 +1781,7 @@ public class ZipFileSystem extends FileSystem {
             }
 
             // now write back the cen and end table
-            end.cenoff = written;
-            for (Entry entry : elist) {
-                written += entry.writeCEN(os);
-            }
-            end.centot = elist.size();
-            end.cenlen = written - end.cenoff;
-            end.write(os, written);
+            writeCENAndEND(elist, os, written);
         }
         if (!streams.isEmpty()) {
             //
@@ -1287,19 +1805,19 @@ public class ZipFileSystem extends FileSystem {
         }
 
         Files.move(tmpFile, zfpath, REPLACE_EXISTING);
-        hasUpdate = false;    // clear
         /*
         if (isOpen) {
             ch = zfpath.newByteChannel(READ); // re-fresh "ch" and "cen"
             cen = initCEN();
         }
          */
-        //System.out.printf("->sync(%s) done!%n", toString());
     }
 
     private IndexNode getInode(byte[] path) {
         if (path == null)
             throw new NullPointerException("path");
+        if (cenIndex != null)
+            return cenIndex.getInode(path);
         IndexNode key = IndexNode.keyOf(path);
         IndexNode inode = inodes.get(key);
         if (inode == null &&
@@ -1362,6 +1880,8 @@ public class ZipFileSystem extends FileSystem {
         e.flag = 0;
         if (zc.isUTF8())
             e.flag |= FLAG_EFS;
+        if (deflatePool != null && e.method == METHOD_DEFLATED && !useTempFile)
+            return new ParallelEntryOutputStream(e);
         OutputStream os;
         if (useTempFile) {
             e.file = getTempPathForEntry(null);
@@ -1378,6 +1898,7 @@ public class ZipFileSystem extends FileSystem {
         InputStream eis = null;
 
         if (e.type == Entry.NEW) {
+            awaitDeflate(e);
             if (e.bytes != null)
                 eis = new ByteArrayInputStream(e.bytes);
             else if (e.file != null)
@@ -1394,12 +1915,47 @@ public class ZipFileSystem extends FileSystem {
             eis = new EntryInputStream(e, ch);
         }
         if (e.method == METHOD_DEFLATED) {
-            // MORE: Compute good size for inflater stream:
-            long bufSize = e.size + 2; // Inflater likes a bit of slack
-            if (bufSize > 65536)
-                bufSize = 8192;
-            final long size = e.size;
-            eis = new InflaterInputStream(eis, getInflater(), (int)bufSize) {
+            eis = getInflaterInputStream(eis, getInflater(), e.size);
+        } else if (e.method == METHOD_STORED) {
+            // TBD: wrap/ it does not seem necessary
+        } else {
+            throw new ZipException("invalid compression method");
+        }
+        streams.add(eis);
+        return eis;
+    }
+
+    // Returns an input stream of a DEFLATED entry of the zip file that
+    // starts at the checkpoint.
+    private InputStream getInputStream(Entry e, ZipInflateIndex.Checkpoint cp)
+        throws IOException
+    {
+        if (cp.out == 0)
+            return getInputStream(e);
+        InputStream eis = new EntryInputStream(e, ch);
+        eis.skip(cp.in);
+        if (cp.bits != 0) {
+            int b = eis.read();
+            if (b == -1)
+                throw new ZipException("invalid inflate checkpoint");
+            eis = new SequenceInputStream(
+                new ByteArrayInputStream(ZipInflateIndex.realign(cp.bits, b)), eis);
+        }
+        Inflater inf = getInflater();
+        inf.setDictionary(cp.window);
+        eis = getInflaterInputStream(eis, inf, e.size - cp.out);
+        streams.add(eis);
+        return eis;
+    }
+
+    private InputStream getInflaterInputStream(InputStream eis, Inflater inf,
+                                               final long size)
+    {
+        // MORE: Compute good size for inflater stream:
+        long bufSize = size + 2; // Inflater likes a bit of slack
+        if (bufSize > 65536)
+            bufSize = 8192;
+        return new InflaterInputStream(eis, inf, (int)bufSize) {
 
                 private boolean isClosed = false;
                 public void close() throws IOException {
@@ -1437,13 +1993,6 @@ public class ZipFileSystem extends FileSystem {
                         Integer.MAX_VALUE : (int) avail;
                 }
             };
-        } else if (e.method == METHOD_STORED) {
-            // TBD: wrap/ it does not seem necessary
-        } else {
-            throw new ZipException("invalid compression method");
-        }
-        streams.add(eis);
-        return eis;
     }
 
     // Inner class implementing the input stream used to read
@@ -1479,9 +2028,7 @@ public class ZipFileSystem extends FileSystem {
             ByteBuffer bb = ByteBuffer.wrap(b);
             bb.position(off);
             bb.limit(off + len);
-            synchronized(zfch) {
-                n = zfch.position(pos).read(bb);
-            }
+            n = readAt(zfch, bb, pos);
             if (n > 0) {
                 pos += n;
                 rem -= n;
@@ -1516,6 +2063,28 @@ public class ZipFileSystem extends FileSystem {
         public long size() {
             return size;
         }
+        // the data of a STORED entry is transferred from the zip file
+        // channel to the file of the stream (zero copy)
+        public long transferTo(OutputStream out) throws IOException {
+            if (!(out instanceof FileOutputStream) ||
+                !(zfch instanceof FileChannel))
+                return super.transferTo(out);
+            ensureOpen();
+            FileChannel target = ((FileOutputStream)out).getChannel();
+            long transferred = 0;
+            while (rem > 0) {
+                long n = ((FileChannel)zfch).transferTo(pos, rem, target);
+                if (n <= 0)
+                    break;
+                pos += n;
+                rem -= n;
+                transferred += n;
+            }
+            if (rem == 0) {
+                close();
+            }
+            return transferred;
+        }
         public void close() {
             rem = 0;
             streams.remove(this);
@@ -1593,6 +2162,163 @@ public class ZipFileSystem extends FileSystem {
         }
     }
 
+    // Collects the data of an entry in memory and deflates it on the
+    // deflate pool when closed. Each entry is deflated independently,
+    // with the same level, so the zip file does not depend on the number
+    // of threads. The close blocks while more than maxDeflatingBytes are
+    // waiting to be deflated (the writer does not outrun the pool).
+    class ParallelEntryOutputStream extends OutputStream
+    {
+        private final Entry e;
+        private byte[] buf;
+        private int count = 0;
+        private boolean isClosed = false;
+
+        ParallelEntryOutputStream(Entry e) {
+            this.buf = new byte[(e.size > 0)? (int)e.size : 8192];
+            this.e = e;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            ensureCapacity(count + 1);
+            buf[count++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte b[], int off, int len) throws IOException {
+            ensureOpen();
+            if (off < 0 || len < 0 || len > b.length - off)
+                throw new IndexOutOfBoundsException();
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (isClosed)
+                throw new IOException("Stream closed");
+        }
+
+        private void ensureCapacity(int minCapacity) {
+            if (minCapacity < 0)
+                throw new OutOfMemoryError();
+            if (minCapacity > buf.length) {
+                int newCapacity = Math.max(buf.length << 1, minCapacity);
+                if (newCapacity < 0)
+                    newCapacity = minCapacity;
+                buf = Arrays.copyOf(buf, newCapacity);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (isClosed)
+                return;
+            isClosed = true;
+            final byte[] data = buf;
+            final int len = count;
+            buf = null;
+            acquireDeflating(len);
+            try {
+                e.deflating = deflatePool.submit(() -> {
+                    try {
+                        return deflate(e, data, len);
+                    } finally {
+                        releaseDeflating(len);
+                    }
+                });
+            } catch (RejectedExecutionException x) {
+                releaseDeflating(len);
+                throw new ClosedFileSystemException();
+            }
+            update(e);
+        }
+    }
+
+    // Waits until len bytes can be handed to the deflate pool. An entry
+    // bigger than maxDeflatingBytes waits until the pool is idle.
+    private void acquireDeflating(long len) throws IOException {
+        synchronized (deflatingLock) {
+            try {
+                while (deflatingBytes > 0 && deflatingBytes + len > maxDeflatingBytes)
+                    deflatingLock.wait();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the deflate pool");
+            }
+            deflatingBytes += len;
+        }
+    }
+
+    private void releaseDeflating(long len) {
+        synchronized (deflatingLock) {
+            deflatingBytes -= len;
+            deflatingLock.notifyAll();
+        }
+    }
+
+    // Deflates the data of the entry into e.bytes
+    private Void deflate(Entry e, byte[] data, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, len);
+        Deflater def = getDeflater();
+        try {
+            def.setInput(data, 0, len);
+            def.finish();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(len / 2 + 64);
+            byte[] buf = new byte[8192];
+            while (!def.finished()) {
+                int n = def.deflate(buf, 0, buf.length);
+                bos.write(buf, 0, n);
+            }
+            e.size  = def.getBytesRead();
+            e.csize = def.getBytesWritten();
+            e.crc   = crc.getValue();
+            e.bytes = bos.toByteArray();
+        } finally {
+            releaseDeflater(def);
+        }
+        return null;
+    }
+
+    // Cancels the deflates that have not started (sync has awaited the
+    // entries, they are the ones of deleted entries) and waits for the
+    // running ones, so that no task releases a deflater after the
+    // deflaters are ended. A deflate is not interruptible, the wait is
+    // bounded by the deflate of one entry by thread.
+    private void shutdownDeflatePool() {
+        deflatePool.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (deflatePool.awaitTermination(1, TimeUnit.MINUTES))
+                    break;
+            } catch (InterruptedException x) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    // Waits until the data of the entry is deflated (parallel mode).
+    private static void awaitDeflate(Entry e) throws IOException {
+        Future<?> f = e.deflating;
+        if (f == null)
+            return;
+        try {
+            f.get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("deflate of <" + new String(e.name) + "> interrupted");
+        } catch (ExecutionException x) {
+            throw new ZipException("deflate of <" + new String(e.name) + "> failed: " + x.getCause());
+        }
+        e.deflating = null;
+    }
+
     static void zerror(String msg) {
         throw new ZipError(msg);
     }
@@ -1783,6 +2509,7 @@ public class ZipFileSystem extends FileSystem {
 
 
         byte[] bytes;      // updated content bytes
+        volatile Future<?> deflating; // pending deflate of "bytes"
         Path   file;       // use tmp file to store bytes;
         int    type = CEN; // default is the entry read from cen
 
@@ -2312,6 +3039,249 @@ public class ZipFileSystem extends FileSystem {
         }
     }
 
+    // Compact index of the cen table ("compactIndex" env option). An entry
+    // is its position in the cen table, the names are looked up in open
+    // addressing tables of int (hash of the name bytes in the cen table) and
+    // an IndexNode is created for each lookup. A directory without entry is
+    // the position of an entry under it and the length of its name. The
+    // children of a directory are a range of the entries sorted by name.
+    // Memory: the cen table plus about 4 int per entry and 4 per directory.
+    static class CenIndex {
+        private final byte[] cen;
+        private int[] entries;          // cen position of the entries
+        private int[] sorted;           // cen position of the entries, by name
+        private int total;
+        private int[] table;            // entry number + 1, 0 is a free slot
+        private int[] dirPos;           // cen position of an entry under the dir
+        private int[] dirLen;           // name length of the dir
+        private int[] dirTable;         // dir number + 1, 0 is a free slot
+        private int dirTotal;
+
+        CenIndex(byte[] cen, int centot) {
+            this.cen = cen;
+            this.entries = new int[Math.max(centot, 16)];
+        }
+
+        void add(int pos) {
+            if (total == entries.length)    // centot is not reliable (zip64)
+                entries = Arrays.copyOf(entries, total * 2);
+            entries[total++] = pos;
+        }
+
+        void build() {
+            table = new int[tableSize(total)];
+            dirPos = new int[16];
+            dirLen = new int[16];
+            dirTable = new int[32];
+            int mask = table.length - 1;
+            for (int n = 0; n < total; n++) {
+                int pos = entries[n];
+                int off = pos + CENHDR;
+                int nlen = CENNAM(cen, pos);
+                int h = 1;
+                for (int k = 0; k < nlen; k++) {
+                    h = 31 * h + cen[off + k];     // Arrays.hashCode
+                    if (cen[off + k] == '/' && k + 1 < nlen)
+                        addDir(pos, k + 1, h);     // a parent dir
+                }
+                int i = spread(h) & mask;
+                while (table[i] != 0)
+                    i = (i + 1) & mask;
+                table[i] = n + 1;
+            }
+            sorted = Arrays.copyOf(entries, total);
+            sort(sorted, new int[total], 0, total);
+        }
+
+        // merge sort of the cen positions by name
+        private void sort(int[] a, int[] tmp, int from, int to) {
+            if (to - from < 2)
+                return;
+            int mid = (from + to) >>> 1;
+            sort(a, tmp, from, mid);
+            sort(a, tmp, mid, to);
+            if (compare(a[mid - 1], a[mid]) <= 0)
+                return;                            // already in order
+            System.arraycopy(a, from, tmp, from, to - from);
+            int i = from, j = mid;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < mid && compare(tmp[i], tmp[j]) <= 0))
+                    a[k] = tmp[i++];
+                else
+                    a[k] = tmp[j++];
+            }
+        }
+
+        // compares the names (unsigned bytes) of two cen entries
+        private int compare(int pos1, int pos2) {
+            int off1 = pos1 + CENHDR, len1 = CENNAM(cen, pos1);
+            int off2 = pos2 + CENHDR, len2 = CENNAM(cen, pos2);
+            int n = Math.min(len1, len2);
+            for (int k = 0; k < n; k++) {
+                int c = (cen[off1 + k] & 0xff) - (cen[off2 + k] & 0xff);
+                if (c != 0)
+                    return c;
+            }
+            return len1 - len2;
+        }
+
+        // Returns the index of the first sorted entry whose name is not
+        // before the name
+        private int lowerBound(byte[] name) {
+            int lo = 0, hi = total;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int pos = sorted[mid];
+                int off = pos + CENHDR, nlen = CENNAM(cen, pos);
+                int n = Math.min(nlen, name.length);
+                int c = 0;
+                for (int k = 0; k < n && c == 0; k++)
+                    c = (cen[off + k] & 0xff) - (name[k] & 0xff);
+                if (c == 0)
+                    c = nlen - name.length;
+                if (c < 0)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        private void addDir(int pos, int len, int h) {
+            if (findDir(cen, pos + CENHDR, len, h) != -1)
+                return;
+            if (dirTotal == dirPos.length) {
+                dirPos = Arrays.copyOf(dirPos, dirTotal * 2);
+                dirLen = Arrays.copyOf(dirLen, dirTotal * 2);
+            }
+            dirPos[dirTotal] = pos;
+            dirLen[dirTotal] = len;
+            dirTotal++;
+            if (dirTotal * 2 > dirTable.length) {    // rehash
+                dirTable = new int[dirTable.length * 2];
+                for (int d = 0; d < dirTotal; d++)
+                    insertDir(d);
+            } else {
+                insertDir(dirTotal - 1);
+            }
+        }
+
+        private void insertDir(int d) {
+            int mask = dirTable.length - 1;
+            int i = spread(hash(cen, dirPos[d] + CENHDR, dirLen[d])) & mask;
+            while (dirTable[i] != 0)
+                i = (i + 1) & mask;
+            dirTable[i] = d + 1;
+        }
+
+        // Returns the cen position of the entry or -1
+        private int findEntry(byte[] name) {
+            int mask = table.length - 1;
+            for (int i = spread(Arrays.hashCode(name)) & mask; table[i] != 0; i = (i + 1) & mask) {
+                int pos = entries[table[i] - 1];
+                if (CENNAM(cen, pos) == name.length &&
+                    regionEquals(cen, pos + CENHDR, name, 0, name.length))
+                    return pos;
+            }
+            return -1;
+        }
+
+        // Returns the dir number or -1
+        private int findDir(byte[] name, int off, int len, int h) {
+            int mask = dirTable.length - 1;
+            for (int i = spread(h) & mask; dirTable[i] != 0; i = (i + 1) & mask) {
+                int d = dirTable[i] - 1;
+                if (dirLen[d] == len &&
+                    regionEquals(cen, dirPos[d] + CENHDR, name, off, len))
+                    return d;
+            }
+            return -1;
+        }
+
+        private IndexNode lookup(byte[] name) {
+            int pos = findEntry(name);
+            if (pos != -1)
+                return new IndexNode(name, pos);
+            if (findDir(name, 0, name.length, Arrays.hashCode(name)) != -1)
+                return new IndexNode(name, -1);    // pseudo directory
+            return null;
+        }
+
+        // Same as the "inodes" lookup of getInode
+        IndexNode getInode(byte[] path) {
+            if (path.length == 0)
+                return new IndexNode(ROOTPATH, -1);
+            IndexNode inode = lookup(path);
+            if (inode == null && path[path.length - 1] != '/') {
+                path = Arrays.copyOf(path, path.length + 1);
+                path[path.length - 1] = '/';
+                inode = lookup(path);
+            }
+            return inode;
+        }
+
+        // Returns the first child of the directory (linked by "sibling"),
+        // the entries of the directory are the sorted entries that start
+        // with its name (binary search), no node is kept.
+        IndexNode childOf(IndexNode dir) {
+            if (!dir.isDir())
+                return null;
+            byte[] name = dir.name;
+            int len = name.length;
+            HashSet<IndexNode> children = new HashSet<>();
+            IndexNode first = null;
+            for (int n = lowerBound(name); n < total; n++) {
+                int pos = sorted[n];
+                int off = pos + CENHDR;
+                int nlen = CENNAM(cen, pos);
+                if (nlen < len || !regionEquals(cen, off, name, 0, len))
+                    break;                         // after the directory
+                if (nlen == len)
+                    continue;                      // the directory entry
+                int clen = len;
+                while (clen < nlen && cen[off + clen] != '/')
+                    clen++;
+                if (clen < nlen)
+                    clen++;                        // a dir with its '/'
+                IndexNode child = new IndexNode(
+                    Arrays.copyOfRange(cen, off, off + clen), -1);
+                if (children.add(child)) {
+                    child.sibling = first;
+                    first = child;
+                }
+            }
+            return first;
+        }
+
+        private static int hash(byte[] b, int off, int len) {
+            int h = 1;
+            for (int i = 0; i < len; i++)
+                h = 31 * h + b[off + i];
+            return h;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+
+        private static int tableSize(int n) {
+            int size = 16;
+            while (size < n * 2)
+                size <<= 1;
+            return size;
+        }
+
+        private static boolean regionEquals(byte[] a, int aoff,
+                                            byte[] b, int boff, int len)
+        {
+            for (int i = 0; i < len; i++) {
+                if (a[aoff + i] != b[boff + i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
     private static class ExChannelCloser  {
         Path path;
         SeekableByteChannel ch;
@@ -138,9 +138,7 @@ public class ZipFileSystemProvider extends FileSystemProvider {
     public FileSystem newFileSystem(Path path, Map<String, ?> env)
         throws IOException
     {
-        if (path.getFileSystem() != FileSystems.getDefault()) {
-            throw new UnsupportedOperationException();
-        }
+        // a zip file of another file system (ie http) is opened read only
         ensureFile(path);
         try {
             return new ZipFileSystem(this, path, env);
@@ -0,0 +1,392 @@
+package net.bytle.niofs.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * The inflate checkpoints of a DEFLATED entry, to read it from any position
+ * without inflating all the data before.
+ *
+ * A checkpoint is the start of a deflate block: its position in the
+ * uncompressed data, its position in the compressed data (byte and bit) and
+ * the last 32K of uncompressed data before it (the dictionary of the back
+ * references). An Inflater restarts there with this dictionary. It cannot
+ * start in the middle of a byte: the bits of the previous block are replaced
+ * by empty blocks (see realign) so that the byte boundaries of the data, and
+ * therefore of the stored blocks, do not move.
+ *
+ * The Inflater of the JDK does not report the block boundaries, the index is
+ * therefore built with a (slower) pure java decoder that reads the whole
+ * entry once. See puff.c in the zlib distribution.
+ */
+final class ZipInflateIndex {
+
+    static final int WINDOW_SIZE = 32768;
+
+    static final class Checkpoint {
+        final long out;       // position in the uncompressed data
+        final long in;        // byte position in the compressed data
+        final int bits;       // bits of the "in" byte already read (0-7)
+        final byte[] window;  // the uncompressed data before (32K max)
+
+        Checkpoint(long out, long in, int bits, byte[] window) {
+            this.out = out;
+            this.in = in;
+            this.bits = bits;
+            this.window = window;
+        }
+    }
+
+    private final Checkpoint[] checkpoints;    // ordered by "out"
+
+    private ZipInflateIndex(List<Checkpoint> checkpoints) {
+        this.checkpoints = checkpoints.toArray(new Checkpoint[0]);
+    }
+
+    // Returns the last checkpoint before the position
+    Checkpoint find(long pos) {
+        int low = 0;
+        int high = checkpoints.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (checkpoints[mid].out <= pos)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return checkpoints[low];
+    }
+
+    int size() {
+        return checkpoints.length;
+    }
+
+    // Decodes the deflate data of "is" and records a checkpoint every
+    // "span" bytes of uncompressed data (at the next block start).
+    static ZipInflateIndex build(InputStream is, long span) throws IOException {
+        return new Builder(is, span).build();
+    }
+
+    // Returns the bytes that replace the first byte "b" of the compressed
+    // data of a checkpoint whose block starts at the bit "bits" (1-7) of b:
+    // non final empty blocks whose length in bits is a multiple of 8 plus
+    // "bits", followed by the bits of the block. The bytes after b keep
+    // their byte boundaries.
+    //
+    // An empty fixed block has 10 bits. The empty dynamic block has 93 bits:
+    // a code lengths code of 19 codes with 2 codes of 1 bit (the code
+    // lengths 1 and 18), a literal/length code with only the end of block
+    // code (1 bit), a distance code of one code and the end of block.
+    static byte[] realign(int bits, int b) {
+        BitWriter w = new BitWriter();
+        int fixed = bits;
+        if ((bits & 1) == 1) {
+            w.write(0, 1);       // not final
+            w.write(2, 2);       // dynamic
+            w.write(0, 5);       // 257 literal/length codes
+            w.write(0, 5);       // 1 distance code
+            w.write(15, 4);      // 19 code length codes
+            for (int i = 0; i < 19; i++) {
+                int symbol = Builder.ORDER[i];
+                w.write(symbol == 1 || symbol == 18 ? 1 : 0, 3);
+            }
+            // code 0 is the code length 1, code 1 the code length 18
+            w.write(1, 1);       // 18: 138 zeros
+            w.write(127, 7);
+            w.write(1, 1);       // 18: 118 zeros
+            w.write(107, 7);
+            w.write(0, 1);       // 256 (end of block): 1
+            w.write(0, 1);       // distance 0: 1
+            w.write(0, 1);       // end of block
+            fixed = (bits - 5) & 7;
+        }
+        for (int i = 0; i < fixed / 2; i++) {
+            w.write(0, 1);       // not final
+            w.write(1, 2);       // fixed
+            w.write(0, 7);       // end of block
+        }
+        w.write(b >>> bits, 8 - bits);
+        return w.toByteArray();
+    }
+
+    // Writes bits in the deflate order (from the least significant bit).
+    private static final class BitWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int buf = 0;
+        private int cnt = 0;
+
+        void write(int value, int n) {
+            buf |= value << cnt;
+            cnt += n;
+            while (cnt >= 8) {
+                bytes.write(buf & 0xff);
+                buf >>>= 8;
+                cnt -= 8;
+            }
+        }
+
+        byte[] toByteArray() {
+            if (cnt != 0)
+                throw new IllegalStateException("not on a byte boundary");
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class Builder {
+
+        private static final short[] LBASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+        private static final short[] LEXT = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+        private static final short[] DBASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+            8193, 12289, 16385, 24577};
+        private static final short[] DEXT = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+        private static final short[] ORDER = {
+            16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+        private static Huffman fixedLencode;
+        private static Huffman fixedDistcode;
+
+        private final InputStream is;
+        private final long span;
+        private final List<Checkpoint> checkpoints = new ArrayList<>();
+        private final byte[] window = new byte[WINDOW_SIZE];   // circular
+        private long out = 0;      // uncompressed bytes
+        private long in = 0;       // compressed bytes loaded in bitbuf
+        private int bitbuf = 0;
+        private int bitcnt = 0;
+
+        Builder(InputStream is, long span) {
+            this.is = is;
+            this.span = span;
+        }
+
+        ZipInflateIndex build() throws IOException {
+            checkpoints.add(new Checkpoint(0, 0, 0, new byte[0]));
+            long last = 0;
+            boolean isFinal;
+            do {
+                if (out - last >= span) {
+                    long bitpos = in * 8 - bitcnt;
+                    checkpoints.add(new Checkpoint(out, bitpos >>> 3,
+                                                   (int)(bitpos & 7), window()));
+                    last = out;
+                }
+                isFinal = bits(1) == 1;
+                int type = bits(2);
+                switch (type) {
+                case 0:
+                    stored();
+                    break;
+                case 1:
+                    codes(fixedLencode(), fixedDistcode());
+                    break;
+                case 2:
+                    dynamic();
+                    break;
+                default:
+                    throw new ZipException("invalid deflate block type");
+                }
+            } while (!isFinal);
+            return new ZipInflateIndex(checkpoints);
+        }
+
+        private byte[] window() {
+            int len = (int)Math.min(out, WINDOW_SIZE);
+            byte[] w = new byte[len];
+            int start = (int)((out - len) % WINDOW_SIZE);
+            int first = Math.min(len, WINDOW_SIZE - start);
+            System.arraycopy(window, start, w, 0, first);
+            System.arraycopy(window, 0, w, first, len - first);
+            return w;
+        }
+
+        private int bits(int need) throws IOException {
+            int val = bitbuf;
+            while (bitcnt < need) {
+                int b = is.read();
+                if (b == -1)
+                    throw new ZipException("unexpected end of deflate data");
+                in++;
+                val |= b << bitcnt;
+                bitcnt += 8;
+            }
+            bitbuf = val >>> need;
+            bitcnt -= need;
+            return val & ((1 << need) - 1);
+        }
+
+        private void put(int b) {
+            window[(int)(out++ & (WINDOW_SIZE - 1))] = (byte)b;
+        }
+
+        private void stored() throws IOException {
+            bitbuf = 0;            // to the byte boundary
+            bitcnt = 0;
+            int len = bits(16);
+            if ((bits(16) ^ 0xffff) != len)
+                throw new ZipException("invalid stored block length");
+            while (len-- > 0) {
+                int b = is.read();
+                if (b == -1)
+                    throw new ZipException("unexpected end of deflate data");
+                in++;
+                put(b);
+            }
+        }
+
+        private void codes(Huffman lencode, Huffman distcode) throws IOException {
+            int symbol;
+            while ((symbol = decode(lencode)) != 256) {
+                if (symbol < 256) {
+                    put(symbol);
+                    continue;
+                }
+                symbol -= 257;
+                if (symbol >= 29)
+                    throw new ZipException("invalid deflate length code");
+                int len = LBASE[symbol] + bits(LEXT[symbol]);
+                symbol = decode(distcode);
+                if (symbol >= 30)
+                    throw new ZipException("invalid deflate distance code");
+                int dist = DBASE[symbol] + bits(DEXT[symbol]);
+                if (dist > out)
+                    throw new ZipException("invalid deflate distance");
+                while (len-- > 0)
+                    put(window[(int)((out - dist) & (WINDOW_SIZE - 1))]);
+            }
+        }
+
+        private void dynamic() throws IOException {
+            int nlen = bits(5) + 257;
+            int ndist = bits(5) + 1;
+            int ncode = bits(4) + 4;
+            if (nlen > 286 || ndist > 30)
+                throw new ZipException("invalid deflate code lengths");
+            short[] lengths = new short[320];
+            for (int index = 0; index < ncode; index++)
+                lengths[ORDER[index]] = (short)bits(3);
+            Huffman lencode = new Huffman(lengths, 0, 19);
+            if (lencode.left != 0)
+                throw new ZipException("invalid deflate code lengths code");
+            int index = 0;
+            while (index < nlen + ndist) {
+                int symbol = decode(lencode);
+                if (symbol < 16) {
+                    lengths[index++] = (short)symbol;
+                    continue;
+                }
+                int len = 0;
+                if (symbol == 16) {
+                    if (index == 0)
+                        throw new ZipException("invalid deflate repeat");
+                    len = lengths[index - 1];
+                    symbol = 3 + bits(2);
+                } else if (symbol == 17) {
+                    symbol = 3 + bits(3);
+                } else {
+                    symbol = 11 + bits(7);
+                }
+                if (index + symbol > nlen + ndist)
+                    throw new ZipException("invalid deflate repeat");
+                while (symbol-- > 0)
+                    lengths[index++] = (short)len;
+            }
+            if (lengths[256] == 0)
+                throw new ZipException("invalid deflate code lengths (no end of block)");
+            Huffman litcode = new Huffman(lengths, 0, nlen);
+            if (!litcode.isValid())
+                throw new ZipException("invalid deflate literal/length code");
+            Huffman distcode = new Huffman(lengths, nlen, ndist);
+            if (!distcode.isValid())
+                throw new ZipException("invalid deflate distance code");
+            codes(litcode, distcode);
+        }
+
+        private int decode(Huffman h) throws IOException {
+            int code = 0;      // bits being decoded
+            int first = 0;     // first code of length len
+            int index = 0;     // index of first code of length len in symbol table
+            for (int len = 1; len <= 15; len++) {
+                code |= bits(1);
+                int count = h.count[len];
+                if (code - count < first)
+                    return h.symbol[index + (code - first)];
+                index += count;
+                first += count;
+                first <<= 1;
+                code <<= 1;
+            }
+            throw new ZipException("invalid deflate code");
+        }
+
+        private static synchronized Huffman fixedLencode() {
+            if (fixedLencode == null) {
+                short[] lengths = new short[288];
+                Arrays.fill(lengths, 0, 144, (short)8);
+                Arrays.fill(lengths, 144, 256, (short)9);
+                Arrays.fill(lengths, 256, 280, (short)7);
+                Arrays.fill(lengths, 280, 288, (short)8);
+                fixedLencode = new Huffman(lengths, 0, 288);
+            }
+            return fixedLencode;
+        }
+
+        private static synchronized Huffman fixedDistcode() {
+            if (fixedDistcode == null) {
+                short[] lengths = new short[30];
+                Arrays.fill(lengths, (short)5);
+                fixedDistcode = new Huffman(lengths, 0, 30);
+            }
+            return fixedDistcode;
+        }
+    }
+
+    // Canonical huffman code: number of codes by length and symbols
+    // ordered by code. "left" is the number of unused codes: negative if the
+    // code is over-subscribed, positive if it is incomplete.
+    private static final class Huffman {
+        final short[] count = new short[16];
+        final short[] symbol;
+        final int left;
+        final int codes;
+
+        Huffman(short[] lengths, int off, int n) {
+            symbol = new short[n];
+            for (int i = 0; i < n; i++)
+                count[lengths[off + i]]++;
+            int left = 1;
+            for (int len = 1; len <= 15 && left >= 0; len++) {
+                left <<= 1;
+                left -= count[len];
+            }
+            this.left = count[0] == n ? 0 : left;
+            this.codes = n - count[0];
+            short[] offs = new short[16];
+            for (int len = 1; len < 15; len++)
+                offs[len + 1] = (short)(offs[len] + count[len]);
+            for (int i = 0; i < n; i++) {
+                if (lengths[off + i] != 0)
+                    symbol[offs[lengths[off + i]]++] = (short)i;
+            }
+            count[0] = 0;     // the unused symbols are not codes
+        }
+
+        // A code is valid if it is complete or if it has a single code of
+        // length 1 (a distance code with only one distance).
+        boolean isValid() {
+            return left == 0 || (left > 0 && codes == 1 && count[1] == 1);
+        }
+    }
+}
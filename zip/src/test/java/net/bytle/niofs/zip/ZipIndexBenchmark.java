@@ -0,0 +1,91 @@
+package net.bytle.niofs.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static net.bytle.niofs.zip.Demo.getZipFSProvider;
+
+/**
+ * Open time and heap of the default index vs the compact index (`compactIndex` env option)
+ * <p>
+ * Usage: `ZipIndexBenchmark [number of entries]` (default 2 000 000)
+ * <p>
+ * The archive is generated in the build directory: empty stored entries in 2 levels of directories.
+ * Run with a heap big enough for the default index (ie -Xmx2g).
+ */
+public class ZipIndexBenchmark {
+
+  private static final int LOOKUPS = 100_000;
+
+  public static void main(String[] args) throws Exception {
+    int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    Path archive = createArchive(Paths.get("./build/index-benchmark-" + entries + ".zip"), entries);
+    System.out.printf("%s: %d entries, %d MB%n", archive, entries, Files.size(archive) >> 20);
+    for (int round = 0; round < 2; round++) {
+      measure(archive, entries, false);
+      measure(archive, entries, true);
+    }
+  }
+
+  private static void measure(Path archive, int entries, boolean compactIndex) throws IOException {
+    Map<String, Object> env = new HashMap<>();
+    env.put("compactIndex", compactIndex);
+    long heapBefore = usedHeap();
+    long start = System.nanoTime();
+    try (FileSystem fs = getZipFSProvider().newFileSystem(archive, env)) {
+      long openMs = (System.nanoTime() - start) / 1_000_000;
+      long heap = usedHeap() - heapBefore;
+      start = System.nanoTime();
+      int found = 0;
+      for (int i = 0; i < LOOKUPS; i++) {
+        if (Files.exists(fs.getPath(name((int) ((i * 7919L) % entries))))) {
+          found++;
+        }
+      }
+      long lookupNs = (System.nanoTime() - start) / LOOKUPS;
+      System.out.printf("%-8s index: open %6d ms, heap %6d MB, lookup %5d ns (%d found)%n",
+        compactIndex ? "compact" : "default", openMs, heap >> 20, lookupNs, found);
+    }
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    // ZipFileSystem has a finalizer, a closed file system is collected after its finalization
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      System.runFinalization();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static String name(int i) {
+    return "net/bytle/p" + (i / 10_000) + "/s" + (i / 100 % 100) + "/Entry" + i + ".class";
+  }
+
+  private static Path createArchive(Path archive, int entries) throws IOException {
+    if (Files.exists(archive)) {
+      return archive;
+    }
+    Files.createDirectories(archive.getParent());
+    try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(archive), 1 << 16);
+         ZipOutputStream zos = new ZipOutputStream(os)) {
+      for (int i = 0; i < entries; i++) {
+        ZipEntry entry = new ZipEntry(name(i));
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(0);
+        entry.setCompressedSize(0);
+        entry.setCrc(0);
+        zos.putNextEntry(entry);
+        zos.closeEntry();
+      }
+    }
+    return archive;
+  }
+
+}
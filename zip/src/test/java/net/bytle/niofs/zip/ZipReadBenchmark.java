@@ -0,0 +1,118 @@
+package net.bytle.niofs.zip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static net.bytle.niofs.zip.Demo.getZipFSProvider;
+
+/**
+ * Read all entries of an archive with 1 to N threads (one file system shared by the threads)
+ * <p>
+ * Usage: `ZipReadBenchmark [archive] [max threads]`
+ * <p>
+ * Without archive, a jar of 2000 deflated entries of 64KB is generated in the build directory.
+ */
+public class ZipReadBenchmark {
+
+  private static final int ENTRIES = 2000;
+  private static final int ENTRY_SIZE = 64 * 1024;
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) throws Exception {
+    Path archive = args.length > 0 ? Paths.get(args[0]) : createArchive(Paths.get("./build/read-benchmark.jar"));
+    int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+    try (FileSystem fs = getZipFSProvider().newFileSystem(archive, Collections.emptyMap())) {
+      List<Path> entries = new ArrayList<>();
+      try (Stream<Path> paths = Files.walk(fs.getPath("/"))) {
+        paths.filter(Files::isRegularFile).forEach(entries::add);
+      }
+      System.out.printf("%s: %d entries%n", archive, entries.size());
+      double base = 0;
+      for (int threads = 1; threads <= maxThreads; threads *= 2) {
+        readAll(entries, threads); // warmup
+        long best = Long.MAX_VALUE;
+        long bytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+          long start = System.nanoTime();
+          bytes = readAll(entries, threads);
+          best = Math.min(best, System.nanoTime() - start);
+        }
+        double mbs = bytes / 1e6 / (best / 1e9);
+        if (threads == 1) {
+          base = mbs;
+        }
+        System.out.printf("%3d threads: %8.1f MB/s (x%.2f)%n", threads, mbs, mbs / base);
+      }
+    }
+  }
+
+  /**
+   * @return the number of uncompressed bytes read
+   */
+  private static long readAll(List<Path> entries, int threads) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    AtomicLong bytes = new AtomicLong();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int first = t;
+        futures.add(executor.submit(() -> {
+          byte[] buf = new byte[8192];
+          for (int i = first; i < entries.size(); i += threads) {
+            try (InputStream is = Files.newInputStream(entries.get(i))) {
+              int n;
+              while ((n = is.read(buf)) != -1) {
+                bytes.addAndGet(n);
+              }
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    return bytes.get();
+  }
+
+  /**
+   * The entries are half random, half repeated bytes (a deflate ratio of about 2 as in a jar)
+   */
+  private static Path createArchive(Path archive) throws IOException {
+    if (Files.exists(archive)) {
+      return archive;
+    }
+    Files.createDirectories(archive.getParent());
+    Random random = new Random(1);
+    byte[] bytes = new byte[ENTRY_SIZE];
+    try (OutputStream os = Files.newOutputStream(archive);
+         ZipOutputStream zos = new ZipOutputStream(os)) {
+      for (int i = 0; i < ENTRIES; i++) {
+        random.nextBytes(bytes);
+        for (int j = ENTRY_SIZE / 2; j < ENTRY_SIZE; j++) {
+          bytes[j] = (byte) (j % 32);
+        }
+        zos.putNextEntry(new ZipEntry("net/bytle/benchmark/" + (i % 20) + "/Entry" + i + ".class"));
+        zos.write(bytes);
+        zos.closeEntry();
+      }
+    }
+    return archive;
+  }
+
+}
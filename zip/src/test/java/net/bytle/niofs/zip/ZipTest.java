@@ -1,16 +1,47 @@
 package net.bytle.niofs.zip;
 
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import static net.bytle.niofs.zip.Demo.getZipFSProvider;
 
@@ -48,4 +79,487 @@ public class ZipTest {
     Path target = Paths.get("./build/IpToCountry.csv");
     Files.copy(zipPath,target,StandardCopyOption.REPLACE_EXISTING);
   }
+
+  /**
+   * In append mode, the data of the existing entries is not moved
+   */
+  @Test
+  public void appendModeTest() throws IOException {
+    Path zipFile = createZip("append.zip");
+    byte[] before = Files.readAllBytes(zipFile);
+
+    Map<String, Object> env = new HashMap<>();
+    env.put("appendMode", true);
+    try (FileSystem fs = getZipFSProvider().newFileSystem(zipFile, env)) {
+      Files.write(fs.getPath("c.txt"), "c".getBytes());
+    }
+    byte[] after = Files.readAllBytes(zipFile);
+    // the old zip file (entries, central directory and end) is not modified
+    assertArrayEquals(before, Arrays.copyOf(after, before.length));
+    try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+      assertEquals(3, zip.size());
+      assertEquals(1, zip.getEntry("c.txt").getSize());
+      assertEquals(1000, zip.getInputStream(zip.getEntry("b.txt")).readAllBytes().length);
+    }
+  }
+
+  /**
+   * In append mode, the zip is rewritten when the dead space exceeds the threshold
+   */
+  @Test
+  public void appendModeCompactionTest() throws IOException {
+    Path zipFile = createZip("compaction.zip");
+    long before = Files.size(zipFile);
+
+    Map<String, Object> env = new HashMap<>();
+    env.put("appendMode", true);
+    env.put("compactionThreshold", "0.9");
+    try (FileSystem fs = getZipFSProvider().newFileSystem(zipFile, env)) {
+      Files.delete(fs.getPath("a.txt"));
+    }
+    // half of the data is dead space: a.txt is still in the file
+    long afterDelete = Files.size(zipFile);
+    assertTrue(afterDelete > before - 1000);
+
+    env.put("compactionThreshold", "0.1");
+    try (FileSystem fs = getZipFSProvider().newFileSystem(zipFile, env)) {
+      Files.write(fs.getPath("c.txt"), "c".getBytes());
+    }
+    // a.txt is gone, c.txt is a 1 byte entry
+    assertTrue(Files.size(zipFile) < before - 900);
+    try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+      assertEquals(2, zip.size());
+      assertNull(zip.getEntry("a.txt"));
+      assertEquals(1000, zip.getInputStream(zip.getEntry("b.txt")).readAllBytes().length);
+    }
+  }
+
+  /**
+   * The parallel deflate produces the same archive whatever the number of threads
+   * (the 4 threads run waits for the pool after 3 entries)
+   */
+  @Test
+  public void parallelDeflateTest() throws IOException {
+    byte[] one = createParallelZip("parallel-1.zip", "1");
+    byte[] four = createParallelZip("parallel-4.zip", "4");
+    assertArrayEquals(one, four);
+    try (ZipFile zip = new ZipFile("./build/parallel-4.zip")) {
+      assertEquals(50, zip.size());
+      assertEquals(10000, zip.getInputStream(zip.getEntry("dir/entry7.txt")).readAllBytes().length);
+    }
+  }
+
+  private static byte[] createParallelZip(String name, String parallelism) throws IOException {
+    Path zipFile = Paths.get("./build", name);
+    Files.createDirectories(zipFile.getParent());
+    Files.deleteIfExists(zipFile);
+    Map<String, String> env = new HashMap<>();
+    env.put("create", "true");
+    env.put("parallelism", parallelism);
+    env.put("maxDeflatingBytes", "30000");
+    FileTime time = FileTime.fromMillis(1_600_000_000_000L);
+    Random random = new Random(1);
+    try (FileSystem fs = getZipFSProvider().newFileSystem(URI.create("zip:" + zipFile.toUri()), env)) {
+      Files.createDirectory(fs.getPath("dir"));
+      Files.getFileAttributeView(fs.getPath("dir"), BasicFileAttributeView.class).setTimes(time, time, time);
+      for (int i = 0; i < 49; i++) {
+        byte[] bytes = new byte[10000];
+        // half random, half compressible
+        random.nextBytes(bytes);
+        Arrays.fill(bytes, 5000, bytes.length, (byte) i);
+        Path entry = fs.getPath("dir", "entry" + i + ".txt");
+        Files.write(entry, bytes);
+        Files.getFileAttributeView(entry, BasicFileAttributeView.class).setTimes(time, time, time);
+      }
+    }
+    return Files.readAllBytes(zipFile);
+  }
+
+  /**
+   * The deflate of a deleted entry is not awaited by the sync, the close waits for it
+   */
+  @Test
+  public void parallelDeflateDeletedEntryTest() throws IOException {
+    Path zipFile = Paths.get("./build/parallel-deleted.zip");
+    Files.createDirectories(zipFile.getParent());
+    Files.deleteIfExists(zipFile);
+    Map<String, String> env = new HashMap<>();
+    env.put("create", "true");
+    env.put("parallelism", "2");
+    byte[] bytes = new byte[1 << 20];
+    new Random(1).nextBytes(bytes);
+    try (FileSystem fs = getZipFSProvider().newFileSystem(URI.create("zip:" + zipFile.toUri()), env)) {
+      for (int i = 0; i < 8; i++) {
+        Files.write(fs.getPath("deleted" + i + ".bin"), bytes);
+        Files.delete(fs.getPath("deleted" + i + ".bin"));
+      }
+      Files.write(fs.getPath("kept.bin"), bytes);
+    }
+    try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+      assertEquals(1, zip.size());
+      assertArrayEquals(bytes, zip.getInputStream(zip.getEntry("kept.bin")).readAllBytes());
+    }
+  }
+
+  @Test
+  public void parallelDeflateWriteAfterCloseTest() throws IOException {
+    Path zipFile = Paths.get("./build/parallel-closed.zip");
+    Files.createDirectories(zipFile.getParent());
+    Files.deleteIfExists(zipFile);
+    Map<String, String> env = new HashMap<>();
+    env.put("create", "true");
+    env.put("parallelism", "2");
+    try (FileSystem fs = getZipFSProvider().newFileSystem(URI.create("zip:" + zipFile.toUri()), env)) {
+      OutputStream out = Files.newOutputStream(fs.getPath("a.txt"));
+      out.write(1);
+      out.close();
+      try {
+        out.write(2);
+        fail("write after close");
+      } catch (IOException e) {
+        assertEquals("Stream closed", e.getMessage());
+      }
+    }
+    try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+      assertEquals(1, zip.getInputStream(zip.getEntry("a.txt")).readAllBytes().length);
+    }
+  }
+
+  /**
+   * The compact index finds the same entries and directories as the default index
+   */
+  @Test
+  public void compactIndexTest() throws IOException {
+    Path zipFile = Paths.get("./build/compact.zip");
+    Files.createDirectories(zipFile.getParent());
+    try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+      // no entry for the directories a/ and a/b/, an entry for the directory c/
+      for (String name : new String[]{"a/b/one.txt", "a/b/two.txt", "a/three.txt", "c/", "c/four.txt", "five.txt", "a/b-c/six.txt", "a/b.txt", "a0.txt", "a/b/d/seven.txt"}) {
+        zos.putNextEntry(new ZipEntry(name));
+        if (!name.endsWith("/")) {
+          zos.write(name.getBytes());
+        }
+        zos.closeEntry();
+      }
+    }
+    Map<String, Object> env = new HashMap<>();
+    env.put("compactIndex", true);
+    try (FileSystem compact = getZipFSProvider().newFileSystem(zipFile, env);
+         FileSystem full = getZipFSProvider().newFileSystem(zipFile, Collections.emptyMap())) {
+      assertTrue(compact.isReadOnly());
+      for (String name : new String[]{"/", "/a", "/a/b", "/a/b/", "/c", "/a/three.txt", "/five.txt", "/a/b/one.txt", "/a/c", "/b", "/a/b/one", "/a/b-c", "/a/b/d", "/c/"}) {
+        Path compactPath = compact.getPath(name);
+        Path fullPath = full.getPath(name);
+        assertEquals(name, Files.exists(fullPath), Files.exists(compactPath));
+        assertEquals(name, Files.isDirectory(fullPath), Files.isDirectory(compactPath));
+        if (Files.isDirectory(fullPath)) {
+          assertEquals(name, list(fullPath), list(compactPath));
+        } else if (Files.exists(fullPath)) {
+          assertArrayEquals(name, Files.readAllBytes(fullPath), Files.readAllBytes(compactPath));
+        }
+      }
+      assertEquals("a/b/two.txt", new String(Files.readAllBytes(compact.getPath("a/b/two.txt"))));
+    }
+  }
+
+  /**
+   * The byte channel of an entry can be positioned anywhere (inflate checkpoints for the deflated entries)
+   */
+  @Test
+  public void seekableEntryTest() throws IOException {
+    // a log: compressible, with some random bytes so that the deflate blocks are dynamic and not byte aligned
+    StringBuilder log = new StringBuilder();
+    Random random = new Random(1);
+    for (int i = 0; log.length() < 3_000_000; i++) {
+      log.append(i).append(",2020-01-01T00:00:").append(random.nextInt(60)).append(",GET /page/").append(random.nextInt(100000)).append('\n');
+    }
+    byte[] bytes = log.toString().getBytes();
+    Path zipFile = Paths.get("./build/seekable.zip");
+    Files.createDirectories(zipFile.getParent());
+    try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+      zos.putNextEntry(new ZipEntry("log.csv"));
+      zos.write(bytes);
+      zos.closeEntry();
+      ZipEntry stored = new ZipEntry("stored.csv");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(bytes.length);
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      stored.setCrc(crc.getValue());
+      zos.putNextEntry(stored);
+      zos.write(bytes);
+      zos.closeEntry();
+    }
+    Map<String, String> env = new HashMap<>();
+    env.put("inflateCheckpointSpan", "65536");
+    try (FileSystem fs = getZipFSProvider().newFileSystem(zipFile, env)) {
+      for (String name : new String[]{"log.csv", "stored.csv"}) {
+        try (SeekableByteChannel channel = Files.newByteChannel(fs.getPath(name))) {
+          assertEquals(bytes.length, channel.size());
+          for (int i = 0; i < 50; i++) {
+            int position = random.nextInt(bytes.length - 1000);
+            channel.position(position);
+            ByteBuffer buffer = ByteBuffer.allocate(1000);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+              // read
+            }
+            assertArrayEquals(name + " at " + position, Arrays.copyOfRange(bytes, position, position + 1000), buffer.array());
+            assertEquals(position + 1000, channel.position());
+          }
+          channel.position(bytes.length);
+          assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        }
+      }
+    }
+  }
+
+  /**
+   * The data of a stored entry is transferred from the zip file channel
+   */
+  /**
+   * Text mixed with random chunks: the deflater writes stored blocks between the compressed blocks
+   * and the compressed blocks do not end on a byte boundary
+   */
+  @Test
+  public void seekableMixedEntryTest() throws IOException {
+    Random random = new Random(1);
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    for (int i = 0; data.size() < 2_000_000; i++) {
+      if (i % 3 == 0) {
+        byte[] chunk = new byte[40_000];
+        random.nextBytes(chunk);
+        data.write(chunk);
+      } else {
+        for (int j = 0; j < 500; j++) {
+          data.write((j + ",2020-01-01T00:00:" + random.nextInt(60) + ",GET /page/" + random.nextInt(1000) + "\n").getBytes());
+        }
+      }
+    }
+    byte[] bytes = data.toByteArray();
+    Path zipFile = Paths.get("./build/seekable-mixed.zip");
+    Files.createDirectories(zipFile.getParent());
+    try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+      zos.putNextEntry(new ZipEntry("mixed.bin"));
+      zos.write(bytes);
+      zos.closeEntry();
+    }
+    Map<String, String> env = new HashMap<>();
+    env.put("inflateCheckpointSpan", "65536");
+    try (FileSystem fs = getZipFSProvider().newFileSystem(zipFile, env);
+         SeekableByteChannel channel = Files.newByteChannel(fs.getPath("mixed.bin"))) {
+      for (int i = 0; i < 200; i++) {
+        int position = random.nextInt(bytes.length - 1000);
+        channel.position(position);
+        ByteBuffer buffer = ByteBuffer.allocate(1000);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+          // read
+        }
+        assertArrayEquals("at " + position, Arrays.copyOfRange(bytes, position, position + 1000), buffer.array());
+      }
+    }
+  }
+
+  /**
+   * A corrupt deflate block (over-subscribed code lengths code) fails with a ZipException
+   */
+  @Test(expected = ZipException.class)
+  public void inflateIndexCorruptTest() throws IOException {
+    // final dynamic block, 257 + 1 + 4 codes, the 4 code length codes have a length of 1
+    long bits = 1 | 2 << 1;
+    for (int i = 0; i < 4; i++) {
+      bits |= 1L << (17 + 3 * i);
+    }
+    byte[] data = new byte[8];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (bits >>> (8 * i));
+    }
+    ZipInflateIndex.build(new ByteArrayInputStream(data), 65536);
+  }
+
+  @Test
+  public void storedEntryTransferTest() throws IOException {
+    byte[] bytes = new byte[100_000];
+    new Random(1).nextBytes(bytes);
+    Path zipFile = Paths.get("./build/stored.zip");
+    Files.createDirectories(zipFile.getParent());
+    try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+      zos.putNextEntry(new ZipEntry("first.txt"));
+      zos.write("first".getBytes());
+      zos.closeEntry();
+      ZipEntry stored = new ZipEntry("asset.bin");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(bytes.length);
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      stored.setCrc(crc.getValue());
+      zos.putNextEntry(stored);
+      zos.write(bytes);
+      zos.closeEntry();
+    }
+    Path target = Paths.get("./build/asset.bin");
+    try (FileSystem fs = getZipFSProvider().newFileSystem(zipFile, Collections.emptyMap())) {
+      Path asset = fs.getPath("asset.bin");
+      try (FileChannel channel = FileChannel.open(asset, StandardOpenOption.READ);
+           FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        assertEquals(bytes.length, channel.size());
+        long position = 0;
+        while (position < channel.size()) {
+          position += channel.transferTo(position, channel.size() - position, out);
+        }
+        assertEquals(0, channel.transferTo(channel.size(), 10, out));
+      }
+      assertArrayEquals(bytes, Files.readAllBytes(target));
+
+      try (OutputStream out = new FileOutputStream(target.toFile())) {
+        assertEquals(bytes.length, Files.copy(asset, out));
+      }
+      assertArrayEquals(bytes, Files.readAllBytes(target));
+
+      try (FileChannel channel = FileChannel.open(asset, StandardOpenOption.READ)) {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 10);
+        channel.position(10);
+        while (channel.read(buffer) != -1) {
+          // read
+        }
+        buffer.flip();
+        assertEquals(ByteBuffer.wrap(bytes, 10, bytes.length - 10), buffer);
+        assertEquals(ByteBuffer.wrap(bytes, 0, 100), channel.map(FileChannel.MapMode.READ_ONLY, 0, 100));
+
+        // a shared lock of the whole entry, the channel is read only
+        FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+        assertTrue(lock.isShared());
+        assertTrue(lock.isValid());
+        assertEquals(channel, lock.channel());
+        assertEquals(bytes.length, lock.size());
+        lock.release();
+        assertFalse(lock.isValid());
+        try {
+          channel.tryLock();
+          fail("An exclusive lock on a read only channel");
+        } catch (NonWritableChannelException e) {
+          // expected
+        }
+        lock = channel.tryLock(10, 100, true);
+        assertTrue(lock.isValid());
+      }
+    }
+  }
+
+  /**
+   * A zip served over http is read with range requests:
+   * only the end of the zip (central directory) and the entries read are fetched
+   */
+  @Test
+  public void httpRangeZipTest() throws IOException {
+    Path zipFile = Paths.get("./build/http-range.zip");
+    Files.createDirectories(zipFile.getParent());
+    Random random = new Random(1);
+    byte[] bytes = new byte[100_000];
+    byte[] entry42 = null;
+    try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+      for (int i = 0; i < 200; i++) {
+        random.nextBytes(bytes);
+        if (i == 42) {
+          entry42 = bytes.clone();
+        }
+        zos.putNextEntry(new ZipEntry("data/entry" + i + ".bin"));
+        zos.write(bytes);
+        zos.closeEntry();
+      }
+    }
+    long zipSize = Files.size(zipFile);
+
+    AtomicLong transferred = new AtomicLong();
+    HttpServer server = serve(zipFile, transferred);
+    try {
+      Path httpPath = Paths.get(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/http-range.zip"));
+      try (FileSystem fs = getZipFSProvider().newFileSystem(httpPath, Collections.emptyMap())) {
+        assertTrue(fs.isReadOnly());
+        assertEquals(200, list(fs.getPath("data")).size());
+        long openTransfer = transferred.get();
+        assertTrue("open transfer: " + openTransfer, openTransfer < 128 * 1024);
+
+        assertArrayEquals(entry42, Files.readAllBytes(fs.getPath("data/entry42.bin")));
+        long readTransfer = transferred.get() - openTransfer;
+        assertTrue("read transfer: " + readTransfer, readTransfer < 4 * bytes.length);
+      }
+      assertTrue(transferred.get() < zipSize / 10);
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  /**
+   * @return a http server that serves the file with range requests and counts the bytes of the response bodies
+   */
+  private static HttpServer serve(Path file, AtomicLong transferred) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      long size = Files.size(file);
+      if (exchange.getRequestMethod().equals("HEAD")) {
+        exchange.getResponseHeaders().set("Content-Length", String.valueOf(size));
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+        return;
+      }
+      long start = 0;
+      long end = size - 1;
+      String range = exchange.getRequestHeaders().getFirst("Range");
+      if (range != null) {
+        String[] bounds = range.substring("bytes=".length()).split("-", -1);
+        start = Long.parseLong(bounds[0]);
+        if (!bounds[1].isEmpty()) {
+          end = Math.min(end, Long.parseLong(bounds[1]));
+        }
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+      }
+      long length = end - start + 1;
+      exchange.sendResponseHeaders(range == null ? 200 : 206, length);
+      try (FileChannel channel = FileChannel.open(file);
+           OutputStream out = exchange.getResponseBody()) {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = start;
+        while (position <= end) {
+          buffer.clear().limit((int) Math.min(buffer.capacity(), end - position + 1));
+          int n = channel.read(buffer, position);
+          out.write(buffer.array(), 0, n);
+          transferred.addAndGet(n);
+          position += n;
+        }
+      } catch (IOException e) {
+        // the client has closed the connection
+      }
+    });
+    server.start();
+    return server;
+  }
+
+  private static Set<String> list(Path dir) throws IOException {
+    Set<String> names = new HashSet<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path path : stream) {
+        names.add(path.toString());
+      }
+    }
+    return names;
+  }
+
+  /**
+   * @return a zip with two entries of 1000 random bytes (a.txt and b.txt, not compressible)
+   */
+  private static Path createZip(String name) throws IOException {
+    Path zipFile = Paths.get("./build", name);
+    Files.createDirectories(zipFile.getParent());
+    Files.deleteIfExists(zipFile);
+    Map<String, String> env = new HashMap<>();
+    env.put("create", "true");
+    byte[] bytes = new byte[1000];
+    new Random(1).nextBytes(bytes);
+    try (FileSystem fs = getZipFSProvider().newFileSystem(URI.create("zip:" + zipFile.toUri()), env)) {
+      Files.write(fs.getPath("a.txt"), bytes);
+      Files.write(fs.getPath("b.txt"), bytes);
+    }
+    return zipFile;
+  }
+
 }
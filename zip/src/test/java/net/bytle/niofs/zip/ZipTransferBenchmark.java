@@ -0,0 +1,147 @@
+package net.bytle.niofs.zip;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static net.bytle.niofs.zip.Demo.getZipFSProvider;
+
+/**
+ * Copy of a stored entry to a file and to a socket: stream copy vs zero copy (transferTo)
+ * <p>
+ * Usage: `ZipTransferBenchmark [entry size in MB]` (default 1024)
+ * <p>
+ * The archive is generated in the build directory.
+ */
+public class ZipTransferBenchmark {
+
+  private static final int ROUNDS = 3;
+
+  public static void main(String[] args) throws Exception {
+    int mb = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+    Path archive = createArchive(Paths.get("./build/transfer-benchmark-" + mb + ".zip"), mb);
+    Path target = Paths.get("./build/transfer-benchmark.bin");
+    try (FileSystem fs = getZipFSProvider().newFileSystem(archive, Collections.emptyMap());
+         ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+      Path entry = fs.getPath("asset.bin");
+      for (int round = 0; round < ROUNDS; round++) {
+        measure("file   stream copy", mb, () -> {
+          try (InputStream in = Files.newInputStream(entry);
+               OutputStream out = Files.newOutputStream(target)) {
+            streamCopy(in, out);
+          }
+        });
+        measure("file   Files.copy ", mb, () -> {
+          try (OutputStream out = new FileOutputStream(target.toFile())) {
+            Files.copy(entry, out);
+          }
+        });
+        measure("file   transferTo ", mb, () -> {
+          try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            transfer(entry, out);
+          }
+        });
+        measure("socket stream copy", mb, () -> {
+          try (SocketChannel socket = connect(server);
+               InputStream in = Files.newInputStream(entry)) {
+            streamCopy(in, Channels.newOutputStream(socket));
+          }
+        });
+        measure("socket transferTo ", mb, () -> {
+          try (SocketChannel socket = connect(server)) {
+            transfer(entry, socket);
+          }
+        });
+      }
+    }
+    Files.deleteIfExists(target);
+  }
+
+  private interface Copy {
+    void run() throws IOException;
+  }
+
+  private static void measure(String name, int mb, Copy copy) throws IOException {
+    long start = System.nanoTime();
+    copy.run();
+    long ms = (System.nanoTime() - start) / 1_000_000;
+    System.out.printf("%s: %6d ms, %8.1f MB/s%n", name, ms, mb * 1000.0 / Math.max(ms, 1));
+  }
+
+  private static void streamCopy(InputStream in, OutputStream out) throws IOException {
+    byte[] buf = new byte[8192];
+    int n;
+    while ((n = in.read(buf)) != -1) {
+      out.write(buf, 0, n);
+    }
+  }
+
+  private static void transfer(Path entry, WritableByteChannel target) throws IOException {
+    try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+      long position = 0;
+      long size = channel.size();
+      while (position < size) {
+        position += channel.transferTo(position, size - position, target);
+      }
+    }
+  }
+
+  /**
+   * @return a socket connected to the server, the server side is read until the end by a thread
+   */
+  private static SocketChannel connect(ServerSocketChannel server) throws IOException {
+    SocketChannel socket = SocketChannel.open(server.getLocalAddress());
+    SocketChannel peer = server.accept();
+    Thread drain = new Thread(() -> {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+      try (SocketChannel in = peer) {
+        while (in.read(buffer) != -1) {
+          buffer.clear();
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    });
+    drain.setDaemon(true);
+    drain.start();
+    return socket;
+  }
+
+  private static Path createArchive(Path archive, int mb) throws IOException {
+    if (Files.exists(archive)) {
+      return archive;
+    }
+    Files.createDirectories(archive.getParent());
+    byte[] chunk = new byte[1 << 20];
+    new Random(1).nextBytes(chunk);
+    CRC32 crc = new CRC32();
+    for (int i = 0; i < mb; i++) {
+      crc.update(chunk);
+    }
+    try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(archive), 1 << 16))) {
+      ZipEntry entry = new ZipEntry("asset.bin");
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize((long) mb << 20);
+      entry.setCrc(crc.getValue());
+      zos.putNextEntry(entry);
+      for (int i = 0; i < mb; i++) {
+        zos.write(chunk);
+      }
+      zos.closeEntry();
+    }
+    return archive;
+  }
+
+}